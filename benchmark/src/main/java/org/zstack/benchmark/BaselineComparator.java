@@ -0,0 +1,121 @@
+package org.zstack.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.zstack.utils.gson.JSONObjectUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compares results of a JMH run with the baseline.
+ *
+ * a benchmark regresses when its score is worse than the baseline by more than the threshold, and the difference is
+ * larger than the sum of both score errors so noise of a run is not reported. Benchmarks missing in the baseline are
+ * reported as new and never regress
+ */
+public class BaselineComparator {
+    private final double threshold;
+
+    public static class Comparison {
+        private final BenchmarkResult baseline;
+        private final BenchmarkResult current;
+        private final double change;
+        private final boolean regressed;
+
+        Comparison(BenchmarkResult baseline, BenchmarkResult current, double change, boolean regressed) {
+            this.baseline = baseline;
+            this.current = current;
+            this.change = change;
+            this.regressed = regressed;
+        }
+
+        public BenchmarkResult getBaseline() {
+            return baseline;
+        }
+
+        public BenchmarkResult getCurrent() {
+            return current;
+        }
+
+        /**
+         * relative change to the baseline, positive is worse and negative is better regardless of the mode
+         */
+        public double getChange() {
+            return change;
+        }
+
+        public boolean isRegressed() {
+            return regressed;
+        }
+    }
+
+    public BaselineComparator(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public static List<BenchmarkResult> load(File file) throws IOException {
+        String content = FileUtils.readFileToString(file).trim();
+        if (content.isEmpty()) {
+            return new ArrayList<BenchmarkResult>();
+        }
+
+        List<BenchmarkResult> results = JSONObjectUtil.toCollection(content, ArrayList.class, BenchmarkResult.class);
+        for (BenchmarkResult r : results) {
+            // JMH reports no error for a single iteration
+            if (Double.isNaN(r.getPrimaryMetric().getScoreError())) {
+                r.getPrimaryMetric().setScoreError(0);
+            }
+        }
+        return results;
+    }
+
+    private Comparison compare(BenchmarkResult baseline, BenchmarkResult current) {
+        if (baseline == null) {
+            return new Comparison(null, current, 0, false);
+        }
+
+        double base = baseline.getPrimaryMetric().getScore();
+        double cur = current.getPrimaryMetric().getScore();
+        double change = base == 0 ? 0 : (cur - base) / base;
+        if (current.isHigherBetter()) {
+            change = -change;
+        }
+
+        boolean regressed = change > threshold && Math.abs(cur - base) > baseline.getPrimaryMetric().getScoreError() + current.getPrimaryMetric().getScoreError();
+        return new Comparison(baseline, current, change, regressed);
+    }
+
+    public List<Comparison> compare(List<BenchmarkResult> baseline, List<BenchmarkResult> current) {
+        Map<String, BenchmarkResult> bases = new LinkedHashMap<String, BenchmarkResult>();
+        for (BenchmarkResult r : baseline) {
+            bases.put(r.getKey(), r);
+        }
+
+        List<Comparison> ret = new ArrayList<Comparison>(current.size());
+        for (BenchmarkResult r : current) {
+            ret.add(compare(bases.get(r.getKey()), r));
+        }
+        return ret;
+    }
+
+    public String report(List<Comparison> comparisons) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-100s %15s %15s %10s%n", "benchmark", "baseline", "current", "change"));
+        for (Comparison c : comparisons) {
+            BenchmarkResult.Metric cur = c.getCurrent().getPrimaryMetric();
+            if (c.getBaseline() == null) {
+                sb.append(String.format("%-100s %15s %15.3f %10s  %s%n", c.getCurrent().getKey(), "-", cur.getScore(), "-", "NEW"));
+                continue;
+            }
+
+            sb.append(String.format("%-100s %15.3f %15.3f %+9.1f%%  %s%n", c.getCurrent().getKey(),
+                    c.getBaseline().getPrimaryMetric().getScore(), cur.getScore(), c.getChange() * 100,
+                    c.isRegressed() ? "REGRESSED" : ""));
+        }
+        return sb.toString();
+    }
+}
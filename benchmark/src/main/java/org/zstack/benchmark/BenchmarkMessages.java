@@ -0,0 +1,76 @@
+package org.zstack.benchmark;
+
+import org.zstack.core.Platform;
+import org.zstack.header.vm.APIQueryVmInstanceReply;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.header.vm.VmNicInventory;
+import org.zstack.utils.network.NetworkUtils;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * messages shared by benchmarks of serialization, shaped like what the management node sends most
+ */
+class BenchmarkMessages {
+    static VmInstanceInventory vmInventory(int index) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        VmInstanceInventory vm = new VmInstanceInventory();
+        vm.setUuid(Platform.getUuid());
+        vm.setName(String.format("vm-%s", index));
+        vm.setDescription("benchmark vm");
+        vm.setZoneUuid(Platform.getUuid());
+        vm.setClusterUuid(Platform.getUuid());
+        vm.setHostUuid(Platform.getUuid());
+        vm.setLastHostUuid(vm.getHostUuid());
+        vm.setImageUuid(Platform.getUuid());
+        vm.setInstanceOfferingUuid(Platform.getUuid());
+        vm.setRootVolumeUuid(Platform.getUuid());
+        vm.setDefaultL3NetworkUuid(Platform.getUuid());
+        vm.setType("UserVm");
+        vm.setHypervisorType("KVM");
+        vm.setState("Running");
+        vm.setPlatform("Linux");
+        vm.setAllocatorStrategy("DefaultHostAllocatorStrategy");
+        vm.setMemorySize(2147483648L);
+        vm.setCpuNum(2);
+        vm.setCpuSpeed(2600L);
+        vm.setInternalId((long) index);
+        vm.setCreateDate(now);
+        vm.setLastOpDate(now);
+
+        List<VmNicInventory> nics = new ArrayList<VmNicInventory>();
+        for (int i = 0; i < 2; i++) {
+            VmNicInventory nic = new VmNicInventory();
+            nic.setUuid(Platform.getUuid());
+            nic.setVmInstanceUuid(vm.getUuid());
+            nic.setL3NetworkUuid(i == 0 ? vm.getDefaultL3NetworkUuid() : Platform.getUuid());
+            nic.setUsedIpUuid(Platform.getUuid());
+            nic.setIp(NetworkUtils.longToIpv4String(NetworkUtils.ipv4StringToLong("10.0.0.10") + index * 2 + i));
+            nic.setNetmask("255.255.0.0");
+            nic.setGateway("10.0.0.1");
+            nic.setMac(NetworkUtils.generateMacWithDeviceId((short) i));
+            nic.setDeviceId(i);
+            nic.setInternalName(String.format("vnic%s.%s", index, i));
+            nic.setCreateDate(now);
+            nic.setLastOpDate(now);
+            nics.add(nic);
+        }
+        vm.setVmNics(nics);
+
+        return vm;
+    }
+
+    static APIQueryVmInstanceReply queryVmInstanceReply(int vmNum) {
+        List<VmInstanceInventory> vms = new ArrayList<VmInstanceInventory>(vmNum);
+        for (int i = 0; i < vmNum; i++) {
+            vms.add(vmInventory(i));
+        }
+
+        APIQueryVmInstanceReply reply = new APIQueryVmInstanceReply();
+        reply.setInventories(vms);
+        return reply;
+    }
+}
@@ -0,0 +1,99 @@
+package org.zstack.benchmark;
+
+import java.util.Map;
+
+/**
+ * a result in the JSON output of JMH, only fields needed for comparing are kept
+ */
+public class BenchmarkResult {
+    public static class Metric {
+        private double score;
+        private double scoreError;
+        private String scoreUnit;
+
+        public double getScore() {
+            return score;
+        }
+
+        public void setScore(double score) {
+            this.score = score;
+        }
+
+        public double getScoreError() {
+            return scoreError;
+        }
+
+        public void setScoreError(double scoreError) {
+            this.scoreError = scoreError;
+        }
+
+        public String getScoreUnit() {
+            return scoreUnit;
+        }
+
+        public void setScoreUnit(String scoreUnit) {
+            this.scoreUnit = scoreUnit;
+        }
+    }
+
+    private String benchmark;
+    private String mode;
+    private int threads;
+    private Map<String, String> params;
+    private Metric primaryMetric;
+
+    public String getKey() {
+        StringBuilder sb = new StringBuilder(benchmark);
+        if (params != null && !params.isEmpty()) {
+            sb.append(params);
+        }
+        return sb.append("[").append(mode).append("]").toString();
+    }
+
+    /**
+     * throughput is better when higher, scores of other modes are time and better when lower
+     */
+    public boolean isHigherBetter() {
+        return "thrpt".equals(mode);
+    }
+
+    public String getBenchmark() {
+        return benchmark;
+    }
+
+    public void setBenchmark(String benchmark) {
+        this.benchmark = benchmark;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    public void setParams(Map<String, String> params) {
+        this.params = params;
+    }
+
+    public Metric getPrimaryMetric() {
+        return primaryMetric;
+    }
+
+    public void setPrimaryMetric(Metric primaryMetric) {
+        this.primaryMetric = primaryMetric;
+    }
+}
@@ -0,0 +1,82 @@
+package org.zstack.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.zstack.utils.gson.JSONObjectUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * runs benchmarks and compares the results with the baseline, exits with 1 if any benchmark regresses.
+ *
+ * build zstack first, then run 'runMavenProfile benchmark' in the root folder, or
+ * 'mvn -pl benchmark -P benchmark -Dbenchmark compile exec:exec' with options below:
+ *
+ * -Dbenchmark.include: regular expression of benchmarks to run, default to all
+ * -Dbenchmark.baseline: the baseline file, default to baseline/baseline.json
+ * -Dbenchmark.result: the JMH result file, default to target/jmh-result.json
+ * -Dbenchmark.threshold: the relative change counted as a regression, default to 0.1
+ * -Dbenchmark.updateBaseline: write results to the baseline file instead of comparing, default to false
+ *
+ * baselines only make sense on the machine they are recorded on, re-record them with -Dbenchmark.updateBaseline=true
+ * when switching machines or after an intended change of performance. A missing or empty baseline fails the run
+ * instead of passing it silently, unless -Dbenchmark.updateBaseline=true is set
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        String include = System.getProperty("benchmark.include", ".*");
+        File baselineFile = new File(System.getProperty("benchmark.baseline", "baseline/baseline.json"));
+        File resultFile = new File(System.getProperty("benchmark.result", "target/jmh-result.json"));
+        double threshold = Double.valueOf(System.getProperty("benchmark.threshold", "0.1"));
+        boolean updateBaseline = Boolean.valueOf(System.getProperty("benchmark.updateBaseline", "false"));
+
+        List<BenchmarkResult> baseline = baselineFile.exists() ? BaselineComparator.load(baselineFile) : new ArrayList<BenchmarkResult>();
+        if (baseline.isEmpty() && !updateBaseline) {
+            // fail before running any benchmark, a run against nothing would pass whatever the results are
+            System.out.println(String.format("no baseline found in %s, run with -Dbenchmark.updateBaseline=true on the target machine to record one",
+                    baselineFile.getAbsolutePath()));
+            System.exit(1);
+        }
+
+        Options opts = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getAbsolutePath())
+                .build();
+        new Runner(opts).run();
+
+        List<BenchmarkResult> current = BaselineComparator.load(resultFile);
+        if (updateBaseline) {
+            // results of benchmarks not included in this run are kept
+            Map<String, BenchmarkResult> merged = new LinkedHashMap<String, BenchmarkResult>();
+            for (BenchmarkResult r : baseline) {
+                merged.put(r.getKey(), r);
+            }
+            for (BenchmarkResult r : current) {
+                merged.put(r.getKey(), r);
+            }
+            FileUtils.writeStringToFile(baselineFile, JSONObjectUtil.dumpPretty(new ArrayList<BenchmarkResult>(merged.values())));
+            System.out.println(String.format("updated the baseline[%s]", baselineFile.getAbsolutePath()));
+            return;
+        }
+
+        BaselineComparator comparator = new BaselineComparator(threshold);
+        List<BaselineComparator.Comparison> comparisons = comparator.compare(baseline, current);
+        System.out.println(comparator.report(comparisons));
+
+        for (BaselineComparator.Comparison c : comparisons) {
+            if (c.isRegressed()) {
+                System.out.println(String.format("performance regressed by more than %.1f%% against the baseline[%s]",
+                        threshold * 100, baselineFile.getAbsolutePath()));
+                System.exit(1);
+            }
+        }
+    }
+}
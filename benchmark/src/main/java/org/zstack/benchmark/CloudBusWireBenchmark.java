@@ -0,0 +1,69 @@
+package org.zstack.benchmark;
+
+import com.rabbitmq.client.AMQP;
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.cloudbus.CloudBusImpl2;
+import org.zstack.core.cloudbus.MessageJsonSchemaBuilder;
+import org.zstack.header.message.Message;
+import org.zstack.utils.Compresser;
+import org.zstack.utils.FieldUtils;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encoding and decoding a message by the wire of CloudBusImpl2, which is private so it's called by reflection
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloudBusWireBenchmark {
+    @Param({"1", "50"})
+    public int vmNum;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private Object wire;
+    private Method dumpMessage;
+    private Method toMessage;
+    private Message msg;
+    private byte[] data;
+    private AMQP.BasicProperties properties;
+
+    @Setup
+    public void setUp() throws Exception {
+        wire = FieldUtils.getFieldValue("wire", new CloudBusImpl2());
+        dumpMessage = wire.getClass().getDeclaredMethod("dumpMessage", Message.class);
+        dumpMessage.setAccessible(true);
+        toMessage = wire.getClass().getDeclaredMethod("toMessage", byte[].class, AMQP.BasicProperties.class);
+        toMessage.setAccessible(true);
+
+        msg = BenchmarkMessages.queryVmInstanceReply(vmNum);
+        msg.putHeaderEntry("schema", MessageJsonSchemaBuilder.buildSchema(msg));
+        data = encode();
+
+        Map<String, Object> headers = new HashMap<String, Object>();
+        if (compressed) {
+            // CloudBusImpl2.AMQP_PROPERTY_HEADER__COMPRESSED
+            headers.put("compressed", "true");
+        }
+        properties = new AMQP.BasicProperties.Builder().headers(headers).build();
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        byte[] bytes = ((String) dumpMessage.invoke(wire, msg)).getBytes();
+        return compressed ? Compresser.deflate(bytes) : bytes;
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return toMessage.invoke(wire, data, properties);
+    }
+}
@@ -0,0 +1,64 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.Platform;
+import org.zstack.utils.hash.ApacheHash;
+import org.zstack.utils.hash.ConsistentHash;
+import org.zstack.utils.hash.ConsistentHashRing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * finding the management node owning a resource, done for every message sent to a resource
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsistentHashBenchmark {
+    private static final int KEY_NUM = 1024;
+
+    @Param({"1", "10", "50"})
+    public int nodeNum;
+
+    private ConsistentHash<String> hash;
+    private ConsistentHashRing<String> ring;
+    private String[] keys;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        List<String> nodes = new ArrayList<String>(nodeNum);
+        for (int i = 0; i < nodeNum; i++) {
+            nodes.add(Platform.getUuid());
+        }
+
+        // replicas are the same as ResourceDestinationMakerImpl
+        hash = new ConsistentHash<String>(new ApacheHash(), 500, nodes);
+        ring = new ConsistentHashRing<String>(new ApacheHash(), 500, nodes);
+
+        keys = new String[KEY_NUM];
+        for (int i = 0; i < KEY_NUM; i++) {
+            keys[i] = Platform.getUuid();
+        }
+    }
+
+    private String nextKey() {
+        index = (index + 1) & (KEY_NUM - 1);
+        return keys[index];
+    }
+
+    @Benchmark
+    public String consistentHash() {
+        return hash.get(nextKey());
+    }
+
+    @Benchmark
+    public String consistentHashRing() {
+        return ring.get(nextKey());
+    }
+}
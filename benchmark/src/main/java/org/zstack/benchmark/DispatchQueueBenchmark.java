@@ -0,0 +1,114 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.zstack.core.thread.ChainTask;
+import org.zstack.core.thread.SyncTask;
+import org.zstack.core.thread.SyncTaskChain;
+import org.zstack.core.thread.ThreadFacade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * submitting tasks to the dispatch queue of ThreadFacade and waiting for them to finish, tasks do nothing so only
+ * queueing and scheduling are measured. Tasks are spread over signatures, tasks of the same signature run one by one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchQueueBenchmark {
+    private static final int BATCH = 100;
+
+    @Param({"1", "10"})
+    public int signatureNum;
+
+    private ClassPathXmlApplicationContext context;
+    private ThreadFacade thdf;
+    private String[] signatures;
+
+    @Setup
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("zstack-benchmark.xml");
+        thdf = context.getBean(ThreadFacade.class);
+
+        signatures = new String[signatureNum];
+        for (int i = 0; i < signatureNum; i++) {
+            signatures[i] = String.format("benchmark-queue-%s", i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void syncSubmit() throws Exception {
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            final String signature = signatures[i % signatureNum];
+            final int index = i;
+            futures.add(thdf.syncSubmit(new SyncTask<Integer>() {
+                @Override
+                public String getSyncSignature() {
+                    return signature;
+                }
+
+                @Override
+                public int getSyncLevel() {
+                    return 1;
+                }
+
+                @Override
+                public String getName() {
+                    return signature;
+                }
+
+                @Override
+                public Integer call() throws Exception {
+                    return index;
+                }
+            }));
+        }
+
+        for (Future<Integer> f : futures) {
+            f.get();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void chainSubmit() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            final String signature = signatures[i % signatureNum];
+            thdf.chainSubmit(new ChainTask() {
+                @Override
+                public String getSyncSignature() {
+                    return signature;
+                }
+
+                @Override
+                public void run(SyncTaskChain chain) {
+                    latch.countDown();
+                    chain.next();
+                }
+
+                @Override
+                public String getName() {
+                    return signature;
+                }
+            });
+        }
+
+        latch.await();
+    }
+}
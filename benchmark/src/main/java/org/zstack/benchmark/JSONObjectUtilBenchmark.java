@@ -0,0 +1,59 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.utils.gson.JSONObjectUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON conversions used by agent commands, inventories and rehashing objects
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONObjectUtilBenchmark {
+    @Param({"1", "50"})
+    public int vmNum;
+
+    private List<VmInstanceInventory> vms;
+    private VmInstanceInventory vm;
+    private String vmJson;
+    private String vmsJson;
+
+    @Setup
+    public void setUp() {
+        vms = new ArrayList<VmInstanceInventory>(vmNum);
+        for (int i = 0; i < vmNum; i++) {
+            vms.add(BenchmarkMessages.vmInventory(i));
+        }
+        vm = vms.get(0);
+        vmJson = JSONObjectUtil.toJsonString(vm);
+        vmsJson = JSONObjectUtil.toJsonString(vms);
+    }
+
+    @Benchmark
+    public String toJsonString() {
+        return JSONObjectUtil.toJsonString(vms);
+    }
+
+    @Benchmark
+    public VmInstanceInventory toObject() {
+        return JSONObjectUtil.toObject(vmJson, VmInstanceInventory.class);
+    }
+
+    @Benchmark
+    public List<VmInstanceInventory> toCollection() {
+        return JSONObjectUtil.toCollection(vmsJson, ArrayList.class, VmInstanceInventory.class);
+    }
+
+    @Benchmark
+    public VmInstanceInventory rehashObject() {
+        return JSONObjectUtil.rehashObject(vm, VmInstanceInventory.class);
+    }
+}
@@ -0,0 +1,35 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.cloudbus.MessageJsonSchemaBuilder;
+import org.zstack.header.message.Message;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * building the schema CloudBus sends with every message
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageJsonSchemaBuilderBenchmark {
+    @Param({"1", "50"})
+    public int vmNum;
+
+    private Message msg;
+
+    @Setup
+    public void setUp() {
+        msg = BenchmarkMessages.queryVmInstanceReply(vmNum);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> buildSchema() {
+        return MessageJsonSchemaBuilder.buildSchema(msg);
+    }
+}
@@ -0,0 +1,84 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.utils.data.Pair;
+import org.zstack.utils.network.NetworkUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IP arithmetic done by IP allocation and by validating IP ranges
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkUtilsBenchmark {
+    private static final String START_IP = "10.0.0.1";
+    private static final String END_IP = "10.0.255.254";
+
+    @Param({"100", "10000"})
+    public int allocatedNum;
+
+    private long startIp;
+    private long endIp;
+    private Long[] allocatedIps;
+    private List<Long> allocatedIpList;
+    private List<String> allocatedIpStrings;
+
+    @Setup
+    public void setUp() {
+        startIp = NetworkUtils.ipv4StringToLong(START_IP);
+        endIp = NetworkUtils.ipv4StringToLong(END_IP);
+
+        // every other IP is allocated, so allocated IPs are never consecutive
+        allocatedIps = new Long[allocatedNum];
+        allocatedIpList = new ArrayList<Long>(allocatedNum);
+        allocatedIpStrings = new ArrayList<String>(allocatedNum);
+        for (int i = 0; i < allocatedNum; i++) {
+            long ip = startIp + i * 2;
+            allocatedIps[i] = ip;
+            allocatedIpList.add(ip);
+            allocatedIpStrings.add(NetworkUtils.longToIpv4String(ip));
+        }
+    }
+
+    @Benchmark
+    public long ipv4StringToLong() {
+        return NetworkUtils.ipv4StringToLong(END_IP);
+    }
+
+    @Benchmark
+    public String longToIpv4String() {
+        return NetworkUtils.longToIpv4String(endIp);
+    }
+
+    @Benchmark
+    public boolean isIpv4InRange() {
+        return NetworkUtils.isIpv4InRange("10.0.128.1", START_IP, END_IP);
+    }
+
+    @Benchmark
+    public boolean isIpv4RangeOverlap() {
+        return NetworkUtils.isIpv4RangeOverlap(START_IP, "10.0.128.1", "10.0.127.1", END_IP);
+    }
+
+    @Benchmark
+    public String findFirstAvailableIpv4Address() {
+        return NetworkUtils.findFirstAvailableIpv4Address(START_IP, END_IP, allocatedIps);
+    }
+
+    @Benchmark
+    public String randomAllocateIpv4Address() {
+        return NetworkUtils.randomAllocateIpv4Address(startIp, endIp, allocatedIpList);
+    }
+
+    @Benchmark
+    public List<Pair<String, String>> findConsecutiveIpRange() {
+        return NetworkUtils.findConsecutiveIpRange(allocatedIpStrings);
+    }
+}
@@ -0,0 +1,112 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.Platform;
+import org.zstack.header.storage.primary.*;
+import org.zstack.storage.primary.PrimaryStorageCapacityIndex;
+import org.zstack.storage.primary.PrimaryStorageCapacityIndex.Entry;
+import org.zstack.utils.data.SizeUnit;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * choosing primary storage for an allocation the way PrimaryStorageScoredAllocatorFlow does with an index already
+ * loaded: filter the indexed primary storage by state, cluster and capacity, score and sort them, and record the
+ * allocation on the best one.
+ *
+ * the default strategy and loading the index query MySQL, so they are left to the unit tests; entries are built in
+ * memory here, half of the primary storage are attached to the cluster allocated from and a quarter have the image cached
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimaryStorageScoringBenchmark {
+    private static final long SIZE = SizeUnit.MEGABYTE.toByte(1);
+
+    @Param({"10", "100", "1000"})
+    public int primaryStorageNum;
+
+    private static class InMemoryIndex extends PrimaryStorageCapacityIndex {
+        private Map<String, Entry> primaryStorages = new HashMap<String, Entry>();
+
+        @Override
+        protected Map<String, Entry> load() {
+            return primaryStorages;
+        }
+    }
+
+    private InMemoryIndex index;
+    private String clusterUuid;
+    private String imageUuid;
+
+    @Setup
+    public void setUp() {
+        index = new InMemoryIndex();
+        clusterUuid = Platform.getUuid();
+        imageUuid = Platform.getUuid();
+
+        for (int i = 0; i < primaryStorageNum; i++) {
+            PrimaryStorageVO vo = new PrimaryStorageVO();
+            vo.setUuid(Platform.getUuid());
+            vo.setState(PrimaryStorageState.Enabled);
+            vo.setStatus(PrimaryStorageStatus.Connected);
+
+            PrimaryStorageCapacityVO cap = new PrimaryStorageCapacityVO();
+            cap.setUuid(vo.getUuid());
+            cap.setTotalCapacity(SizeUnit.TERABYTE.toByte(1024));
+            cap.setAvailableCapacity(SizeUnit.TERABYTE.toByte(512 + i % 512));
+            vo.setCapacity(cap);
+
+            PrimaryStorageClusterRefVO ref = new PrimaryStorageClusterRefVO();
+            ref.setPrimaryStorageUuid(vo.getUuid());
+            ref.setClusterUuid(i % 2 == 0 ? clusterUuid : Platform.getUuid());
+            vo.getAttachedClusterRefs().add(ref);
+
+            Entry e = new Entry(vo);
+            if (i % 4 == 0) {
+                e.addImageCache(imageUuid);
+            }
+            index.primaryStorages.put(vo.getUuid(), e);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reload() {
+        // drops capacity reserved by the last iteration
+        index.reload();
+    }
+
+    @Benchmark
+    public String allocate() {
+        final Map<String, Double> scores = new HashMap<String, Double>();
+        List<PrimaryStorageVO> res = new ArrayList<PrimaryStorageVO>();
+        for (Entry e : index.primaryStorages.values()) {
+            PrimaryStorageVO vo = e.getPrimaryStorage();
+            if (vo.getState() != PrimaryStorageState.Enabled || vo.getStatus() != PrimaryStorageStatus.Connected) {
+                continue;
+            }
+
+            if (!e.isAttachedToCluster(clusterUuid) || index.getAvailableCapacity(e) <= SIZE) {
+                continue;
+            }
+
+            scores.put(vo.getUuid(), index.score(e, imageUuid));
+            res.add(vo);
+        }
+
+        Collections.sort(res, new Comparator<PrimaryStorageVO>() {
+            @Override
+            public int compare(PrimaryStorageVO o1, PrimaryStorageVO o2) {
+                return Double.compare(scores.get(o2.getUuid()), scores.get(o1.getUuid()));
+            }
+        });
+
+        String uuid = res.get(0).getUuid();
+        index.recordAllocation(uuid, SIZE);
+        return uuid;
+    }
+}
@@ -0,0 +1,81 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.workflow.SimpleFlowChain;
+import org.zstack.header.core.workflow.*;
+import org.zstack.header.errorcode.ErrorCode;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * overhead of SimpleFlowChain itself, flows do nothing but calling the next one so only the chain is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleFlowChainBenchmark {
+    private static final ErrorCode ERROR = new ErrorCode("SYS.1000", "benchmark", "benchmark failure");
+
+    private static final Flow NEXT = new Flow() {
+        @Override
+        public void run(FlowTrigger trigger, Map data) {
+            trigger.next();
+        }
+
+        @Override
+        public void rollback(FlowRollback trigger, Map data) {
+            trigger.rollback();
+        }
+    };
+
+    private static final Flow FAIL = new NoRollbackFlow() {
+        @Override
+        public void run(FlowTrigger trigger, Map data) {
+            trigger.fail(ERROR);
+        }
+    };
+
+    @Param({"1", "5", "20"})
+    public int flowNum;
+
+    private SimpleFlowChain chain(final Map[] ret) {
+        SimpleFlowChain chain = new SimpleFlowChain();
+        chain.setName("benchmark-chain");
+        for (int i = 0; i < flowNum; i++) {
+            chain.then(NEXT);
+        }
+
+        chain.done(new FlowDoneHandler() {
+            @Override
+            public void handle(Map data) {
+                ret[0] = data;
+            }
+        }).error(new FlowErrorHandler() {
+            @Override
+            public void handle(ErrorCode errCode, Map data) {
+                ret[0] = data;
+            }
+        });
+        return chain;
+    }
+
+    @Benchmark
+    public Map success() {
+        Map[] ret = new Map[1];
+        chain(ret).start();
+        return ret[0];
+    }
+
+    @Benchmark
+    public Map rollback() {
+        Map[] ret = new Map[1];
+        SimpleFlowChain chain = chain(ret);
+        chain.then(FAIL);
+        chain.start();
+        return ret[0];
+    }
+}
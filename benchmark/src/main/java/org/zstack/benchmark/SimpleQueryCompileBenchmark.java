@@ -0,0 +1,85 @@
+package org.zstack.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.zstack.core.Platform;
+import org.zstack.core.config.GlobalConfigVO;
+import org.zstack.core.config.GlobalConfigVO_;
+import org.zstack.core.workflow.WorkFlowVO;
+import org.zstack.core.workflow.WorkFlowVO_;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compiling queries the way SimpleQueryImpl does, without executing them.
+ *
+ * SimpleQueryImpl can only be created with a DatabaseFacade connected to MySQL, so the two forms of queries it gives
+ * Hibernate are built here directly: a criteria tree when the plan cache is disabled, and the JPQL string cached by
+ * SimpleQueryPlanCache otherwise. The entity manager factory comes from the benchmark persistence unit, which never
+ * connects to a database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleQueryCompileBenchmark {
+    // as WorkFlowChainStore.listFlowsDesc()
+    private static final String FLOW_JPQL = "SELECT vo FROM WorkFlowVO vo WHERE vo.chainUuid = :p0 ORDER BY vo.position DESC";
+    // as GlobalConfig.update()
+    private static final String CONFIG_JPQL = "SELECT vo FROM GlobalConfigVO vo WHERE vo.category = :p0 AND vo.name = :p1";
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private String chainUuid;
+
+    @Setup
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("zstack.benchmark.jpa");
+        em = emf.createEntityManager();
+        chainUuid = Platform.getUuid();
+    }
+
+    @TearDown
+    public void tearDown() {
+        em.close();
+        emf.close();
+    }
+
+    @Benchmark
+    public Query flowCriteria() {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<WorkFlowVO> query = builder.createQuery(WorkFlowVO.class);
+        Root<WorkFlowVO> root = query.from(WorkFlowVO.class);
+        query.where(builder.equal(root.get(WorkFlowVO_.chainUuid), chainUuid));
+        query.orderBy(builder.desc(root.get(WorkFlowVO_.position)));
+        return em.createQuery(query);
+    }
+
+    @Benchmark
+    public Query flowJpql() {
+        return em.createQuery(FLOW_JPQL).setParameter("p0", chainUuid);
+    }
+
+    @Benchmark
+    public Query configCriteria() {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<GlobalConfigVO> query = builder.createQuery(GlobalConfigVO.class);
+        Root<GlobalConfigVO> root = query.from(GlobalConfigVO.class);
+        query.where(builder.equal(root.get(GlobalConfigVO_.category), "vm"),
+                builder.equal(root.get(GlobalConfigVO_.name), "dataVolume.deleteOnVmDestroy"));
+        return em.createQuery(query);
+    }
+
+    @Benchmark
+    public Query configJpql() {
+        return em.createQuery(CONFIG_JPQL).setParameter("p0", "vm").setParameter("p1", "dataVolume.deleteOnVmDestroy");
+    }
+}
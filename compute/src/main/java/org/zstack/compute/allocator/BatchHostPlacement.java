@@ -0,0 +1,213 @@
+package org.zstack.compute.allocator;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.allocator.HostCapacityOverProvisioningManager;
+import org.zstack.header.allocator.HostCapacityVO;
+import org.zstack.header.allocator.ReservedHostCapacity;
+import org.zstack.header.allocator.UnableToReserveHostCapacityException;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.storage.primary.PrimaryStorageOverProvisioningManager;
+import org.zstack.header.storage.primary.PrimaryStorageState;
+import org.zstack.header.storage.primary.PrimaryStorageStatus;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import java.util.*;
+
+/**
+ * places a number of vm instances of the same size on candidate hosts.
+ *
+ * the capacity of candidates and of the primary storage attached to their clusters is read once, vm instances
+ * are placed one by one on the host having the most free memory in the snapshot, whose primary storage must also
+ * hold the disks of the vm, then the capacity of all vm instances placed on a host is reserved in one update of the
+ * host capacity. vm instances not placed, either because candidates run out of capacity or because the capacity
+ * of a host changed after the snapshot, get null.
+ *
+ * the primary storage capacity is only counted, it's reserved when the disks of each vm are allocated
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+class BatchHostPlacement {
+    private static final CLogger logger = Utils.getLogger(BatchHostPlacement.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private HostCapacityReserveManager reserveMgr;
+    @Autowired
+    private HostCapacityOverProvisioningManager ratioMgr;
+    @Autowired
+    private PrimaryStorageOverProvisioningManager psRatioMgr;
+
+    private final List<HostInventory> candidates;
+    private final long cpu;
+    private final long memory;
+    private final long diskSize;
+    private final int vmNum;
+
+    // shared by hosts of clusters attached to the same primary storage
+    private class PrimaryStorageSlot {
+        long availableCapacity;
+    }
+
+    private class HostSlot {
+        HostInventory host;
+        long availableCpu;
+        long availableMemory;
+        long requiredMemory;
+        List<PrimaryStorageSlot> primaryStorages = new ArrayList<PrimaryStorageSlot>();
+        List<Integer> vmIndexes = new ArrayList<Integer>();
+
+        PrimaryStorageSlot findPrimaryStorage() {
+            PrimaryStorageSlot ret = null;
+            for (PrimaryStorageSlot ps : primaryStorages) {
+                if (ps.availableCapacity > diskSize && (ret == null || ps.availableCapacity > ret.availableCapacity)) {
+                    ret = ps;
+                }
+            }
+            return ret;
+        }
+
+        boolean fit() {
+            return availableCpu > cpu && availableMemory > requiredMemory && (diskSize == 0 || findPrimaryStorage() != null);
+        }
+
+        void place(int index) {
+            availableCpu -= cpu;
+            availableMemory -= requiredMemory;
+            if (diskSize != 0) {
+                findPrimaryStorage().availableCapacity -= diskSize;
+            }
+            vmIndexes.add(index);
+        }
+    }
+
+    BatchHostPlacement(List<HostInventory> candidates, long cpu, long memory, long diskSize, int vmNum) {
+        this.candidates = candidates;
+        this.cpu = cpu;
+        this.memory = memory;
+        this.diskSize = diskSize;
+        this.vmNum = vmNum;
+    }
+
+    @Transactional(readOnly = true)
+    private Map<String, List<PrimaryStorageSlot>> snapshotPrimaryStorage(List<String> huuids) {
+        String sql = "select h.uuid, ps.uuid, cap.availableCapacity from HostVO h, PrimaryStorageClusterRefVO ref, PrimaryStorageVO ps," +
+                " PrimaryStorageCapacityVO cap where ref.clusterUuid = h.clusterUuid and ref.primaryStorageUuid = ps.uuid and" +
+                " cap.uuid = ps.uuid and ps.state = :state and ps.status = :status and h.uuid in (:huuids)";
+        TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("state", PrimaryStorageState.Enabled);
+        q.setParameter("status", PrimaryStorageStatus.Connected);
+        q.setParameter("huuids", huuids);
+
+        Map<String, PrimaryStorageSlot> pss = new HashMap<String, PrimaryStorageSlot>();
+        Map<String, List<PrimaryStorageSlot>> ret = new HashMap<String, List<PrimaryStorageSlot>>();
+        for (Tuple t : q.getResultList()) {
+            String huuid = t.get(0, String.class);
+            String psUuid = t.get(1, String.class);
+            PrimaryStorageSlot ps = pss.get(psUuid);
+            if (ps == null) {
+                ps = new PrimaryStorageSlot();
+                ps.availableCapacity = psRatioMgr.calculatePrimaryStorageAvailableCapacityByRatio(psUuid, t.get(2, Long.class));
+                pss.put(psUuid, ps);
+            }
+
+            List<PrimaryStorageSlot> lst = ret.get(huuid);
+            if (lst == null) {
+                lst = new ArrayList<PrimaryStorageSlot>();
+                ret.put(huuid, lst);
+            }
+            lst.add(ps);
+        }
+
+        return ret;
+    }
+
+    private List<HostSlot> snapshot() {
+        Map<String, HostInventory> hosts = new HashMap<String, HostInventory>();
+        for (HostInventory h : candidates) {
+            hosts.put(h.getUuid(), h);
+        }
+
+        List<String> huuids = new ArrayList<String>(hosts.keySet());
+        List<HostCapacityVO> caps = dbf.listByPrimaryKeys(huuids, HostCapacityVO.class);
+        Map<String, ReservedHostCapacity> reserves = reserveMgr.getReservedHostCapacityOfEachHost(huuids);
+        Map<String, List<PrimaryStorageSlot>> pss = snapshotPrimaryStorage(huuids);
+
+        List<HostSlot> slots = new ArrayList<HostSlot>(caps.size());
+        for (HostCapacityVO cap : caps) {
+            HostSlot s = new HostSlot();
+            s.host = hosts.get(cap.getUuid());
+            ReservedHostCapacity rc = reserves.get(cap.getUuid());
+            s.availableCpu = cap.getAvailableCpu() - (rc == null ? 0 : rc.getReservedCpuCapacity());
+            s.availableMemory = cap.getAvailableMemory() - (rc == null ? 0 : rc.getReservedMemoryCapacity());
+            s.requiredMemory = ratioMgr.calculateMemoryByRatio(cap.getUuid(), memory);
+            if (pss.containsKey(cap.getUuid())) {
+                s.primaryStorages.addAll(pss.get(cap.getUuid()));
+            }
+            slots.add(s);
+        }
+
+        return slots;
+    }
+
+    List<HostInventory> place() {
+        List<HostSlot> slots = snapshot();
+        PriorityQueue<HostSlot> queue = new PriorityQueue<HostSlot>(Math.max(slots.size(), 1), new Comparator<HostSlot>() {
+            @Override
+            public int compare(HostSlot o1, HostSlot o2) {
+                return o1.availableMemory > o2.availableMemory ? -1 : (o1.availableMemory == o2.availableMemory ? 0 : 1);
+            }
+        });
+
+        for (HostSlot s : slots) {
+            if (s.fit()) {
+                queue.add(s);
+            }
+        }
+
+        int i = 0;
+        while (i < vmNum && !queue.isEmpty()) {
+            HostSlot s = queue.poll();
+            // the primary storage may have been filled up by vms placed on other hosts
+            if (!s.fit()) {
+                continue;
+            }
+
+            s.place(i++);
+            if (s.fit()) {
+                queue.add(s);
+            }
+        }
+
+        List<HostInventory> ret = new ArrayList<HostInventory>(Collections.<HostInventory>nCopies(vmNum, null));
+        HostAllocatorChain reserver = new HostAllocatorChain();
+        for (HostSlot s : slots) {
+            if (s.vmIndexes.isEmpty()) {
+                continue;
+            }
+
+            int num = s.vmIndexes.size();
+            try {
+                reserver.reserveCapacity(s.host.getUuid(), cpu * num, memory * num);
+                logger.debug(String.format("[Host Allocation]: successfully reserved cpu[%s HZ], memory[%s bytes] on host[uuid:%s] for %s vms",
+                        cpu * num, memory * num, s.host.getUuid(), num));
+            } catch (UnableToReserveHostCapacityException e) {
+                logger.debug(String.format("[Host Allocation]: %s on host[uuid:%s]; the capacity changed after the placement," +
+                        " %s vms are left unplaced", e.getMessage(), s.host.getUuid(), num));
+                continue;
+            }
+
+            for (int index : s.vmIndexes) {
+                ret.set(index, s.host);
+            }
+        }
+
+        return ret;
+    }
+}
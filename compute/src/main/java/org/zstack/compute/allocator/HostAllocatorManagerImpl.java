@@ -66,7 +66,9 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
 	}
 
 	private void handleLocalMessage(Message msg) {
-		if (msg instanceof AllocateHostMsg) {
+		if (msg instanceof BatchAllocateHostMsg) {
+			handle((BatchAllocateHostMsg) msg);
+		} else if (msg instanceof AllocateHostMsg) {
 			handle((AllocateHostMsg) msg);
 		} else if (msg instanceof ReportHostCapacityMessage) {
 			handle((ReportHostCapacityMessage) msg);
@@ -215,8 +217,7 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
         }
     }
 
-	private void handle(final AllocateHostMsg msg) {
-        HostAllocatorSpec spec = HostAllocatorSpec.fromAllocationMsg(msg);
+    private HostAllocatorStrategy getHostAllocatorStrategy(HostAllocatorSpec spec, AllocateHostMsg msg) {
         String allocatorStrategyType = null;
         for (HostAllocatorStrategyExtensionPoint ext : pluginRgty.getExtensionList(HostAllocatorStrategyExtensionPoint.class)) {
             allocatorStrategyType = ext.getHostAllocatorStrategyName(spec);
@@ -233,6 +234,37 @@ public class HostAllocatorManagerImpl extends AbstractService implements HostAll
         HostAllocatorStrategyFactory factory = getHostAllocatorStrategyFactory(HostAllocatorStrategyType.valueOf(allocatorStrategyType));
         HostAllocatorStrategy strategy = factory.getHostAllocatorStrategy();
         factory.marshalSpec(spec, msg);
+        return strategy;
+    }
+
+    private void handle(final BatchAllocateHostMsg msg) {
+        HostAllocatorSpec spec = HostAllocatorSpec.fromAllocationMsg(msg);
+        HostAllocatorStrategy strategy = getHostAllocatorStrategy(spec, msg);
+
+        final BatchAllocateHostReply reply = new BatchAllocateHostReply();
+        strategy.dryRun(spec, new ReturnValueCompletion<List<HostInventory>>(msg) {
+            @Override
+            public void success(List<HostInventory> returnValue) {
+                if (returnValue.isEmpty()) {
+                    reply.setError(errf.instantiateErrorCode(HostAllocatorError.NO_AVAILABLE_HOST,
+                            String.format("no host found for %s vms", msg.getVmNum())));
+                } else {
+                    reply.setHosts(new BatchHostPlacement(returnValue, msg.getCpuCapacity(), msg.getMemoryCapacity(), msg.getDiskSize(), msg.getVmNum()).place());
+                }
+                bus.reply(msg, reply);
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                reply.setError(errorCode);
+                bus.reply(msg, reply);
+            }
+        });
+    }
+
+	private void handle(final AllocateHostMsg msg) {
+        HostAllocatorSpec spec = HostAllocatorSpec.fromAllocationMsg(msg);
+        HostAllocatorStrategy strategy = getHostAllocatorStrategy(spec, msg);
 
         if (msg.isDryRun()) {
             final AllocateHostDryRunReply reply = new AllocateHostDryRunReply();
@@ -5,8 +5,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.DatabaseFacade;
-import org.zstack.core.db.SimpleQuery;
-import org.zstack.core.db.SimpleQuery.Op;
 import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.header.allocator.*;
@@ -15,15 +13,15 @@ import org.zstack.header.configuration.DiskOfferingVO;
 import org.zstack.header.configuration.InstanceOfferingVO;
 import org.zstack.header.host.HostVO;
 import org.zstack.header.tag.SystemTagInventory;
-import org.zstack.header.tag.SystemTagVO;
-import org.zstack.header.tag.SystemTagVO_;
 import org.zstack.header.vm.VmInstance;
 import org.zstack.header.vm.VmInstanceVO;
+import org.zstack.tag.TagManager;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,6 +34,8 @@ public class TagAllocatorFlow extends AbstractHostAllocatorFlow {
     private DatabaseFacade dbf;
     @Autowired
     private PluginRegistry pluginRgty;
+    @Autowired
+    private TagManager tagMgr;
 
     private List<InstanceOfferingTagAllocatorExtensionPoint> instanceOfferingExtensions;
     private List<DiskOfferingTagAllocatorExtensionPoint> diskOfferingExtensions;
@@ -50,12 +50,8 @@ public class TagAllocatorFlow extends AbstractHostAllocatorFlow {
         throwExceptionIfIAmTheFirstFlow();
 
         if (!instanceOfferingExtensions.isEmpty()) {
-            SimpleQuery<SystemTagVO> q  = dbf.createQuery(SystemTagVO.class);
-            q.add(SystemTagVO_.resourceType, Op.EQ, VmInstanceVO.class.getSimpleName());
-            q.add(SystemTagVO_.resourceUuid, Op.EQ, spec.getVmInstance().getUuid());
-            List<SystemTagVO> tvos = q.list();
-            if (!tvos.isEmpty()) {
-                List tinvs = SystemTagInventory.valueOf(tvos);
+            List tinvs = tagMgr.getSystemTags(spec.getVmInstance().getUuid(), VmInstanceVO.class.getSimpleName());
+            if (!tinvs.isEmpty()) {
                 List<HostVO> tmp = candidates;
                 for (InstanceOfferingTagAllocatorExtensionPoint extp : instanceOfferingExtensions) {
                     List<HostVO> ret = extp.allocateHost(tinvs, tmp, spec);
@@ -86,12 +82,11 @@ public class TagAllocatorFlow extends AbstractHostAllocatorFlow {
                 }
             });
 
-            SimpleQuery<SystemTagVO> q  = dbf.createQuery(SystemTagVO.class);
-            q.add(SystemTagVO_.resourceType, Op.EQ, DiskOfferingVO.class.getSimpleName());
-            q.add(SystemTagVO_.resourceUuid, Op.IN, diskOfferingUuids);
-            List<SystemTagVO> tvos = q.list();
-            if (!tvos.isEmpty()) {
-                List tinvs = SystemTagInventory.valueOf(tvos);
+            List tinvs = new ArrayList<SystemTagInventory>();
+            for (List<SystemTagInventory> tags : tagMgr.getSystemTags(diskOfferingUuids, DiskOfferingVO.class.getSimpleName()).values()) {
+                tinvs.addAll(tags);
+            }
+            if (!tinvs.isEmpty()) {
                 List<HostVO> tmp = candidates;
                 for (DiskOfferingTagAllocatorExtensionPoint extp : diskOfferingExtensions) {
                     List<HostVO> ret = extp.allocateHost(tinvs, tmp, spec);
@@ -17,6 +17,10 @@ public class HostGlobalConfig {
     @GlobalConfigValidation(numberGreaterThan = 0)
     public static GlobalConfig HOST_LOAD_PARALLELISM_DEGREE = new GlobalConfig(CATEGORY, "load.parallelismDegree");
     @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig HOST_LOAD_RATE = new GlobalConfig(CATEGORY, "load.rate");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig HOST_LOAD_LATENCY_THRESHOLD = new GlobalConfig(CATEGORY, "load.latencyThreshold");
+    @GlobalConfigValidation(numberGreaterThan = 0)
     public static GlobalConfig HOST_TRACK_PARALLELISM_DEGREE = new GlobalConfig(CATEGORY, "ping.parallelismDegree");
     @GlobalConfigValidation(numberGreaterThan = 0)
     public static GlobalConfig PING_HOST_INTERVAL = new GlobalConfig(CATEGORY, "ping.interval");
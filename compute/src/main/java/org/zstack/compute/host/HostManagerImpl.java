@@ -7,6 +7,7 @@ import org.zstack.core.cloudbus.*;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.db.DbEntityLister;
+import org.zstack.core.db.ReadFromReplica;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.db.SimpleQuery.Op;
 import org.zstack.core.errorcode.ErrorFacade;
@@ -27,7 +28,6 @@ import org.zstack.header.managementnode.ManagementNodeReadyExtensionPoint;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.Message;
 import org.zstack.header.message.MessageReply;
-import org.zstack.header.message.NeedReplyMessage;
 import org.zstack.search.GetQuery;
 import org.zstack.search.SearchQuery;
 import org.zstack.tag.TagManager;
@@ -59,6 +59,8 @@ public class HostManagerImpl extends AbstractService implements HostManager, Man
     protected HostTracker tracker;
     @Autowired
     private TagManager tagMgr;
+    @Autowired
+    private HostReconnectScheduler reconnectScheduler;
 
     private Map<String, HypervisorFactory> hypervisorFactories = Collections.synchronizedMap(new HashMap<String, HypervisorFactory>());
     private Map<String, HostMessageHandlerExtensionPoint> msgHandlers = Collections.synchronizedMap(new HashMap<String, HostMessageHandlerExtensionPoint>());
@@ -377,6 +379,7 @@ public class HostManagerImpl extends AbstractService implements HostManager, Man
     public void iAmDead(String nodeId) {
     }
 
+    @ReadFromReplica
     private Bucket getHostManagedByUs() {
         int qun = 10000;
         long amount = dbf.count(HostVO.class);
@@ -428,27 +431,7 @@ public class HostManagerImpl extends AbstractService implements HostManager, Man
             return;
         }
 
-        String serviceId = bus.makeLocalServiceId(HostConstant.SERVICE_ID);
-        final List<ConnectHostMsg> msgs = new ArrayList<ConnectHostMsg>(hostsToLoad.size());
-        for (String uuid : hostsToLoad) {
-            ConnectHostMsg connectMsg = new ConnectHostMsg(uuid);
-            connectMsg.setNewAdd(false);
-            connectMsg.setServiceId(serviceId);
-            connectMsg.setStartPingTaskOnFailure(true);
-            msgs.add(connectMsg);
-        }
-
-        bus.send(msgs, HostGlobalConfig.HOST_LOAD_PARALLELISM_DEGREE.value(Integer.class), new CloudBusSteppingCallback() {
-            @Override
-            public void run(NeedReplyMessage msg, MessageReply reply) {
-                ConnectHostMsg cmsg = (ConnectHostMsg) msg;
-                if (!reply.isSuccess()) {
-                    logger.warn(String.format("failed to load host[uuid:%s], %s", cmsg.getHostUuid(), reply.getError()));
-                } else {
-                    logger.debug(String.format("host[uuid:%s] load successfully", cmsg.getHostUuid()));
-                }
-            }
-        });
+        reconnectScheduler.reconnect(hostsToLoad);
     }
 
     @Override
@@ -0,0 +1,277 @@
+package org.zstack.compute.host;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusCallBack;
+import org.zstack.core.cloudbus.ResourceDestinationMaker;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.ReadFromReplica;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.header.host.ConnectHostMsg;
+import org.zstack.header.host.HostConstant;
+import org.zstack.header.host.HostVO;
+import org.zstack.header.message.MessageReply;
+import org.zstack.header.vm.VmInstanceState;
+import org.zstack.tag.TagManager;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * connects hosts when the management node boots up or takes over hosts of a dead management node.
+ *
+ * hosts are connected in the order of the number of running VMs on them, at the rate of 'load.rate' hosts per
+ * second. The number of hosts in connecting starts from a tenth of 'load.parallelismDegree', grows by one
+ * every time a host is connected in 'load.latencyThreshold', and is halved when connecting becomes slow or
+ * most of connects fail, so a storm of reconnects doesn't saturate SSH, agents and the database
+ */
+public class HostReconnectScheduler implements Component, HostReconnectSchedulerMXBean {
+    private static final CLogger logger = Utils.getLogger(HostReconnectScheduler.class);
+
+    @Autowired
+    private CloudBus bus;
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private ResourceDestinationMaker destMaker;
+    @Autowired
+    private ThreadFacade thdf;
+    @Autowired
+    private JmxFacade jmxf;
+    @Autowired
+    private TagManager tagMgr;
+
+    private final PriorityQueue<Request> queue = new PriorityQueue<Request>();
+    private final Set<String> pending = new HashSet<String>();
+    private long seq;
+    private int inFlight;
+    private double limit = -1;
+    private double tokens = -1;
+    private long lastRefill;
+    private boolean timerScheduled;
+    private long lastDecrease;
+    private double averageLatency;
+    private double failureRate;
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private class Request implements Comparable<Request> {
+        String hostUuid;
+        long runningVmNum;
+        long order = seq++;
+
+        @Override
+        public int compareTo(Request o) {
+            if (runningVmNum != o.runningVmNum) {
+                return runningVmNum > o.runningVmNum ? -1 : 1;
+            }
+
+            return order < o.order ? -1 : (order == o.order ? 0 : 1);
+        }
+    }
+
+    @ReadFromReplica
+    @Transactional(readOnly = true)
+    private Map<String, Long> countRunningVms(List<String> hostUuids) {
+        Map<String, Long> ret = new HashMap<String, Long>();
+        int step = 1000;
+        for (int i = 0; i < hostUuids.size(); i += step) {
+            String sql = "select vm.hostUuid, count(vm) from VmInstanceVO vm where vm.hostUuid in (:huuids) and vm.state = :state group by vm.hostUuid";
+            TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+            q.setParameter("huuids", hostUuids.subList(i, Math.min(i + step, hostUuids.size())));
+            q.setParameter("state", VmInstanceState.Running);
+            for (Tuple t : q.getResultList()) {
+                ret.put(t.get(0, String.class), t.get(1, Long.class));
+            }
+        }
+        return ret;
+    }
+
+    public void reconnect(List<String> hostUuids) {
+        Map<String, Long> vmNums = countRunningVms(hostUuids);
+        // connecting a host checks its system tags several times, load tags of all hosts into the cache in batches
+        tagMgr.getSystemTags(hostUuids, HostVO.class.getSimpleName());
+        synchronized (this) {
+            for (String huuid : hostUuids) {
+                if (!pending.add(huuid)) {
+                    continue;
+                }
+
+                Request r = new Request();
+                r.hostUuid = huuid;
+                Long num = vmNums.get(huuid);
+                r.runningVmNum = num == null ? 0 : num;
+                queue.add(r);
+            }
+        }
+
+        logger.debug(String.format("[Host Reconnect]: %s hosts are queued to connect, %s are in connecting", getQueued(), getInFlight()));
+        dispatch();
+    }
+
+    private int maxLimit() {
+        return HostGlobalConfig.HOST_LOAD_PARALLELISM_DEGREE.value(Integer.class);
+    }
+
+    private void refill() {
+        int rate = HostGlobalConfig.HOST_LOAD_RATE.value(Integer.class);
+        long now = System.currentTimeMillis();
+        if (tokens < 0) {
+            tokens = rate;
+        } else {
+            tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1000.0);
+        }
+        lastRefill = now;
+    }
+
+    private void dispatch() {
+        List<String> toConnect = new ArrayList<String>();
+        long wait = 0;
+        synchronized (this) {
+            if (limit < 0) {
+                limit = Math.max(1, maxLimit() / 10);
+            }
+
+            refill();
+            while (!queue.isEmpty() && inFlight < Math.min((int) limit, maxLimit())) {
+                if (tokens < 1) {
+                    wait = (long) Math.ceil((1 - tokens) * 1000 / HostGlobalConfig.HOST_LOAD_RATE.value(Integer.class));
+                    break;
+                }
+
+                Request r = queue.poll();
+                if (!destMaker.isManagedByUs(r.hostUuid)) {
+                    // the host has been taken over by another management node since queued
+                    pending.remove(r.hostUuid);
+                    continue;
+                }
+
+                tokens -= 1;
+                inFlight++;
+                toConnect.add(r.hostUuid);
+            }
+
+            if (wait > 0 && !timerScheduled) {
+                timerScheduled = true;
+            } else {
+                wait = 0;
+            }
+        }
+
+        if (wait > 0) {
+            thdf.submitTimeoutTask(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (HostReconnectScheduler.this) {
+                        timerScheduled = false;
+                    }
+                    dispatch();
+                }
+            }, TimeUnit.MILLISECONDS, wait);
+        }
+
+        for (String huuid : toConnect) {
+            connect(huuid);
+        }
+    }
+
+    private void connect(final String hostUuid) {
+        ConnectHostMsg msg = new ConnectHostMsg(hostUuid);
+        msg.setNewAdd(false);
+        msg.setStartPingTaskOnFailure(true);
+        msg.setSkipDeployIfAgentCurrent(true);
+        msg.setServiceId(bus.makeLocalServiceId(HostConstant.SERVICE_ID));
+        final long start = System.currentTimeMillis();
+        bus.send(msg, new CloudBusCallBack() {
+            @Override
+            public void run(MessageReply reply) {
+                if (!reply.isSuccess()) {
+                    logger.warn(String.format("failed to load host[uuid:%s], %s", hostUuid, reply.getError()));
+                } else {
+                    logger.debug(String.format("host[uuid:%s] load successfully", hostUuid));
+                }
+
+                done(hostUuid, System.currentTimeMillis() - start, reply.isSuccess());
+                dispatch();
+            }
+        });
+    }
+
+    private synchronized void done(String hostUuid, long latency, boolean success) {
+        inFlight--;
+        pending.remove(hostUuid);
+        (success ? succeeded : failed).incrementAndGet();
+
+        averageLatency = averageLatency == 0 ? latency : averageLatency * 0.8 + latency * 0.2;
+        failureRate = failureRate * 0.8 + (success ? 0 : 0.2);
+
+        long now = System.currentTimeMillis();
+        boolean slow = latency > TimeUnit.SECONDS.toMillis(HostGlobalConfig.HOST_LOAD_LATENCY_THRESHOLD.value(Integer.class));
+        if (slow || (!success && failureRate > 0.5)) {
+            // hosts in connecting when the limit is halved report the same congestion, react once for them
+            if (now - lastDecrease > averageLatency) {
+                limit = Math.max(1, limit / 2);
+                lastDecrease = now;
+                logger.debug(String.format("[Host Reconnect]: connecting hosts becomes %s, lower the parallelism to %s",
+                        slow ? String.format("slow[%sms]", latency) : "failing", (int) limit));
+            }
+        } else if (success) {
+            limit = Math.min(maxLimit(), limit + 1);
+        }
+
+        if (queue.isEmpty() && inFlight == 0) {
+            logger.debug(String.format("[Host Reconnect]: all queued hosts are connected, %s succeeded, %s failed in total",
+                    succeeded.get(), failed.get()));
+        }
+    }
+
+    @Override
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public synchronized int getParallelism() {
+        return (int) limit;
+    }
+
+    @Override
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public synchronized long getAverageLatency() {
+        return (long) averageLatency;
+    }
+
+    @Override
+    public boolean start() {
+        jmxf.registerBean("HostReconnectScheduler", this);
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package org.zstack.compute.host;
+
+/**
+ */
+public interface HostReconnectSchedulerMXBean {
+    int getQueued();
+
+    int getInFlight();
+
+    int getParallelism();
+
+    long getSucceeded();
+
+    long getFailed();
+
+    long getAverageLatency();
+}
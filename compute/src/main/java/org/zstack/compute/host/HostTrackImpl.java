@@ -1,6 +1,7 @@
 package org.zstack.compute.host;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
 import org.zstack.core.Platform;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.CloudBusCallBack;
@@ -9,6 +10,7 @@ import org.zstack.core.cloudbus.ResourceDestinationMaker;
 import org.zstack.core.config.GlobalConfig;
 import org.zstack.core.config.GlobalConfigUpdateExtensionPoint;
 import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.ReadFromReplica;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.thread.PeriodicTask;
 import org.zstack.core.thread.ThreadFacade;
@@ -18,8 +20,11 @@ import org.zstack.header.managementnode.ManagementNodeChangeListener;
 import org.zstack.header.message.MessageReply;
 import org.zstack.header.message.NeedReplyMessage;
 import org.zstack.utils.Utils;
+import org.zstack.utils.hash.ConsistentHashRing;
 import org.zstack.utils.logging.CLogger;
 
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import java.util.*;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -176,38 +181,156 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
         }
     }
 
+    @ReadFromReplica
+    private List<String> findHosts() {
+        List<String> ret = new ArrayList<String>();
+        long count = dbf.count(HostVO.class);
+        int times = (int)count / 10000 + (count%10000 == 0 ? 0 : 1);
+        int offset = 0;
+        for (int i=0; i<times; i++) {
+            SimpleQuery<HostVO> q = dbf.createQuery(HostVO.class);
+            q.select(HostVO_.uuid);
+            q.setStart(offset);
+            q.setLimit(10000);
+            List<String> huuids = q.listValue();
+            for (String h : huuids) {
+                if (destMaker.isManagedByUs(h)) {
+                    ret.add(h);
+                }
+            }
+
+            offset += 10000;
+        }
+
+        return ret;
+    }
+
+    /**
+     * queries hosts by HostVO.uuidHash in the hash ranges moved to us instead of checking every host; hosts whose
+     * uuidHash is null are created by management nodes not upgraded yet, they are checked one by one
+     */
+    @ReadFromReplica
+    @Transactional(readOnly = true)
+    private List<String> findHosts(ConsistentHashRing.Change<String> movedToUs) {
+        String myId = Platform.getManagementServerId();
+        List<ConsistentHashRing.Range<String>> ranges = new ArrayList<ConsistentHashRing.Range<String>>();
+        for (ConsistentHashRing.Range<String> r : movedToUs.getRanges()) {
+            if (!myId.equals(r.getTo())) {
+                continue;
+            }
+
+            if (r.getStart() == r.getEnd()) {
+                // the whole ring moved to us
+                return findHosts();
+            }
+
+            ranges.add(r);
+        }
+
+        Set<String> ret = new HashSet<String>();
+        for (int i = 0; i < ranges.size(); i += 100) {
+            List<ConsistentHashRing.Range<String>> sub = ranges.subList(i, Math.min(i + 100, ranges.size()));
+            StringBuilder sql = new StringBuilder("select h.uuid from HostVO h where");
+            for (int j = 0; j < sub.size(); j++) {
+                ConsistentHashRing.Range<String> r = sub.get(j);
+                sql.append(j == 0 ? " " : " or ");
+                sql.append(String.format(r.getStart() < r.getEnd() ? "(h.uuidHash > :s%s and h.uuidHash <= :e%s)" :
+                        "(h.uuidHash > :s%s or h.uuidHash <= :e%s)", j, j));
+            }
+
+            TypedQuery<String> q = dbf.getEntityManager().createQuery(sql.toString(), String.class);
+            for (int j = 0; j < sub.size(); j++) {
+                q.setParameter("s" + j, sub.get(j).getStart());
+                q.setParameter("e" + j, sub.get(j).getEnd());
+            }
+            ret.addAll(q.getResultList());
+        }
+
+        String sql = "select h.uuid from HostVO h where h.uuidHash is null";
+        TypedQuery<String> q = dbf.getEntityManager().createQuery(sql, String.class);
+        for (String huuid : q.getResultList()) {
+            if (movedToUs.isMovedTo(huuid, myId)) {
+                ret.add(huuid);
+            }
+        }
+
+        return new ArrayList<String>(ret);
+    }
+
+    @Transactional
+    private void fillUuidHash() {
+        String sql = "select h.uuid from HostVO h where h.uuidHash is null";
+        TypedQuery<String> q = dbf.getEntityManager().createQuery(sql, String.class);
+        List<String> huuids = q.getResultList();
+        if (huuids.isEmpty()) {
+            return;
+        }
+
+        sql = "update HostVO h set h.uuidHash = :hash where h.uuid = :uuid";
+        for (String huuid : huuids) {
+            Query uq = dbf.getEntityManager().createQuery(sql);
+            uq.setParameter("hash", HostAO.hashUuid(huuid));
+            uq.setParameter("uuid", huuid);
+            uq.executeUpdate();
+        }
+
+        logger.debug(String.format("filled the uuid hash of %s hosts created before it's introduced", huuids.size()));
+    }
+
     private void reScanHost() {
         synchronized (hostUuids) {
             hostUuids.clear();
+            hostUuids.addAll(findHosts());
+        }
+    }
 
-            long count = dbf.count(HostVO.class);
-            int times = (int)count / 10000 + (count%10000 == 0 ? 0 : 1);
-            int offset = 0;
-            for (int i=0; i<times; i++) {
-                SimpleQuery<HostVO> q = dbf.createQuery(HostVO.class);
-                q.select(HostVO_.uuid);
-                q.setStart(offset);
-                q.setLimit(10000);
-                List<String> huuids = q.listValue();
-                for (String h : huuids) {
-                    if (destMaker.isManagedByUs(h)) {
-                        hostUuids.add(h);
-                    }
+    private void rebalance(String nodeId) {
+        ConsistentHashRing.Change<String> change = destMaker.getOwnershipChange(nodeId);
+        if (change == null) {
+            reScanHost();
+            return;
+        }
+
+        String myId = Platform.getManagementServerId();
+        boolean movedToUs = false;
+        for (ConsistentHashRing.Range<String> r : change.getRanges()) {
+            if (myId.equals(r.getTo())) {
+                movedToUs = true;
+                break;
+            }
+        }
+
+        // only hosts in the moved hash ranges change owner, other hosts stay as they are
+        synchronized (hostUuids) {
+            Iterator<String> it = hostUuids.iterator();
+            while (it.hasNext()) {
+                String huuid = it.next();
+                if (change.isMovedFrom(huuid, myId)) {
+                    it.remove();
+                    logger.debug(String.format("stop tracking host[uuid:%s], it's taken over by another management node", huuid));
                 }
+            }
 
-                offset += 10000;
+            if (movedToUs) {
+                Set<String> tracked = new HashSet<String>(hostUuids);
+                for (String huuid : findHosts(change)) {
+                    if (!tracked.contains(huuid)) {
+                        hostUuids.add(huuid);
+                        logger.debug(String.format("start tracking host[uuid:%s], it's taken over from management node[uuid:%s]", huuid, nodeId));
+                    }
+                }
             }
         }
     }
 
     @Override
     public void nodeJoin(String nodeId) {
-        reScanHost();
+        rebalance(nodeId);
     }
 
     @Override
     public void nodeLeft(String nodeId) {
-        reScanHost();
+        rebalance(nodeId);
     }
 
     @Override
@@ -243,6 +366,7 @@ public class HostTrackImpl implements HostTracker, ManagementNodeChangeListener,
 
     @Override
     public boolean start() {
+        fillUuidHash();
         setupTracker();
         return true;
     }
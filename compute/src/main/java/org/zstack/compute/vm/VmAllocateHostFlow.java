@@ -12,7 +12,6 @@ import org.zstack.header.core.workflow.FlowRollback;
 import org.zstack.header.core.workflow.FlowTrigger;
 import org.zstack.header.allocator.*;
 import org.zstack.header.configuration.DiskOfferingInventory;
-import org.zstack.header.configuration.DiskOfferingVO;
 import org.zstack.header.host.HostInventory;
 import org.zstack.header.image.ImageConstant.ImageMediaType;
 import org.zstack.header.image.ImageInventory;
@@ -54,9 +53,9 @@ public class VmAllocateHostFlow implements Flow {
         ImageInventory image = spec.getImageSpec().getInventory();
         long diskSize;
         if (image.getMediaType().equals(ImageMediaType.ISO.toString())) {
-            DiskOfferingVO dvo = dbf.findByUuid(spec.getRootDiskOffering().getUuid(), DiskOfferingVO.class);
-            diskSize = dvo.getDiskSize();
-            diskOfferings.add(DiskOfferingInventory.valueOf(dvo));
+            // the root disk offering has been loaded when building the spec
+            diskSize = spec.getRootDiskOffering().getDiskSize();
+            diskOfferings.add(spec.getRootDiskOffering());
         } else {
             diskSize = image.getSize();
         }
@@ -95,9 +94,24 @@ public class VmAllocateHostFlow implements Flow {
         return msg;
     }
 
+    private void updateVmHostUuid(VmInstanceSpec spec) {
+        // update the vm's host uuid so even if the management node died later and the vm's state
+        // is stuck in Starting, we know which host it's created on and can check its state on the host
+        VmInstanceVO vmvo = dbf.findByUuid(spec.getVmInventory().getUuid(), VmInstanceVO.class);
+        vmvo.setHostUuid(spec.getDestHost().getUuid());
+        dbf.update(vmvo);
+    }
+
     @Override
     public void run(final FlowTrigger chain, Map data) {
         final VmInstanceSpec spec = (VmInstanceSpec) data.get(VmInstanceConstant.Params.VmInstanceSpec.toString());
+        if (spec.getDestHost() != null) {
+            // the host has been allocated by the batch creation
+            updateVmHostUuid(spec);
+            chain.next();
+            return;
+        }
+
         AllocateHostMsg msg = this.prepareMsg(data);
         bus.send(msg, new CloudBusCallBack(chain) {
             @Override
@@ -105,13 +119,7 @@ public class VmAllocateHostFlow implements Flow {
                 if (reply.isSuccess()) {
                     AllocateHostReply areply = (AllocateHostReply) reply;
                     spec.setDestHost(areply.getHost());
-
-                    // update the vm's host uuid so even if the management node died later and the vm's state
-                    // is stuck in Starting, we know which host it's created on and can check its state on the host
-                    VmInstanceVO vmvo = dbf.findByUuid(spec.getVmInventory().getUuid(), VmInstanceVO.class);
-                    vmvo.setHostUuid(spec.getDestHost().getUuid());
-                    dbf.update(vmvo);
-
+                    updateVmHostUuid(spec);
                     chain.next();
                 } else {
                     chain.fail(reply.getError());
@@ -14,6 +14,7 @@ import org.zstack.header.core.workflow.Flow;
 import org.zstack.header.core.workflow.FlowException;
 import org.zstack.header.core.workflow.FlowRollback;
 import org.zstack.header.core.workflow.FlowTrigger;
+import org.zstack.header.core.workflow.IndependentFlow;
 import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.message.MessageReply;
 import org.zstack.header.network.l3.*;
@@ -29,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 
 @Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+@IndependentFlow
 public class VmAllocateNicFlow implements Flow {
     private static final CLogger logger = Utils.getLogger(VmAllocateNicFlow.class);
     @Autowired
@@ -85,10 +87,10 @@ public class VmAllocateNicFlow implements Flow {
     public void run(final FlowTrigger trigger, final Map data) {
         final VmInstanceSpec spec = (VmInstanceSpec) data.get(VmInstanceConstant.Params.VmInstanceSpec.toString());
         List<AllocateIpMsg> msgs = new ArrayList<AllocateIpMsg>();
+        List<Map<String, String>> tokenList = VmSystemTags.STATIC_IP.getTokensOfTagsByResourceUuid(spec.getVmInventory().getUuid());
         for (final L3NetworkInventory nw : spec.getL3Networks()) {
             AllocateIpMsg msg = new AllocateIpMsg();
 
-            List<Map<String, String>> tokenList = VmSystemTags.STATIC_IP.getTokensOfTagsByResourceUuid(spec.getVmInventory().getUuid());
             for (Map<String, String> tokens : tokenList) {
                 String l3Uuid = tokens.get(VmSystemTags.STATIC_IP_L3_UUID_TOKEN);
                 if (l3Uuid.equals(nw.getUuid())) {
@@ -140,7 +142,8 @@ public class VmAllocateNicFlow implements Flow {
                 } else {
                     persistNicToDb(spec.getDestNics());
 
-                    String acntUuid = acntMgr.getOwnerAccountUuidOfResource(spec.getVmInventory().getUuid());
+                    String acntUuid = spec.getAccountUuid() != null ? spec.getAccountUuid() :
+                            acntMgr.getOwnerAccountUuidOfResource(spec.getVmInventory().getUuid());
                     for (VmNicInventory nic : spec.getDestNics()) {
                         acntMgr.createAccountResourceRef(acntUuid, nic.getUuid(), VmNicVO.class);
                     }
@@ -10,6 +10,7 @@ import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.header.core.workflow.Flow;
 import org.zstack.header.core.workflow.FlowRollback;
 import org.zstack.header.core.workflow.FlowTrigger;
+import org.zstack.header.core.workflow.IndependentFlow;
 import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.image.ImageConstant.ImageMediaType;
@@ -27,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 
 @Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+@IndependentFlow
 public class VmAllocateVolumeFlow implements Flow {
     @Autowired
     protected DatabaseFacade dbf;
@@ -40,7 +42,8 @@ public class VmAllocateVolumeFlow implements Flow {
     private List<CreateVolumeMsg> prepareMsg(Map<String, Object> ctx) {
         VmInstanceSpec spec = (VmInstanceSpec) ctx.get(VmInstanceConstant.Params.VmInstanceSpec.toString());
 
-        String accountUuid = acntMgr.getOwnerAccountUuidOfResource(spec.getVmInventory().getUuid());
+        String accountUuid = spec.getAccountUuid() != null ? spec.getAccountUuid() :
+                acntMgr.getOwnerAccountUuidOfResource(spec.getVmInventory().getUuid());
         if (accountUuid == null) {
             throw new CloudRuntimeException(String.format("accountUuid for vm[uuid:%s] is null", spec.getVmInventory().getUuid()));
         }
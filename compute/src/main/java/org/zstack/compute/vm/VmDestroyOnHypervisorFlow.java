@@ -85,6 +85,7 @@ public class VmDestroyOnHypervisorFlow extends NoRollbackFlow {
                 ctx.setRunnerClass(GCDeleteVmRunner.class);
                 ctx.setContextClass(GCDeleteVmContext.class);
                 ctx.setName(String.format("delete-vm-%s", spec.getVmInventory().getUuid()));
+                ctx.setResourceUuid(hostUuid);
                 ctx.setContext(c);
 
                 GCEventTrigger trigger = new GCEventTrigger();
@@ -19,4 +19,6 @@ public class VmGlobalConfig {
     public static GlobalConfig VM_EXPUNGE_PERIOD = new GlobalConfig(CATEGORY, "expungePeriod");
     @GlobalConfigValidation(numberGreaterThan = 0)
     public static GlobalConfig VM_EXPUNGE_INTERVAL = new GlobalConfig(CATEGORY, "expungeInterval");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig BATCH_CREATE_PARALLELISM_DEGREE = new GlobalConfig(CATEGORY, "batchCreate.parallelismDegree");
 }
@@ -62,6 +62,8 @@ public class VmInstanceApiInterceptor implements ApiMessageInterceptor {
     public APIMessage intercept(APIMessage msg) throws ApiMessageInterceptionException {
         if (msg instanceof APIDestroyVmInstanceMsg) {
             validate((APIDestroyVmInstanceMsg) msg);
+        } else if (msg instanceof APIBatchCreateVmInstanceMsg) {
+            validate((APIBatchCreateVmInstanceMsg) msg);
         } else if (msg instanceof APICreateVmInstanceMsg) {
             validate((APICreateVmInstanceMsg)msg);
         } else if (msg instanceof APIGetVmAttachableDataVolumeMsg) {
@@ -223,6 +225,32 @@ public class VmInstanceApiInterceptor implements ApiMessageInterceptor {
         }
     }
 
+    private void validate(APIBatchCreateVmInstanceMsg msg) {
+        if (msg.getType() != null && !VmInstanceConstant.USER_VM_TYPE.equals(msg.getType())) {
+            throw new ApiMessageInterceptionException(errf.stringToInvalidArgumentError(
+                    String.format("only vm of type %s can be created in batch, but %s got", VmInstanceConstant.USER_VM_TYPE, msg.getType())
+            ));
+        }
+
+        if (msg.getResourceUuid() != null) {
+            throw new ApiMessageInterceptionException(errf.stringToInvalidArgumentError(
+                    "resourceUuid cannot be specified when creating vms in batch"
+            ));
+        }
+
+        if (msg.getSystemTags() != null) {
+            for (String sysTag : msg.getSystemTags()) {
+                if (VmSystemTags.HOSTNAME.isMatch(sysTag) || VmSystemTags.STATIC_IP.isMatch(sysTag)) {
+                    throw new ApiMessageInterceptionException(errf.stringToInvalidArgumentError(
+                            String.format("system tag[%s] cannot be applied to all vms created in batch", sysTag)
+                    ));
+                }
+            }
+        }
+
+        validate((APICreateVmInstanceMsg) msg);
+    }
+
     private void validate(APICreateVmInstanceMsg msg) {
         SimpleQuery<InstanceOfferingVO> iq = dbf.createQuery(InstanceOfferingVO.class);
         iq.select(InstanceOfferingVO_.state);
@@ -19,6 +19,7 @@ import org.zstack.header.allocator.AllocateHostDryRunReply;
 import org.zstack.header.allocator.DesignatedAllocateHostMsg;
 import org.zstack.header.allocator.HostAllocatorConstant;
 import org.zstack.header.allocator.HostAllocatorError;
+import org.zstack.header.allocator.ReturnHostCapacityMsg;
 import org.zstack.header.configuration.*;
 import org.zstack.header.core.Completion;
 import org.zstack.header.core.NoErrorCompletion;
@@ -1646,6 +1647,7 @@ public class VmInstanceBase extends AbstractVmInstance {
             final VmInstanceSpec spec = new VmInstanceSpec();
             spec.setMessage(msg);
             spec.setVmInventory(msg.getVmInstanceInventory());
+            spec.setAccountUuid(acntMgr.getOwnerAccountUuidOfResource(self.getUuid()));
             if (msg.getL3NetworkUuids() != null && !msg.getL3NetworkUuids().isEmpty()) {
                 SimpleQuery<L3NetworkVO> nwquery = dbf.createQuery(L3NetworkVO.class);
                 nwquery.add(L3NetworkVO_.uuid, Op.IN, msg.getL3NetworkUuids());
@@ -1710,6 +1712,8 @@ public class VmInstanceBase extends AbstractVmInstance {
             if (self.getZoneUuid() != null || self.getClusterUuid() != null || self.getHostUuid() != null) {
                 spec.setHostAllocatorStrategy(HostAllocatorConstant.DESIGNATED_HOST_ALLOCATOR_STRATEGY_TYPE);
             }
+            // the capacity has been reserved on the host, VmAllocateHostFlow returns it if the creation fails
+            spec.setDestHost(msg.getAllocatedHost());
             buildHostname(spec);
 
             spec.setUserdata(buildUserdata());
@@ -1761,11 +1765,25 @@ public class VmInstanceBase extends AbstractVmInstance {
             callNext = false;
         } finally {
             if (callNext) {
+                returnAllocatedHostCapacity(msg);
                 taskChain.next();
             }
         }
     }
 
+    private void returnAllocatedHostCapacity(StartNewCreatedVmInstanceMsg msg) {
+        if (msg.getAllocatedHost() == null) {
+            return;
+        }
+
+        ReturnHostCapacityMsg rmsg = new ReturnHostCapacityMsg();
+        rmsg.setCpuCapacity(msg.getVmInstanceInventory().getCpuNum() * msg.getVmInstanceInventory().getCpuSpeed());
+        rmsg.setMemoryCapacity(msg.getVmInstanceInventory().getMemorySize());
+        rmsg.setHostUuid(msg.getAllocatedHost().getUuid());
+        rmsg.setServiceId(bus.makeLocalServiceId(HostAllocatorConstant.SERVICE_ID));
+        bus.send(rmsg);
+    }
+
     protected void handle(final StartNewCreatedVmInstanceMsg msg) {
         thdf.chainSubmit(new ChainTask(msg) {
             @Override
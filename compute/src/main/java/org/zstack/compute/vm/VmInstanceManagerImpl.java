@@ -20,6 +20,11 @@ import org.zstack.core.thread.ThreadFacade;
 import org.zstack.core.workflow.FlowChainBuilder;
 import org.zstack.header.AbstractService;
 import org.zstack.header.apimediator.ApiMessageInterceptionException;
+import org.zstack.header.allocator.BatchAllocateHostMsg;
+import org.zstack.header.allocator.BatchAllocateHostReply;
+import org.zstack.header.allocator.HostAllocatorConstant;
+import org.zstack.header.configuration.DiskOfferingInventory;
+import org.zstack.header.configuration.DiskOfferingVO;
 import org.zstack.header.configuration.InstanceOfferingVO;
 import org.zstack.header.core.workflow.FlowChain;
 import org.zstack.header.errorcode.OperationFailureException;
@@ -28,6 +33,7 @@ import org.zstack.header.exception.CloudConfigureFailException;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.host.HostCanonicalEvents;
 import org.zstack.header.host.HostCanonicalEvents.HostStatusChangedData;
+import org.zstack.header.host.HostInventory;
 import org.zstack.header.host.HostStatus;
 import org.zstack.header.identity.IdentityErrors;
 import org.zstack.header.identity.Quota;
@@ -35,6 +41,7 @@ import org.zstack.header.identity.Quota.QuotaOperator;
 import org.zstack.header.identity.Quota.QuotaPair;
 import org.zstack.header.identity.ReportQuotaExtensionPoint;
 import org.zstack.header.image.ImageConstant.ImageMediaType;
+import org.zstack.header.image.ImageInventory;
 import org.zstack.header.image.ImagePlatform;
 import org.zstack.header.image.ImageVO;
 import org.zstack.header.image.ImageVO_;
@@ -49,6 +56,7 @@ import org.zstack.header.tag.SystemTagCreateMessageValidator;
 import org.zstack.header.tag.SystemTagVO;
 import org.zstack.header.tag.SystemTagValidator;
 import org.zstack.header.vm.*;
+import org.zstack.header.vm.VmInstanceConstant.VmOperation;
 import org.zstack.header.vm.VmInstanceDeletionPolicyManager.VmInstanceDeletionPolicy;
 import org.zstack.header.volume.VolumeConstant;
 import org.zstack.header.volume.VolumeType;
@@ -72,6 +80,7 @@ import java.sql.Timestamp;
 import java.util.*;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.zstack.utils.CollectionDSL.*;
 
@@ -168,7 +177,9 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
     }
 
     private void handleApiMessage(APIMessage msg) {
-        if (msg instanceof APICreateVmInstanceMsg) {
+        if (msg instanceof APIBatchCreateVmInstanceMsg) {
+            handle((APIBatchCreateVmInstanceMsg) msg);
+        } else if (msg instanceof APICreateVmInstanceMsg) {
             handle((APICreateVmInstanceMsg) msg);
         } else if (msg instanceof APIListVmInstanceMsg) {
             handle((APIListVmInstanceMsg)msg);
@@ -290,6 +301,194 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
         });
     }
 
+    @Transactional
+    private void persistVmsInBatch(List<VmInstanceVO> vos, String accountUuid) {
+        for (VmInstanceVO vo : vos) {
+            dbf.getEntityManager().persist(vo);
+            acntMgr.createAccountResourceRef(accountUuid, vo.getUuid(), VmInstanceVO.class);
+        }
+    }
+
+    private List<VmInstanceVO> createVmsInBatch(APIBatchCreateVmInstanceMsg msg, InstanceOfferingVO iovo, ImageVO image) {
+        List<VmInstanceVO> vos = new ArrayList<VmInstanceVO>(msg.getCount());
+        for (int i = 0; i < msg.getCount(); i++) {
+            VmInstanceVO vo = new VmInstanceVO();
+            vo.setUuid(Platform.getUuid());
+            vo.setName(String.format("%s-%s", msg.getName(), i));
+            vo.setClusterUuid(msg.getClusterUuid());
+            vo.setDescription(msg.getDescription());
+            vo.setHostUuid(msg.getHostUuid());
+            vo.setImageUuid(msg.getImageUuid());
+            vo.setInstanceOfferingUuid(msg.getInstanceOfferingUuid());
+            vo.setState(VmInstanceState.Created);
+            vo.setZoneUuid(msg.getZoneUuid());
+            vo.setInternalId(dbf.generateSequenceNumber(VmInstanceSequenceNumberVO.class));
+            vo.setDefaultL3NetworkUuid(msg.getDefaultL3NetworkUuid());
+            vo.setPlatform(image.getPlatform().toString());
+            vo.setCpuNum(iovo.getCpuNum());
+            vo.setCpuSpeed(iovo.getCpuSpeed());
+            vo.setMemorySize(iovo.getMemorySize());
+            vo.setAllocatorStrategy(iovo.getAllocatorStrategy());
+            vo.setType(VmInstanceConstant.USER_VM_TYPE);
+            vos.add(vo);
+        }
+
+        persistVmsInBatch(vos, msg.getSession().getAccountUuid());
+
+        List<String> uuids = CollectionUtils.transformToList(vos, new Function<String, VmInstanceVO>() {
+            @Override
+            public String call(VmInstanceVO arg) {
+                return arg.getUuid();
+            }
+        });
+        Map<String, VmInstanceVO> persisted = new HashMap<String, VmInstanceVO>();
+        for (VmInstanceVO vo : dbf.listByPrimaryKeys(uuids, VmInstanceVO.class)) {
+            persisted.put(vo.getUuid(), vo);
+        }
+
+        List<VmInstanceVO> ret = new ArrayList<VmInstanceVO>(vos.size());
+        for (String uuid : uuids) {
+            ret.add(persisted.get(uuid));
+            tagMgr.createTagsFromAPICreateMessage(msg, uuid, VmInstanceVO.class.getSimpleName());
+            tagMgr.copySystemTag(iovo.getUuid(), InstanceOfferingVO.class.getSimpleName(), uuid, VmInstanceVO.class.getSimpleName());
+        }
+
+        return ret;
+    }
+
+    private BatchAllocateHostMsg prepareBatchAllocateHostMsg(APIBatchCreateVmInstanceMsg msg, InstanceOfferingVO iovo,
+                                                             ImageVO image, VmInstanceInventory vm) {
+        List<String> diskOfferingUuids = new ArrayList<String>();
+        if (image.getMediaType() == ImageMediaType.ISO) {
+            diskOfferingUuids.add(msg.getRootDiskOfferingUuid());
+        }
+        if (msg.getDataDiskOfferingUuids() != null) {
+            diskOfferingUuids.addAll(msg.getDataDiskOfferingUuids());
+        }
+
+        List<DiskOfferingInventory> diskOfferings = new ArrayList<DiskOfferingInventory>();
+        long diskSize = image.getMediaType() == ImageMediaType.ISO ? 0 : image.getSize();
+        if (!diskOfferingUuids.isEmpty()) {
+            Map<String, DiskOfferingVO> dvos = new HashMap<String, DiskOfferingVO>();
+            for (DiskOfferingVO dvo : dbf.listByPrimaryKeys(diskOfferingUuids, DiskOfferingVO.class)) {
+                dvos.put(dvo.getUuid(), dvo);
+            }
+
+            // allow create multiple data volume from the same disk offering
+            for (String duuid : diskOfferingUuids) {
+                DiskOfferingVO dvo = dvos.get(duuid);
+                diskOfferings.add(DiskOfferingInventory.valueOf(dvo));
+                diskSize += dvo.getDiskSize();
+            }
+        }
+
+        BatchAllocateHostMsg amsg = new BatchAllocateHostMsg();
+        amsg.setVmNum(msg.getCount());
+        amsg.setDiskOfferings(diskOfferings);
+        amsg.setDiskSize(diskSize);
+        amsg.setCpuCapacity(iovo.getCpuNum() * iovo.getCpuSpeed());
+        amsg.setMemoryCapacity(iovo.getMemorySize());
+        amsg.setL3NetworkUuids(msg.getL3NetworkUuids());
+        amsg.setImage(ImageInventory.valueOf(image));
+        amsg.setVmOperation(VmOperation.NewCreate.toString());
+        amsg.setZoneUuid(msg.getZoneUuid());
+        amsg.setClusterUuid(msg.getClusterUuid());
+        amsg.setHostUuid(msg.getHostUuid());
+        if (msg.getZoneUuid() != null || msg.getClusterUuid() != null || msg.getHostUuid() != null) {
+            amsg.setAllocatorStrategy(HostAllocatorConstant.DESIGNATED_HOST_ALLOCATOR_STRATEGY_TYPE);
+        } else {
+            amsg.setAllocatorStrategy(iovo.getAllocatorStrategy());
+        }
+        amsg.setVmInstance(vm);
+        amsg.setServiceId(bus.makeLocalServiceId(HostAllocatorConstant.SERVICE_ID));
+        amsg.setTimeout(TimeUnit.MINUTES.toMillis(60));
+        return amsg;
+    }
+
+    private void handle(final APIBatchCreateVmInstanceMsg msg) {
+        final InstanceOfferingVO iovo = dbf.findByUuid(msg.getInstanceOfferingUuid(), InstanceOfferingVO.class);
+        final ImageVO image = dbf.findByUuid(msg.getImageUuid(), ImageVO.class);
+        final List<VmInstanceVO> vos = createVmsInBatch(msg, iovo, image);
+
+        BatchAllocateHostMsg amsg = prepareBatchAllocateHostMsg(msg, iovo, image, VmInstanceInventory.valueOf(vos.get(0)));
+        bus.send(amsg, new CloudBusCallBack(msg) {
+            @Override
+            public void run(MessageReply reply) {
+                List<HostInventory> hosts = null;
+                if (reply.isSuccess()) {
+                    hosts = ((BatchAllocateHostReply) reply).getHosts();
+                } else {
+                    // let each vm allocate the host by itself to report the allocation failure
+                    logger.debug(String.format("failed to allocate hosts for %s vms in batch, allocate host for each vm. %s",
+                            vos.size(), reply.getError()));
+                }
+
+                startVmsInBatch(msg, vos, hosts);
+            }
+        });
+    }
+
+    private void startVmsInBatch(final APIBatchCreateVmInstanceMsg msg, final List<VmInstanceVO> vos, final List<HostInventory> hosts) {
+        final APIBatchCreateVmInstanceEvent.Result[] results = new APIBatchCreateVmInstanceEvent.Result[vos.size()];
+        final AtomicInteger nextIndex = new AtomicInteger(0);
+        final AtomicInteger completed = new AtomicInteger(0);
+
+        class VmStarter {
+            void startNext() {
+                final int index = nextIndex.getAndIncrement();
+                if (index >= vos.size()) {
+                    return;
+                }
+
+                final VmInstanceVO vo = vos.get(index);
+                StartNewCreatedVmInstanceMsg smsg = new StartNewCreatedVmInstanceMsg();
+                smsg.setDataDiskOfferingUuids(msg.getDataDiskOfferingUuids());
+                smsg.setL3NetworkUuids(msg.getL3NetworkUuids());
+                smsg.setRootDiskOfferingUuid(msg.getRootDiskOfferingUuid());
+                smsg.setVmInstanceInventory(VmInstanceInventory.valueOf(vo));
+                smsg.setAllocatedHost(hosts == null ? null : hosts.get(index));
+                bus.makeTargetServiceIdByResourceUuid(smsg, VmInstanceConstant.SERVICE_ID, vo.getUuid());
+                bus.send(smsg, new CloudBusCallBack() {
+                    @Override
+                    public void run(MessageReply reply) {
+                        APIBatchCreateVmInstanceEvent.Result r = new APIBatchCreateVmInstanceEvent.Result();
+                        r.setIndex(index);
+                        r.setVmInstanceUuid(vo.getUuid());
+                        if (reply.isSuccess()) {
+                            r.setInventory(((StartNewCreatedVmInstanceReply) reply).getVmInventory());
+                        } else {
+                            r.setError(reply.getError());
+                        }
+                        results[index] = r;
+
+                        VmCanonicalEvents.BatchCreateResultData data = new VmCanonicalEvents.BatchCreateResultData();
+                        data.setApiId(msg.getId());
+                        data.setIndex(index);
+                        data.setTotal(vos.size());
+                        data.setVmUuid(vo.getUuid());
+                        data.setInventory(r.getInventory());
+                        data.setError(r.getError());
+                        evtf.fire(VmCanonicalEvents.VM_BATCH_CREATE_RESULT_PATH, data);
+
+                        if (completed.incrementAndGet() == vos.size()) {
+                            APIBatchCreateVmInstanceEvent evt = new APIBatchCreateVmInstanceEvent(msg.getId());
+                            evt.setResults(Arrays.asList(results));
+                            bus.publish(evt);
+                        } else {
+                            startNext();
+                        }
+                    }
+                });
+            }
+        }
+
+        VmStarter starter = new VmStarter();
+        int parallelism = Math.min(VmGlobalConfig.BATCH_CREATE_PARALLELISM_DEGREE.value(Integer.class), vos.size());
+        for (int i = 0; i < parallelism; i++) {
+            starter.startNext();
+        }
+    }
+
     @Override
     public String getId() {
         return bus.makeLocalServiceId(VmInstanceConstant.SERVICE_ID);
@@ -752,6 +951,7 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
 
             @Transactional(readOnly = true)
             private void check(APICreateVmInstanceMsg msg, Map<String, QuotaPair> pairs) {
+                int num = msg instanceof APIBatchCreateVmInstanceMsg ? ((APIBatchCreateVmInstanceMsg) msg).getCount() : 1;
                 long vmNum = pairs.get(VmInstanceConstant.QUOTA_VM_NUM).getValue();
                 long cpuNum = pairs.get(VmInstanceConstant.QUOTA_CPU_NUM).getValue();
                 long memory = pairs.get(VmInstanceConstant.QUOTA_VM_MEMORY).getValue();
@@ -760,7 +960,7 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
 
                 VmQuota vmQuota = getUsedVmCpuMemory(msg.getSession().getAccountUuid());
 
-                if (vmQuota.vmNum + 1 > vmNum) {
+                if (vmQuota.vmNum + num > vmNum) {
                     throw new ApiMessageInterceptionException(errf.instantiateErrorCode(IdentityErrors.QUOTA_EXCEEDING,
                             String.format("quota exceeding. The account[uuid: %s] exceeds a quota[name: %s, value: %s]",
                                     msg.getSession().getAccountUuid(), VmInstanceConstant.QUOTA_VM_NUM, vmNum)
@@ -771,8 +971,8 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
                 TypedQuery<Tuple> iq = dbf.getEntityManager().createQuery(sql, Tuple.class);
                 iq.setParameter("uuid", msg.getInstanceOfferingUuid());
                 Tuple it = iq.getSingleResult();
-                int cpuNumAsked = it.get(0, Integer.class);
-                long memoryAsked = it.get(1, Long.class);
+                long cpuNumAsked = it.get(0, Integer.class) * num;
+                long memoryAsked = it.get(1, Long.class) * num;
 
                 if (vmQuota.cpuNum + cpuNumAsked > cpuNum) {
                     throw new ApiMessageInterceptionException(errf.instantiateErrorCode(IdentityErrors.QUOTA_EXCEEDING,
@@ -792,7 +992,7 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
                 if (msg.getDataDiskOfferingUuids() != null && !msg.getDataDiskOfferingUuids().isEmpty()) {
                     long n = getUsedVolume(msg.getSession().getAccountUuid());
 
-                    if (n + msg.getDataDiskOfferingUuids().size() > volNum) {
+                    if (n + msg.getDataDiskOfferingUuids().size() * num > volNum) {
                         throw new ApiMessageInterceptionException(errf.instantiateErrorCode(IdentityErrors.QUOTA_EXCEEDING,
                                 String.format("quota exceeding. The account[uuid: %s] exceeds a quota[name: %s, value: %s]",
                                         msg.getSession().getAccountUuid(), VolumeConstant.QUOTA_DATA_VOLUME_NUM, memory)
@@ -827,6 +1027,7 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
                     requiredVolSize += dsize;
                 }
 
+                requiredVolSize *= num;
                 long vsize = getUsedVolumeSize(msg.getSession().getAccountUuid());
                 if (vsize + requiredVolSize > volSize) {
                     throw new ApiMessageInterceptionException(errf.instantiateErrorCode(IdentityErrors.QUOTA_EXCEEDING,
@@ -864,6 +1065,7 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
         quota.addPair(p);
 
         quota.addMessageNeedValidation(APICreateVmInstanceMsg.class);
+        quota.addMessageNeedValidation(APIBatchCreateVmInstanceMsg.class);
         quota.addMessageNeedValidation(APIRecoverVmInstanceMsg.class);
         quota.setOperator(checker);
 
@@ -916,6 +1118,7 @@ public class VmInstanceManagerImpl extends AbstractService implements VmInstance
             TimeBasedGCEphemeralContext<Void> context = new TimeBasedGCEphemeralContext<Void>();
             context.setInterval(5);
             context.setTimeUnit(TimeUnit.SECONDS);
+            context.setResourceUuid(uuid);
             context.setRunner(new GCRunner() {
                 @Override
                 public void run(GCContext context, final GCCompletion completion) {
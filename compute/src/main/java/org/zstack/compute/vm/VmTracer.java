@@ -6,6 +6,7 @@ import org.zstack.core.CoreGlobalProperty;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.EventFacade;
 import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.ReadFromReplica;
 import org.zstack.core.thread.SyncTask;
 import org.zstack.core.thread.ThreadFacade;
 import org.zstack.header.exception.CloudRuntimeException;
@@ -42,6 +43,7 @@ public abstract class VmTracer {
         Map<String, VmInstanceState> mgmtSideStates;
 
         @Transactional(readOnly = true)
+        @ReadFromReplica
         private void buildManagementServerSideVmStates() {
             mgmtSideStates = new HashMap<String, VmInstanceState>();
 
@@ -0,0 +1,46 @@
+ALTER TABLE KeyValueVO ADD numberValue double DEFAULT NULL;
+UPDATE KeyValueVO SET numberValue = entityValue + 0 WHERE valueType IN ('java.lang.Integer', 'java.lang.Long', 'java.lang.Short', 'java.lang.Byte', 'java.lang.Float', 'java.lang.Double');
+ALTER TABLE KeyValueVO ADD INDEX idxKeyValueVOClassNameEntityKey (className, entityKey(128));
+ALTER TABLE KeyValueVO ADD INDEX idxKeyValueVOEntityKeyNumberValue (entityKey(128), numberValue);
+ALTER TABLE KeyValueVO ADD INDEX idxKeyValueVOEntityKeyEntityValue (entityKey(128), entityValue(128));
+
+CREATE TABLE  `zstack`.`AccountResourceCountVO` (
+    `id` bigint unsigned NOT NULL UNIQUE AUTO_INCREMENT,
+    `accountUuid` varchar(32) NOT NULL,
+    `resourceType` varchar(255) NOT NULL,
+    `resourceCount` bigint NOT NULL DEFAULT 0,
+    `lastOpDate` timestamp ON UPDATE CURRENT_TIMESTAMP,
+    `createDate` timestamp,
+    PRIMARY KEY  (`id`),
+    UNIQUE KEY `ukAccountResourceCountVOAccountUuidResourceType` (`accountUuid`, `resourceType`),
+    CONSTRAINT `fkAccountResourceCountVOAccountVO` FOREIGN KEY (`accountUuid`) REFERENCES `AccountVO` (`uuid`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+# references to resources deleted by foreign keys are left in AccountResourceRefVO, only count existing resources
+INSERT INTO AccountResourceCountVO (accountUuid, resourceType, resourceCount, createDate) SELECT ref.accountUuid, ref.resourceType, count(*), CURRENT_TIMESTAMP FROM AccountResourceRefVO ref
+    WHERE (ref.resourceType = 'VmInstanceVO' AND EXISTS (SELECT 1 FROM VmInstanceVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'VmNicVO' AND EXISTS (SELECT 1 FROM VmNicVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'VolumeVO' AND EXISTS (SELECT 1 FROM VolumeVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'ImageVO' AND EXISTS (SELECT 1 FROM ImageVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'L3NetworkVO' AND EXISTS (SELECT 1 FROM L3NetworkVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'IpRangeVO' AND EXISTS (SELECT 1 FROM IpRangeVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'VipVO' AND EXISTS (SELECT 1 FROM VipVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'SecurityGroupVO' AND EXISTS (SELECT 1 FROM SecurityGroupVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'PortForwardingRuleVO' AND EXISTS (SELECT 1 FROM PortForwardingRuleVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'EipVO' AND EXISTS (SELECT 1 FROM EipVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'VolumeSnapshotVO' AND EXISTS (SELECT 1 FROM VolumeSnapshotVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'UserGroupVO' AND EXISTS (SELECT 1 FROM UserGroupVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'PolicyVO' AND EXISTS (SELECT 1 FROM PolicyVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'UserVO' AND EXISTS (SELECT 1 FROM UserVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'QuotaVO' AND EXISTS (SELECT 1 FROM QuotaVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'InstanceOfferingVO' AND EXISTS (SELECT 1 FROM InstanceOfferingVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'DiskOfferingVO' AND EXISTS (SELECT 1 FROM DiskOfferingVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'LoadBalancerVO' AND EXISTS (SELECT 1 FROM LoadBalancerVO r WHERE r.uuid = ref.resourceUuid))
+    OR (ref.resourceType = 'LoadBalancerListenerVO' AND EXISTS (SELECT 1 FROM LoadBalancerListenerVO r WHERE r.uuid = ref.resourceUuid))
+    GROUP BY ref.accountUuid, ref.resourceType;
+
+# the hash of host uuids on the consistent hash ring of management nodes, hosts created before are filled by HostTrackImpl
+ALTER TABLE `zstack`.`HostEO` ADD COLUMN `uuidHash` int DEFAULT NULL;
+CREATE INDEX idxHostEOuuidHash ON HostEO (uuidHash);
+DROP VIEW IF EXISTS `zstack`.`HostVO`;
+CREATE VIEW `zstack`.`HostVO` AS SELECT uuid, zoneUuid, clusterUuid, name, description, managementIp, hypervisorType, state, status, uuidHash, createDate, lastOpDate FROM `zstack`.`HostEO` WHERE deleted IS NULL;
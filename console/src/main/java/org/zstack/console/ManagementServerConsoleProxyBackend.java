@@ -242,7 +242,8 @@ public class ManagementServerConsoleProxyBackend extends AbstractConsoleProxyBac
         } catch (Exception e) {
             logger.warn(String.format("cannot ping console proxy agent, %s", e.getMessage()), e);
 
-            if (vo != null) {
+            // the status is only written when it changes, pings failing in a row don't write it again
+            if (vo != null && vo.getStatus() != ConsoleProxyAgentStatus.Disconnected) {
                 vo.setStatus(ConsoleProxyAgentStatus.Disconnected);
                 dbf.update(vo);
             }
@@ -34,4 +34,8 @@ public class CoreGlobalProperty {
     public static int REST_FACADE_READ_TIMEOUT;
     @GlobalProperty(name="RESTFacade.connectTimeout", defaultValue = "300000")
     public static int REST_FACADE_CONNECT_TIMEOUT;
+    @GlobalProperty(name="KeyValueFacade.storageMode", defaultValue = "Columnar")
+    public static String KEY_VALUE_STORAGE_MODE;
+    @GlobalProperty(name="FlowChain.parallelIndependentFlows", defaultValue = "true")
+    public static boolean PARALLEL_INDEPENDENT_FLOWS;
 }
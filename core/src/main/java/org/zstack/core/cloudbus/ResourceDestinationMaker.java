@@ -1,5 +1,7 @@
 package org.zstack.core.cloudbus;
 
+import org.zstack.utils.hash.ConsistentHashRing;
+
 /**
  * Created with IntelliJ IDEA.
  * User: frank
@@ -10,4 +12,10 @@ public interface ResourceDestinationMaker {
     String makeDestination(String resourceUuid);
 
     boolean isManagedByUs(String resourceUuid);
+
+    /**
+     * @return the hash ranges that changed owner when the management node joined or left most recently,
+     * null if no change of the node is known
+     */
+    ConsistentHashRing.Change<String> getOwnershipChange(String nodeId);
 }
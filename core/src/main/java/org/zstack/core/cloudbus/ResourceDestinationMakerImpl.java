@@ -8,11 +8,15 @@ import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.managementnode.ManagementNodeChangeListener;
 import org.zstack.header.managementnode.ManagementNodeVO;
 import org.zstack.header.managementnode.ManagementNodeVO_;
+import org.zstack.utils.Utils;
 import org.zstack.utils.hash.ApacheHash;
-import org.zstack.utils.hash.ConsistentHash;
+import org.zstack.utils.hash.ConsistentHashRing;
+import org.zstack.utils.logging.CLogger;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created with IntelliJ IDEA.
@@ -21,24 +25,49 @@ import java.util.List;
  * To change this template use File | Settings | File Templates.
  */
 public class ResourceDestinationMakerImpl implements ManagementNodeChangeListener, ResourceDestinationMaker {
-    private ConsistentHash<String> nodeHash = new ConsistentHash<String>(new ApacheHash(), 500, new ArrayList<String>()) ;
+    private static final CLogger logger = Utils.getLogger(ResourceDestinationMakerImpl.class);
+
+    private static final int MAX_KEPT_CHANGES = 32;
+
+    /*
+     * keep ApacheHash and 500 replicas: the ring must place nodes where ConsistentHash(ApacheHash, 500) of
+     * older management nodes does, otherwise nodes of different versions disagree on resource owners during
+     * a rolling upgrade. Changing either requires upgrading all management nodes at once, and recalculating
+     * HostAO.uuidHash which is the ApacheHash of host uuids
+     */
+    private ConsistentHashRing<String> nodeHash = new ConsistentHashRing<String>(new ApacheHash(), 500);
+
+    private Map<String, ConsistentHashRing.Change<String>> changes = Collections.synchronizedMap(
+            new LinkedHashMap<String, ConsistentHashRing.Change<String>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ConsistentHashRing.Change<String>> eldest) {
+                    return size() > MAX_KEPT_CHANGES;
+                }
+            }
+    );
 
     @Autowired
     private DatabaseFacade dbf;
 
+    private void recordChange(String nodeId, ConsistentHashRing.Change<String> change) {
+        changes.put(nodeId, change);
+        logger.debug(String.format("%s hash ranges changed owner after the membership change of the management node[uuid:%s]",
+                change.getRanges().size(), nodeId));
+    }
+
     @Override
     public void nodeJoin(String nodeId) {
-        nodeHash.add(nodeId);
+        recordChange(nodeId, nodeHash.add(nodeId));
     }
 
     @Override
     public void nodeLeft(String nodeId) {
-        nodeHash.remove(nodeId);
+        recordChange(nodeId, nodeHash.remove(nodeId));
     }
 
     @Override
     public void iAmDead(String nodeId) {
-        nodeHash.remove(nodeId);
+        recordChange(nodeId, nodeHash.remove(nodeId));
     }
 
     @Override
@@ -47,7 +76,7 @@ public class ResourceDestinationMakerImpl implements ManagementNodeChangeListene
         q.select(ManagementNodeVO_.uuid);
         List<String> nodeIds = q.listValue();
         for (String id : nodeIds) {
-            nodeHash.add(id);
+            recordChange(id, nodeHash.add(id));
         }
     }
 
@@ -67,6 +96,11 @@ public class ResourceDestinationMakerImpl implements ManagementNodeChangeListene
         return nodeUuid.equals(Platform.getManagementServerId());
     }
 
+    @Override
+    public ConsistentHashRing.Change<String> getOwnershipChange(String nodeId) {
+        return changes.get(nodeId);
+    }
+
     public boolean isNodeInCircle(String nodeId) {
         return nodeHash.hasNode(nodeId);
     }
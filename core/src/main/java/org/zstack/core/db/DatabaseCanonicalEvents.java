@@ -0,0 +1,33 @@
+package org.zstack.core.db;
+
+import org.zstack.header.message.NeedJsonSchema;
+
+import java.util.List;
+
+/**
+ */
+public class DatabaseCanonicalEvents {
+    public static final String ENTITY_CACHE_INVALIDATE_PATH = "/db/entityCache/invalidate";
+
+    @NeedJsonSchema
+    public static class EntityCacheInvalidateData {
+        private List<String> entityClassNames;
+        private List<String> ids;
+
+        public List<String> getEntityClassNames() {
+            return entityClassNames;
+        }
+
+        public void setEntityClassNames(List<String> entityClassNames) {
+            this.entityClassNames = entityClassNames;
+        }
+
+        public List<String> getIds() {
+            return ids;
+        }
+
+        public void setIds(List<String> ids) {
+            this.ids = ids;
+        }
+    }
+}
@@ -6,13 +6,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
 import org.zstack.core.componentloader.PluginRegistry;
+import org.zstack.core.db.DatabaseCanonicalEvents.EntityCacheInvalidateData;
 import org.zstack.core.db.TransactionalCallback.Operation;
 import org.zstack.header.Component;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.message.APIListMessage;
+import org.zstack.header.vo.CachedEntity;
 import org.zstack.header.vo.EO;
 import org.zstack.header.vo.SoftDeletionCascade;
 import org.zstack.header.vo.SoftDeletionCascades;
@@ -40,6 +45,8 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
 
     @Autowired
     private PluginRegistry pluginRgty;
+    @Autowired
+    private EventFacade evtf;
 
     private DataSource dataSource = null;
     private DataSource extraDataSource = null;
@@ -51,6 +58,7 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
     private Map<Class, List<HardDeleteEntityExtensionPoint>> hardDeleteExtensions = new HashMap<Class, List<HardDeleteEntityExtensionPoint>>();
     private List<HardDeleteEntityExtensionPoint> hardDeleteForAllExtensions = new ArrayList<HardDeleteEntityExtensionPoint>();
     private Map<Class, EntityInfo> entityInfoMap = new HashMap<Class, EntityInfo>();
+    private EntityCache entityCache = new EntityCache();
 
     private class EntityInfo {
         Field voPrimaryKeyField;
@@ -317,6 +325,7 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
                 q.setParameter("date", new Timestamp(new Date().getTime()).toString());
                 q.executeUpdate();
             }
+            invalidateEntityCache(voClass, ids);
             fireSoftDeleteExtension(ids, voClass);
             fireSoftDeleteExtensionByEOClass(ids, eoClass);
         }
@@ -346,6 +355,7 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
                 q.setParameter("ids", ids);
                 q.executeUpdate();
             }
+            invalidateEntityCache(voClass, ids);
             fireHardDeleteExtension(ids);
         }
 
@@ -356,6 +366,7 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
             Query q = getEntityManager().createNativeQuery(sql);
             q.setParameter("ids", ids);
             q.executeUpdate();
+            invalidateEntityCache(voClass, ids);
         }
 
         @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -433,6 +444,10 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
         }
 
         void fireLifeCycleEvent(EntityEvent evt, Object o) {
+            if (evt == EntityEvent.POST_UPDATE || evt == EntityEvent.POST_REMOVE) {
+                invalidateEntityCache(voClass, list(getVOPrimaryKeyValue(o)));
+            }
+
             EntityLifeCycleCallback cb = listeners.get(evt);
             if (cb != null) {
                 cb.entityLifeCycleEvent(evt, o);
@@ -476,11 +491,72 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
     }
 
     @Override
-    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
     public <T> T findById(long id, Class<T> entityClass) {
+        return findByPrimaryKey(id, entityClass);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
+    private <T> T doFindByPrimaryKey(Object id, Class<T> entityClass) {
         return getEntityManager().find(entityClass, id);
     }
 
+    private <T> T findByPrimaryKey(Object id, Class<T> entityClass) {
+        if (!entityCache.isEnabled(entityClass)) {
+            return doFindByPrimaryKey(id, entityClass);
+        }
+
+        T vo = entityCache.get(entityClass, id);
+        if (vo != null) {
+            return vo;
+        }
+
+        long generation = entityCache.getGeneration(entityClass);
+        vo = doFindByPrimaryKey(id, entityClass);
+        if (vo != null) {
+            entityCache.put(entityClass, id, vo, generation);
+        }
+        return vo;
+    }
+
+    private void invalidateEntityCache(Class entityClass, Collection ids) {
+        final List<String> classNames = entityCache.getAffectedClassNames(entityClass);
+        if (classNames.isEmpty()) {
+            return;
+        }
+
+        final List<String> keys = new ArrayList<String>(ids.size());
+        for (Object id : ids) {
+            keys.add(id.toString());
+        }
+
+        for (String name : classNames) {
+            entityCache.invalidate(name, keys);
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            broadcastEntityCacheInvalidation(classNames, keys);
+            return;
+        }
+
+        // readers may load the old entity before the transaction commits, invalidate again after it completes
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                for (String name : classNames) {
+                    entityCache.invalidate(name, keys);
+                }
+                broadcastEntityCacheInvalidation(classNames, keys);
+            }
+        });
+    }
+
+    private void broadcastEntityCacheInvalidation(List<String> classNames, List<String> ids) {
+        EntityCacheInvalidateData data = new EntityCacheInvalidateData();
+        data.setEntityClassNames(classNames);
+        data.setIds(ids);
+        evtf.fire(DatabaseCanonicalEvents.ENTITY_CACHE_INVALIDATE_PATH, data);
+    }
+
     @Override
     public void remove(Object entity) {
         getEntityInfo(entity.getClass()).remove(entity);
@@ -512,9 +588,8 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
     }
 
     @Override
-    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
     public <T> T findByUuid(String uuid, Class<T> entityClass) {
-        return this.getEntityManager().find(entityClass, uuid);
+        return findByPrimaryKey(uuid, entityClass);
     }
 
     @Override
@@ -687,10 +762,21 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
             return;
         }
 
+        EntityInfo info = getEntityInfo(VOClazz);
         String deleted = at.softDeletedColumn();
-        String sql = String.format("delete from %s eo where eo.%s is not null", at.EOClazz().getSimpleName(), deleted);
+        String sql = String.format("select eo.%s from %s eo where eo.%s is not null", info.eoPrimaryKeyField.getName(),
+                at.EOClazz().getSimpleName(), deleted);
+        List ids = getEntityManager().createQuery(sql).getResultList();
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        sql = String.format("delete from %s eo where eo.%s in (:ids)", at.EOClazz().getSimpleName(), info.eoPrimaryKeyField.getName());
         Query q = getEntityManager().createQuery(sql);
+        q.setParameter("ids", ids);
         q.executeUpdate();
+        // rows referencing the EOs by foreign keys may be deleted by the database
+        info.fireHardDeleteExtension(ids);
     }
 
     @Override
@@ -710,6 +796,21 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
     @Override
     public boolean start() {
         populateExtensions();
+
+        evtf.on(DatabaseCanonicalEvents.ENTITY_CACHE_INVALIDATE_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                if (Platform.getManagementServerId().equals(tokens.get(EventFacade.META_DATA_MANAGEMENT_NODE_ID))) {
+                    return;
+                }
+
+                EntityCacheInvalidateData d = (EntityCacheInvalidateData) data;
+                for (String name : d.getEntityClassNames()) {
+                    entityCache.invalidate(name, d.getIds());
+                }
+            }
+        });
+
         return true;
     }
 
@@ -719,6 +820,9 @@ public class DatabaseFacadeImpl implements DatabaseFacade, Component {
         for (Class clz : clzs) {
             logger.debug(String.format("build entity info for %s", clz.getName()));
             entityInfoMap.put(clz, new EntityInfo(clz));
+            if (clz.isAnnotationPresent(CachedEntity.class)) {
+                entityCache.register(clz);
+            }
         }
     }
 
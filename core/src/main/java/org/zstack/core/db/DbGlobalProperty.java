@@ -9,4 +9,32 @@ import org.zstack.core.GlobalPropertyDefinition;
 public class DbGlobalProperty {
     @GlobalProperty(name="entityPackages", defaultValue = "org.zstack")
     public static String ENTITY_PACKAGES;
+    @GlobalProperty(name="SimpleQuery.planCache", defaultValue = "true")
+    public static boolean SIMPLE_QUERY_PLAN_CACHE;
+    @GlobalProperty(name="SimpleQuery.planCacheSize", defaultValue = "10000")
+    public static int SIMPLE_QUERY_PLAN_CACHE_SIZE;
+    @GlobalProperty(name="entityCache", defaultValue = "true")
+    public static boolean ENTITY_CACHE;
+    @GlobalProperty(name="ReadReplicaDataSource.jdbcUrl", defaultValue = "")
+    public static String READ_REPLICA_JDBC_URL;
+    @GlobalProperty(name="ReadReplicaDataSource.maxStaleness", defaultValue = "5")
+    public static long READ_REPLICA_MAX_STALENESS;
+    @GlobalProperty(name="ReadReplicaDataSource.checkInterval", defaultValue = "5")
+    public static long READ_REPLICA_CHECK_INTERVAL;
+    @GlobalProperty(name="ReadReplicaDataSource.routeAllReadOnlyTransactions", defaultValue = "false")
+    public static boolean READ_REPLICA_ROUTE_ALL_READ_ONLY_TRANSACTIONS;
+    @GlobalProperty(name="ReadReplicaDataSource.standalone", defaultValue = "false")
+    public static boolean READ_REPLICA_STANDALONE;
+    @GlobalProperty(name="StatusStore.flushInterval", defaultValue = "5")
+    public static long STATUS_STORE_FLUSH_INTERVAL;
+    @GlobalProperty(name="StatusStore.maxStaleness", defaultValue = "300")
+    public static long STATUS_STORE_MAX_STALENESS;
+    @GlobalProperty(name="StepJournal.enabled", defaultValue = "true")
+    public static boolean STEP_JOURNAL_ENABLED;
+    @GlobalProperty(name="StepJournal.persistThreshold", defaultValue = "10")
+    public static long STEP_JOURNAL_PERSIST_THRESHOLD;
+    @GlobalProperty(name="StepJournal.sync", defaultValue = "false")
+    public static boolean STEP_JOURNAL_SYNC;
+    @GlobalProperty(name="StepJournal.maxSize", defaultValue = "64")
+    public static long STEP_JOURNAL_MAX_SIZE;
 }
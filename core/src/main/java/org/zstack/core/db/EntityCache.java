@@ -0,0 +1,103 @@
+package org.zstack.core.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.zstack.header.vo.CachedEntity;
+import org.zstack.header.vo.EO;
+import org.zstack.utils.ObjectUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the in-memory cache of entities annotated by @CachedEntity.
+ *
+ * entities are copied in and out of the cache so callers modifying a found entity don't pollute the cache.
+ * Every invalidation bumps the generation of the entity class, an entity loaded before an invalidation
+ * is not put into the cache; that keeps a reader racing with a writer from caching the old entity
+ */
+class EntityCache {
+    private static final CLogger logger = Utils.getLogger(EntityCache.class);
+
+    private class ClassCache {
+        Class entityClass;
+        Cache<String, Object> entities;
+        AtomicLong generation = new AtomicLong();
+    }
+
+    // built when DatabaseFacade initializes, read only afterwards
+    private Map<Class, ClassCache> caches = new HashMap<Class, ClassCache>();
+    private Map<String, ClassCache> cachesByName = new HashMap<String, ClassCache>();
+    private Map<Class, Class> eoToVo = new HashMap<Class, Class>();
+
+    void register(Class voClass) {
+        CachedEntity at = (CachedEntity) voClass.getAnnotation(CachedEntity.class);
+        ClassCache c = new ClassCache();
+        c.entityClass = voClass;
+        c.entities = CacheBuilder.newBuilder()
+                .maximumSize(at.maxSize())
+                .expireAfterWrite(at.ttl(), TimeUnit.SECONDS)
+                .build();
+        caches.put(voClass, c);
+        cachesByName.put(voClass.getName(), c);
+
+        EO eo = (EO) voClass.getAnnotation(EO.class);
+        if (eo != null) {
+            eoToVo.put(eo.EOClazz(), voClass);
+        }
+
+        logger.debug(String.format("enable entity cache for %s[maxSize: %s, ttl: %ss]", voClass.getName(), at.maxSize(), at.ttl()));
+    }
+
+    boolean isEnabled(Class entityClass) {
+        return DbGlobalProperty.ENTITY_CACHE && caches.containsKey(entityClass);
+    }
+
+    long getGeneration(Class entityClass) {
+        return caches.get(entityClass).generation.get();
+    }
+
+    <T> T get(Class<T> entityClass, Object id) {
+        Object entity = caches.get(entityClass).entities.getIfPresent(id.toString());
+        return entity == null ? null : (T) ObjectUtils.newAndCopy(entity, entity.getClass());
+    }
+
+    void put(Class entityClass, Object id, Object entity, long generation) {
+        ClassCache c = caches.get(entityClass);
+        Object copy = ObjectUtils.newAndCopy(entity, entity.getClass());
+        synchronized (c) {
+            if (c.generation.get() == generation) {
+                c.entities.put(id.toString(), copy);
+            }
+        }
+    }
+
+    /**
+     * @return the names of cached classes affected by the changed entity class, EO classes are mapped to their VO classes
+     */
+    List<String> getAffectedClassNames(Class changedClass) {
+        Class clz = eoToVo.containsKey(changedClass) ? eoToVo.get(changedClass) : changedClass;
+        List<String> ret = new ArrayList<String>();
+        for (ClassCache c : caches.values()) {
+            if (c.entityClass.isAssignableFrom(clz) || clz.isAssignableFrom(c.entityClass)) {
+                ret.add(c.entityClass.getName());
+            }
+        }
+        return ret;
+    }
+
+    void invalidate(String className, Collection<String> ids) {
+        ClassCache c = cachesByName.get(className);
+        if (c == null) {
+            return;
+        }
+
+        synchronized (c) {
+            c.generation.incrementAndGet();
+            c.entities.invalidateAll(ids);
+        }
+    }
+}
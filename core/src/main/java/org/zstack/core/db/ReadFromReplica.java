@@ -0,0 +1,15 @@
+package org.zstack.core.db;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * read-only transactions started within the annotated method read from the read replica if configured.
+ *
+ * only for readers tolerating data up to ReadReplicaDataSource.maxStaleness seconds old, e.g. query APIs
+ * and periodic scanners. Transactions not read-only always go to the primary database
+ */
+@Target(java.lang.annotation.ElementType.METHOD)
+@Retention(java.lang.annotation.RetentionPolicy.RUNTIME)
+public @interface ReadFromReplica {
+}
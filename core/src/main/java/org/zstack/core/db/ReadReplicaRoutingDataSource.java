@@ -0,0 +1,190 @@
+package org.zstack.core.db;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * routes read-only transactions to the read replica.
+ *
+ * a read-only transaction goes to the replica when it runs within a method annotated by @ReadFromReplica,
+ * or when ReadReplicaDataSource.routeAllReadOnlyTransactions is true. The replication lag is checked
+ * periodically, the replica is not used when it lags behind the primary more than ReadReplicaDataSource.maxStaleness
+ * seconds, when the replication stops or when the replica cannot be connected; connections then go to the primary
+ * until a later check finds the replica healthy. A database not replicating from any database is not healthy either,
+ * unless ReadReplicaDataSource.standalone is true to say it's intended, e.g. the replica url points to the primary.
+ *
+ * this data source must be wrapped by a LazyConnectionDataSourceProxy, so the connection is taken when
+ * the first statement runs, when whether the transaction is read-only is known
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    private static final CLogger logger = Utils.getLogger(ReadReplicaRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private static final ThreadLocal<Integer> replicaScope = new ThreadLocal<Integer>();
+
+    private DataSource primary;
+    private DataSource replica;
+    private volatile boolean replicaHealthy;
+    private ScheduledExecutorService checker;
+
+    public static void enterReplicaScope() {
+        Integer depth = replicaScope.get();
+        replicaScope.set(depth == null ? 1 : depth + 1);
+    }
+
+    public static void exitReplicaScope() {
+        Integer depth = replicaScope.get();
+        if (depth == null || depth <= 1) {
+            replicaScope.remove();
+        } else {
+            replicaScope.set(depth - 1);
+        }
+    }
+
+    private static boolean isInReplicaScope() {
+        return replicaScope.get() != null;
+    }
+
+    private boolean isReplicaEnabled() {
+        return DbGlobalProperty.READ_REPLICA_JDBC_URL != null && !DbGlobalProperty.READ_REPLICA_JDBC_URL.isEmpty();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!replicaHealthy || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+
+        return isInReplicaScope() || DbGlobalProperty.READ_REPLICA_ROUTE_ALL_READ_ONLY_TRANSACTIONS ? REPLICA : PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (determineCurrentLookupKey() == PRIMARY) {
+            return primary.getConnection();
+        }
+
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            replicaHealthy = false;
+            logger.warn(String.format("unable to connect to the read replica, fall back to the primary database until" +
+                    " the replica recovers, %s", e.getMessage()));
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * checks the replication of the replica, the checker thread calls it every ReadReplicaDataSource.checkInterval seconds
+     */
+    public void checkReplica() {
+        Connection conn = null;
+        try {
+            conn = replica.getConnection();
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS");
+            boolean healthy;
+            String reason = null;
+            if (!rs.next()) {
+                healthy = DbGlobalProperty.READ_REPLICA_STANDALONE;
+                reason = "the replica is not replicating from any database, set ReadReplicaDataSource.standalone to true" +
+                        " if it's intended";
+            } else {
+                long lag = rs.getLong("Seconds_Behind_Master");
+                if (rs.wasNull()) {
+                    healthy = false;
+                    reason = "the replication is not running";
+                } else {
+                    healthy = lag <= DbGlobalProperty.READ_REPLICA_MAX_STALENESS;
+                    reason = String.format("the replication lags %s seconds, more than the max staleness %s seconds",
+                            lag, DbGlobalProperty.READ_REPLICA_MAX_STALENESS);
+                }
+            }
+            rs.close();
+            stmt.close();
+
+            setReplicaHealthy(healthy, reason);
+        } catch (SQLException e) {
+            setReplicaHealthy(false, e.getMessage());
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    logger.warn(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void setReplicaHealthy(boolean healthy, String reason) {
+        if (healthy && !replicaHealthy) {
+            logger.info("the read replica is healthy, route read-only transactions to it");
+        } else if (!healthy && replicaHealthy) {
+            logger.warn(String.format("stop routing read-only transactions to the read replica, %s", reason));
+        }
+
+        replicaHealthy = healthy;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Map<Object, Object> targets = new HashMap<Object, Object>();
+        targets.put(PRIMARY, primary);
+        targets.put(REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        super.afterPropertiesSet();
+    }
+
+    void init() {
+        if (!isReplicaEnabled()) {
+            return;
+        }
+
+        checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "read-replica-checker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        checker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkReplica();
+            }
+        }, 0, DbGlobalProperty.READ_REPLICA_CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    void destroy() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    public void setPrimary(DataSource primary) {
+        this.primary = primary;
+    }
+
+    public void setReplica(DataSource replica) {
+        this.replica = replica;
+    }
+}
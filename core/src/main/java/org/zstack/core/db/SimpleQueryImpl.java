@@ -9,14 +9,16 @@ import org.springframework.transaction.annotation.Transactional;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.logging.CLoggerImpl;
 
+import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import javax.persistence.Tuple;
-import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
 import javax.persistence.metamodel.SingularAttribute;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 @Configurable(preConstruction=true,autowire=Autowire.BY_TYPE,dependencyCheck=true)
@@ -36,6 +38,8 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     
     @Autowired
     private DatabaseFacade _dbf;
+    @Autowired
+    private SimpleQueryPlanCache _planCache;
     
     class Condition {
         private final SingularAttribute _attr;
@@ -190,15 +194,174 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
         groupByClause(_query);
     }
 
+    private String shape(boolean count) {
+        StringBuilder sb = new StringBuilder(_entityClass.getName());
+        sb.append(count ? "|count|" : "|select|");
+        for (AttrInfo info : _selects) {
+            sb.append(info._attr.getName()).append(",");
+        }
+        sb.append("|");
+        for (Condition con : _conditions) {
+            sb.append(con._attr.getName()).append(" ").append(con._op).append(",");
+        }
+        sb.append("|");
+        for (OrderInfo info : orderInfos) {
+            sb.append(info.attr.getName()).append(" ").append(info.od).append(",");
+        }
+        sb.append("|");
+        if (groupByInfo != null) {
+            sb.append(groupByInfo.getName());
+        }
+        return sb.toString();
+    }
+
+    private String toJpql(boolean count) {
+        String entityName = _dbf.getEntityManager().getMetamodel().entity(_entityClass).getName();
+        StringBuilder sb = new StringBuilder("SELECT ");
+        if (count) {
+            sb.append("count(vo)");
+        } else if (_selects.isEmpty()) {
+            sb.append("vo");
+        } else {
+            List<String> paths = new ArrayList<String>(_selects.size());
+            for (AttrInfo info : _selects) {
+                paths.add("vo." + info._attr.getName());
+            }
+            sb.append(join(paths, ", "));
+        }
+        sb.append(" FROM ").append(entityName).append(" vo");
+
+        if (!_conditions.isEmpty()) {
+            List<String> preds = new ArrayList<String>(_conditions.size());
+            for (int i = 0; i < _conditions.size(); i++) {
+                Condition con = _conditions.get(i);
+                String p = "vo." + con._attr.getName();
+                String param = ":p" + i;
+                Op op = con._op;
+                if (op == Op.EQ) {
+                    preds.add(p + " = " + param);
+                } else if (op == Op.NOT_EQ) {
+                    preds.add(p + " <> " + param);
+                } else if (op == Op.NOT_NULL) {
+                    preds.add(p + " IS NOT NULL");
+                } else if (op == Op.IN) {
+                    preds.add(p + " IN (" + param + ")");
+                } else if (op == Op.NOT_IN) {
+                    preds.add(p + " NOT IN (" + param + ")");
+                } else if (op == Op.NULL) {
+                    preds.add(p + " IS NULL");
+                } else if (op == Op.LIKE) {
+                    preds.add(p + " LIKE " + param);
+                } else if (op == Op.NOT_LIKE) {
+                    preds.add(p + " NOT LIKE " + param);
+                } else if (op == Op.GT) {
+                    preds.add(p + " > " + param);
+                } else if (op == Op.LT) {
+                    preds.add(p + " < " + param);
+                } else if (op == Op.GTE) {
+                    preds.add(p + " >= " + param);
+                } else if (op == Op.LTE) {
+                    preds.add(p + " <= " + param);
+                } else {
+                    assert(false) : op.toString() + " has not been supported";
+                }
+            }
+            sb.append(" WHERE ").append(join(preds, " AND "));
+        }
+
+        if (!count && groupByInfo != null) {
+            sb.append(" GROUP BY vo.").append(groupByInfo.getName());
+        }
+
+        if (!count && !orderInfos.isEmpty()) {
+            List<String> orders = new ArrayList<String>(orderInfos.size());
+            for (OrderInfo info : orderInfos) {
+                orders.add(String.format("vo.%s %s", info.attr.getName(), info.od));
+            }
+            sb.append(" ORDER BY ").append(join(orders, ", "));
+        }
+
+        return sb.toString();
+    }
+
+    private static String join(List<String> strs, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (String str : strs) {
+            if (sb.length() != 0) {
+                sb.append(separator);
+            }
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+
+    private void bind(Query q) {
+        for (int i = 0; i < _conditions.size(); i++) {
+            Condition con = _conditions.get(i);
+            Object[] vals = con._val;
+            Op op = con._op;
+            if (op == Op.NULL || op == Op.NOT_NULL) {
+                continue;
+            }
+
+            if (op == Op.IN || op == Op.NOT_IN) {
+                assert vals.length !=0 : String.format("Op.%s needs more than on value, but %s given", op, vals.length);
+                if (vals.length == 1 && vals[0] instanceof Collection) {
+                    q.setParameter("p" + i, vals[0]);
+                } else {
+                    q.setParameter("p" + i, Arrays.asList(vals));
+                }
+            } else {
+                assert vals.length == 1 : String.format("Op.%s needs one value, but %s given", op, vals.length);
+                q.setParameter("p" + i, vals[0]);
+            }
+        }
+    }
+
+    private Query createQuery(boolean count) {
+        EntityManager em = _dbf.getEntityManager();
+        if (!_planCache.isEnabled()) {
+            if (count) {
+                countClause();
+            } else {
+                done();
+            }
+            return em.createQuery(_query);
+        }
+
+        String shape = shape(count);
+        String jpql = _planCache.get(shape);
+        if (jpql == null) {
+            jpql = toJpql(count);
+            _planCache.put(shape, jpql);
+        }
+
+        Query q;
+        if (count) {
+            q = em.createQuery(jpql, Long.class);
+        } else if (_selects.size() > 1) {
+            q = em.createQuery(jpql, Tuple.class);
+        } else {
+            q = em.createQuery(jpql);
+        }
+        bind(q);
+        return q;
+    }
+
+    private void countClause() {
+        _query = _builder.createQuery(Long.class);
+        _root = _query.from(_entityClass);
+        _query.select(_builder.count(_root));
+        _query.where(whereClause());
+    }
+
     @Override
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public T find() {
         assert _selects.size() == 0 : "find() for entity doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using findValue() or findTuple()";
-        done();
-
         T vo = null;
         try {
-            Query q = _dbf.getEntityManager().createQuery(_query);
+            Query q = createQuery(false);
             if (limit != null) {
                 q.setMaxResults(limit);
             }
@@ -217,8 +380,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public <K> List<K> list() {
         assert _selects.size() == 0 : "list() for entities doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using listValue() or listTuple()";
-        done();
-        Query q = _dbf.getEntityManager().createQuery(_query);
+        Query q = createQuery(false);
         if (limit != null) {
             q.setMaxResults(limit);
         }
@@ -237,10 +399,9 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public <K> K findValue() {
         assert _selects.size() == 1 : String.format("findValue() only need one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using find() or findTuple()", _selects.size());
-        done();
         K value = null;
         try {
-            Query q = _dbf.getEntityManager().createQuery(_query);
+            Query q = createQuery(false);
             if (limit != null) {
                 q.setMaxResults(limit);
             }
@@ -256,8 +417,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public <K> List<K> listValue() {
         assert _selects.size() == 1 : String.format("listValue() only need one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using list() or listTuple()", _selects.size());
-        done();
-        Query q = _dbf.getEntityManager().createQuery(_query);
+        Query q = createQuery(false);
         if (limit != null) {
             q.setMaxResults(limit);
         }
@@ -272,10 +432,9 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public Tuple findTuple() {
         assert _selects.size() > 1 : String.format("findTuple() needs more than one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using find() or findValue()", _selects.size());
-        done();
         Tuple ret = null;
         try {
-            Query q = _dbf.getEntityManager().createQuery(_query);
+            Query q = createQuery(false);
             if (limit != null) {
                 q.setMaxResults(limit);
             }
@@ -290,8 +449,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public List<Tuple> listTuple() {
         assert _selects.size() > 1 : String.format("listTuple() needs more than one parameter in Query.Select(), you have put %s parameter in Query.select(..), either correcting the parameter or using list() or listValue()", _selects.size());
-        done();
-        Query q = _dbf.getEntityManager().createQuery(_query);
+        Query q = createQuery(false);
         if (limit != null) {
             q.setMaxResults(limit);
         }
@@ -306,11 +464,7 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public Long count() {
         assert _selects.size() == 0 : "count() for entity doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using findValue() or findTuple()";
-        _query = _builder.createQuery(Long.class);
-        _root = _query.from(_entityClass);
-        _query.select(_builder.count(_root));
-        _query.where(whereClause());
-        return (Long) _dbf.getEntityManager().createQuery(_query).getSingleResult();
+        return (Long) createQuery(true).getSingleResult();
     }
 
     @Override
@@ -334,13 +488,9 @@ public class SimpleQueryImpl<T> implements SimpleQuery<T> {
     @Transactional(readOnly=true, propagation=Propagation.REQUIRES_NEW)
     public boolean isExists() {
         assert _selects.size() == 0 : "isExists() for entity doesn't need any parameter in Query.Select(), you have put some parameter in Query.select(..), either removing these parameters or using findValue() or findTuple()";
-        _query = _builder.createQuery(Long.class);
-        _root = _query.from(_entityClass);
-        _query.select(_builder.count(_root));
-        _query.where(whereClause());
-        TypedQuery<Long> tq = _dbf.getEntityManager().createQuery(_query);
-        tq.setMaxResults(1);
-        long count = tq.getSingleResult();
+        Query q = createQuery(true);
+        q.setMaxResults(1);
+        long count = (Long) q.getSingleResult();
         return count >= 1;
     }
 
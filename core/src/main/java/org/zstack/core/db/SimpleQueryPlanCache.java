@@ -0,0 +1,85 @@
+package org.zstack.core.db;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.header.Component;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * caches JPQL generated by SimpleQuery, keyed by the shape of the query(entity, selects, conditions, orders and group by).
+ *
+ * values of conditions are bound as parameters, so queries of the same shape share one JPQL string. Hibernate
+ * caches the plan of a JPQL string, so a cached query skips both building the criteria tree and compiling it
+ */
+public class SimpleQueryPlanCache implements Component, SimpleQueryPlanCacheMXBean {
+    private static final CLogger logger = Utils.getLogger(SimpleQueryPlanCache.class);
+
+    @Autowired
+    private JmxFacade jmxf;
+
+    private final ConcurrentHashMap<String, String> plans = new ConcurrentHashMap<String, String>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public boolean isEnabled() {
+        return DbGlobalProperty.SIMPLE_QUERY_PLAN_CACHE;
+    }
+
+    public String get(String shape) {
+        String jpql = plans.get(shape);
+        if (jpql == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return jpql;
+    }
+
+    public void put(String shape, String jpql) {
+        // shapes come from query sites in the code, the limit only guards against queries built dynamically
+        if (plans.size() >= DbGlobalProperty.SIMPLE_QUERY_PLAN_CACHE_SIZE) {
+            return;
+        }
+
+        if (plans.putIfAbsent(shape, jpql) == null && logger.isTraceEnabled()) {
+            logger.trace(String.format("cached the plan of SimpleQuery[%s]: %s", shape, jpql));
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public int getSize() {
+        return plans.size();
+    }
+
+    @Override
+    public boolean start() {
+        jmxf.registerBean("SimpleQueryPlanCache", this);
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+}
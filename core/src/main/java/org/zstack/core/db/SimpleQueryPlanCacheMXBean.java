@@ -0,0 +1,13 @@
+package org.zstack.core.db;
+
+/**
+ */
+public interface SimpleQueryPlanCacheMXBean {
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    int getSize();
+}
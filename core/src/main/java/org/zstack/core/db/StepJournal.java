@@ -0,0 +1,328 @@
+package org.zstack.core.db;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.utils.Utils;
+import org.zstack.utils.gson.JSONObjectUtil;
+import org.zstack.utils.logging.CLogger;
+import org.zstack.utils.path.PathUtil;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * keeps the state of short-living multi-step operations, such as WorkFlowChain, in memory and in an append-only local
+ * journal instead of writing every step to the database.
+ *
+ * an operation is a group of entities; every change of an entity is appended to the journal as a JSON snapshot, and an
+ * operation ending within 'StepJournal.persistThreshold' seconds never touches the database. Operations living longer,
+ * and all operations when the management node stops, are written to the database by their Persister, which then writes
+ * further changes to the database directly. On start, the last snapshots of operations neither ended nor persisted,
+ * left by a crash, are merged into the database in the order they were first seen, and the journal is truncated
+ */
+public class StepJournal implements Component {
+    private static final CLogger logger = Utils.getLogger(StepJournal.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private ThreadFacade thdf;
+
+    /**
+     * writes all entities of an operation to the database; called once at most, and never after the operation ends
+     */
+    public interface Persister {
+        void persist();
+    }
+
+    private static class Record {
+        String op;
+        String group;
+        String key;
+        String className;
+        String data;
+    }
+
+    private static final String OP_BEGIN = "begin";
+    private static final String OP_PUT = "put";
+    private static final String OP_END = "end";
+
+    private class Group {
+        String uuid;
+        long startTime = System.currentTimeMillis();
+        Persister persister;
+        // key -> the last record, kept for compacting the journal
+        Map<String, Record> snapshots = new LinkedHashMap<String, Record>();
+    }
+
+    private final Map<String, Group> groups = new LinkedHashMap<String, Group>();
+    private File journalFile;
+    private FileOutputStream out;
+    private Writer writer;
+    private volatile boolean started;
+    private Future<Void> persistTask;
+
+    public boolean isEnabled() {
+        return started && DbGlobalProperty.STEP_JOURNAL_ENABLED;
+    }
+
+    private void write(Record r) throws IOException {
+        writer.write(JSONObjectUtil.toJsonString(r));
+        writer.write('\n');
+        writer.flush();
+        if (DbGlobalProperty.STEP_JOURNAL_SYNC) {
+            out.getFD().sync();
+        }
+    }
+
+    private synchronized void append(Record r) {
+        try {
+            write(r);
+        } catch (IOException e) {
+            throw new CloudRuntimeException(String.format("unable to write the step journal[%s]", journalFile.getAbsolutePath()), e);
+        }
+    }
+
+    public void begin(String groupUuid, Persister persister) {
+        Group g = new Group();
+        g.uuid = groupUuid;
+        g.persister = persister;
+
+        Record r = new Record();
+        r.op = OP_BEGIN;
+        r.group = groupUuid;
+        synchronized (this) {
+            groups.put(groupUuid, g);
+            append(r);
+        }
+    }
+
+    public void put(String groupUuid, String key, Object entity) {
+        Record r = new Record();
+        r.op = OP_PUT;
+        r.group = groupUuid;
+        r.key = key;
+        r.className = entity.getClass().getName();
+        r.data = JSONObjectUtil.toJsonString(entity);
+        synchronized (this) {
+            Group g = groups.get(groupUuid);
+            if (g == null) {
+                throw new CloudRuntimeException(String.format("the operation[uuid:%s] has ended or been persisted", groupUuid));
+            }
+
+            g.snapshots.put(key, r);
+            append(r);
+        }
+    }
+
+    /**
+     * drops the operation; also called after its Persister has written it to the database
+     */
+    public void end(String groupUuid) {
+        Record r = new Record();
+        r.op = OP_END;
+        r.group = groupUuid;
+        synchronized (this) {
+            if (groups.remove(groupUuid) != null) {
+                append(r);
+            }
+        }
+    }
+
+    private void persist(Group g) {
+        try {
+            g.persister.persist();
+            end(g.uuid);
+        } catch (Throwable t) {
+            logger.warn(String.format("unable to write the operation[uuid:%s] in the step journal to the database", g.uuid), t);
+        }
+    }
+
+    private void persistLongLivingGroups() {
+        long expired = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(DbGlobalProperty.STEP_JOURNAL_PERSIST_THRESHOLD);
+        List<Group> toPersist = new ArrayList<Group>();
+        synchronized (this) {
+            for (Group g : groups.values()) {
+                if (g.startTime < expired) {
+                    toPersist.add(g);
+                }
+            }
+        }
+
+        // persisters take the lock of their own, never call them with the journal locked
+        for (Group g : toPersist) {
+            persist(g);
+        }
+
+        compact();
+    }
+
+    private synchronized void compact() {
+        if (journalFile.length() < DbGlobalProperty.STEP_JOURNAL_MAX_SIZE * 1024 * 1024) {
+            return;
+        }
+
+        File tmp = new File(journalFile.getAbsolutePath() + ".tmp");
+        try {
+            Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            try {
+                for (Group g : groups.values()) {
+                    Record r = new Record();
+                    r.op = OP_BEGIN;
+                    r.group = g.uuid;
+                    w.write(JSONObjectUtil.toJsonString(r));
+                    w.write('\n');
+                    for (Record s : g.snapshots.values()) {
+                        w.write(JSONObjectUtil.toJsonString(s));
+                        w.write('\n');
+                    }
+                }
+            } finally {
+                w.close();
+            }
+
+            writer.close();
+            if (!tmp.renameTo(journalFile)) {
+                throw new IOException(String.format("unable to rename %s to %s", tmp.getAbsolutePath(), journalFile.getAbsolutePath()));
+            }
+            open();
+            logger.debug(String.format("compacted the step journal[%s], %s operations are in flight", journalFile.getAbsolutePath(), groups.size()));
+        } catch (IOException e) {
+            throw new CloudRuntimeException(e);
+        }
+    }
+
+    private void open() throws IOException {
+        out = new FileOutputStream(journalFile, true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+    }
+
+    private void replay() throws IOException, ClassNotFoundException {
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        Map<String, Map<String, Record>> left = new LinkedHashMap<String, Map<String, Record>>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                Record r;
+                try {
+                    r = JSONObjectUtil.toObject(line, Record.class);
+                } catch (Exception e) {
+                    // the last line may be half written when crashing
+                    logger.warn(String.format("skip a broken line in the step journal: %s", line));
+                    continue;
+                }
+
+                if (OP_BEGIN.equals(r.op)) {
+                    left.put(r.group, new LinkedHashMap<String, Record>());
+                } else if (OP_PUT.equals(r.op)) {
+                    Map<String, Record> snapshots = left.get(r.group);
+                    if (snapshots != null) {
+                        snapshots.put(r.key, r);
+                    }
+                } else if (OP_END.equals(r.op)) {
+                    left.remove(r.group);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        for (Map.Entry<String, Map<String, Record>> e : left.entrySet()) {
+            for (Record r : e.getValue().values()) {
+                dbf.updateAndRefresh(JSONObjectUtil.toObject(r.data, Class.forName(r.className)));
+            }
+            logger.debug(String.format("replayed the operation[uuid:%s] left in the step journal to the database", e.getKey()));
+        }
+    }
+
+    @Override
+    public boolean start() {
+        if (!DbGlobalProperty.STEP_JOURNAL_ENABLED) {
+            return true;
+        }
+
+        File folder = new File(PathUtil.join(CoreGlobalProperty.USER_HOME, "step_journal"));
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        journalFile = new File(folder, "journal.log");
+
+        try {
+            replay();
+            new FileOutputStream(journalFile).close();
+            open();
+        } catch (Exception e) {
+            throw new CloudRuntimeException(String.format("unable to replay the step journal[%s]", journalFile.getAbsolutePath()), e);
+        }
+
+        persistTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return Math.max(1, DbGlobalProperty.STEP_JOURNAL_PERSIST_THRESHOLD / 2);
+            }
+
+            @Override
+            public String getName() {
+                return "step-journal-persist-long-living-operations";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    persistLongLivingGroups();
+                } catch (Throwable t) {
+                    logger.warn("unhandled exception happened when persisting operations in the step journal", t);
+                }
+            }
+        });
+
+        started = true;
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (!started) {
+            return true;
+        }
+
+        started = false;
+        if (persistTask != null) {
+            persistTask.cancel(true);
+        }
+
+        List<Group> toPersist;
+        synchronized (this) {
+            toPersist = new ArrayList<Group>(groups.values());
+        }
+        for (Group g : toPersist) {
+            persist(g);
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn(String.format("unable to close the step journal[%s]", journalFile.getAbsolutePath()), e);
+        }
+        return true;
+    }
+}
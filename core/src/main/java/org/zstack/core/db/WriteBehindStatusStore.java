@@ -0,0 +1,292 @@
+package org.zstack.core.db;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.Query;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * holds the last known status and capacity columns reported periodically by agents, for example the physical
+ * capacity carried in every response of primary storage agents, and writes them to the database behind the reporter.
+ *
+ * a report equal to the last known values is dropped unless the values were written more than
+ * 'StatusStore.maxStaleness' seconds ago, so values overwritten in other ways are corrected in a bounded time.
+ * Changed values are queued and written every 'StatusStore.flushInterval' seconds in one transaction, resources
+ * having the same values are updated by one UPDATE.
+ *
+ * the store is only for values losing nothing but freshness when written late; status transitions that others act on
+ * must be written synchronously as before. Writers doing so read version() and getQueued() before writing the row,
+ * write the queued values along, then call forget() with the version read, which drops them unless newer values
+ * have been reported meanwhile.
+ * Values are written by bulk UPDATEs bypassing the entity cache, entities annotated by @CachedEntity can't be stored
+ */
+public class WriteBehindStatusStore implements Component {
+    private static final CLogger logger = Utils.getLogger(WriteBehindStatusStore.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private ThreadFacade thdf;
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<String, Pending> dirty = new LinkedHashMap<String, Pending>();
+    private Future<Void> flushTask;
+    private long seq;
+
+    private static class Entry {
+        Map<String, Object> known = new HashMap<String, Object>();
+        long lastWritten;
+        long version;
+    }
+
+    private static class Pending {
+        String entityName;
+        String uuid;
+        Map<String, Object> values = new HashMap<String, Object>();
+    }
+
+    private static String key(String entityName, String uuid) {
+        return entityName + ":" + uuid;
+    }
+
+    /**
+     * @return true if the values are queued for writing, false if they equal the last known values
+     */
+    public boolean update(Class<?> voClass, String uuid, Map<String, Object> values) {
+        String k = key(voClass.getSimpleName(), uuid);
+        synchronized (this) {
+            Entry e = entries.get(k);
+            if (e == null) {
+                e = new Entry();
+                entries.put(k, e);
+            }
+
+            boolean changed = false;
+            for (Map.Entry<String, Object> v : values.entrySet()) {
+                if (!e.known.containsKey(v.getKey()) || !equals(e.known.get(v.getKey()), v.getValue())) {
+                    changed = true;
+                    break;
+                }
+            }
+
+            long stale = TimeUnit.SECONDS.toMillis(DbGlobalProperty.STATUS_STORE_MAX_STALENESS);
+            if (!changed && System.currentTimeMillis() - e.lastWritten < stale) {
+                return false;
+            }
+
+            e.known.putAll(values);
+            e.version = ++seq;
+            Pending p = dirty.get(k);
+            if (p == null) {
+                p = new Pending();
+                p.entityName = voClass.getSimpleName();
+                p.uuid = uuid;
+                dirty.put(k, p);
+            }
+            p.values.putAll(values);
+            return true;
+        }
+    }
+
+    public boolean update(Class<?> voClass, String uuid, String field, Object value) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put(field, value);
+        return update(voClass, uuid, values);
+    }
+
+    /**
+     * @return the version of the last values queued for the resource, 0 if nothing is known
+     */
+    public synchronized long version(Class<?> voClass, String uuid) {
+        Entry e = entries.get(key(voClass.getSimpleName(), uuid));
+        return e == null ? 0 : e.version;
+    }
+
+    /**
+     * @return a copy of the values queued for the resource and not written yet
+     */
+    public synchronized Map<String, Object> getQueued(Class<?> voClass, String uuid) {
+        Pending p = dirty.get(key(voClass.getSimpleName(), uuid));
+        return p == null ? new HashMap<String, Object>() : new HashMap<String, Object>(p.values);
+    }
+
+    /**
+     * drops the known and queued values of the resource, called when the resource is deleted
+     */
+    public synchronized void forget(Class<?> voClass, String uuid) {
+        String k = key(voClass.getSimpleName(), uuid);
+        entries.remove(k);
+        dirty.remove(k);
+    }
+
+    /**
+     * drops the known and queued values of the resource if nothing has been queued since the version was read,
+     * called when the resource is written synchronously along with the values queued at that version
+     *
+     * @return false if newer values have been queued, they are kept and written by the next flush
+     */
+    public synchronized boolean forget(Class<?> voClass, String uuid, long version) {
+        String k = key(voClass.getSimpleName(), uuid);
+        Entry e = entries.get(k);
+        if (e != null && e.version != version) {
+            return false;
+        }
+
+        entries.remove(k);
+        dirty.remove(k);
+        return true;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Transactional
+    private void write(Map<String, Map<Map<String, Object>, List<String>>> groups) {
+        for (Map.Entry<String, Map<Map<String, Object>, List<String>>> eg : groups.entrySet()) {
+            for (Map.Entry<Map<String, Object>, List<String>> g : eg.getValue().entrySet()) {
+                List<String> names = new ArrayList<String>(g.getKey().keySet());
+                StringBuilder sb = new StringBuilder(String.format("update %s vo set ", eg.getKey()));
+                for (int i = 0; i < names.size(); i++) {
+                    sb.append(i == 0 ? "" : ", ").append(String.format("vo.%s = :v%s", names.get(i), i));
+                }
+                sb.append(" where vo.uuid in (:uuids)");
+
+                List<String> uuids = g.getValue();
+                int step = 1000;
+                for (int i = 0; i < uuids.size(); i += step) {
+                    Query q = dbf.getEntityManager().createQuery(sb.toString());
+                    for (int j = 0; j < names.size(); j++) {
+                        q.setParameter(String.format("v%s", j), g.getKey().get(names.get(j)));
+                    }
+                    q.setParameter("uuids", uuids.subList(i, Math.min(i + step, uuids.size())));
+                    q.executeUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * writes all queued values
+     */
+    public void flush() {
+        List<Pending> toWrite;
+        synchronized (this) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+
+            toWrite = new ArrayList<Pending>(dirty.values());
+            dirty.clear();
+        }
+
+        // resources of the same entity having the same values are updated by one statement
+        Map<String, Map<Map<String, Object>, List<String>>> groups = new HashMap<String, Map<Map<String, Object>, List<String>>>();
+        int num = 0;
+        for (Pending p : toWrite) {
+            Map<Map<String, Object>, List<String>> eg = groups.get(p.entityName);
+            if (eg == null) {
+                eg = new HashMap<Map<String, Object>, List<String>>();
+                groups.put(p.entityName, eg);
+            }
+
+            List<String> uuids = eg.get(p.values);
+            if (uuids == null) {
+                uuids = new ArrayList<String>();
+                eg.put(p.values, uuids);
+                num++;
+            }
+            uuids.add(p.uuid);
+        }
+
+        try {
+            write(groups);
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                // queue the values again unless newer ones have been queued meanwhile
+                for (Pending p : toWrite) {
+                    String k = key(p.entityName, p.uuid);
+                    Pending newer = dirty.get(k);
+                    if (newer == null) {
+                        if (entries.containsKey(k)) {
+                            dirty.put(k, p);
+                        }
+                    } else {
+                        for (Map.Entry<String, Object> v : p.values.entrySet()) {
+                            if (!newer.values.containsKey(v.getKey())) {
+                                newer.values.put(v.getKey(), v.getValue());
+                            }
+                        }
+                    }
+                }
+            }
+            throw ex;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Pending p : toWrite) {
+                Entry e = entries.get(key(p.entityName, p.uuid));
+                if (e != null) {
+                    e.lastWritten = now;
+                }
+            }
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("[Status Store]: wrote %s resources by %s updates", toWrite.size(), num));
+        }
+    }
+
+    @Override
+    public boolean start() {
+        flushTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return DbGlobalProperty.STATUS_STORE_FLUSH_INTERVAL;
+            }
+
+            @Override
+            public String getName() {
+                return "write-behind-status-store-flush";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    logger.warn("unhandled exception happened when writing queued status, will retry in next flush", t);
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (flushTask != null) {
+            flushTask.cancel(true);
+        }
+
+        try {
+            flush();
+        } catch (Throwable t) {
+            logger.warn("unable to write queued status when stopping", t);
+        }
+        return true;
+    }
+}
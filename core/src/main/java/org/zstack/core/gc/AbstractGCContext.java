@@ -6,6 +6,7 @@ package org.zstack.core.gc;
 public abstract class AbstractGCContext<T> implements GCContext<T> {
     protected T context;
     protected String name;
+    protected String resourceUuid;
     protected long executedTimes;
 
     public AbstractGCContext() {
@@ -14,6 +15,7 @@ public abstract class AbstractGCContext<T> implements GCContext<T> {
     public AbstractGCContext(AbstractGCContext<T> other) {
         this.context = other.context;
         this.name = other.name;
+        this.resourceUuid = other.resourceUuid;
         this.executedTimes = other.executedTimes;
     }
 
@@ -35,6 +37,19 @@ public abstract class AbstractGCContext<T> implements GCContext<T> {
         this.name = name;
     }
 
+    /**
+     * the resource the job works on, e.g. the host to delete bits from; GCFacade runs jobs of the same runner
+     * and resource in one batch
+     */
+    @Override
+    public String getResourceUuid() {
+        return resourceUuid;
+    }
+
+    public void setResourceUuid(String resourceUuid) {
+        this.resourceUuid = resourceUuid;
+    }
+
     @Override
     public long getExecutedTimes() {
         return executedTimes;
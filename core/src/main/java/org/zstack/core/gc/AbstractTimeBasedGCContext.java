@@ -18,6 +18,7 @@ public class AbstractTimeBasedGCContext<T> extends AbstractGCContext<T> implemen
         this.interval = other.interval;
         this.context = other.context;
         this.name = other.name;
+        this.resourceUuid = other.resourceUuid;
         this.executedTimes = other.executedTimes;
     }
 
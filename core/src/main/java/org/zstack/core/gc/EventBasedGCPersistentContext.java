@@ -47,6 +47,7 @@ public class EventBasedGCPersistentContext<T> extends AbstractEventBasedGCContex
             i.context = JSONObjectUtil.rehashObject(map(e("context", context)), LinkedHashMap.class);
         }
         i.runnerClassName = runnerClass.getName();
+        i.resourceUuid = resourceUuid;
         i.triggers  = triggers;
         return i;
     }
@@ -13,6 +13,7 @@ import java.util.concurrent.TimeUnit;
 class EventBasedGCPersistentContextInternal {
     String runnerClassName;
     String contextClassName;
+    String resourceUuid;
     LinkedHashMap context;
     List<GCEventTrigger> triggers;
 
@@ -27,6 +28,7 @@ class EventBasedGCPersistentContextInternal {
         EventBasedGCPersistentContextInternal i = JSONObjectUtil.toObject(vo.getContext(), EventBasedGCPersistentContextInternal.class);
         runnerClassName = i.runnerClassName;
         contextClassName = i.contextClassName;
+        resourceUuid = i.resourceUuid;
         context = i.context;
         triggers = i.triggers;
     }
@@ -41,6 +43,7 @@ class EventBasedGCPersistentContextInternal {
                 ctx.setContext(JSONObjectUtil.rehashObject(context.get("context"), ctx.getContextClass()));
             }
             ctx.setRunnerClass(Class.forName(runnerClassName));
+            ctx.setResourceUuid(resourceUuid);
             ctx.setTriggers(triggers);
             return ctx;
         } catch (Exception e) {
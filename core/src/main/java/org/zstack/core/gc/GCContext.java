@@ -6,5 +6,6 @@ package org.zstack.core.gc;
 public interface GCContext<T> {
     T getContext();
     String getName();
+    String getResourceUuid();
     long getExecutedTimes();
 }
@@ -5,7 +5,6 @@ import groovy.util.GroovyScriptEngine;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.Trigger;
 import org.springframework.transaction.annotation.Transactional;
 import org.zstack.core.CoreGlobalProperty;
 import org.zstack.core.Platform;
@@ -15,31 +14,42 @@ import org.zstack.core.cloudbus.ResourceDestinationMaker;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.core.thread.AsyncThread;
+import org.zstack.core.thread.ChainTask;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.SyncTaskChain;
 import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.core.NoErrorCompletion;
 import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.managementnode.ManagementNodeChangeListener;
 import org.zstack.header.managementnode.ManagementNodeReadyExtensionPoint;
-import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
-import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.path.PathUtil;
 
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.zstack.utils.CollectionDSL.list;
 
 /**
  * Created by frank on 8/5/2015.
+ *
+ * time-based jobs wait in a GCTimeWheel ticked by one periodic task, and event-based jobs share one
+ * event subscription per event path. Due or triggered jobs are grouped by their runner class and resource uuid;
+ * jobs of a group run one by one, at most batchSize of them before the group yields, and at most concurrency
+ * groups run at the same time. Status changes of jobs are written to the database in bulk at every tick
  */
 public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, ManagementNodeReadyExtensionPoint {
     private static final CLogger logger = Utils.getLogger(GCFacadeImpl.class);
@@ -52,11 +62,48 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
     private ResourceDestinationMaker destinationMaker;
     @Autowired
     private EventFacade evtf;
+    @Autowired
+    private ErrorFacade errf;
+
+    private int concurrency = 10;
+    private int batchSize = 50;
+    private int loadPageSize = 1000;
+    private long tickInterval = 500;
+    private int timeWheelSize = 512;
 
     private final Set<String> listenedEventPaths = new HashSet<String>();
+    // eventPath -> triggers of jobs waiting for the event, guarded by listenedEventPaths
+    private final Map<String, List<EventTriggerEntry>> eventTriggers = new HashMap<String, List<EventTriggerEntry>>();
+    private final Map<String, EventCallback> eventCallbacks = new HashMap<String, EventCallback>();
+    // script name -> code written to the script folder
+    private final Map<String, String> writtenScripts = new HashMap<String, String>();
+    private final Map<String, JobGroup> jobGroups = new HashMap<String, JobGroup>();
+    private final Map<Long, GCStatus> statusUpdates = new HashMap<Long, GCStatus>();
+    private GCTimeWheel timeWheel;
+    private Future<Void> tickTask;
     private File scriptFolder;
     private GroovyScriptEngine gse;
 
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setLoadPageSize(int loadPageSize) {
+        this.loadPageSize = loadPageSize;
+    }
+
+    public void setTickInterval(long tickInterval) {
+        this.tickInterval = tickInterval;
+    }
+
+    public void setTimeWheelSize(int timeWheelSize) {
+        this.timeWheelSize = timeWheelSize;
+    }
+
     void init() {
         String scriptFolderPath = PathUtil.join(CoreGlobalProperty.USER_HOME, "garbage_collector_script");
         scriptFolder = new File(scriptFolderPath);
@@ -69,6 +116,90 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         } catch (MalformedURLException e) {
             throw new CloudRuntimeException(e);
         }
+
+        timeWheel = new GCTimeWheel(tickInterval, timeWheelSize);
+        tickTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.MILLISECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return tickInterval;
+            }
+
+            @Override
+            public String getName() {
+                return "gc-time-wheel";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (Throwable t) {
+                    logger.warn("[GC] unhandled exception when ticking the time wheel", t);
+                }
+            }
+        });
+    }
+
+    void destroy() {
+        if (tickTask != null) {
+            tickTask.cancel(true);
+        }
+    }
+
+    private void tick() {
+        for (Runnable r : timeWheel.tick()) {
+            r.run();
+        }
+
+        flushStatus();
+    }
+
+    private void updateStatus(GarbageCollectorVO vo, GCStatus status) {
+        vo.setStatus(status);
+        synchronized (statusUpdates) {
+            // only the last change of a job matters
+            statusUpdates.put(vo.getId(), status);
+        }
+    }
+
+    private void flushStatus() {
+        Map<GCStatus, List<Long>> ids = new HashMap<GCStatus, List<Long>>();
+        synchronized (statusUpdates) {
+            if (statusUpdates.isEmpty()) {
+                return;
+            }
+
+            for (Map.Entry<Long, GCStatus> e : statusUpdates.entrySet()) {
+                List<Long> l = ids.get(e.getValue());
+                if (l == null) {
+                    l = new ArrayList<Long>();
+                    ids.put(e.getValue(), l);
+                }
+                l.add(e.getKey());
+            }
+            statusUpdates.clear();
+        }
+
+        for (Map.Entry<GCStatus, List<Long>> e : ids.entrySet()) {
+            List<Long> l = e.getValue();
+            for (int i = 0; i < l.size(); i += loadPageSize) {
+                updateStatusInDb(e.getKey(), l.subList(i, Math.min(i + loadPageSize, l.size())));
+            }
+        }
+    }
+
+    @Transactional
+    private void updateStatusInDb(GCStatus status, List<Long> ids) {
+        String sql = "update GarbageCollectorVO vo set vo.status = :status where vo.id in (:ids)";
+        Query q = dbf.getEntityManager().createQuery(sql);
+        q.setParameter("status", status);
+        q.setParameter("ids", ids);
+        q.executeUpdate();
     }
 
     private GarbageCollectorVO save(TimeBasedGCPersistentContext context) {
@@ -144,6 +275,208 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         void cancel();
     }
 
+    interface GCJob {
+        void run(NoErrorCompletion completion);
+    }
+
+    class JobGroup {
+        final String key;
+        final LinkedList<GCJob> jobs = new LinkedList<GCJob>();
+
+        JobGroup(String key) {
+            this.key = key;
+        }
+    }
+
+    class EventTriggerEntry {
+        AbstractEventBasedGCContext context;
+        GCEventTrigger trigger;
+        String scriptName;
+        Runnable runner;
+    }
+
+    private String getGroupKey(GCContext context, GCRunner runner) {
+        return context.getResourceUuid() == null ? runner.getClass().getName() :
+                String.format("%s::%s", runner.getClass().getName(), context.getResourceUuid());
+    }
+
+    private GCCompletion withDone(final GCCompletion completion, final NoErrorCompletion done) {
+        final AtomicBoolean called = new AtomicBoolean(false);
+        return new GCCompletion() {
+            private void done() {
+                // let the group move on even if the completion throws or is called twice
+                if (called.compareAndSet(false, true)) {
+                    done.done();
+                }
+            }
+
+            @Override
+            public void success() {
+                try {
+                    completion.success();
+                } finally {
+                    done();
+                }
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                try {
+                    completion.fail(errorCode);
+                } finally {
+                    done();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                try {
+                    completion.cancel();
+                } finally {
+                    done();
+                }
+            }
+        };
+    }
+
+    private void runJob(GCRunner runner, GCContext context, GCCompletion completion) {
+        try {
+            runner.run(context, completion);
+        } catch (Throwable t) {
+            logger.warn(String.format("[GC] unhandled exception when running GC job[name:%s]", context.getName()), t);
+            completion.fail(errf.throwableToInternalError(t));
+        }
+    }
+
+    private void dispatch(String groupKey, GCJob job) {
+        JobGroup group;
+        synchronized (jobGroups) {
+            group = jobGroups.get(groupKey);
+            if (group != null) {
+                // the group is queued or running, it will pick up the job
+                group.jobs.add(job);
+                return;
+            }
+
+            group = new JobGroup(groupKey);
+            group.jobs.add(job);
+            jobGroups.put(groupKey, group);
+        }
+
+        submitGroup(group);
+    }
+
+    private void submitGroup(final JobGroup group) {
+        thdf.chainSubmit(new ChainTask() {
+            @Override
+            public String getSyncSignature() {
+                return "garbage-collector";
+            }
+
+            @Override
+            protected int getSyncLevel() {
+                return concurrency;
+            }
+
+            @Override
+            public void run(final SyncTaskChain chain) {
+                runBatch(group, batchSize, new NoErrorCompletion(chain) {
+                    @Override
+                    public void done() {
+                        boolean more;
+                        synchronized (jobGroups) {
+                            more = !group.jobs.isEmpty();
+                            if (!more) {
+                                jobGroups.remove(group.key);
+                            }
+                        }
+
+                        if (more) {
+                            // queue the rest behind other groups
+                            submitGroup(group);
+                        }
+
+                        chain.next();
+                    }
+                });
+            }
+
+            @Override
+            public String getName() {
+                return String.format("gc-jobs-%s", group.key);
+            }
+        });
+    }
+
+    private void runBatch(final JobGroup group, final int left, final NoErrorCompletion completion) {
+        GCJob job = null;
+        if (left > 0) {
+            synchronized (jobGroups) {
+                job = group.jobs.poll();
+            }
+        }
+
+        if (job == null) {
+            completion.done();
+            return;
+        }
+
+        job.run(new NoErrorCompletion(completion) {
+            @Override
+            public void done() {
+                runBatch(group, left - 1, completion);
+            }
+        });
+    }
+
+    private String writeScript(GCEventTrigger trigger) {
+        String scriptName = String.format("%s.groovy", trigger.getCodeName());
+        scriptName = scriptName.replaceAll(" ", "_");
+        if (trigger.getCode().equals(writtenScripts.get(scriptName))) {
+            return scriptName;
+        }
+
+        String scriptPath = PathUtil.join(scriptFolder.getAbsolutePath(), scriptName);
+        try {
+            FileUtils.writeStringToFile(new File(scriptPath), trigger.getCode());
+        } catch (IOException e) {
+            throw new CloudRuntimeException(e);
+        }
+
+        writtenScripts.put(scriptName, trigger.getCode());
+        return scriptName;
+    }
+
+    private void onEvent(String eventPath, Map tokens, Object data) {
+        List<EventTriggerEntry> entries;
+        synchronized (listenedEventPaths) {
+            List<EventTriggerEntry> l = eventTriggers.get(eventPath);
+            if (l == null) {
+                return;
+            }
+            entries = new ArrayList<EventTriggerEntry>(l);
+        }
+
+        for (EventTriggerEntry e : entries) {
+            try {
+                Binding binding = new Binding();
+                binding.setVariable("tokens", tokens);
+                binding.setVariable("data", data);
+                binding.setVariable("context", e.context.getContext());
+                boolean ret = (Boolean) gse.run(e.scriptName, binding);
+                if (ret) {
+                    logger.debug(String.format("[GC] code[%s], event[%s] triggered a GC job[%s]",
+                            e.trigger.getCodeName(), eventPath, e.context.getName()));
+                    e.runner.run();
+                }
+            } catch (Exception ex) {
+                // one broken trigger must not stop other jobs sharing the event
+                logger.warn(String.format("[GC] failed to run code[%s] of GC job[%s] on event[%s]",
+                        e.trigger.getCodeName(), e.context.getName(), eventPath), ex);
+            }
+        }
+    }
+
     private CancelEventCallback setupEventTrigger(final AbstractEventBasedGCContext context, final Runnable runner) {
         synchronized (listenedEventPaths) {
             List<GCEventTrigger> triggers = context.getTriggers();
@@ -161,47 +494,37 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
             }
 
             listenedEventPaths.add(pathId);
-            logger.warn(String.format("[GC] setup the trigger on the canonical event[%s]", pathId));
-
-            final List<EventCallback> cbs = new ArrayList<EventCallback>();
-
-            for (final GCEventTrigger trigger : triggers) {
-                String scriptName = String.format("%s.groovy", trigger.getCodeName());
-                scriptName = scriptName.replaceAll(" ", "_");
-                String scriptPath = PathUtil.join(scriptFolder.getAbsolutePath(), scriptName);
-                try {
-                    FileUtils.writeStringToFile(new File(scriptPath), trigger.getCode());
-                } catch (IOException e) {
-                    throw new CloudRuntimeException(e);
-                }
+            logger.debug(String.format("[GC] setup the trigger on the canonical event[%s]", pathId));
 
-                final String finalScriptName = scriptName;
-                final EventCallback cb = new EventCallback() {
-                    @Override
-                    public void run(Map tokens, Object data) {
-                        if (!Platform.getManagementServerId().equals(tokens.get(EventFacade.META_DATA_MANAGEMENT_NODE_ID))) {
-                            return;
-                        }
-
-                        try {
-                            Binding binding = new Binding();
-                            binding.setVariable("tokens", tokens);
-                            binding.setVariable("data", data);
-                            binding.setVariable("context", context.getContext());
-                            boolean ret = (Boolean) gse.run(finalScriptName, binding);
-                            if (ret) {
-                                logger.debug(String.format("[GC] code[%s], event[%s] triggered a GC job[%s]",
-                                        trigger.getCodeName(), trigger.getEventPath(), context.getName()));
-                                runner.run();
+            final List<EventTriggerEntry> entries = new ArrayList<EventTriggerEntry>();
+            for (GCEventTrigger trigger : triggers) {
+                EventTriggerEntry e = new EventTriggerEntry();
+                e.context = context;
+                e.trigger = trigger;
+                e.scriptName = writeScript(trigger);
+                e.runner = runner;
+
+                final String eventPath = trigger.getEventPath();
+                List<EventTriggerEntry> l = eventTriggers.get(eventPath);
+                if (l == null) {
+                    l = new ArrayList<EventTriggerEntry>();
+                    eventTriggers.put(eventPath, l);
+
+                    EventCallback cb = new EventCallback() {
+                        @Override
+                        public void run(Map tokens, Object data) {
+                            if (!Platform.getManagementServerId().equals(tokens.get(EventFacade.META_DATA_MANAGEMENT_NODE_ID))) {
+                                return;
                             }
-                        } catch (Exception e) {
-                            throw new CloudRuntimeException(e);
-                        }
-                    }
-                };
 
-                evtf.on(trigger.getEventPath(), cb);
-                cbs.add(cb);
+                            onEvent(eventPath, tokens, data);
+                        }
+                    };
+                    eventCallbacks.put(eventPath, cb);
+                    evtf.on(eventPath, cb);
+                }
+                l.add(e);
+                entries.add(e);
             }
 
             return new CancelEventCallback() {
@@ -209,10 +532,20 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
                 public void cancel() {
                     synchronized (listenedEventPaths) {
                         listenedEventPaths.remove(pathId);
-                    }
 
-                    for (EventCallback cb : cbs) {
-                        evtf.off(cb);
+                        for (EventTriggerEntry e : entries) {
+                            String eventPath = e.trigger.getEventPath();
+                            List<EventTriggerEntry> l = eventTriggers.get(eventPath);
+                            if (l == null) {
+                                continue;
+                            }
+
+                            l.remove(e);
+                            if (l.isEmpty()) {
+                                eventTriggers.remove(eventPath);
+                                evtf.off(eventCallbacks.remove(eventPath));
+                            }
+                        }
                     }
                 }
             };
@@ -231,8 +564,7 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         final GCCompletion completion = new GCCompletion() {
             @Override
             public void success() {
-                vo.setStatus(GCStatus.Done);
-                dbf.update(vo);
+                updateStatus(vo, GCStatus.Done);
 
                 if (canceller.canceller != null) {
                     canceller.canceller.cancel();
@@ -253,8 +585,7 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
 
             @Override
             public void cancel() {
-                vo.setStatus(GCStatus.Idle);
-                dbf.update(vo);
+                updateStatus(vo, GCStatus.Idle);
                 logger.debug(String.format("GC job[id:%s, name: %s, runner class:%s] is cancelled by the runner, set it to idle", vo.getId(), context.getName(), vo.getRunnerClass()));
 
                 once.setNotRun();
@@ -262,23 +593,30 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         };
 
         final GCRunner runner = getGCRunner(context);
-        final Runnable r = new Runnable() {
+        final String groupKey = getGroupKey(context, runner);
+        final GCJob job = new GCJob() {
             @Override
-            public void run() {
-                if (!once.setToRun()) {
-                    return;
-                }
-
+            public void run(NoErrorCompletion done) {
                 context.increaseExecutedTime();
 
                 if (updateDb) {
-                    vo.setStatus(GCStatus.Processing);
-                    dbf.update(vo);
+                    updateStatus(vo, GCStatus.Processing);
                 }
 
                 logger.debug(String.format("start running GC job[id:%s, name: %s, runner class:%s], already executed %s times",
                         vo.getId(), context.getName(), vo.getRunnerClass(), context.getExecutedTimes()));
-                runner.run(context, completion);
+                runJob(runner, context, withDone(completion, done));
+            }
+        };
+
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                if (!once.setToRun()) {
+                    return;
+                }
+
+                dispatch(groupKey, job);
             }
         };
 
@@ -291,8 +629,7 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         final GCCompletion completion = new GCCompletion() {
             @Override
             public void success() {
-                vo.setStatus(GCStatus.Done);
-                dbf.update(vo);
+                updateStatus(vo, GCStatus.Done);
                 logger.debug(String.format("GC job[id:%s, name: %s, runner class:%s] is done", vo.getId(), context.getName(), vo.getRunnerClass()));
 
                 once.setNotRun();
@@ -308,8 +645,7 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
 
             @Override
             public void cancel() {
-                vo.setStatus(GCStatus.Idle);
-                dbf.update(vo);
+                updateStatus(vo, GCStatus.Idle);
                 logger.debug(String.format("GC job[id:%s, name: %s, runner class:%s] is cancelled by the runner, set it to idle", vo.getId(), context.getName(), vo.getRunnerClass()));
 
                 once.setNotRun();
@@ -317,30 +653,37 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         };
 
         final GCRunner runner = getGCRunner(context);
-        Runnable r = new Runnable() {
+        final String groupKey = getGroupKey(context, runner);
+        final GCJob job = new GCJob() {
             @Override
-            public void run() {
-                if (!once.setToRun()) {
-                    return;
-                }
-
+            public void run(NoErrorCompletion done) {
                 context.increaseExecutedTime();
 
                 if (updateDb) {
-                    vo.setStatus(GCStatus.Processing);
-                    dbf.update(vo);
+                    updateStatus(vo, GCStatus.Processing);
                 }
 
                 logger.debug(String.format("start running GC job[id:%s, name: %s, runner class:%s], already executed %s times",
                         vo.getId(), context.getName(), vo.getRunnerClass(), context.getExecutedTimes()));
-                runner.run(context, completion);
+                runJob(runner, context, withDone(completion, done));
+            }
+        };
+
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                if (!once.setToRun()) {
+                    return;
+                }
+
+                dispatch(groupKey, job);
             }
         };
 
         if (instant) {
-            thdf.submitTimeoutTask(r, context.getTimeUnit(), 0);
+            r.run();
         } else {
-            thdf.submitTimeoutTask(r, context.getTimeUnit(), context.getInterval());
+            timeWheel.add(r, context.getTimeUnit(), context.getInterval());
         }
     }
 
@@ -405,6 +748,17 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         };
 
         final GCRunner runner = getGCRunner(context);
+        final String groupKey = getGroupKey(context, runner);
+        final GCJob job = new GCJob() {
+            @Override
+            public void run(NoErrorCompletion done) {
+                context.increaseExecutedTime();
+                logger.debug(String.format("start running GC ephemeral job[name:%s], already executed %s times",
+                        context.getName(), context.getExecutedTimes()));
+                runJob(runner, context, withDone(completion, done));
+            }
+        };
+
         Runnable r = new Runnable() {
             @Override
             public void run() {
@@ -413,10 +767,7 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
                     return;
                 }
 
-                context.increaseExecutedTime();
-                logger.debug(String.format("start running GC ephemeral job[name:%s], already executed %s times",
-                        context.getName(), context.getExecutedTimes()));
-                runner.run(context, completion);
+                dispatch(groupKey, job);
             }
         };
 
@@ -448,6 +799,17 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
         };
 
         final GCRunner runner = getGCRunner(context);
+        final String groupKey = getGroupKey(context, runner);
+        final GCJob job = new GCJob() {
+            @Override
+            public void run(NoErrorCompletion done) {
+                context.increaseExecutedTime();
+                logger.debug(String.format("start running GC ephemeral job[name:%s], already executed %s times",
+                        context.getName(), context.getExecutedTimes()));
+                runJob(runner, context, withDone(completion, done));
+            }
+        };
+
         Runnable r = new Runnable() {
             @Override
             public void run() {
@@ -455,17 +817,14 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
                     return;
                 }
 
-                context.increaseExecutedTime();
-                logger.debug(String.format("start running GC ephemeral job[name:%s], already executed %s times",
-                        context.getName(), context.getExecutedTimes()));
-                runner.run(context, completion);
+                dispatch(groupKey, job);
             }
         };
 
         if (instant) {
-            thdf.submitTimeoutTask(r, context.getTimeUnit(), 0);
+            r.run();
         } else {
-            thdf.submitTimeoutTask(r, context.getTimeUnit(), context.getInterval());
+            timeWheel.add(r, context.getTimeUnit(), context.getInterval());
         }
     }
 
@@ -506,35 +865,57 @@ public class GCFacadeImpl implements GCFacade, ManagementNodeChangeListener, Man
     public void iJoin(String nodeId) {
     }
 
+    @Transactional(readOnly = true)
+    private List<Long> getOrphanJobIds(long lastId) {
+        String sql = "select vo.id from GarbageCollectorVO vo where vo.id > :lastId and vo.status in (:status)" +
+                " and vo.managementNodeUuid is null order by vo.id";
+        TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
+        q.setParameter("lastId", lastId);
+        q.setParameter("status", list(GCStatus.Idle, GCStatus.Processing));
+        q.setMaxResults(loadPageSize);
+        return q.getResultList();
+    }
+
     @Override
     @AsyncThread
     public void managementNodeReady() {
-        SimpleQuery<GarbageCollectorVO> q = dbf.createQuery(GarbageCollectorVO.class);
-        q.select(GarbageCollectorVO_.id);
-        q.add(GarbageCollectorVO_.status, Op.IN, list(GCStatus.Idle, GCStatus.Processing));
-        q.add(GarbageCollectorVO_.managementNodeUuid, Op.NULL);
-        List<Long> ids = q.listValue();
+        long lastId = 0;
+        int count = 0;
+        while (true) {
+            List<Long> ids = getOrphanJobIds(lastId);
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
 
-        List<Long> ours = new ArrayList<Long>();
-        for (long id : ids) {
-            if (destinationMaker.isManagedByUs(String.valueOf(id))) {
-                ours.add(id);
+            List<Long> ours = new ArrayList<Long>();
+            for (long id : ids) {
+                if (destinationMaker.isManagedByUs(String.valueOf(id))) {
+                    ours.add(id);
+                }
             }
-        }
 
-        if (ours.isEmpty()) {
-            return;
-        }
+            if (!ours.isEmpty()) {
+                SimpleQuery<GarbageCollectorVO> q = dbf.createQuery(GarbageCollectorVO.class);
+                q.add(GarbageCollectorVO_.id, Op.IN, ours);
+                List<GarbageCollectorVO> vos = q.list();
+                for (GarbageCollectorVO vo : vos) {
+                    if (TimeBasedGCPersistentContext.class.getName().equals(vo.getType())) {
+                        scheduleTask(new TimeBasedGCPersistentContextInternal(vo).toGCContext(), vo, true, true);
+                    } else if (EventBasedGCPersistentContext.class.getName().equals(vo.getType())) {
+                        scheduleTask(new EventBasedGCPersistentContextInternal(vo).toGCContext(), vo, true);
+                    }
+                }
+                count += vos.size();
+            }
 
-        q = dbf.createQuery(GarbageCollectorVO.class);
-        q.add(GarbageCollectorVO_.id, Op.IN, ours);
-        List<GarbageCollectorVO> vos = q.list();
-        for (GarbageCollectorVO vo : vos) {
-            if (TimeBasedGCPersistentContext.class.getName().equals(vo.getType())) {
-                scheduleTask(new TimeBasedGCPersistentContextInternal(vo).toGCContext(), vo, true, true);
-            } else if (EventBasedGCPersistentContext.class.getName().equals(vo.getType())) {
-                scheduleTask(new EventBasedGCPersistentContextInternal(vo).toGCContext(), vo, true);
+            if (ids.size() < loadPageSize) {
+                break;
             }
         }
+
+        if (count > 0) {
+            logger.debug(String.format("[GC] loaded %s GC jobs left by dead management nodes", count));
+        }
     }
 }
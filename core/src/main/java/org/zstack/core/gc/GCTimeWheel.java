@@ -0,0 +1,77 @@
+package org.zstack.core.gc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a hashed time wheel for time-based GC jobs; GCFacadeImpl ticks it with one periodic task instead of
+ * submitting a timeout task to the thread pool for every job.
+ *
+ * a job of delay d is put into the slot (current + d/tick) % slotNum, and fires after the wheel has turned
+ * d/tick/slotNum rounds more
+ */
+class GCTimeWheel {
+    private static class Timeout {
+        Runnable task;
+        long rounds;
+    }
+
+    private final long tickMillis;
+    private final List<List<Timeout>> slots;
+    private long currentTick;
+    private int size;
+
+    GCTimeWheel(long tickMillis, int slotNum) {
+        this.tickMillis = tickMillis;
+        slots = new ArrayList<List<Timeout>>(slotNum);
+        for (int i = 0; i < slotNum; i++) {
+            slots.add(new ArrayList<Timeout>());
+        }
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    synchronized void add(Runnable task, TimeUnit unit, long delay) {
+        long ticks = Math.max(1, (unit.toMillis(delay) + tickMillis - 1) / tickMillis);
+        Timeout t = new Timeout();
+        t.task = task;
+        t.rounds = (ticks - 1) / slots.size();
+        slots.get((int) ((currentTick + ticks) % slots.size())).add(t);
+        size++;
+    }
+
+    /**
+     * turns the wheel by one tick
+     * @return tasks due in this tick
+     */
+    synchronized List<Runnable> tick() {
+        currentTick++;
+        int index = (int) (currentTick % slots.size());
+        List<Timeout> slot = slots.get(index);
+        if (slot.isEmpty()) {
+            return new ArrayList<Runnable>();
+        }
+
+        List<Runnable> due = new ArrayList<Runnable>();
+        List<Timeout> remaining = new ArrayList<Timeout>();
+        for (Timeout t : slot) {
+            if (t.rounds == 0) {
+                due.add(t.task);
+            } else {
+                t.rounds--;
+                remaining.add(t);
+            }
+        }
+
+        slots.set(index, remaining);
+        size -= due.size();
+        return due;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
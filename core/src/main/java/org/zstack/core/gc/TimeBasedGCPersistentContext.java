@@ -47,6 +47,7 @@ public class TimeBasedGCPersistentContext<T> extends AbstractTimeBasedGCContext<
             i.context = JSONObjectUtil.rehashObject(map(e("context", context)), LinkedHashMap.class);
         }
         i.runnerClassName = runnerClass.getName();
+        i.resourceUuid = resourceUuid;
         i.interval = interval;
         i.timeUnit = timeUnit;
         return i;
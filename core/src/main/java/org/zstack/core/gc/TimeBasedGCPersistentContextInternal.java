@@ -12,6 +12,7 @@ import java.util.concurrent.TimeUnit;
 class TimeBasedGCPersistentContextInternal {
     String runnerClassName;
     String contextClassName;
+    String resourceUuid;
     LinkedHashMap context;
     TimeUnit timeUnit;
     long interval;
@@ -27,6 +28,7 @@ class TimeBasedGCPersistentContextInternal {
         TimeBasedGCPersistentContextInternal i = JSONObjectUtil.toObject(vo.getContext(), TimeBasedGCPersistentContextInternal.class);
         runnerClassName = i.runnerClassName;
         contextClassName = i.contextClassName;
+        resourceUuid = i.resourceUuid;
         context = i.context;
         timeUnit = i.timeUnit;
         interval = i.interval;
@@ -44,6 +46,7 @@ class TimeBasedGCPersistentContextInternal {
             ctx.setInterval(interval);
             ctx.setTimeUnit(timeUnit);
             ctx.setRunnerClass(Class.forName(runnerClassName));
+            ctx.setResourceUuid(resourceUuid);
             return ctx;
         } catch (Exception e) {
             throw new CloudRuntimeException(e);
@@ -0,0 +1,131 @@
+package org.zstack.core.job;
+
+import org.zstack.utils.serializable.SerializableHelper;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * encodes the context of a job for JobQueueEntryVO.context.
+ *
+ * the class name and field names are written once as UTF-8 and values of common types are written in binary, only
+ * values of other types fall back to java serialization. Contexts saved by java serialization before, which start with
+ * the serialization stream magic, are still decoded.
+ *
+ * management nodes not having this codec can't decode the compact format, so contexts are still written by java
+ * serialization unless 'JobQueueFacade.compactContext' is set, which must only be done after all management nodes
+ * are upgraded
+ */
+final class JobContextCodec {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = {'Z', 'J', 1};
+    private static final byte JAVA_STREAM_MAGIC_0 = (byte) 0xAC;
+    private static final byte JAVA_STREAM_MAGIC_1 = (byte) 0xED;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_SERIALIZED = 6;
+
+    private JobContextCodec() {
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] b = str.getBytes(UTF8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, UTF8);
+    }
+
+    static byte[] encode(JobContextObject ctx) throws IOException {
+        if (!JobGlobalProperty.JOB_QUEUE_COMPACT_CONTEXT) {
+            return SerializableHelper.writeObject(ctx);
+        }
+
+        ByteArrayOutputStream bstream = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bstream);
+        out.write(MAGIC);
+        writeString(out, ctx.getClassName());
+        out.writeInt(ctx.getArgs().size());
+        for (Map.Entry<String, Object> e : ctx.getArgs().entrySet()) {
+            writeString(out, e.getKey());
+            Object val = e.getValue();
+            if (val == null) {
+                out.writeByte(TYPE_NULL);
+            } else if (val instanceof String) {
+                out.writeByte(TYPE_STRING);
+                writeString(out, (String) val);
+            } else if (val instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong((Long) val);
+            } else if (val instanceof Integer) {
+                out.writeByte(TYPE_INT);
+                out.writeInt((Integer) val);
+            } else if (val instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) val);
+            } else if (val instanceof Double) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble((Double) val);
+            } else {
+                out.writeByte(TYPE_SERIALIZED);
+                byte[] b = SerializableHelper.writeObject(val);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+        }
+        out.close();
+        return bstream.toByteArray();
+    }
+
+    static JobContextObject decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (bytes.length >= 2 && bytes[0] == JAVA_STREAM_MAGIC_0 && bytes[1] == JAVA_STREAM_MAGIC_1) {
+            return SerializableHelper.readObject(bytes);
+        }
+
+        if (bytes.length < MAGIC.length || bytes[0] != MAGIC[0] || bytes[1] != MAGIC[1] || bytes[2] != MAGIC[2]) {
+            throw new IOException("unknown format of job context");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, MAGIC.length, bytes.length - MAGIC.length));
+        String className = readString(in);
+        int num = in.readInt();
+        Map<String, Object> args = new HashMap<String, Object>(num);
+        for (int i = 0; i < num; i++) {
+            String name = readString(in);
+            byte type = in.readByte();
+            Object val;
+            if (type == TYPE_NULL) {
+                val = null;
+            } else if (type == TYPE_STRING) {
+                val = readString(in);
+            } else if (type == TYPE_LONG) {
+                val = in.readLong();
+            } else if (type == TYPE_INT) {
+                val = in.readInt();
+            } else if (type == TYPE_BOOLEAN) {
+                val = in.readBoolean();
+            } else if (type == TYPE_DOUBLE) {
+                val = in.readDouble();
+            } else if (type == TYPE_SERIALIZED) {
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                val = SerializableHelper.readObject(b);
+            } else {
+                throw new IOException(String.format("unknown type[%s] of job context field[%s]", type, name));
+            }
+            args.put(name, val);
+        }
+        return new JobContextObject(className, args);
+    }
+}
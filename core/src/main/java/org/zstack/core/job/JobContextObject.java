@@ -17,6 +17,19 @@ final class JobContextObject implements Serializable {
         save(job);
     }
 
+    JobContextObject(String className, Map<String, Object> args) {
+        this.className = className;
+        this.args = args;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    Map<String, Object> getArgs() {
+        return args;
+    }
+
     private void save(Job obj) {
         Class<?> currClass = obj.getClass();
         Field debugField = null;
@@ -17,4 +17,10 @@ public class JobGlobalProperty {
     public static String QUARTZ_DB_PASSWORD;
     @GlobalProperty(name = "QuartzJdbcJobFacade.maxDbConnection", defaultValue = "10")
     public static int QUARTZ_DB_MAX_CONNECTIONS;
+    @GlobalProperty(name = "JobQueueFacade.shardLocks", defaultValue = "false")
+    public static boolean JOB_QUEUE_SHARD_LOCKS;
+    @GlobalProperty(name = "JobQueueFacade.claimBatchSize", defaultValue = "50")
+    public static int JOB_QUEUE_CLAIM_BATCH_SIZE;
+    @GlobalProperty(name = "JobQueueFacade.compactContext", defaultValue = "false")
+    public static boolean JOB_QUEUE_COMPACT_CONTEXT;
 }
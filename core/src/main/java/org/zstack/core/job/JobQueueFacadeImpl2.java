@@ -7,6 +7,8 @@ import org.zstack.core.Platform;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.CloudBusEventListener;
 import org.zstack.core.cloudbus.EventSubscriberReceipt;
+import org.zstack.core.config.GlobalConfigException;
+import org.zstack.core.config.GlobalConfigValidatorExtensionPoint;
 import org.zstack.core.db.*;
 import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.header.errorcode.SysErrors;
@@ -25,8 +27,8 @@ import org.zstack.utils.DebugUtils;
 import org.zstack.utils.JsonWrapper;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
-import org.zstack.utils.serializable.SerializableHelper;
 
+import javax.persistence.Query;
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import java.io.IOException;
@@ -34,6 +36,11 @@ import java.sql.Timestamp;
 import java.util.*;
 
 /**
+ * jobs of a queue are saved and the queue is released under a DB lock. When 'JobQueueFacade.shardLocks' is set, the
+ * lock is chosen by hashing the queue name into 'jobQueue.lockShards' locks, so queues in different shards don't wait
+ * for each other; otherwise all queues share one lock, as management nodes not knowing shards do. The worker of a queue
+ * fetches ids of pending jobs in batches of 'JobQueueFacade.claimBatchSize' and claims a job by changing its state
+ * from Pending to Processing in one conditional UPDATE, which needs no lock
  */
 public class JobQueueFacadeImpl2 implements JobQueueFacade, CloudBusEventListener, Component, ManagementNodeChangeListener {
     private static final CLogger logger = Utils.getLogger(JobQueueFacadeImpl2.class);
@@ -41,6 +48,17 @@ public class JobQueueFacadeImpl2 implements JobQueueFacade, CloudBusEventListene
     private static final String ORPHAN_JOB_LOCK_NAME = "JobQueueFacade.orphanJobLock";
     private static final int LOCK_TIMEOUT = 60;
 
+    private static String lockName(String queueName) {
+        // all management nodes must agree on the lock of a queue, otherwise saveJob() races with releasing the queue in
+        // takeJob(); so shards are only used after all management nodes are upgraded and set 'JobQueueFacade.shardLocks',
+        // and the number of shards is a global config shared by them
+        if (!JobGlobalProperty.JOB_QUEUE_SHARD_LOCKS) {
+            return LOCK_NAME;
+        }
+
+        return String.format("%s.%s", LOCK_NAME, (queueName.hashCode() & Integer.MAX_VALUE) % JobQueueGlobalConfig.LOCK_SHARDS.value(Integer.class));
+    }
+
     private Map<Long, JobWrapper> wrappers = Collections.synchronizedMap(new HashMap<Long, JobWrapper>());
 
     @Autowired
@@ -77,6 +95,16 @@ public class JobQueueFacadeImpl2 implements JobQueueFacade, CloudBusEventListene
 
     @Override
     public boolean start() {
+        JobQueueGlobalConfig.LOCK_SHARDS.installValidateExtension(new GlobalConfigValidatorExtensionPoint() {
+            @Override
+            public void validateGlobalConfig(String category, String name, String oldValue, String newValue) throws GlobalConfigException {
+                if (JobGlobalProperty.JOB_QUEUE_SHARD_LOCKS) {
+                    throw new GlobalConfigException(String.format("%s.%s cannot be changed while management nodes lock sharded queues," +
+                            " unset JobQueueFacade.shardLocks and restart all management nodes first", category, name));
+                }
+            }
+        });
+
         unsubscriber = bus.subscribeEvent(this, new JobEvent());
         stopped = false;
         return true;
@@ -184,6 +212,8 @@ public class JobQueueFacadeImpl2 implements JobQueueFacade, CloudBusEventListene
     private <T> void execute(final String queueName, final String owner, final JobQueueEntryVO entry, final ReturnValueCompletion<T> completion, final Class<? extends T> returnType) {
         new JobWrapper() {
             private Long myJobId;
+            // ids of pending jobs fetched but not claimed yet, in the order of id
+            private final LinkedList<Long> fetched = new LinkedList<Long>();
 
             @Transactional
             private JobQueueVO saveJob() throws IOException {
@@ -253,45 +283,71 @@ public class JobQueueFacadeImpl2 implements JobQueueFacade, CloudBusEventListene
                 bus.publish(evt);
             }
 
-            private JobQueueEntryVO findJob(JobQueueVO qvo) {
-                SimpleQuery<JobQueueEntryVO> q = dbf.createQuery(JobQueueEntryVO.class);
-                q.add(JobQueueEntryVO_.state, SimpleQuery.Op.EQ, JobState.Pending);
-                q.add(JobQueueEntryVO_.jobQueueId, SimpleQuery.Op.EQ, qvo.getId());
-                q.setLimit(1);
-                q.orderBy(JobQueueEntryVO_.id, SimpleQuery.Od.ASC);
-                return q.find();
+            @Transactional(readOnly = true)
+            private List<Long> findJobs(JobQueueVO qvo) {
+                String sql = "select e.id from JobQueueEntryVO e where e.jobQueueId = :queueId and e.state = :state order by e.id";
+                TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
+                q.setParameter("queueId", qvo.getId());
+                q.setParameter("state", JobState.Pending);
+                q.setMaxResults(JobGlobalProperty.JOB_QUEUE_CLAIM_BATCH_SIZE);
+                return q.getResultList();
+            }
+
+            @Transactional
+            private boolean claim(long jobId) {
+                String sql = "update JobQueueEntryVO e set e.state = :processing where e.id = :id and e.state = :pending";
+                Query q = dbf.getEntityManager().createQuery(sql);
+                q.setParameter("processing", JobState.Processing);
+                q.setParameter("pending", JobState.Pending);
+                q.setParameter("id", jobId);
+                return q.executeUpdate() > 0;
             }
 
             private Bucket takeJob(final JobQueueVO qvo) {
-                GLock lock = new GLock(LOCK_NAME, LOCK_TIMEOUT);
-                lock.lock();
-                try {
-                    JobQueueEntryVO jobe = findJob(qvo);
-                    if (jobe == null) {
-                        // nothing to do, release queue
-                        dbf.remove(qvo);
-                        logger.debug(String.format("[JobQueue released, no pending task, delete the queue] last owner: %s, queue name: %s, queue id: %s",
-                                qvo.getOwner(), qvo.getName(), qvo.getId()));
-                        return null;
+                while (true) {
+                    if (fetched.isEmpty()) {
+                        fetched.addAll(findJobs(qvo));
                     }
 
-                    while (true) {
+                    if (fetched.isEmpty()) {
+                        GLock lock = new GLock(lockName(qvo.getName()), LOCK_TIMEOUT);
+                        lock.lock();
                         try {
-                            JobContextObject ctx = SerializableHelper.readObject(jobe.getContext());
-                            Job theJob = ctx.load();
-                            jobe.setState(JobState.Processing);
-                            jobe = dbf.updateAndRefresh(jobe);
-                            return Bucket.newBucket(jobe, theJob);
-                        } catch (Exception e1) {
-                            String err = String.format("[Job de-serialize failed, the job will be marked as Error] queue name: %s, job id: %s, %s", qvo.getName(),
-                                    jobe.getId(), e1.getMessage());
-                            logger.warn(err, e1);
-                            jobFail(jobe, errf.stringToInternalError(err));
-                            jobe = findJob(qvo);
+                            // a job may have been saved after the fetch above, saveJob() holds the same lock
+                            fetched.addAll(findJobs(qvo));
+                            if (fetched.isEmpty()) {
+                                // nothing to do, release queue
+                                dbf.remove(qvo);
+                                logger.debug(String.format("[JobQueue released, no pending task, delete the queue] last owner: %s, queue name: %s, queue id: %s",
+                                        qvo.getOwner(), qvo.getName(), qvo.getId()));
+                                return null;
+                            }
+                        } finally {
+                            lock.unlock();
                         }
                     }
-                } finally {
-                    lock.unlock();
+
+                    long jobId = fetched.poll();
+                    if (!claim(jobId)) {
+                        // the job was removed or claimed after fetched
+                        continue;
+                    }
+
+                    JobQueueEntryVO jobe = dbf.findById(jobId, JobQueueEntryVO.class);
+                    if (jobe == null) {
+                        continue;
+                    }
+
+                    try {
+                        JobContextObject ctx = JobContextCodec.decode(jobe.getContext());
+                        Job theJob = ctx.load();
+                        return Bucket.newBucket(jobe, theJob);
+                    } catch (Exception e1) {
+                        String err = String.format("[Job de-serialize failed, the job will be marked as Error] queue name: %s, job id: %s, %s", qvo.getName(),
+                                jobe.getId(), e1.getMessage());
+                        logger.warn(err, e1);
+                        jobFail(jobe, errf.stringToInternalError(err));
+                    }
                 }
             }
 
@@ -349,7 +405,7 @@ public class JobQueueFacadeImpl2 implements JobQueueFacade, CloudBusEventListene
                 }
 
                 try {
-                    GLock lock = new GLock(LOCK_NAME, LOCK_TIMEOUT);
+                    GLock lock = new GLock(lockName(queueName), LOCK_TIMEOUT);
                     JobQueueVO qvo = null;
                     lock.lock();
                     try {
@@ -387,7 +443,7 @@ public class JobQueueFacadeImpl2 implements JobQueueFacade, CloudBusEventListene
         try {
             JobQueueEntryVO e = new JobQueueEntryVO();
             JobContextObject ctx = new JobContextObject(job);
-            byte[] bits = SerializableHelper.writeObject(ctx);
+            byte[] bits = JobContextCodec.encode(ctx);
             e.setContext(bits);
             e.setRestartable(job.getClass().isAnnotationPresent(RestartableJob.class));
             e.setName(job.getClass().getName());
@@ -0,0 +1,15 @@
+package org.zstack.core.job;
+
+import org.zstack.core.config.GlobalConfig;
+import org.zstack.core.config.GlobalConfigDefinition;
+import org.zstack.core.config.GlobalConfigValidation;
+
+/**
+ */
+@GlobalConfigDefinition
+public class JobQueueGlobalConfig {
+    public static final String CATEGORY = "jobQueue";
+
+    @GlobalConfigValidation(numberGreaterThan = 1)
+    public static GlobalConfig LOCK_SHARDS = new GlobalConfig(CATEGORY, "lockShards");
+}
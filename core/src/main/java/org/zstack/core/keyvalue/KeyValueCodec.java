@@ -0,0 +1,113 @@
+package org.zstack.core.keyvalue;
+
+import com.google.gson.*;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.utils.Compresser;
+import org.zstack.utils.serializable.SerializableHelper;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * binary format of KeyValueBinaryVO.contents:
+ *
+ * | magic(2 bytes) | version(1 byte) | class name(UTF) | deflated JSON of the entity |
+ *
+ * contents written by Java serialization(starting with 0xACED) are still readable
+ */
+public class KeyValueCodec {
+    private static final byte MAGIC0 = 'Z';
+    private static final byte MAGIC1 = 'K';
+    private static final byte VERSION_1 = 1;
+    private static final byte CURRENT_VERSION = VERSION_1;
+
+    private static final byte JAVA_SERIALIZATION_MAGIC0 = (byte) 0xAC;
+    private static final byte JAVA_SERIALIZATION_MAGIC1 = (byte) 0xED;
+
+    private static final Gson gson;
+
+    static {
+        // keep milliseconds of dates, the default gson date format drops them
+        gson = new GsonBuilder()
+                .registerTypeAdapter(Date.class, new DateCoder<Date>() {
+                    @Override
+                    Date fromTime(long time) {
+                        return new Date(time);
+                    }
+                })
+                .registerTypeAdapter(Timestamp.class, new DateCoder<Timestamp>() {
+                    @Override
+                    Timestamp fromTime(long time) {
+                        return new Timestamp(time);
+                    }
+                })
+                .create();
+    }
+
+    private static abstract class DateCoder<T extends Date> implements JsonSerializer<T>, JsonDeserializer<T> {
+        abstract T fromTime(long time);
+
+        @Override
+        public JsonElement serialize(T src, Type typeOfSrc, JsonSerializationContext context) {
+            return new JsonPrimitive(src.getTime());
+        }
+
+        @Override
+        public T deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+            return fromTime(json.getAsLong());
+        }
+    }
+
+    public static byte[] encode(Object entity, KeyValueStorageMode mode) {
+        try {
+            if (mode == KeyValueStorageMode.Legacy) {
+                return SerializableHelper.writeObject(entity);
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bos);
+            out.writeByte(MAGIC0);
+            out.writeByte(MAGIC1);
+            out.writeByte(CURRENT_VERSION);
+            out.writeUTF(entity.getClass().getName());
+            out.write(Compresser.deflate(gson.toJson(entity).getBytes("UTF-8")));
+            out.close();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            throw new CloudRuntimeException(e);
+        }
+    }
+
+    public static <T> T decode(byte[] contents) {
+        try {
+            if (contents.length >= 2 && contents[0] == JAVA_SERIALIZATION_MAGIC0 && contents[1] == JAVA_SERIALIZATION_MAGIC1) {
+                return SerializableHelper.readObject(contents);
+            }
+
+            if (contents.length < 3 || contents[0] != MAGIC0 || contents[1] != MAGIC1) {
+                throw new CloudRuntimeException("unknown format of key-value binary contents");
+            }
+
+            byte version = contents[2];
+            if (version != VERSION_1) {
+                throw new CloudRuntimeException(String.format("unsupported version[%s] of key-value binary contents", version));
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents, 3, contents.length - 3));
+            String className = in.readUTF();
+            int offset = contents.length - in.available();
+            in.close();
+
+            byte[] body = new byte[contents.length - offset];
+            System.arraycopy(contents, offset, body, 0, body.length);
+            String json = new String(Compresser.inflate(body), "UTF-8");
+            return (T) gson.fromJson(json, Class.forName(className));
+        } catch (CloudRuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CloudRuntimeException(e);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.zstack.core.keyvalue;
 
 import org.zstack.header.core.keyvalue.KeyValueEntity;
 
+import java.util.Map;
+
 /**
  */
 public interface KeyValueFacade {
@@ -14,4 +16,12 @@ public interface KeyValueFacade {
     void delete(KeyValueEntity entity);
 
     <T> T find(String uuid);
+
+    /**
+     * read only the given field paths of an entity without loading its binary contents
+     * @param uuid entity uuid
+     * @param keys field paths, e.g. "a1", "child.list1[0]", "dict[\"name\"]"
+     * @return a map from field path to field value, fields not set on the entity are absent
+     */
+    Map<String, Object> findFields(String uuid, String...keys);
 }
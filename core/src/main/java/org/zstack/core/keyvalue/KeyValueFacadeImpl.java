@@ -2,14 +2,14 @@ package org.zstack.core.keyvalue;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.CoreGlobalProperty;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.header.core.keyvalue.KeyValueEntity;
-import org.zstack.header.exception.CloudRuntimeException;
-import org.zstack.utils.serializable.SerializableHelper;
+import org.zstack.utils.TypeUtils;
 
 import javax.persistence.Query;
-import java.io.IOException;
-import java.util.List;
+import javax.persistence.TypedQuery;
+import java.util.*;
 
 /**
  */
@@ -17,35 +17,92 @@ public class KeyValueFacadeImpl implements KeyValueFacade {
     @Autowired
     private DatabaseFacade dbf;
 
+    private KeyValueStorageMode storageMode = KeyValueStorageMode.valueOf(CoreGlobalProperty.KEY_VALUE_STORAGE_MODE);
+
+    private KeyValueVO toKeyValueVO(KeyValueEntity entity, KeyValueStruct struct) {
+        KeyValueVO vo = new KeyValueVO();
+        vo.setClassName(entity.getClass().getName());
+        vo.setUuid(entity.getUuid());
+        vo.setEntityKey(struct.getKey());
+        vo.setEntityValue(struct.getValue());
+        vo.setValueType(struct.getType().getName());
+        if (storageMode == KeyValueStorageMode.Columnar) {
+            vo.setNumberValue(struct.getNumberValue());
+        }
+        return vo;
+    }
+
     @Override
     @Transactional
     public void persist(KeyValueEntity entity) {
         KeyValueBinaryVO bvo = new KeyValueBinaryVO();
         bvo.setUuid(entity.getUuid());
-        try {
-            bvo.setContents(SerializableHelper.writeObject(entity));
-        } catch (IOException e) {
-            throw new CloudRuntimeException(e);
-        }
+        bvo.setContents(KeyValueCodec.encode(entity, storageMode));
         dbf.getEntityManager().persist(bvo);
 
         List<KeyValueStruct> structs = new KeyValueSerializer().build(entity);
         for (KeyValueStruct struct : structs) {
-            KeyValueVO vo = new KeyValueVO();
-            vo.setClassName(entity.getClass().getName());
-            vo.setUuid(entity.getUuid());
-            vo.setEntityKey(struct.getKey());
-            vo.setEntityValue(struct.getValue());
-            vo.setValueType(struct.getType().getName());
-            dbf.getEntityManager().persist(vo);
+            dbf.getEntityManager().persist(toKeyValueVO(entity, struct));
         }
     }
 
     @Override
     @Transactional
     public void update(KeyValueEntity entity) {
-        delete(entity.getUuid());
-        persist(entity);
+        if (storageMode == KeyValueStorageMode.Legacy) {
+            delete(entity.getUuid());
+            persist(entity);
+            return;
+        }
+
+        KeyValueBinaryVO bvo = dbf.getEntityManager().find(KeyValueBinaryVO.class, entity.getUuid());
+        if (bvo == null) {
+            persist(entity);
+            return;
+        }
+
+        bvo.setContents(KeyValueCodec.encode(entity, storageMode));
+        dbf.getEntityManager().merge(bvo);
+
+        String sql = "select vo from KeyValueVO vo where vo.uuid = :uuid";
+        TypedQuery<KeyValueVO> q = dbf.getEntityManager().createQuery(sql, KeyValueVO.class);
+        q.setParameter("uuid", entity.getUuid());
+        Map<String, KeyValueVO> existing = new HashMap<String, KeyValueVO>();
+        for (KeyValueVO vo : q.getResultList()) {
+            existing.put(vo.getEntityKey(), vo);
+        }
+
+        // only write the fields that changed, the rest rows are left untouched
+        List<KeyValueStruct> structs = new KeyValueSerializer().build(entity);
+        for (KeyValueStruct struct : structs) {
+            KeyValueVO vo = existing.remove(struct.getKey());
+            if (vo == null) {
+                dbf.getEntityManager().persist(toKeyValueVO(entity, struct));
+                continue;
+            }
+
+            String valueType = struct.getType().getName();
+            if (vo.getEntityValue().equals(struct.getValue()) && vo.getValueType().equals(valueType)
+                    && TypeUtils.nullSafeEquals(vo.getNumberValue(), struct.getNumberValue())) {
+                continue;
+            }
+
+            vo.setEntityValue(struct.getValue());
+            vo.setValueType(valueType);
+            vo.setNumberValue(struct.getNumberValue());
+            dbf.getEntityManager().merge(vo);
+        }
+
+        if (!existing.isEmpty()) {
+            List<Long> ids = new ArrayList<Long>(existing.size());
+            for (KeyValueVO vo : existing.values()) {
+                ids.add(vo.getId());
+            }
+
+            Query dq = dbf.getEntityManager().createQuery("delete from KeyValueVO vo where vo.id in (:ids)");
+            dq.setParameter("ids", ids);
+            dq.executeUpdate();
+        }
     }
 
     @Override
@@ -71,10 +128,24 @@ public class KeyValueFacadeImpl implements KeyValueFacade {
     @Transactional
     public <T> T find(String uuid) {
         KeyValueBinaryVO bvo = dbf.getEntityManager().find(KeyValueBinaryVO.class, uuid);
-        try {
-            return SerializableHelper.readObject(bvo.getContents());
-        } catch (Exception e) {
-            throw new CloudRuntimeException(e);
+        return KeyValueCodec.decode(bvo.getContents());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, Object> findFields(String uuid, String... keys) {
+        Map<String, Object> ret = new HashMap<String, Object>();
+        if (keys.length == 0) {
+            return ret;
+        }
+
+        String sql = "select vo from KeyValueVO vo where vo.uuid = :uuid and vo.entityKey in (:keys)";
+        TypedQuery<KeyValueVO> q = dbf.getEntityManager().createQuery(sql, KeyValueVO.class);
+        q.setParameter("uuid", uuid);
+        q.setParameter("keys", Arrays.asList(keys));
+        for (KeyValueVO vo : q.getResultList()) {
+            ret.put(vo.getEntityKey(), KeyValueUtils.toStruct(vo).toValue());
         }
+        return ret;
     }
 }
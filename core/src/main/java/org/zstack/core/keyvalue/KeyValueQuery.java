@@ -5,19 +5,17 @@ import org.springframework.beans.factory.annotation.Autowire;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.CoreGlobalProperty;
 import org.zstack.core.db.DatabaseFacade;
-import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.utils.Bucket;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
-import org.zstack.utils.serializable.SerializableHelper;
 
 import javax.persistence.TypedQuery;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  */
@@ -28,6 +26,8 @@ public class KeyValueQuery<T> {
     private class Condition {
         String condName;
         Object value;
+        String fallbackCondName;
+        Object fallbackValue;
         String sql;
         String entityName;
     }
@@ -42,7 +42,9 @@ public class KeyValueQuery<T> {
     private int counter;
     private int entityNameCounter;
     private List<Condition> conditions = new ArrayList<Condition>();
+    private List<String> selects = new ArrayList<String>();
     private String sql;
+    private boolean useNumberValue = KeyValueStorageMode.valueOf(CoreGlobalProperty.KEY_VALUE_STORAGE_MODE) == KeyValueStorageMode.Columnar;
 
     public KeyValueQuery(Class<T> clz) {
         proxy = new KeyValueEntityProxy<T>(clz);
@@ -66,6 +68,25 @@ public class KeyValueQuery<T> {
         opAndVals.add(Bucket.newBucket(op, vals));
     }
 
+    /**
+     * project a field for listFields()/findFields(), e.g. q.select(q.entity().getA1())
+     */
+    public void select(Object _) {
+        opAndVals.add(Bucket.newBucket(null, null));
+    }
+
+    private boolean isNumberCondition(Op op, Object val) {
+        if (!useNumberValue) {
+            return false;
+        }
+
+        if (!(val instanceof Number) && !(val instanceof Date)) {
+            return false;
+        }
+
+        return op == Op.EQ || op == Op.NOT_EQ || op == Op.GT || op == Op.LT || op == Op.GTE || op == Op.LTE;
+    }
+
     private void done() {
         for (int i=0; i<proxy.getPaths().size(); i++) {
             String key = proxy.getPaths().get(i);
@@ -73,7 +94,9 @@ public class KeyValueQuery<T> {
             Op op = b.get(0);
             Object[] vals = b.safeGet(1);
 
-            if (op == Op.IN) {
+            if (op == null) {
+                selects.add(key);
+            } else if (op == Op.IN) {
                 DebugUtils.Assert(vals.length > 0, String.format("condition[%s] requires at least one parameter", op));
                 condIn(key, vals);
             } else if (op == Op.NOT_IN) {
@@ -88,9 +111,19 @@ public class KeyValueQuery<T> {
                 Condition c = new Condition();
                 c.condName = makeValueName();
                 c.entityName = makeEntityName();
-                c.sql = String.format("(%s.entityKey like '%s' and %s.entityValue %s :%s)", c.entityName, key, c.entityName, op, c.condName);
                 DebugUtils.Assert(vals[0] != null, String.format("condition[%s] doesn't support NULL value", op));
-                c.value = vals[0].toString();
+                if (isNumberCondition(op, vals[0])) {
+                    // compare on the typed column so the index on (entityKey, numberValue) is used;
+                    // rows written before numberValue existed and not backfilled by the upgrade(e.g. dates) still compare on entityValue
+                    c.fallbackCondName = makeValueName();
+                    c.sql = String.format("(%s.entityKey like '%s' and (%s.numberValue %s :%s or (%s.numberValue is null and %s.entityValue %s :%s)))",
+                            c.entityName, key, c.entityName, op, c.condName, c.entityName, c.entityName, op, c.fallbackCondName);
+                    c.value = KeyValueUtils.toNumberValue(vals[0]);
+                    c.fallbackValue = vals[0].toString();
+                } else {
+                    c.sql = String.format("(%s.entityKey like '%s' and %s.entityValue %s :%s)", c.entityName, key, c.entityName, op, c.condName);
+                    c.value = vals[0].toString();
+                }
                 conditions.add(c);
             }
         }
@@ -104,8 +137,12 @@ public class KeyValueQuery<T> {
             joinConds.add(String.format("e.uuid = %s.uuid", c.entityName));
         }
 
-        sql = "select distinct e.uuid from KeyValueVO e, %s where e.className = :clz and %s and %s";
-        sql = String.format(sql, StringUtils.join(entityNameList, ","), StringUtils.join(joinConds, " and "), StringUtils.join(conds, " and "));
+        if (conditions.isEmpty()) {
+            sql = "select distinct e.uuid from KeyValueVO e where e.className = :clz";
+        } else {
+            sql = "select distinct e.uuid from KeyValueVO e, %s where e.className = :clz and %s and %s";
+            sql = String.format(sql, StringUtils.join(entityNameList, ","), StringUtils.join(joinConds, " and "), StringUtils.join(conds, " and "));
+        }
 
         if (logger.isTraceEnabled()) {
             logger.trace(sql);
@@ -113,15 +150,23 @@ public class KeyValueQuery<T> {
     }
 
     @Transactional(readOnly = true)
-    private List<KeyValueBinaryVO> listBinaryVO() {
+    private List<String> listUuids() {
         TypedQuery<String> q = dbf.getEntityManager().createQuery(sql, String.class);
         q.setParameter("clz", entityClass.getName());
         for (Condition c : conditions) {
             if (c.condName != null) {
                 q.setParameter(c.condName, c.value);
             }
+            if (c.fallbackCondName != null) {
+                q.setParameter(c.fallbackCondName, c.fallbackValue);
+            }
         }
-        List<String> uuids = q.getResultList();
+        return q.getResultList();
+    }
+
+    @Transactional(readOnly = true)
+    private List<KeyValueBinaryVO> listBinaryVO() {
+        List<String> uuids = listUuids();
         if (uuids.isEmpty()) {
             return new ArrayList<KeyValueBinaryVO>();
         }
@@ -141,15 +186,44 @@ public class KeyValueQuery<T> {
         return CollectionUtils.transformToList(vos, new Function<T, KeyValueBinaryVO>() {
             @Override
             public T call(KeyValueBinaryVO arg) {
-                try {
-                    return SerializableHelper.readObject(arg.getContents());
-                } catch (Exception e) {
-                    throw new CloudRuntimeException(e);
-                }
+                return KeyValueCodec.decode(arg.getContents());
             }
         });
     }
 
+    @Transactional(readOnly = true)
+    private List<Map<String, Object>> listFieldsOfEntities() {
+        List<String> uuids = listUuids();
+        if (uuids.isEmpty()) {
+            return new ArrayList<Map<String, Object>>();
+        }
+
+        Map<String, Map<String, Object>> fields = new LinkedHashMap<String, Map<String, Object>>();
+        for (String uuid : uuids) {
+            fields.put(uuid, new HashMap<String, Object>());
+        }
+
+        List<String> keyConds = new ArrayList<String>(selects.size());
+        for (String key : selects) {
+            keyConds.add(String.format("vo.entityKey like '%s'", key));
+        }
+
+        String fsql = String.format("select vo from KeyValueVO vo where vo.uuid in (:uuids) and (%s)", StringUtils.join(keyConds, " or "));
+        TypedQuery<KeyValueVO> q = dbf.getEntityManager().createQuery(fsql, KeyValueVO.class);
+        q.setParameter("uuids", uuids);
+        for (KeyValueVO vo : q.getResultList()) {
+            fields.get(vo.getUuid()).put(vo.getEntityKey(), KeyValueUtils.toStruct(vo).toValue());
+        }
+
+        return new ArrayList<Map<String, Object>>(fields.values());
+    }
+
+    private List<Map<String, Object>> listFieldsObject() {
+        done();
+        DebugUtils.Assert(!selects.isEmpty(), "call select() to specify the fields before listing fields");
+        return listFieldsOfEntities();
+    }
+
     private void condNotNull(String key) {
         Condition c = new Condition();
         c.entityName = makeEntityName();
@@ -208,4 +282,22 @@ public class KeyValueQuery<T> {
         DebugUtils.Assert(lst.size() == 1, String.format("find expects only one result, but %s got", lst.size()));
         return lst.get(0);
     }
+
+    /**
+     * @return for each matched entity, a map from field path to value of fields specified by select().
+     * The binary contents of entities are not loaded
+     */
+    public List<Map<String, Object>> listFields() {
+        return listFieldsObject();
+    }
+
+    public Map<String, Object> findFields() {
+        List<Map<String, Object>> lst = listFieldsObject();
+        if (lst.isEmpty()) {
+            return null;
+        }
+
+        DebugUtils.Assert(lst.size() == 1, String.format("find expects only one result, but %s got", lst.size()));
+        return lst.get(0);
+    }
 }
@@ -33,11 +33,11 @@ public class KeyValueSerializer {
     private void take(Field f, Object obj) throws IllegalAccessException {
         f.setAccessible(true);
         Object val = f.get(obj);
-        ret.add(new KeyValueStruct(makePath(), val.toString(), val.getClass()));
+        ret.add(new KeyValueStruct(makePath(), val));
     }
 
     private void take(Object obj) {
-        ret.add(new KeyValueStruct(makePath(), obj.toString(), obj.getClass()));
+        ret.add(new KeyValueStruct(makePath(), obj));
     }
 
     private boolean isNullValue(Field f, Object obj) throws IllegalAccessException {
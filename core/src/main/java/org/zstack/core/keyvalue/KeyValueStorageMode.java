@@ -0,0 +1,15 @@
+package org.zstack.core.keyvalue;
+
+/**
+ */
+public enum KeyValueStorageMode {
+    /**
+     * java-serialized binary; update() deletes all rows of the entity and persists them again
+     */
+    Legacy,
+    /**
+     * versioned compact binary; update() only touches rows of fields that changed,
+     * numeric and date fields are also stored in the typed column KeyValueVO.numberValue
+     */
+    Columnar
+}
@@ -12,6 +12,7 @@ public class KeyValueStruct {
     private String key;
     private String value;
     private Class type;
+    private Double numberValue;
 
     public KeyValueStruct(String key, String value, Class type) {
         this.key = key;
@@ -19,6 +20,11 @@ public class KeyValueStruct {
         this.type = type;
     }
 
+    public KeyValueStruct(String key, Object value) {
+        this(key, value.toString(), value.getClass());
+        numberValue = KeyValueUtils.toNumberValue(value);
+    }
+
     public String getKey() {
         return key;
     }
@@ -43,17 +49,25 @@ public class KeyValueStruct {
         this.type = type;
     }
 
+    public Double getNumberValue() {
+        return numberValue;
+    }
+
+    public void setNumberValue(Double numberValue) {
+        this.numberValue = numberValue;
+    }
+
     public Object toValue() {
         if (TypeUtils.isPrimitiveOrWrapper(type)) {
             return TypeUtils.stringToValue(value, type);
         }
 
-        if (Date.class.isAssignableFrom(type)) {
-            return new Date(value);
+        if (Timestamp.class.isAssignableFrom(type)) {
+            return new Timestamp(numberValue != null ? numberValue.longValue() : new Date(value).getTime());
         }
 
-        if (Timestamp.class.isAssignableFrom(type)) {
-            return new Timestamp(new Date(value).getTime());
+        if (Date.class.isAssignableFrom(type)) {
+            return numberValue != null ? new Date(numberValue.longValue()) : new Date(value);
         }
 
         throw new CloudRuntimeException(String.format("unknown type[%s]", type.getName()));
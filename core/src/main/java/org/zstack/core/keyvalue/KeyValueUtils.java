@@ -1,5 +1,6 @@
 package org.zstack.core.keyvalue;
 
+import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.utils.TypeUtils;
 
 import java.sql.Timestamp;
@@ -19,4 +20,26 @@ public class KeyValueUtils {
 
         return false;
     }
+
+    public static Double toNumberValue(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+
+        if (value instanceof Date) {
+            return (double) ((Date) value).getTime();
+        }
+
+        return null;
+    }
+
+    public static KeyValueStruct toStruct(KeyValueVO vo) {
+        try {
+            KeyValueStruct struct = new KeyValueStruct(vo.getEntityKey(), vo.getEntityValue(), Class.forName(vo.getValueType()));
+            struct.setNumberValue(vo.getNumberValue());
+            return struct;
+        } catch (ClassNotFoundException e) {
+            throw new CloudRuntimeException(e);
+        }
+    }
 }
@@ -28,6 +28,9 @@ public class KeyValueVO {
     @Column
     private String entityValue;
 
+    @Column
+    private Double numberValue;
+
     @Column
     private String valueType;
 
@@ -78,4 +81,12 @@ public class KeyValueVO {
     public void setEntityValue(String entityValue) {
         this.entityValue = entityValue;
     }
+
+    public Double getNumberValue() {
+        return numberValue;
+    }
+
+    public void setNumberValue(Double numberValue) {
+        this.numberValue = numberValue;
+    }
 }
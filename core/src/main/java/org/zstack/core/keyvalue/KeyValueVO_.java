@@ -0,0 +1,17 @@
+package org.zstack.core.keyvalue;
+
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.StaticMetamodel;
+
+/**
+ */
+@StaticMetamodel(KeyValueVO.class)
+public class KeyValueVO_ {
+    public static volatile SingularAttribute<KeyValueVO, Long> id;
+    public static volatile SingularAttribute<KeyValueVO, String> uuid;
+    public static volatile SingularAttribute<KeyValueVO, String> className;
+    public static volatile SingularAttribute<KeyValueVO, String> entityKey;
+    public static volatile SingularAttribute<KeyValueVO, String> entityValue;
+    public static volatile SingularAttribute<KeyValueVO, Double> numberValue;
+    public static volatile SingularAttribute<KeyValueVO, String> valueType;
+}
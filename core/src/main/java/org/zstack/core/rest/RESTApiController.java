@@ -7,6 +7,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.zstack.header.message.APIMessage;
 import org.zstack.header.message.APISyncCallMessage;
 import org.zstack.header.rest.RESTApiFacade;
@@ -31,9 +32,10 @@ public class RESTApiController {
     private RESTFacade restf;
 
     @RequestMapping(value = RESTConstant.REST_API_RESULT + "{uuid}", method = { RequestMethod.GET, RequestMethod.PUT })
-    public void queryResult(@PathVariable String uuid, HttpServletResponse rsp) throws IOException {
+    public void queryResult(@PathVariable String uuid, @RequestParam(value = "timeout", required = false) Long timeout,
+                            HttpServletResponse rsp) throws IOException {
         try {
-            RestAPIResponse apiRsp = restApi.getResult(uuid);
+            RestAPIResponse apiRsp = timeout == null ? restApi.getResult(uuid) : restApi.getResult(uuid, timeout);
             if (apiRsp == null) {
                 rsp.sendError(HttpStatus.SC_NOT_FOUND, String.format("No api result[uuid:%s] found", uuid));
                 return;
@@ -1,11 +1,12 @@
 package org.zstack.core.rest;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.config.BeanDefinition;
-import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
-import org.springframework.core.type.filter.AssignableTypeFilter;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.CloudBusEventListener;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
 import org.zstack.header.apimediator.ApiMediatorConstant;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.message.*;
@@ -14,6 +15,7 @@ import org.zstack.header.rest.RestAPIResponse;
 import org.zstack.header.rest.RestAPIState;
 import org.zstack.header.rest.RestAPIVO;
 import org.zstack.header.search.APISearchMessage;
+import org.zstack.utils.BeanUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
@@ -21,38 +23,113 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.Query;
+import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * results of async APIs are kept in memory and served from memory, a client can wait for a result by long polling
+ * instead of polling repeatedly.
+ *
+ * RestAPIVO is only for clients polling a result after the management node restarts or from another management node,
+ * it's written according to persistMode:
+ * Sync: the default, written in the calling thread before the API is sent and when the result comes;
+ * Batch: opt-in, queued and written every persistBatchInterval milliseconds in one transaction, a failed batch is dropped;
+ * None: not written
+ */
 public class RESTApiFacadeImpl implements RESTApiFacade, CloudBusEventListener {
     private static final CLogger logger = Utils.getLogger(RESTApiFacadeImpl.class);
 
+    public enum PersistMode {
+        Sync,
+        Batch,
+        None
+    }
+
     private EntityManagerFactory entityManagerFactory;
     private EntityManager entityManager = null;
     private Set<String> basePkgNames;
-    private List<String> processingRequests = Collections.synchronizedList(new ArrayList<String>(100));
+    private PersistMode persistMode = PersistMode.Sync;
+    private long persistBatchInterval = 500;
+    private long resultCacheTimeout = 600;
+    private long maxLongPollTimeout = 60;
+
+    private final Map<String, RestAPIResponse> processingRequests = new ConcurrentHashMap<String, RestAPIResponse>();
+    private Cache<String, RestAPIResponse> finishedRequests;
+    // RestAPIVO to insert and results to update in the next batch, guarded by batchLock
+    private final Object batchLock = new Object();
+    private Map<String, RestAPIVO> toInsert = new LinkedHashMap<String, RestAPIVO>();
+    private Map<String, String> toUpdate = new LinkedHashMap<String, String>();
 
     @Autowired
     private CloudBus bus;
+    @Autowired
+    private ThreadFacade thdf;
 
     void init() throws ClassNotFoundException, InstantiationException, IllegalAccessException {
         Set<APIEvent> boundEvents = new HashSet<APIEvent>(100);
-        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(true);
-        scanner.resetFilters(false);
-        scanner.addIncludeFilter(new AssignableTypeFilter(APIEvent.class));
-        for (String pkg : getBasePkgNames()) {
-            for (BeanDefinition bd : scanner.findCandidateComponents(pkg)) {
-                Class<?> clazz = Class.forName(bd.getBeanClassName());
-                if (clazz == APIEvent.class) {
-                    continue;
-                }
-                APIEvent evt = (APIEvent) clazz.newInstance();
-                boundEvents.add(evt);
+        List<Class> clzs = BeanUtils.scanClassByType(new ArrayList<String>(getBasePkgNames()), Arrays.<Class>asList(APIEvent.class));
+        for (Class clazz : clzs) {
+            if (clazz == APIEvent.class) {
+                continue;
             }
+            APIEvent evt = (APIEvent) clazz.newInstance();
+            boundEvents.add(evt);
         }
 
         for (APIEvent e : boundEvents) {
             bus.subscribeEvent(this, e);
         }
+
+        finishedRequests = CacheBuilder.newBuilder()
+                .expireAfterWrite(resultCacheTimeout, TimeUnit.SECONDS)
+                .maximumSize(100000)
+                .build();
+
+        if (persistMode == PersistMode.Batch) {
+            thdf.submitPeriodicTask(new PeriodicTask() {
+                @Override
+                public TimeUnit getTimeUnit() {
+                    return TimeUnit.MILLISECONDS;
+                }
+
+                @Override
+                public long getInterval() {
+                    return persistBatchInterval;
+                }
+
+                @Override
+                public String getName() {
+                    return "rest-api-result-batch-writer";
+                }
+
+                @Override
+                public void run() {
+                    try {
+                        writeBatch();
+                    } catch (Throwable t) {
+                        logger.warn("unhandled exception happened when writing RestAPIVO", t);
+                    }
+                }
+            });
+        }
+    }
+
+    public void setPersistMode(String persistMode) {
+        this.persistMode = PersistMode.valueOf(persistMode);
+    }
+
+    public void setPersistBatchInterval(long persistBatchInterval) {
+        this.persistBatchInterval = persistBatchInterval;
+    }
+
+    public void setResultCacheTimeout(long resultCacheTimeout) {
+        this.resultCacheTimeout = resultCacheTimeout;
+    }
+
+    public void setMaxLongPollTimeout(long maxLongPollTimeout) {
+        this.maxLongPollTimeout = maxLongPollTimeout;
     }
 
     public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
@@ -81,19 +158,84 @@ public class RESTApiFacadeImpl implements RESTApiFacade, CloudBusEventListener {
         }
     }
 
+    private void writeBatch() {
+        Map<String, RestAPIVO> inserts;
+        Map<String, String> updates;
+        synchronized (batchLock) {
+            if (toInsert.isEmpty() && toUpdate.isEmpty()) {
+                return;
+            }
+
+            inserts = toInsert;
+            updates = toUpdate;
+            toInsert = new LinkedHashMap<String, RestAPIVO>();
+            toUpdate = new LinkedHashMap<String, String>();
+        }
+
+        String sql = "update RestAPIVO r set r.result = :result, r.state = :state where r.uuid = :uuid";
+        EntityManager mgr = getEntityManager();
+        EntityTransaction tran = mgr.getTransaction();
+        try {
+            tran.begin();
+            for (RestAPIVO vo : inserts.values()) {
+                mgr.persist(vo);
+            }
+            for (Map.Entry<String, String> e : updates.entrySet()) {
+                Query query = mgr.createQuery(sql);
+                query.setParameter("result", e.getValue());
+                query.setParameter("state", RestAPIState.Done);
+                query.setParameter("uuid", e.getKey());
+                query.executeUpdate();
+            }
+            tran.commit();
+        } catch (Exception e) {
+            tran.rollback();
+            // results are still served from memory, only clients polling from elsewhere miss them
+            logger.warn(String.format("failed to write %s RestAPIVO, they are dropped", inserts.size() + updates.size()), e);
+        } finally {
+            mgr.close();
+        }
+    }
+
     @Override
     public RestAPIResponse send(APIMessage msg) {
         assert !(msg instanceof APIListMessage) && !(msg instanceof APISearchMessage) : "You must invoke call(APIMessage) for APIListMessage or APISearchMsg, the message you pass is "
                 + msg.getMessageName();
         RestAPIResponse rsp = new RestAPIResponse();
-        RestAPIVO vo = persist(msg);
-        processingRequests.add(vo.getUuid());
-        rsp.setCreatedDate(vo.getCreateDate());
-        rsp.setState(vo.getState().toString());
-        rsp.setUuid(vo.getUuid());
+        if (persistMode == PersistMode.Sync) {
+            RestAPIVO vo = persist(msg);
+            rsp.setCreatedDate(vo.getCreateDate());
+        } else {
+            rsp.setCreatedDate(new Date());
+            if (persistMode == PersistMode.Batch) {
+                RestAPIVO vo = new RestAPIVO();
+                vo.setUuid(msg.getId());
+                vo.setApiMessageName(msg.getMessageName());
+                vo.setState(RestAPIState.Processing);
+                vo.setCreateDate(new Timestamp(rsp.getCreatedDate().getTime()));
+                synchronized (batchLock) {
+                    toInsert.put(vo.getUuid(), vo);
+                }
+            }
+        }
+        rsp.setState(RestAPIState.Processing.toString());
+        rsp.setUuid(msg.getId());
+        processingRequests.put(rsp.getUuid(), rsp);
         msg.setServiceId(ApiMediatorConstant.SERVICE_ID);
         bus.send(msg);
-        return rsp;
+        return copy(rsp);
+    }
+
+    private static RestAPIResponse copy(RestAPIResponse rsp) {
+        synchronized (rsp) {
+            RestAPIResponse ret = new RestAPIResponse();
+            ret.setUuid(rsp.getUuid());
+            ret.setState(rsp.getState());
+            ret.setCreatedDate(rsp.getCreatedDate());
+            ret.setFinishedDate(rsp.getFinishedDate());
+            ret.setResult(rsp.getResult());
+            return ret;
+        }
     }
 
     @Override
@@ -126,33 +268,65 @@ public class RESTApiFacadeImpl implements RESTApiFacade, CloudBusEventListener {
     
     @Override
     public RestAPIResponse getResult(String uuid) {
+        RestAPIResponse rsp = processingRequests.get(uuid);
+        if (rsp == null) {
+            rsp = finishedRequests.getIfPresent(uuid);
+        }
+        if (rsp != null) {
+            return copy(rsp);
+        }
+
+        // issued before the management node restarted or by another management node
         RestAPIVO vo = find(uuid);
         if (vo == null) {
             return null;
         }
-        RestAPIResponse rsp = new RestAPIResponse();
-        rsp.setCreatedDate(vo.getCreateDate());
-        rsp.setFinishedDate(vo.getLastOpDate());
-        rsp.setResult(vo.getResult());
-        rsp.setState(vo.getState().toString());
-        rsp.setUuid(vo.getUuid());
-        return rsp;
+        RestAPIResponse ret = new RestAPIResponse();
+        ret.setCreatedDate(vo.getCreateDate());
+        ret.setFinishedDate(vo.getLastOpDate());
+        ret.setResult(vo.getResult());
+        ret.setState(vo.getState().toString());
+        ret.setUuid(vo.getUuid());
+        return ret;
+    }
+
+    @Override
+    public RestAPIResponse getResult(String uuid, long timeout) {
+        RestAPIResponse rsp = processingRequests.get(uuid);
+        if (rsp == null) {
+            return getResult(uuid);
+        }
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.min(timeout, maxLongPollTimeout));
+        synchronized (rsp) {
+            long wait;
+            while (RestAPIState.Processing.toString().equals(rsp.getState()) && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    rsp.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        return copy(rsp);
     }
 
     private EntityManager getEntityManager() {
         return entityManagerFactory.createEntityManager();
     }
 
-    private boolean update(APIEvent e) {
+    private boolean update(String uuid, String result) {
         String sql = "update RestAPIVO r set r.result = :result, r.state = :state where r.uuid = :uuid";
         EntityManager mgr = getEntityManager();
         EntityTransaction tran = mgr.getTransaction();
         try {
             tran.begin();
             Query query = mgr.createQuery(sql);
-            query.setParameter("result", RESTApiDecoder.dump(e));
+            query.setParameter("result", result);
             query.setParameter("state", RestAPIState.Done);
-            query.setParameter("uuid", e.getApiId());
+            query.setParameter("uuid", uuid);
             int ret = query.executeUpdate();
             tran.commit();
             return ret > 0;
@@ -169,11 +343,33 @@ public class RESTApiFacadeImpl implements RESTApiFacade, CloudBusEventListener {
         try {
             if (e instanceof APIEvent) {
                 APIEvent ae = (APIEvent) e;
-                if (processingRequests.contains(ae.getApiId())) {
-                    boolean ret = update(ae);
+                RestAPIResponse rsp = processingRequests.get(ae.getApiId());
+                if (rsp != null) {
+                    String result = RESTApiDecoder.dump(ae);
+                    synchronized (rsp) {
+                        rsp.setResult(result);
+                        rsp.setFinishedDate(new Date());
+                        rsp.setState(RestAPIState.Done.toString());
+                        rsp.notifyAll();
+                    }
+                    finishedRequests.put(rsp.getUuid(), rsp);
                     processingRequests.remove(ae.getApiId());
-                    if (!ret) {
-                        logger.warn(String.format("Cannot find RestAPIVO[uuid:%s], something wrong happened", ae.getApiId()));
+
+                    if (persistMode == PersistMode.Sync) {
+                        if (!update(rsp.getUuid(), result)) {
+                            logger.warn(String.format("Cannot find RestAPIVO[uuid:%s], something wrong happened", ae.getApiId()));
+                        }
+                    } else if (persistMode == PersistMode.Batch) {
+                        synchronized (batchLock) {
+                            RestAPIVO vo = toInsert.get(rsp.getUuid());
+                            if (vo != null) {
+                                vo.setResult(result);
+                                vo.setState(RestAPIState.Done);
+                                vo.setLastOpDate(new Timestamp(rsp.getFinishedDate().getTime()));
+                            } else {
+                                toUpdate.put(rsp.getUuid(), result);
+                            }
+                        }
                     }
                 }
             } else {
@@ -52,6 +52,7 @@ public class AsyncWorkFlowChain {
     protected List<AsyncWorkFlow> flows = new ArrayList<AsyncWorkFlow>();
     protected String uuid;
     protected WorkFlowChainVO chainvo;
+    private WorkFlowChainStore store = new WorkFlowChainStore();
     protected WorkFlowCallback callback;
     protected int currentPosition = 0;
     private boolean isInitialized = false;
@@ -118,7 +119,6 @@ public class AsyncWorkFlowChain {
             throw new IllegalArgumentException("WorkFlowChain cannot run before WorkFlowChain.build() is called");
         }
 
-        dbf.removeByPrimaryKey(getUuid(), WorkFlowChainVO.class);
         WorkFlowChainVO cvo = new WorkFlowChainVO();
         cvo.setName(getName());
         cvo.setOwner(owner);
@@ -126,7 +126,7 @@ public class AsyncWorkFlowChain {
         cvo.setState(WorkFlowChainState.Processing);
         cvo.setCurrentPosition(0);
         cvo.setTotalWorkFlows(flows.size());
-        chainvo = dbf.persistAndRefresh(cvo);
+        chainvo = store.begin(cvo, true);
     }
     
     protected void processFlow(AsyncWorkFlow flow, WorkFlowContext ctx, WorkFlowVO vo, int position) {
@@ -138,7 +138,7 @@ public class AsyncWorkFlowChain {
         vo.setState(WorkFlowState.Processing);
         vo.setContext(ctx.toBytes());
         vo.setPosition(position);
-        vo = dbf.updateAndRefresh(vo);
+        vo = store.updateFlow(vo);
         try {
             flow.process(ctx, this);
         } catch (WorkFlowException e) {
@@ -159,10 +159,7 @@ public class AsyncWorkFlowChain {
     }
     
     private WorkFlowVO getFlowVOByPosition(int position) {
-        SimpleQuery<WorkFlowVO> query = dbf.createQuery(WorkFlowVO.class);
-        query.add(WorkFlowVO_.position, Op.EQ, position);
-        query.add(WorkFlowVO_.chainUuid, Op.EQ, chainvo.getUuid());
-        WorkFlowVO vo = query.find();
+        WorkFlowVO vo = store.getFlow(position);
         assert vo != null : "Where is WorkFlowVO for position: " + position;
         return vo;
     }
@@ -191,17 +188,17 @@ public class AsyncWorkFlowChain {
         WorkFlowVO vo = getFlowVOByPosition(currentPosition);
         vo.setState(flowState.getNextState(vo.getState(), WorkFlowStateEvent.done));
         vo.setContext(ctx.toBytes());
-        dbf.update(vo);
+        store.updateFlow(vo);
         logger.debug(String.format("Successfully processed workflow[%s] in chain[%s]", vo.getName(), getName()));
         currentPosition++;
         if (currentPosition < flows.size()) {
             chainvo.setCurrentPosition(currentPosition);
-            chainvo = dbf.updateAndRefresh(chainvo);
+            chainvo = store.updateChain(chainvo);
             AsyncWorkFlow flow = flows.get(currentPosition);
             processFlow(flow, ctx, null, currentPosition);
         } else {
             chainvo.setState(WorkFlowChainState.ProcessDone);
-            chainvo = dbf.updateAndRefresh(chainvo);
+            chainvo = store.updateChain(chainvo);
             tellCallbackSuccess(ctx);
         }
     }
@@ -216,14 +213,11 @@ public class AsyncWorkFlowChain {
             logger.warn(String.format("Unhandled exception happend while rolling back AsyncWorkFlow[%s] in chain[%s]", flow.getName(), getName()), t);
         }
         vo.setState(flowState.getNextState(vo.getState(), WorkFlowStateEvent.rollbackDone));
-        dbf.update(vo);
+        store.updateFlow(vo);
     }
     
     public void rollback() {
-        SimpleQuery<WorkFlowVO> query = dbf.createQuery(WorkFlowVO.class);
-        query.add(WorkFlowVO_.chainUuid, Op.EQ, chainvo.getUuid());
-        query.orderBy(WorkFlowVO_.position, Od.DESC);
-        List<WorkFlowVO> vos = query.list();
+        List<WorkFlowVO> vos = store.listFlowsDesc();
         logger.debug(String.format("starting to rollback AsyncWorkFlowChain[name: %s, owner: %s]", name, owner));
         for (WorkFlowVO vo : vos) {
             if (vo.getState() == WorkFlowState.RollbackDone) {
@@ -233,7 +227,7 @@ public class AsyncWorkFlowChain {
             rollbackFlow(vo);
         }
         chainvo.setState(chainStates.getNextState(chainvo.getState(), WorkFlowChainStateEvent.rollbackDone));
-        chainvo = dbf.updateAndRefresh(chainvo);
+        chainvo = store.updateChain(chainvo);
         logger.debug(String.format("Rolled back all flows in AsyncWorkFlow chain[%s]", getName()));
     }
     
@@ -241,12 +235,12 @@ public class AsyncWorkFlowChain {
         vo.setReason(err.toString());
         vo.setState(flowState.getNextState(vo.getState(), WorkFlowStateEvent.failed));
         logger.debug(String.format("workflow[%s] in chain[%s] failed because %s", vo.getName(), getName(), err));
-        dbf.update(vo);
+        store.updateFlow(vo);
         
         chainvo.setReason(err.toString());
         chainvo.setState(chainStates.getNextState(chainvo.getState(), WorkFlowChainStateEvent.failed));
         chainvo.setCurrentPosition(vo.getPosition());
-        chainvo = dbf.updateAndRefresh(chainvo);
+        chainvo = store.updateChain(chainvo);
         rollback();
         WorkFlowContext ctx = WorkFlowContext.fromBytes(vo.getContext());
         tellCallbackFailure(ctx, err);
@@ -319,6 +313,7 @@ public class AsyncWorkFlowChain {
         if (chainvo == null) {
             throw new IllegalArgumentException(String.format("Cannot find workflow chain[uuid:%s]", chainUuid));
         }
+        store.load(chainvo);
         
         this.callback = callback;
         this.name = chainvo.getName();
@@ -1,11 +1,12 @@
 package org.zstack.core.workflow;
 
+import org.zstack.core.CoreGlobalProperty;
 import org.zstack.header.core.workflow.Flow;
 import org.zstack.header.core.workflow.FlowChain;
+import org.zstack.header.core.workflow.IndependentFlow;
 import org.zstack.header.exception.CloudRuntimeException;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * Created with IntelliJ IDEA.
@@ -17,6 +18,9 @@ public class FlowChainBuilder {
     private List<String> flowClassNames;
     private List<Flow> flows = new ArrayList<Flow>();
     private boolean isConstructed;
+    // the template chains are instantiated from, see compile()
+    private volatile List<Flow> chainFlows;
+    private volatile Map<Flow, String> flowNames;
 
     public FlowChainBuilder construct() {
         try {
@@ -28,6 +32,7 @@ public class FlowChainBuilder {
                     flows.add(flow);
                 }
             }
+            compile();
             isConstructed = true;
             return this;
         } catch (Exception e) {
@@ -51,11 +56,57 @@ public class FlowChainBuilder {
             throw new CloudRuntimeException(String.format("please call construct() before build()"));
         }
 
+        if (chainFlows == null) {
+            compile();
+        }
+
         SimpleFlowChain chain = new SimpleFlowChain();
+        chain.setFlows(new ArrayList<Flow>(chainFlows));
+        chain.setFlowNames(flowNames);
+        return chain;
+    }
+
+    private void addGroup(List<Flow> compiled, List<Flow> group) {
+        if (group.size() == 1) {
+            compiled.add(group.get(0));
+        } else if (group.size() > 1) {
+            compiled.add(new ParallelFlow(group));
+        }
+
+        group.clear();
+    }
+
+    /**
+     * flows are stateless and shared by all chains of the builder, so the work of building a chain
+     * is done once here: adjacent flows marked by @IndependentFlow are grouped into a ParallelFlow,
+     * and flow names used for logging are resolved, which otherwise costs reflection on every step
+     */
+    private synchronized void compile() {
+        List<Flow> compiled = new ArrayList<Flow>(flows.size());
+        List<Flow> group = new ArrayList<Flow>();
         for (Flow flow : flows) {
-            chain.then(flow);
+            if (CoreGlobalProperty.PARALLEL_INDEPENDENT_FLOWS && flow.getClass().isAnnotationPresent(IndependentFlow.class)) {
+                group.add(flow);
+                continue;
+            }
+
+            addGroup(compiled, group);
+            compiled.add(flow);
         }
-        return chain;
+        addGroup(compiled, group);
+
+        Map<Flow, String> names = new IdentityHashMap<Flow, String>();
+        for (Flow flow : compiled) {
+            names.put(flow, SimpleFlowChain.resolveFlowName(flow));
+            if (flow instanceof ParallelFlow) {
+                for (Flow f : ((ParallelFlow) flow).getFlows()) {
+                    names.put(f, SimpleFlowChain.resolveFlowName(f));
+                }
+            }
+        }
+
+        flowNames = Collections.unmodifiableMap(names);
+        chainFlows = Collections.unmodifiableList(compiled);
     }
 
     public static FlowChainBuilder newBuilder() {
@@ -76,5 +127,6 @@ public class FlowChainBuilder {
 
     public void setFlows(List<Flow> flows) {
         this.flows = flows;
+        chainFlows = null;
     }
 }
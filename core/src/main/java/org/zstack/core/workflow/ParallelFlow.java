@@ -0,0 +1,161 @@
+package org.zstack.core.workflow;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.core.errorcode.ErrorFacade;
+import org.zstack.header.core.workflow.*;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.errorcode.OperationFailureException;
+import org.zstack.utils.CollectionUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.function.Function;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * runs a group of independent flows at the same time, the group succeeds when all flows succeed.
+ *
+ * if any flow fails, the failure is reported after all flows complete; rolling back the group rolls
+ * back every flow in it, in the way a chain rolls back the flow failing in it as well.
+ *
+ * the instance is shared by all chains built from the same template, so no state of an execution
+ * is kept in fields
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public class ParallelFlow implements Flow {
+    private static final CLogger logger = Utils.getLogger(ParallelFlow.class);
+
+    @Autowired
+    private ErrorFacade errf;
+
+    private final List<Flow> flows;
+    private final String __name__;
+
+    public ParallelFlow(List<Flow> flows) {
+        this.flows = new ArrayList<Flow>(flows);
+
+        List<String> names = CollectionUtils.transformToList(flows, new Function<String, Flow>() {
+            @Override
+            public String call(Flow arg) {
+                return SimpleFlowChain.resolveFlowName(arg);
+            }
+        });
+        __name__ = String.format("parallel[%s]", StringUtils.join(names, ", "));
+    }
+
+    public List<Flow> getFlows() {
+        return flows;
+    }
+
+    @Override
+    public void run(final FlowTrigger trigger, Map data) {
+        class Result {
+            final AtomicInteger count = new AtomicInteger(flows.size());
+            boolean failed;
+            ErrorCode errorCode;
+
+            synchronized void fail(ErrorCode err) {
+                if (!failed) {
+                    failed = true;
+                    errorCode = err;
+                }
+            }
+
+            void ack() {
+                if (count.decrementAndGet() != 0) {
+                    return;
+                }
+
+                boolean f;
+                ErrorCode err;
+                synchronized (this) {
+                    f = failed;
+                    err = errorCode;
+                }
+
+                if (f) {
+                    trigger.fail(err);
+                } else {
+                    trigger.next();
+                }
+            }
+        }
+
+        final Result ret = new Result();
+        for (final Flow flow : flows) {
+            FlowTrigger t = new FlowTrigger() {
+                final AtomicBoolean done = new AtomicBoolean(false);
+
+                @Override
+                public void fail(ErrorCode errorCode) {
+                    if (done.compareAndSet(false, true)) {
+                        ret.fail(errorCode);
+                        ret.ack();
+                    }
+                }
+
+                @Override
+                public void next() {
+                    if (done.compareAndSet(false, true)) {
+                        ret.ack();
+                    }
+                }
+
+                @Override
+                public void setError(ErrorCode error) {
+                    trigger.setError(error);
+                }
+            };
+
+            try {
+                flow.run(t, data);
+            } catch (OperationFailureException oe) {
+                logger.warn(String.valueOf(oe.getErrorCode()), oe);
+                t.fail(oe.getErrorCode());
+            } catch (FlowException fe) {
+                logger.warn(String.valueOf(fe.getErrorCode()), fe);
+                t.fail(fe.getErrorCode());
+            } catch (Throwable th) {
+                logger.warn(String.format("unhandled exception when executing flow[%s] in %s", flow.getClass().getName(), __name__), th);
+                t.fail(errf.throwableToInternalError(th));
+            }
+        }
+    }
+
+    @Override
+    public void rollback(final FlowRollback trigger, Map data) {
+        final AtomicInteger count = new AtomicInteger(flows.size());
+        for (final Flow flow : flows) {
+            FlowRollback r = new FlowRollback() {
+                final AtomicBoolean done = new AtomicBoolean(false);
+
+                @Override
+                public void rollback() {
+                    if (done.compareAndSet(false, true) && count.decrementAndGet() == 0) {
+                        trigger.rollback();
+                    }
+                }
+
+                @Override
+                public void skipRestRollbacks() {
+                    trigger.skipRestRollbacks();
+                }
+            };
+
+            try {
+                flow.rollback(r, data);
+            } catch (Throwable th) {
+                logger.warn(String.format("unhandled exception when rollback flow[%s] in %s, continue to next rollback",
+                        flow.getClass().getName(), __name__), th);
+                r.rollback();
+            }
+        }
+    }
+}
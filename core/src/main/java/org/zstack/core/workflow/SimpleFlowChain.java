@@ -51,6 +51,7 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
     private boolean allowEmptyFlow;
     private FlowMarshaller flowMarshaller;
     private List<FlowChainProcessor> processers;
+    private Map<Flow, String> flowNames;
 
     private boolean isFailCalled;
 
@@ -168,6 +169,10 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
         setData(data);
     }
 
+    void setFlowNames(Map<Flow, String> flowNames) {
+        this.flowNames = flowNames;
+    }
+
     @Override
     public FlowChain insert(Flow flow) {
         flows.add(0, flow);
@@ -301,7 +306,7 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
         }
     }
 
-    private String getFlowName(Flow flow) {
+    static String resolveFlowName(Flow flow) {
         String name = FieldUtils.getFieldValue("__name__", flow);
         if (name == null) {
             name = flow.getClass().getSimpleName();
@@ -310,6 +315,16 @@ public class SimpleFlowChain implements FlowTrigger, FlowRollback, FlowChain, Fl
             }
         }
 
+        return name;
+    }
+
+    private String getFlowName(Flow flow) {
+        // names of flows from a FlowChainBuilder are resolved once when the builder is constructed
+        String name = flowNames == null ? null : flowNames.get(flow);
+        if (name == null) {
+            name = resolveFlowName(flow);
+        }
+
         if (logger.isTraceEnabled()) {
             try {
                 ClassPool pool = ClassPool.getDefault();
@@ -54,6 +54,7 @@ public class WorkFlowChain {
     protected List<WorkFlow> flows = new ArrayList<WorkFlow>();
     protected String uuid;
     protected WorkFlowChainVO chainvo;
+    private WorkFlowChainStore store = new WorkFlowChainStore();
 
     public WorkFlowChain(String name) {
         this.name = name;
@@ -123,7 +124,7 @@ public class WorkFlowChain {
         cvo.setState(WorkFlowChainState.Processing);
         cvo.setCurrentPosition(0);
         cvo.setTotalWorkFlows(flows.size());
-        chainvo = dbf.persistAndRefresh(cvo);
+        chainvo = store.begin(cvo, false);
     }
 
     protected ErrorCode processFlow(WorkFlow flow, WorkFlowVO vo, int position) {
@@ -135,26 +136,26 @@ public class WorkFlowChain {
         vo.setState(WorkFlowState.Processing);
         vo.setContext(context.toBytes());
         vo.setPosition(position);
-        vo = dbf.updateAndRefresh(vo);
+        vo = store.updateFlow(vo);
         try {
             flow.process(context);
             vo.setState(flowState.getNextState(vo.getState(), WorkFlowStateEvent.done));
             vo.setContext(context.toBytes());
-            dbf.update(vo);
+            store.updateFlow(vo);
             logger.debug(String.format("Successfully processed workflow[%s] in chain[%s]", flow.getName(), getName()));
             return null;
         } catch (WorkFlowException e) {
             vo.setReason(e.getErrorCode().toString());
             vo.setState(flowState.getNextState(vo.getState(), WorkFlowStateEvent.failed));
             logger.debug(String.format("workflow[%s] in chain[%s] failed because %s", flow.getName(), getName(), e.getErrorCode()));
-            dbf.update(vo);
+            store.updateFlow(vo);
             return e.getErrorCode();
         } catch (Throwable t) {
             ErrorCode err = errf.throwableToInternalError(t);
             vo.setReason(err.toString());
             vo.setState(flowState.getNextState(vo.getState(), WorkFlowStateEvent.failed));
             logger.debug(String.format("workflow[%s] in chain[%s] failed because of an unhandle exception", flow.getName(), getName()), t);
-            dbf.update(vo);
+            store.updateFlow(vo);
             return err;
         }
     }
@@ -169,14 +170,11 @@ public class WorkFlowChain {
             logger.warn(String.format("Unhandled exception happend while rolling back workflow[%s] in chain[%s]", flow.getName(), getName()), t);
         }
         vo.setState(flowState.getNextState(vo.getState(), WorkFlowStateEvent.rollbackDone));
-        dbf.update(vo);
+        store.updateFlow(vo);
     }
 
     protected void rollback() {
-        SimpleQuery<WorkFlowVO> query = dbf.createQuery(WorkFlowVO.class);
-        query.add(WorkFlowVO_.chainUuid, Op.EQ, chainvo.getUuid());
-        query.orderBy(WorkFlowVO_.position, Od.DESC);
-        List<WorkFlowVO> vos = query.list();
+        List<WorkFlowVO> vos = store.listFlowsDesc();
         for (WorkFlowVO vo : vos) {
             if (vo.getState() == WorkFlowState.RollbackDone) {
                 /* when this is called from carryOn(), some flows may have been rolled back, skip them */
@@ -185,7 +183,7 @@ public class WorkFlowChain {
             rollbackFlow(vo);
         }
         chainvo.setState(chainStates.getNextState(chainvo.getState(), WorkFlowChainStateEvent.rollbackDone));
-        chainvo = dbf.updateAndRefresh(chainvo);
+        chainvo = store.updateChain(chainvo);
         logger.debug(String.format("Rolled back all flows in workflow chain[%s]", getName()));
     }
 
@@ -209,11 +207,11 @@ public class WorkFlowChain {
                 chainvo.setReason(err.toString());
                 chainvo.setState(chainStates.getNextState(chainvo.getState(), WorkFlowChainStateEvent.failed));
                 chainvo.setCurrentPosition(i);
-                chainvo = dbf.updateAndRefresh(chainvo);
+                chainvo = store.updateChain(chainvo);
                 break;
             } else {
                 chainvo.setCurrentPosition(i);
-                chainvo = dbf.updateAndRefresh(chainvo);
+                chainvo = store.updateChain(chainvo);
             }
         }
 
@@ -223,7 +221,7 @@ public class WorkFlowChain {
             throw new WorkFlowException(err);
         } else {
             chainvo.setState(WorkFlowChainState.ProcessDone);
-            chainvo = dbf.updateAndRefresh(chainvo);
+            chainvo = store.updateChain(chainvo);
         }
 
         return this.context;
@@ -247,11 +245,11 @@ public class WorkFlowChain {
                 chainvo.setReason(err.toString());
                 chainvo.setState(chainStates.getNextState(chainvo.getState(), WorkFlowChainStateEvent.failed));
                 chainvo.setCurrentPosition(i);
-                chainvo = dbf.updateAndRefresh(chainvo);
+                chainvo = store.updateChain(chainvo);
                 break;
             } else {
                 chainvo.setCurrentPosition(i);
-                chainvo = dbf.updateAndRefresh(chainvo);
+                chainvo = store.updateChain(chainvo);
             }
         }
 
@@ -261,7 +259,7 @@ public class WorkFlowChain {
             throw new WorkFlowException(err);
         } else {
             chainvo.setState(WorkFlowChainState.ProcessDone);
-            chainvo = dbf.updateAndRefresh(chainvo);
+            chainvo = store.updateChain(chainvo);
         }
 
         return this.context;
@@ -304,6 +302,7 @@ public class WorkFlowChain {
         if (chainvo == null) {
             throw new IllegalArgumentException(String.format("Cannot find workflow chain[uuid:%s]", chainUuid));
         }
+        store.load(chainvo);
         
         this.name = chainvo.getName();
         this.owner = chainvo.getOwner();
@@ -0,0 +1,164 @@
+package org.zstack.core.workflow;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.Platform;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Od;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.db.StepJournal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * holds WorkFlowChainVO and WorkFlowVO of a running chain.
+ *
+ * when StepJournal is enabled, the chain lives in memory and in the journal only, and is written to the database
+ * when it runs longer than 'StepJournal.persistThreshold' seconds or the management node stops; after that, or when
+ * the journal is disabled, every change goes to the database as before
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+class WorkFlowChainStore implements StepJournal.Persister {
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private StepJournal journal;
+
+    private String journalUuid;
+    private WorkFlowChainVO chainvo;
+    private final TreeMap<Integer, WorkFlowVO> flowvos = new TreeMap<Integer, WorkFlowVO>();
+    private boolean inDb;
+    private boolean ended;
+
+    private String chainKey() {
+        return "chain";
+    }
+
+    private String flowKey(int position) {
+        return String.format("flow-%s", position);
+    }
+
+    synchronized WorkFlowChainVO begin(WorkFlowChainVO vo, boolean removeOld) {
+        if (!journal.isEnabled()) {
+            inDb = true;
+            if (removeOld) {
+                dbf.removeByPrimaryKey(vo.getUuid(), WorkFlowChainVO.class);
+            }
+            chainvo = dbf.persistAndRefresh(vo);
+            return chainvo;
+        }
+
+        chainvo = vo;
+        journalUuid = Platform.getUuid();
+        journal.begin(journalUuid, this);
+        journal.put(journalUuid, chainKey(), chainvo);
+        return chainvo;
+    }
+
+    /**
+     * for carrying on a chain loaded from the database
+     */
+    synchronized void load(WorkFlowChainVO vo) {
+        inDb = true;
+        chainvo = vo;
+    }
+
+    synchronized WorkFlowChainVO updateChain(WorkFlowChainVO vo) {
+        if (inDb) {
+            chainvo = dbf.updateAndRefresh(vo);
+            return chainvo;
+        }
+
+        chainvo = vo;
+        if (chainvo.getState() == WorkFlowChainState.ProcessDone || chainvo.getState() == WorkFlowChainState.RollbackDone) {
+            ended = true;
+            journal.end(journalUuid);
+        } else {
+            journal.put(journalUuid, chainKey(), chainvo);
+        }
+        return chainvo;
+    }
+
+    synchronized WorkFlowVO updateFlow(WorkFlowVO vo) {
+        if (inDb) {
+            if (vo.getId() == 0) {
+                vo = dbf.updateAndRefresh(vo);
+            } else {
+                dbf.update(vo);
+            }
+        } else {
+            journal.put(journalUuid, flowKey(vo.getPosition()), vo);
+        }
+
+        flowvos.put(vo.getPosition(), vo);
+        return vo;
+    }
+
+    synchronized List<WorkFlowVO> listFlowsDesc() {
+        if (inDb) {
+            SimpleQuery<WorkFlowVO> query = dbf.createQuery(WorkFlowVO.class);
+            query.add(WorkFlowVO_.chainUuid, Op.EQ, chainvo.getUuid());
+            query.orderBy(WorkFlowVO_.position, Od.DESC);
+            return query.list();
+        }
+
+        List<WorkFlowVO> vos = new ArrayList<WorkFlowVO>(flowvos.values());
+        Collections.reverse(vos);
+        return vos;
+    }
+
+    synchronized WorkFlowVO getFlow(int position) {
+        if (inDb) {
+            SimpleQuery<WorkFlowVO> query = dbf.createQuery(WorkFlowVO.class);
+            query.add(WorkFlowVO_.position, Op.EQ, position);
+            query.add(WorkFlowVO_.chainUuid, Op.EQ, chainvo.getUuid());
+            return query.find();
+        }
+
+        return flowvos.get(position);
+    }
+
+    @Transactional
+    private void write() {
+        chainvo = dbf.getEntityManager().merge(chainvo);
+        for (WorkFlowVO vo : flowvos.values()) {
+            if (vo.getId() == 0) {
+                dbf.getEntityManager().persist(vo);
+            } else {
+                dbf.getEntityManager().merge(vo);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void persist() {
+        if (inDb || ended) {
+            return;
+        }
+
+        List<WorkFlowVO> newvos = new ArrayList<WorkFlowVO>();
+        for (WorkFlowVO vo : flowvos.values()) {
+            if (vo.getId() == 0) {
+                newvos.add(vo);
+            }
+        }
+
+        try {
+            write();
+        } catch (RuntimeException e) {
+            // ids are assigned on persisting even if the transaction rolls back
+            for (WorkFlowVO vo : newvos) {
+                vo.setId(0);
+            }
+            throw e;
+        }
+
+        inDb = true;
+    }
+}
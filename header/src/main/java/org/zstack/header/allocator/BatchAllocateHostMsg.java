@@ -0,0 +1,19 @@
+package org.zstack.header.allocator;
+
+/**
+ * allocates hosts for a number of vm instances of the same configuration in one pass.
+ *
+ * the vm instance in the message is a template of all vm instances, candidate hosts are found once by
+ * it and the vm instances are spread on the candidates against a snapshot of their capacity
+ */
+public class BatchAllocateHostMsg extends DesignatedAllocateHostMsg {
+    private int vmNum;
+
+    public int getVmNum() {
+        return vmNum;
+    }
+
+    public void setVmNum(int vmNum) {
+        this.vmNum = vmNum;
+    }
+}
@@ -0,0 +1,22 @@
+package org.zstack.header.allocator;
+
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.message.MessageReply;
+
+import java.util.List;
+
+public class BatchAllocateHostReply extends MessageReply {
+    /**
+     * one host for each vm instance, in the order of the vm instances; the capacity of the vm instance
+     * has been reserved on the host. A null element means no host is placed for the vm instance
+     */
+    private List<HostInventory> hosts;
+
+    public List<HostInventory> getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(List<HostInventory> hosts) {
+        this.hosts = hosts;
+    }
+}
@@ -1,6 +1,7 @@
 package org.zstack.header.configuration;
 
 import org.zstack.header.tag.AutoDeleteTag;
+import org.zstack.header.vo.CachedEntity;
 import org.zstack.header.vo.EO;
 
 import javax.persistence.Entity;
@@ -10,5 +11,6 @@ import javax.persistence.Table;
 @Table
 @EO(EOClazz = DiskOfferingEO.class)
 @AutoDeleteTag
+@CachedEntity
 public class DiskOfferingVO extends DiskOfferingAO{
 }
@@ -1,6 +1,7 @@
 package org.zstack.header.configuration;
 
 import org.zstack.header.tag.AutoDeleteTag;
+import org.zstack.header.vo.CachedEntity;
 import org.zstack.header.vo.EO;
 
 import javax.persistence.Entity;
@@ -13,6 +14,7 @@ import javax.persistence.Table;
 @Inheritance(strategy=InheritanceType.JOINED)
 @EO(EOClazz = InstanceOfferingEO.class)
 @AutoDeleteTag
+@CachedEntity
 public class InstanceOfferingVO extends InstanceOfferingAO {
     public InstanceOfferingVO() {
     }
@@ -0,0 +1,17 @@
+package org.zstack.header.core.workflow;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * a flow marked by this annotation doesn't depend on the results of adjacent flows
+ * that are marked too, FlowChainBuilder runs them in parallel.
+ *
+ * such flows must not put anything into the chain data and must not modify the same
+ * fields of objects in the chain data
+ */
+@Target(ElementType.TYPE)
+@Retention(java.lang.annotation.RetentionPolicy.RUNTIME)
+public @interface IndependentFlow {
+}
@@ -5,6 +5,7 @@ package org.zstack.header.host;
 public class ConnectHostInfo {
     private boolean isNewAdded;
     private boolean isStartPingTaskOnFailure;
+    private boolean skipDeployIfAgentCurrent;
 
     public boolean isNewAdded() {
         return isNewAdded;
@@ -22,10 +23,19 @@ public class ConnectHostInfo {
         this.isStartPingTaskOnFailure = isStartPingTaskOnFailure;
     }
 
+    public boolean isSkipDeployIfAgentCurrent() {
+        return skipDeployIfAgentCurrent;
+    }
+
+    public void setSkipDeployIfAgentCurrent(boolean skipDeployIfAgentCurrent) {
+        this.skipDeployIfAgentCurrent = skipDeployIfAgentCurrent;
+    }
+
     public static ConnectHostInfo fromConnectHostMsg(ConnectHostMsg msg) {
         ConnectHostInfo info = new ConnectHostInfo();
         info.setNewAdded(msg.isNewAdd());
         info.setStartPingTaskOnFailure(msg.isStartPingTaskOnFailure());
+        info.setSkipDeployIfAgentCurrent(msg.isSkipDeployIfAgentCurrent());
         return info;
     }
 }
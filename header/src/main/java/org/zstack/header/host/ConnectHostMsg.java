@@ -6,6 +6,7 @@ public class ConnectHostMsg extends NeedReplyMessage implements HostMessage {
 	private String uuid;
 	private boolean isStartPingTaskOnFailure;
     private boolean newAdd;
+    private boolean skipDeployIfAgentCurrent;
 
 	public ConnectHostMsg() {
 	}
@@ -23,6 +24,14 @@ public class ConnectHostMsg extends NeedReplyMessage implements HostMessage {
         this.newAdd = newAdd;
     }
 
+    public boolean isSkipDeployIfAgentCurrent() {
+        return skipDeployIfAgentCurrent;
+    }
+
+    public void setSkipDeployIfAgentCurrent(boolean skipDeployIfAgentCurrent) {
+        this.skipDeployIfAgentCurrent = skipDeployIfAgentCurrent;
+    }
+
     public String getUuid() {
     	return uuid;
     }
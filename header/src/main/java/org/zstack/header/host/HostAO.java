@@ -5,6 +5,7 @@ import org.zstack.header.vo.ForeignKey;
 import org.zstack.header.vo.ForeignKey.ReferenceOption;
 import org.zstack.header.vo.Index;
 import org.zstack.header.zone.ZoneEO;
+import org.zstack.utils.hash.ApacheHash;
 
 import javax.persistence.*;
 import java.sql.Timestamp;
@@ -49,9 +50,28 @@ public class HostAO {
     @Column
     private Timestamp createDate;
 
+    /**
+     * the hash of the uuid on the consistent hash ring of management nodes, so the hosts in hash ranges
+     * moved between management nodes can be queried
+     */
+    @Column
+    @Index
+    private Integer uuidHash;
+
     @Column
     private Timestamp lastOpDate;
 
+    public static int hashUuid(String uuid) {
+        return new ApacheHash().hash(uuid);
+    }
+
+    @PrePersist
+    private void prePersist() {
+        if (uuidHash == null && uuid != null) {
+            uuidHash = hashUuid(uuid);
+        }
+    }
+
     @PreUpdate
     private void preUpdate() {
         lastOpDate = null;
@@ -60,6 +80,14 @@ public class HostAO {
     public HostAO() {
     }
 
+    public Integer getUuidHash() {
+        return uuidHash;
+    }
+
+    public void setUuidHash(Integer uuidHash) {
+        this.uuidHash = uuidHash;
+    }
+
     public String getZoneUuid() {
         return zoneUuid;
     }
@@ -17,6 +17,7 @@ public class HostAO_ {
     public static volatile SingularAttribute<HostAO, HostState> state;
     public static volatile SingularAttribute<HostAO, HostStatus> status;
     public static volatile SingularAttribute<HostAO, String> hypervisorType;
+    public static volatile SingularAttribute<HostAO, Integer> uuidHash;
     public static volatile SingularAttribute<HostAO, Timestamp> createDate;
     public static volatile SingularAttribute<HostAO, Timestamp> lastOpDate;
 }
@@ -0,0 +1,15 @@
+package org.zstack.header.identity;
+
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.StaticMetamodel;
+import java.sql.Timestamp;
+
+@StaticMetamodel(AccountResourceCountVO.class)
+public class AccountResourceCountVO_ {
+    public static volatile SingularAttribute<AccountResourceCountVO, Long> id;
+    public static volatile SingularAttribute<AccountResourceCountVO, String> accountUuid;
+    public static volatile SingularAttribute<AccountResourceCountVO, String> resourceType;
+    public static volatile SingularAttribute<AccountResourceCountVO, Long> resourceCount;
+    public static volatile SingularAttribute<AccountResourceCountVO, Timestamp> createDate;
+    public static volatile SingularAttribute<AccountResourceCountVO, Timestamp> lastOpDate;
+}
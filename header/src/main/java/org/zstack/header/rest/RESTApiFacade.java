@@ -8,4 +8,9 @@ public interface RESTApiFacade {
     RestAPIResponse call(APIMessage msg);
     
     RestAPIResponse getResult(String uuid);
+
+    /**
+     * waits for the result at most timeout seconds if the API is still being processed
+     */
+    RestAPIResponse getResult(String uuid, long timeout);
 }
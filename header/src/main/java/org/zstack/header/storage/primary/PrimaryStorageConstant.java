@@ -7,6 +7,8 @@ public interface PrimaryStorageConstant {
 	public static final String SERVICE_ID = "storage.primary";
 	@PythonClass
 	public static final String DEFAULT_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE = "DefaultPrimaryStorageAllocationStrategy";
+	@PythonClass
+	public static final String SCORED_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE = "ScoredPrimaryStorageAllocationStrategy";
 	public static final String VM_FOLDER = "vm";
     public static final String PRIMARY_STORAGE_DETACH_CODE = "primaryStorage.detach";
 
@@ -0,0 +1,31 @@
+package org.zstack.header.storage.snapshot;
+
+import org.zstack.header.message.NeedJsonSchema;
+
+/**
+ */
+public class VolumeSnapshotCanonicalEvents {
+    public static final String VOLUME_SNAPSHOT_TREE_CHANGED_PATH = "/volumeSnapshot/tree/change";
+
+    @NeedJsonSchema
+    public static class VolumeSnapshotTreeChangedData {
+        private String treeUuid;
+        private String volumeUuid;
+
+        public String getTreeUuid() {
+            return treeUuid;
+        }
+
+        public void setTreeUuid(String treeUuid) {
+            this.treeUuid = treeUuid;
+        }
+
+        public String getVolumeUuid() {
+            return volumeUuid;
+        }
+
+        public void setVolumeUuid(String volumeUuid) {
+            this.volumeUuid = volumeUuid;
+        }
+    }
+}
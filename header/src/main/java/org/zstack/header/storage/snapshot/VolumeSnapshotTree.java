@@ -325,10 +325,12 @@ public class VolumeSnapshotTree {
 
     private SnapshotLeaf root;
     private String volumeUuid;
+    private Map<String, SnapshotLeaf> leafs;
 
     public static VolumeSnapshotTree fromInventories(List<VolumeSnapshotInventory> invs) {
         VolumeSnapshotTree tree = new VolumeSnapshotTree();
         Map<String, SnapshotLeaf> map = new HashMap<String, SnapshotLeaf>();
+        tree.leafs = map;
         for (VolumeSnapshotInventory inv : invs) {
             SnapshotLeaf leaf = map.get(inv.getUuid());
             if (leaf == null) {
@@ -370,6 +372,7 @@ public class VolumeSnapshotTree {
 
     public void setRoot(SnapshotLeaf root) {
         this.root = root;
+        leafs = null;
     }
 
     public String getVolumeUuid() {
@@ -395,6 +398,19 @@ public class VolumeSnapshotTree {
         return null;
     }
 
+    public SnapshotLeaf findSnapshot(final String uuid) {
+        if (leafs != null) {
+            return leafs.get(uuid);
+        }
+
+        return root.walkDown(new Function<Boolean, VolumeSnapshotInventory>() {
+            @Override
+            public Boolean call(VolumeSnapshotInventory arg) {
+                return arg.getUuid().equals(uuid);
+            }
+        });
+    }
+
     public SnapshotLeaf findSnapshot(Function<Boolean, VolumeSnapshotInventory> func) {
         if (func.call(root.getInventory())) {
             return root;
@@ -0,0 +1,114 @@
+package org.zstack.header.vm;
+
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.message.APIEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *@apiResult
+ *
+ * api event for message :ref:`APIBatchCreateVmInstanceMsg`. The event succeeds as long as the request is
+ * processed, whether each vm instance is created is reported in 'results'
+ *
+ *@since 1.3
+ *
+ *@example
+ *
+ * {
+"org.zstack.header.vm.APIBatchCreateVmInstanceEvent": {
+"results": [
+{
+"index": 0,
+"vmInstanceUuid": "e979b10eb753412e8588d26b4b544fdc",
+"inventory": {
+"uuid": "e979b10eb753412e8588d26b4b544fdc",
+"name": "TestVm-0",
+"state": "Running"
+}
+},
+{
+"index": 1,
+"vmInstanceUuid": "252a500bc8744a61b11d90a69e9cb2a1",
+"error": {
+"code": "SYS.1006",
+"description": "An operation failed",
+"details": "no available host"
+}
+}
+],
+"success": true
+}
+}
+ */
+public class APIBatchCreateVmInstanceEvent extends APIEvent {
+    public static class Result {
+        /**
+         * @desc position of the vm instance in the batch
+         */
+        private int index;
+        private String vmInstanceUuid;
+        /**
+         * @desc see :ref:`VmInstanceInventory`, null if the vm instance failed to be created
+         */
+        private VmInstanceInventory inventory;
+        /**
+         * @desc the reason why the vm instance failed to be created, null if it's created
+         */
+        private ErrorCode error;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        public String getVmInstanceUuid() {
+            return vmInstanceUuid;
+        }
+
+        public void setVmInstanceUuid(String vmInstanceUuid) {
+            this.vmInstanceUuid = vmInstanceUuid;
+        }
+
+        public VmInstanceInventory getInventory() {
+            return inventory;
+        }
+
+        public void setInventory(VmInstanceInventory inventory) {
+            this.inventory = inventory;
+        }
+
+        public ErrorCode getError() {
+            return error;
+        }
+
+        public void setError(ErrorCode error) {
+            this.error = error;
+        }
+    }
+
+    /**
+     * @desc results of all vm instances ordered by index
+     */
+    private List<Result> results = new ArrayList<Result>();
+
+    public APIBatchCreateVmInstanceEvent() {
+        super(null);
+    }
+
+    public APIBatchCreateVmInstanceEvent(String apiId) {
+        super(apiId);
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public void setResults(List<Result> results) {
+        this.results = results;
+    }
+}
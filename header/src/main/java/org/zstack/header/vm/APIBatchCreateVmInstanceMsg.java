@@ -0,0 +1,77 @@
+package org.zstack.header.vm;
+
+import org.zstack.header.identity.Action;
+import org.zstack.header.message.APIParam;
+import org.zstack.header.tag.TagResourceType;
+
+/**
+ * @api
+ *
+ * create a number of user vm instances of the same configuration in one call. Hosts for all vm instances
+ * are chosen in one allocation pass and the vm instances are started in parallel, see global config
+ * 'vm.batchCreate.parallelismDegree'
+ *
+ * @since 1.3
+ *
+ * @cli
+ *
+ * @httpMsg
+ *{
+"org.zstack.header.vm.APIBatchCreateVmInstanceMsg": {
+"name": "TestVm",
+"count": 10,
+"instanceOfferingUuid": "1618154b462a48749ca9b114cf4a2979",
+"imageUuid": "99a5eea648954ef7be2b8ede8f34fe26",
+"l3NetworkUuids": [
+"c4f6a370f80443798cc460ee07d56ff1"
+],
+"dataDiskOfferingUuids": [],
+"session": {
+"uuid": "49c7e4c1fc18499a9477dd426436a8a4"
+}
+}
+}
+ *
+ * @msg
+ *
+ * {
+"org.zstack.header.vm.APIBatchCreateVmInstanceMsg": {
+"name": "TestVm",
+"count": 10,
+"instanceOfferingUuid": "1618154b462a48749ca9b114cf4a2979",
+"imageUuid": "99a5eea648954ef7be2b8ede8f34fe26",
+"l3NetworkUuids": [
+"c4f6a370f80443798cc460ee07d56ff1"
+],
+"dataDiskOfferingUuids": [],
+"session": {
+"uuid": "49c7e4c1fc18499a9477dd426436a8a4"
+},
+"timeout": 1800000,
+"id": "add5fb2198f14980adf26db572d035c5",
+"serviceId": "api.portal",
+"creatingTime": 1398912618016
+}
+}
+ *
+ * @result
+ *
+ * See :ref:`APIBatchCreateVmInstanceEvent`
+ */
+@TagResourceType(VmInstanceVO.class)
+@Action(category = VmInstanceConstant.ACTION_CATEGORY)
+public class APIBatchCreateVmInstanceMsg extends APICreateVmInstanceMsg {
+    /**
+     * @desc number of vm instances to create, the vm instances are named as 'name-0', 'name-1' ...
+     */
+    @APIParam(numberRange = {1, 1000})
+    private int count;
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
@@ -1,5 +1,6 @@
 package org.zstack.header.vm;
 
+import org.zstack.header.host.HostInventory;
 import org.zstack.header.message.NeedReplyMessage;
 
 import java.util.List;
@@ -9,7 +10,19 @@ public class StartNewCreatedVmInstanceMsg extends NeedReplyMessage implements Vm
     private List<String> l3NetworkUuids;
     private List<String> dataDiskOfferingUuids;
     private String rootDiskOfferingUuid;
-    
+    /**
+     * the host on which the capacity of the vm has been reserved, the vm skips host allocation when it's set
+     */
+    private HostInventory allocatedHost;
+
+    public HostInventory getAllocatedHost() {
+        return allocatedHost;
+    }
+
+    public void setAllocatedHost(HostInventory allocatedHost) {
+        this.allocatedHost = allocatedHost;
+    }
+
     public VmInstanceInventory getVmInstanceInventory() {
         return vmInstanceInventory;
     }
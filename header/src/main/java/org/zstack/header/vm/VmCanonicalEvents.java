@@ -1,5 +1,6 @@
 package org.zstack.header.vm;
 
+import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.message.NeedJsonSchema;
 
 import java.util.Date;
@@ -10,6 +11,74 @@ import java.util.Date;
 public class VmCanonicalEvents {
     public static final String VM_FULL_STATE_CHANGED_PATH = "/vm/state/change";
     public static final String VM_INSTANCE_OFFERING_CHANGED_PATH = "/vm/instanceoffering/change";
+    public static final String VM_BATCH_CREATE_RESULT_PATH = "/vm/batchcreate/result";
+
+    @NeedJsonSchema
+    public static class BatchCreateResultData {
+        private String apiId;
+        private int index;
+        private int total;
+        private String vmUuid;
+        private VmInstanceInventory inventory;
+        private ErrorCode error;
+        private Date date = new Date();
+
+        public String getApiId() {
+            return apiId;
+        }
+
+        public void setApiId(String apiId) {
+            this.apiId = apiId;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public void setTotal(int total) {
+            this.total = total;
+        }
+
+        public String getVmUuid() {
+            return vmUuid;
+        }
+
+        public void setVmUuid(String vmUuid) {
+            this.vmUuid = vmUuid;
+        }
+
+        public VmInstanceInventory getInventory() {
+            return inventory;
+        }
+
+        public void setInventory(VmInstanceInventory inventory) {
+            this.inventory = inventory;
+        }
+
+        public ErrorCode getError() {
+            return error;
+        }
+
+        public void setError(ErrorCode error) {
+            this.error = error;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public void setDate(Date date) {
+            this.date = date;
+        }
+    }
 
     @NeedJsonSchema
     public static class InstanceOfferingChangedData {
@@ -175,6 +175,18 @@ public class VmInstanceSpec implements Serializable {
     private IsoSpec destIso;
     private String userdata;
     private List<String> bootOrders;
+    private String accountUuid;
+
+    /**
+     * the owner account of the vm, loaded once and shared by flows of the chain
+     */
+    public String getAccountUuid() {
+        return accountUuid;
+    }
+
+    public void setAccountUuid(String accountUuid) {
+        this.accountUuid = accountUuid;
+    }
 
     public List<String> getBootOrders() {
         return bootOrders;
@@ -0,0 +1,23 @@
+package org.zstack.header.vo;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * entities found by DatabaseFacade.findByUuid()/findById() are cached in memory.
+ *
+ * only for entities rarely changed and having no eager collections of other entities, because
+ * cached entities are invalidated only when they are updated or deleted themselves
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedEntity {
+    int maxSize() default 1000;
+
+    /**
+     * in seconds
+     */
+    long ttl() default 300;
+}
@@ -17,4 +17,6 @@ public interface AccountManager {
     Map<Class, Quota> getMessageQuotaMap();
 
     List<Quota> getQuotas();
+
+    long getResourceCount(String accountUuid, Class<?> resourceClass);
 }
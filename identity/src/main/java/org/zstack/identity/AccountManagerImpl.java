@@ -36,6 +36,9 @@ import org.zstack.header.message.APIParam;
 import org.zstack.header.message.Message;
 import org.zstack.header.search.APIGetMessage;
 import org.zstack.header.search.APISearchMessage;
+import org.zstack.header.vo.EO;
+import org.zstack.header.vo.ForeignKey;
+import org.zstack.header.vo.ForeignKey.ReferenceOption;
 import org.zstack.utils.*;
 import org.zstack.utils.function.ForEachFunction;
 import org.zstack.utils.gson.JSONObjectUtil;
@@ -75,9 +78,13 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
     private PluginRegistry pluginRgty;
     @Autowired
     private EventFacade evtf;
+    @Autowired
+    private QuotaUsageLedger ledger;
 
     private List<String> resourceTypeForAccountRef;
     private List<Class> resourceTypes;
+    // resource types deleted by the database through ON DELETE CASCADE foreign keys when their parent entities are deleted
+    private Map<Class, List<Class>> cascadedResourceTypes = new HashMap<Class, List<Class>>();
     private Map<String, SessionInventory> sessions = new ConcurrentHashMap<String, SessionInventory>();
     private Map<Class, Quota> messageQuotaMap = new HashMap<Class, Quota>();
     private HashSet<Class> accountApiControl = new HashSet<Class>();
@@ -244,15 +251,28 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
             ));
         }
 
-        ref.setAccountUuid(msg.getAccountUuid());
-        ref.setOwnerAccountUuid(msg.getAccountUuid());
-        ref = dbf.updateAndRefresh(ref);
+        ref = changeResourceOwner(ref, msg.getAccountUuid());
 
         APIChangeResourceOwnerEvent evt = new APIChangeResourceOwnerEvent(msg.getId());
         evt.setInventory(AccountResourceRefInventory.valueOf(ref));
         bus.publish(evt);
     }
 
+    @Transactional
+    private AccountResourceRefVO changeResourceOwner(AccountResourceRefVO ref, String accountUuid) {
+        String oldAccountUuid = ref.getAccountUuid();
+        ref.setAccountUuid(accountUuid);
+        ref.setOwnerAccountUuid(accountUuid);
+        ref = dbf.getEntityManager().merge(ref);
+
+        if (!oldAccountUuid.equals(accountUuid)) {
+            ledger.increase(oldAccountUuid, ref.getResourceType(), -1);
+            ledger.increase(accountUuid, ref.getResourceType(), 1);
+        }
+
+        return ref;
+    }
+
     @Transactional(readOnly = true)
     private void handle(APIGetResourceAccountMsg msg) {
         String sql = "select a, ref.resourceUuid from AccountResourceRefVO ref, AccountVO a where" +
@@ -511,6 +531,7 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
         p.setData(JSONObjectUtil.toJsonString(list(s)));
         dbf.getEntityManager().persist(p);
         dbf.getEntityManager().persist(AccountResourceRefVO.newOwn(vo.getUuid(), p.getUuid(), PolicyVO.class));
+        ledger.increase(vo.getUuid(), PolicyVO.class.getSimpleName(), 2);
 
         SimpleQuery<GlobalConfigVO> q = dbf.createQuery(GlobalConfigVO.class);
         q.select(GlobalConfigVO_.name, GlobalConfigVO_.value);
@@ -529,6 +550,7 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
             dbf.getEntityManager().persist(qvo);
             dbf.getEntityManager().persist(AccountResourceRefVO.newOwn(vo.getUuid(), qvo.getId().toString(), QuotaVO.class));
         }
+        ledger.increase(vo.getUuid(), QuotaVO.class.getSimpleName(), ts.size());
 
         dbf.getEntityManager().refresh(vo);
         final AccountInventory inv = AccountInventory.valueOf(vo);
@@ -556,6 +578,24 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
             Class<?> rs = Class.forName(resrouceTypeName);
             resourceTypes.add(rs);
         }
+
+        for (Class rs : resourceTypes) {
+            for (Field f : FieldUtils.getAnnotatedFields(ForeignKey.class, rs)) {
+                ForeignKey at = f.getAnnotation(ForeignKey.class);
+                if (at.onDeleteAction() != ReferenceOption.CASCADE) {
+                    continue;
+                }
+
+                List<Class> children = cascadedResourceTypes.get(at.parentEntityClass());
+                if (children == null) {
+                    children = new ArrayList<Class>();
+                    cascadedResourceTypes.put(at.parentEntityClass(), children);
+                }
+                if (!children.contains(rs)) {
+                    children.add(rs);
+                }
+            }
+        }
     }
 
     @Override
@@ -842,6 +882,7 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
     }
 
     @Override
+    @Transactional
     public void createAccountResourceRef(String accountUuid, String resourceUuid, Class<?> resourceClass) {
         if (!resourceTypes.contains(resourceClass)) {
            throw new CloudRuntimeException(String.format("%s is not listed in resourceTypeForAccountRef of AccountManager.xml that is spring configuration. you forgot it???", resourceClass.getName()));
@@ -849,6 +890,12 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
 
         AccountResourceRefVO ref = AccountResourceRefVO.newOwn(accountUuid, resourceUuid, resourceClass);
         dbf.persist(ref);
+        ledger.increase(accountUuid, ref.getResourceType(), 1);
+    }
+
+    @Override
+    public long getResourceCount(String accountUuid, Class<?> resourceClass) {
+        return ledger.getCount(accountUuid, resourceClass.getSimpleName());
     }
 
     @Override
@@ -916,11 +963,22 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
     @Override
     @Transactional
     public void postSoftDelete(Collection entityIds, Class entityClass) {
-        String sql = "delete from AccountResourceRefVO ref where ref.resourceUuid in (:uuids) and ref.resourceType = :resourceType";
+        String sql = "select ref.accountUuid, count(ref) from AccountResourceRefVO ref where ref.resourceUuid in (:uuids)" +
+                " and ref.resourceType = :resourceType group by ref.accountUuid";
+        TypedQuery<Tuple> cq = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        cq.setParameter("uuids", entityIds);
+        cq.setParameter("resourceType", entityClass.getSimpleName());
+        List<Tuple> counts = cq.getResultList();
+
+        sql = "delete from AccountResourceRefVO ref where ref.resourceUuid in (:uuids) and ref.resourceType = :resourceType";
         Query q = dbf.getEntityManager().createQuery(sql);
         q.setParameter("uuids", entityIds);
         q.setParameter("resourceType", entityClass.getSimpleName());
         q.executeUpdate();
+
+        for (Tuple t : counts) {
+            ledger.increase(t.get(0, String.class), entityClass.getSimpleName(), -t.get(1, Long.class));
+        }
     }
 
     @Override
@@ -933,6 +991,73 @@ public class AccountManagerImpl extends AbstractService implements AccountManage
         if (resourceTypes.contains(entityClass)) {
             postSoftDelete(entityIds, entityClass);
         }
+
+        removeCascadedResourceRefs(entityClass, new HashSet<Class>());
+    }
+
+    private List<Class> getCascadedResourceTypes(Class entityClass) {
+        List<Class> ret = new ArrayList<Class>();
+        List<Class> children = cascadedResourceTypes.get(entityClass);
+        if (children != null) {
+            ret.addAll(children);
+        }
+
+        // foreign keys of resources referencing VOs having EOs point to the EOs
+        EO at = (EO) entityClass.getAnnotation(EO.class);
+        if (at != null) {
+            children = cascadedResourceTypes.get(at.EOClazz());
+            if (children != null) {
+                ret.addAll(children);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * the database deletes resources referencing the deleted entities by ON DELETE CASCADE foreign keys without any
+     * extension called, for example EipVO of a deleted VipVO; remove references to resources not existing anymore and
+     * decrease counters of their owners
+     */
+    @Transactional
+    private void removeCascadedResourceRefs(Class entityClass, Set<Class> visited) {
+        for (Class rtype : getCascadedResourceTypes(entityClass)) {
+            if (!visited.add(rtype)) {
+                continue;
+            }
+
+            String sql = String.format("select ref.id, ref.accountUuid from AccountResourceRefVO ref where ref.resourceType = :resourceType" +
+                    " and not exists (select r.uuid from %s r where r.uuid = ref.resourceUuid)", rtype.getSimpleName());
+            TypedQuery<Tuple> tq = dbf.getEntityManager().createQuery(sql, Tuple.class);
+            tq.setParameter("resourceType", rtype.getSimpleName());
+            List<Tuple> ts = tq.getResultList();
+            if (ts.isEmpty()) {
+                continue;
+            }
+
+            List<Long> ids = new ArrayList<Long>();
+            Map<String, Long> counts = new HashMap<String, Long>();
+            for (Tuple t : ts) {
+                ids.add(t.get(0, Long.class));
+                String accountUuid = t.get(1, String.class);
+                Long count = counts.get(accountUuid);
+                counts.put(accountUuid, count == null ? 1 : count + 1);
+            }
+
+            Query q = dbf.getEntityManager().createQuery("delete from AccountResourceRefVO ref where ref.id in (:ids)");
+            q.setParameter("ids", ids);
+            q.executeUpdate();
+
+            for (Map.Entry<String, Long> e : counts.entrySet()) {
+                ledger.increase(e.getKey(), rtype.getSimpleName(), -e.getValue());
+            }
+
+            logger.debug(String.format("removed %s references to %s deleted by foreign keys of %s", ids.size(),
+                    rtype.getSimpleName(), entityClass.getSimpleName()));
+
+            // resources deleted by the cascade may have cascaded others
+            removeCascadedResourceRefs(rtype, visited);
+        }
     }
 
     @Override
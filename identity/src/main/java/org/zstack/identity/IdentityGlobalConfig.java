@@ -20,4 +20,8 @@ public class IdentityGlobalConfig {
     public static GlobalConfig SHOW_ALL_RESOURCE_TO_ADMIN = new GlobalConfig(CATEGORY, "admin.showAllResource");
     @GlobalConfigValidation(notEmpty = false)
     public static GlobalConfig ACCOUNT_API_CONTROL = new GlobalConfig(CATEGORY, "account.api.control");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig QUOTA_USAGE_CACHE_TIMEOUT = new GlobalConfig(CATEGORY, "quota.usage.cacheTimeout");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig QUOTA_USAGE_RECONCILE_INTERVAL = new GlobalConfig(CATEGORY, "quota.usage.reconcileInterval");
 }
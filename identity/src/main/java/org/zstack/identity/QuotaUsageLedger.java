@@ -0,0 +1,261 @@
+package org.zstack.identity;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.config.GlobalConfig;
+import org.zstack.core.config.GlobalConfigUpdateExtensionPoint;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.LockModeType;
+import javax.persistence.Query;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the number of resources every account owns per resource type, kept in AccountResourceCountVO so quota checks
+ * read a counter instead of counting AccountResourceRefVO.
+ *
+ * counters are changed in the transaction creating or deleting AccountResourceRefVO, and read through a per-account
+ * cache expiring in 'quota.usage.cacheTimeout' seconds; changes made by this management node invalidate the cache
+ * at once, changes made by others are seen when the cache expires. Every 'quota.usage.reconcileInterval' seconds,
+ * counters are recounted from AccountResourceRefVO to correct drift caused by references changed in other ways,
+ * for example by SQL
+ */
+public class QuotaUsageLedger implements Component {
+    private static final CLogger logger = Utils.getLogger(QuotaUsageLedger.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private ThreadFacade thdf;
+
+    private volatile Cache<String, Map<String, Long>> counts;
+    // bumped by every change, counters loaded before a change are not put into the cache
+    private final AtomicLong generation = new AtomicLong();
+    private Future<Void> reconcileTask;
+
+    private void buildCache() {
+        counts = CacheBuilder.newBuilder()
+                .expireAfterWrite(IdentityGlobalConfig.QUOTA_USAGE_CACHE_TIMEOUT.value(Integer.class), TimeUnit.SECONDS)
+                .build();
+    }
+
+    private void invalidate(String accountUuid) {
+        generation.incrementAndGet();
+        // resources may be created before the component starts, for example by extensions of the database initialization
+        if (counts != null) {
+            counts.invalidate(accountUuid);
+        }
+    }
+
+    /**
+     * changes the number of resources of the type the account owns by delta, in the transaction of the caller
+     */
+    @Transactional
+    public void increase(final String accountUuid, String resourceType, long delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        String sql = "insert into AccountResourceCountVO (accountUuid, resourceType, resourceCount, createDate)" +
+                " values (:auuid, :rtype, greatest(:delta, 0), current_timestamp())" +
+                " on duplicate key update resourceCount = greatest(resourceCount + :delta, 0)";
+        Query q = dbf.getEntityManager().createNativeQuery(sql);
+        q.setParameter("auuid", accountUuid);
+        q.setParameter("rtype", resourceType);
+        q.setParameter("delta", delta);
+        q.executeUpdate();
+
+        invalidate(accountUuid);
+        // readers may load the old counter before the transaction commits, invalidate again after it completes
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                invalidate(accountUuid);
+            }
+        });
+    }
+
+    @Transactional(readOnly = true)
+    private Map<String, Long> load(String accountUuid) {
+        String sql = "select c.resourceType, c.resourceCount from AccountResourceCountVO c where c.accountUuid = :auuid";
+        TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("auuid", accountUuid);
+        Map<String, Long> ret = new HashMap<String, Long>();
+        for (Tuple t : q.getResultList()) {
+            ret.put(t.get(0, String.class), t.get(1, Long.class));
+        }
+        return ret;
+    }
+
+    public long getCount(String accountUuid, String resourceType) {
+        Cache<String, Map<String, Long>> cache = counts;
+        Map<String, Long> c = cache.getIfPresent(accountUuid);
+        if (c == null) {
+            long gen = generation.get();
+            c = load(accountUuid);
+            synchronized (this) {
+                if (generation.get() == gen) {
+                    cache.put(accountUuid, c);
+                }
+            }
+        }
+
+        Long count = c.get(resourceType);
+        return count == null ? 0 : count;
+    }
+
+    @Transactional(readOnly = true)
+    private List<String> getResourceTypes() {
+        Set<String> types = new HashSet<String>();
+        types.addAll(dbf.getEntityManager().createQuery("select distinct ref.resourceType from AccountResourceRefVO ref", String.class).getResultList());
+        types.addAll(dbf.getEntityManager().createQuery("select distinct c.resourceType from AccountResourceCountVO c", String.class).getResultList());
+        return new ArrayList<String>(types);
+    }
+
+    private boolean hasUuid(String resourceType) {
+        for (EntityType<?> et : dbf.getEntityManager().getMetamodel().getEntities()) {
+            if (!et.getName().equals(resourceType)) {
+                continue;
+            }
+
+            for (Attribute a : et.getAttributes()) {
+                if ("uuid".equals(a.getName())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Transactional
+    private List<String> reconcile(String resourceType) {
+        // lock counters of the type first, transactions changing them wait until the recount commits; the recount
+        // doesn't see references created by transactions that haven't changed counters yet, they change the counters
+        // after the recount
+        String sql = "select c.accountUuid, c.resourceCount from AccountResourceCountVO c where c.resourceType = :rtype";
+        TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("rtype", resourceType);
+        q.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        Map<String, Long> recorded = new HashMap<String, Long>();
+        for (Tuple t : q.getResultList()) {
+            recorded.put(t.get(0, String.class), t.get(1, Long.class));
+        }
+
+        // quota checks count references of existing resources, references left by resources deleted in other ways are not counted
+        if (hasUuid(resourceType)) {
+            sql = String.format("select ref.accountUuid, count(ref) from AccountResourceRefVO ref, %s r where r.uuid = ref.resourceUuid" +
+                    " and ref.resourceType = :rtype group by ref.accountUuid", resourceType);
+        } else {
+            sql = "select ref.accountUuid, count(ref) from AccountResourceRefVO ref where ref.resourceType = :rtype group by ref.accountUuid";
+        }
+        q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("rtype", resourceType);
+        Map<String, Long> actual = new HashMap<String, Long>();
+        for (Tuple t : q.getResultList()) {
+            actual.put(t.get(0, String.class), t.get(1, Long.class));
+        }
+
+        Set<String> accountUuids = new HashSet<String>(recorded.keySet());
+        accountUuids.addAll(actual.keySet());
+        List<String> drifted = new ArrayList<String>();
+        for (String auuid : accountUuids) {
+            long r = recorded.containsKey(auuid) ? recorded.get(auuid) : 0;
+            long a = actual.containsKey(auuid) ? actual.get(auuid) : 0;
+            if (r == a) {
+                continue;
+            }
+
+            logger.warn(String.format("the count of %s owned by the account[uuid:%s] is %s, but it's recorded as %s; correct it",
+                    resourceType, auuid, a, r));
+            increase(auuid, resourceType, a - r);
+            drifted.add(auuid);
+        }
+
+        return drifted;
+    }
+
+    private void startReconcileTask() {
+        if (reconcileTask != null) {
+            reconcileTask.cancel(true);
+        }
+
+        final long interval = IdentityGlobalConfig.QUOTA_USAGE_RECONCILE_INTERVAL.value(Long.class);
+        reconcileTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return interval;
+            }
+
+            @Override
+            public String getName() {
+                return "quota-usage-reconcile";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    int num = 0;
+                    for (String rtype : getResourceTypes()) {
+                        num += reconcile(rtype).size();
+                    }
+
+                    if (num > 0) {
+                        logger.debug(String.format("[Quota Usage]: corrected %s resource counts", num));
+                    }
+                } catch (Throwable t) {
+                    logger.warn("unhandled exception happened when reconciling resource counts", t);
+                }
+            }
+        }, interval);
+    }
+
+    @Override
+    public boolean start() {
+        buildCache();
+        IdentityGlobalConfig.QUOTA_USAGE_CACHE_TIMEOUT.installUpdateExtension(new GlobalConfigUpdateExtensionPoint() {
+            @Override
+            public void updateGlobalConfig(GlobalConfig oldConfig, GlobalConfig newConfig) {
+                buildCache();
+            }
+        });
+
+        startReconcileTask();
+        IdentityGlobalConfig.QUOTA_USAGE_RECONCILE_INTERVAL.installUpdateExtension(new GlobalConfigUpdateExtensionPoint() {
+            @Override
+            public void updateGlobalConfig(GlobalConfig oldConfig, GlobalConfig newConfig) {
+                startReconcileTask();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (reconcileTask != null) {
+            reconcileTask.cancel(true);
+        }
+        return true;
+    }
+}
@@ -109,6 +109,14 @@ public class ImageBase implements Image {
             return;
         }
 
+        if (ref.getStatus() != ImageStatus.Deleted) {
+            // the expunge task may find the image from a stale read replica
+            logger.debug(String.format("the image[uuid:%s] on the backup storage[uuid:%s] is in status of %s, it's been recovered;" +
+                    " don't expunge it", self.getUuid(), msg.getBackupStorageUuid(), ref.getStatus()));
+            bus.reply(msg, reply);
+            return;
+        }
+
         DeleteBitsOnBackupStorageMsg dmsg = new DeleteBitsOnBackupStorageMsg();
         dmsg.setBackupStorageUuid(ref.getBackupStorageUuid());
         dmsg.setInstallPath(ref.getInstallPath());
@@ -8,6 +8,7 @@ import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.config.GlobalConfig;
 import org.zstack.core.config.GlobalConfigUpdateExtensionPoint;
 import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.ReadFromReplica;
 import org.zstack.core.db.SimpleQuery;
 import org.zstack.core.db.SimpleQuery.Op;
 import org.zstack.core.errorcode.ErrorFacade;
@@ -925,6 +926,7 @@ public class ImageManagerImpl extends AbstractService implements ImageManager, M
         }
 
         expungeTask = thdf.submitCancelablePeriodicTask(new CancelablePeriodicTask() {
+            @ReadFromReplica
             private List<Tuple> getDeletedImageManagedByUs() {
                 int qun = 1000;
                 SimpleQuery q = dbf.createQuery(ImageBackupStorageRefVO.class);
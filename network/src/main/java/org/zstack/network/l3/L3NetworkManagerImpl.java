@@ -402,16 +402,8 @@ public class L3NetworkManagerImpl extends AbstractService implements L3NetworkMa
                 return list(usage);
             }
 
-            @Transactional(readOnly = true)
-            private long getUsedL3(String accountUuid){
-                String sql = "select count(l3) from L3NetworkVO l3, AccountResourceRefVO ref where l3.uuid = ref.resourceUuid and " +
-                        "ref.accountUuid = :auuid and ref.resourceType = :rtype";
-                TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
-                q.setParameter("auuid", accountUuid);
-                q.setParameter("rtype", L3NetworkVO.class.getSimpleName());
-                Long l3n = q.getSingleResult();
-                l3n = l3n == null ? 0 : l3n;
-                return l3n;
+            private long getUsedL3(String accountUuid) {
+                return acntMgr.getResourceCount(accountUuid, L3NetworkVO.class);
             }
 
             private void check(APICreateL3NetworkMsg msg, Map<String, QuotaPair> pairs) {
@@ -1,6 +1,7 @@
 package org.zstack.storage.ceph.primary;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.compute.vm.ImageBackupStorageSelector;
 import org.zstack.core.Platform;
 import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.cloudbus.CloudBusListCallBack;
@@ -23,6 +24,7 @@ import org.zstack.header.host.HostConstant;
 import org.zstack.header.host.HostStatus;
 import org.zstack.header.host.HostVO;
 import org.zstack.header.host.HostVO_;
+import org.zstack.header.image.ImageBackupStorageRefInventory;
 import org.zstack.header.image.ImageConstant.ImageMediaType;
 import org.zstack.header.image.ImageInventory;
 import org.zstack.header.image.ImageVO;
@@ -50,6 +52,7 @@ import org.zstack.storage.backup.sftp.SftpBackupStorageConstant;
 import org.zstack.storage.ceph.*;
 import org.zstack.storage.ceph.backup.CephBackupStorageVO;
 import org.zstack.storage.ceph.backup.CephBackupStorageVO_;
+import org.zstack.storage.primary.ImageCacheManager;
 import org.zstack.storage.primary.PrimaryStorageBase;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
@@ -1172,6 +1175,16 @@ public class CephPrimaryStorageBase extends PrimaryStorageBase {
         }
 
         void download(final ReturnValueCompletion<ImageCacheVO> completion) {
+            String key = String.format("ceph-p-%s-download-image-%s", self.getUuid(), image.getInventory().getUuid());
+            imageCacheMgr.coalesceDownload(key, new ImageCacheManager.Download<ImageCacheVO>() {
+                @Override
+                public void run(ReturnValueCompletion<ImageCacheVO> completion) {
+                    downloadInQueue(completion);
+                }
+            }, completion);
+        }
+
+        private void downloadInQueue(final ReturnValueCompletion<ImageCacheVO> completion) {
             thdf.chainSubmit(new ChainTask(completion) {
                 @Override
                 public String getSyncSignature() {
@@ -1792,11 +1805,54 @@ public class CephPrimaryStorageBase extends PrimaryStorageBase {
             handle((BackupVolumeSnapshotFromPrimaryStorageToBackupStorageMsg) msg);
         } else if (msg instanceof CreateKvmSecretMsg) {
             handle((CreateKvmSecretMsg) msg);
+        } else if (msg instanceof DownloadImageToPrimaryStorageCacheMsg) {
+            handle((DownloadImageToPrimaryStorageCacheMsg) msg);
         } else {
             super.handleLocalMessage(msg);
         }
     }
 
+    private void handle(final DownloadImageToPrimaryStorageCacheMsg msg) {
+        final DownloadImageToPrimaryStorageCacheReply reply = new DownloadImageToPrimaryStorageCacheReply();
+        ImageBackupStorageSelector selector = new ImageBackupStorageSelector();
+        selector.setZoneUuid(self.getZoneUuid());
+        selector.setImageUuid(msg.getImage().getUuid());
+        final String bsUuid = selector.select();
+        if (bsUuid == null) {
+            reply.setError(errf.stringToOperationError(
+                    String.format("the image[uuid:%s, name:%s] is not available to download on any backup storage in the zone[uuid:%s]",
+                            msg.getImage().getUuid(), msg.getImage().getName(), self.getZoneUuid())
+            ));
+            bus.reply(msg, reply);
+            return;
+        }
+
+        ImageSpec ispec = new ImageSpec();
+        ispec.setInventory(msg.getImage());
+        ispec.setSelectedBackupStorage(CollectionUtils.find(msg.getImage().getBackupStorageRefs(), new Function<ImageBackupStorageRefInventory, ImageBackupStorageRefInventory>() {
+            @Override
+            public ImageBackupStorageRefInventory call(ImageBackupStorageRefInventory arg) {
+                return arg.getBackupStorageUuid().equals(bsUuid) ? arg : null;
+            }
+        }));
+
+        DownloadToCache downloadToCache = new DownloadToCache();
+        downloadToCache.image = ispec;
+        downloadToCache.download(new ReturnValueCompletion<ImageCacheVO>(msg) {
+            @Override
+            public void success(ImageCacheVO returnValue) {
+                reply.setInstallPath(returnValue.getInstallUrl());
+                bus.reply(msg, reply);
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                reply.setError(errorCode);
+                bus.reply(msg, reply);
+            }
+        });
+    }
+
     private void handle(final CreateKvmSecretMsg msg) {
         final CreateKvmSecretReply reply = new CreateKvmSecretReply();
         createSecretOnKvmHosts(msg.getHostUuids(), new Completion(msg) {
@@ -650,17 +650,8 @@ public class EipManagerImpl extends AbstractService implements EipManager, VipRe
                 return list(usage);
             }
 
-            @Transactional(readOnly = true)
             private long getUsedEip(String accountUuid) {
-                String sql = "select count(eip) from EipVO eip, AccountResourceRefVO ref where ref.resourceUuid = eip.uuid and " +
-                        "ref.accountUuid = :auuid and ref.resourceType = :rtype";
-
-                TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
-                q.setParameter("auuid", accountUuid);
-                q.setParameter("rtype", EipVO.class.getSimpleName());
-                Long en = q.getSingleResult();
-                en = en == null ? 0 : en;
-                return en;
+                return acntMgr.getResourceCount(accountUuid, EipVO.class);
             }
 
             @Transactional(readOnly = true)
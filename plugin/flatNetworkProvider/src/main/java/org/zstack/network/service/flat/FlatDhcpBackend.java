@@ -2,9 +2,10 @@ package org.zstack.network.service.flat;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
-import org.zstack.compute.vm.VmSystemTags;
+import org.zstack.core.Platform;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.CloudBusCallBack;
+import org.zstack.core.cloudbus.CloudBusListCallBack;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.errorcode.ErrorFacade;
@@ -34,11 +35,12 @@ import org.zstack.header.network.service.NetworkServiceProviderType;
 import org.zstack.header.vm.*;
 import org.zstack.header.vm.VmAbnormalLifeCycleStruct.VmAbnormalLifeCycleOperation;
 import org.zstack.kvm.*;
+import org.zstack.network.service.flat.FlatL3NetworkView.L3Network;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
-import org.zstack.utils.TagUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.function.Function;
+import org.zstack.utils.gson.JSONObjectUtil;
 import org.zstack.utils.logging.CLogger;
 import org.zstack.utils.network.NetworkUtils;
 
@@ -69,13 +71,24 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     private ThreadFacade thdf;
     @Autowired
     private ApiTimeoutManager timeoutMgr;
+    @Autowired
+    private FlatL3NetworkView l3View;
 
     public static final String APPLY_DHCP_PATH = "/flatnetworkprovider/dhcp/apply";
     public static final String PREPARE_DHCP_PATH = "/flatnetworkprovider/dhcp/prepare";
     public static final String RELEASE_DHCP_PATH = "/flatnetworkprovider/dhcp/release";
     public static final String DHCP_CONNECT_PATH = "/flatnetworkprovider/dhcp/connect";
+    public static final String BATCH_APPLY_DHCP_PATH = "/flatnetworkprovider/dhcp/batchapply";
 
     private Map<String, UsedIpInventory> l3NetworkDhcpServerIp = new ConcurrentHashMap<String, UsedIpInventory>();
+    // DHCP tables last pushed to hosts by this management node, key is host uuid
+    private Map<String, HostDhcpState> hostDhcpStates = new ConcurrentHashMap<String, HostDhcpState>();
+
+    private static class HostDhcpState {
+        String id;
+        // key is mac
+        Map<String, DhcpInfo> entries = new ConcurrentHashMap<String, DhcpInfo>();
+    }
 
     @Transactional(readOnly = true)
     private List<DhcpInfo> getDhcpInfoForConnectedKvmHost(KVMHostConnectedContext context) {
@@ -94,95 +107,64 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
             vmDefaultL3.put(t.get(0, String.class), t.get(1, String.class));
         }
 
-        sql = "select nic from VmNicVO nic, L3NetworkVO l3, NetworkServiceL3NetworkRefVO ref, NetworkServiceProviderVO provider where nic.l3NetworkUuid = l3.uuid" +
-                " and ref.l3NetworkUuid = l3.uuid and ref.networkServiceProviderUuid = provider.uuid " +
-                " and provider.type = :ptype and nic.vmInstanceUuid in (:vmUuids) group by nic.uuid";
-
+        // L3 networks come from the shared view, only nics of the vms on the host are queried
+        sql = "select nic from VmNicVO nic where nic.vmInstanceUuid in (:vmUuids)";
         TypedQuery<VmNicVO> nq = dbf.getEntityManager().createQuery(sql, VmNicVO.class);
-        nq.setParameter("ptype", FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING);
         nq.setParameter("vmUuids", vmDefaultL3.keySet());
-        List<VmNicVO> nics = nq.getResultList();
-        if (nics.isEmpty()) {
-            return null;
-        }
-
-        List<String> l3Uuids = CollectionUtils.transformToList(nics, new Function<String, VmNicVO>() {
-            @Override
-            public String call(VmNicVO arg) {
-                return arg.getL3NetworkUuid();
-            }
-        });
+        List<VmNicVO> allNics = nq.getResultList();
 
-        sql = "select t.tag, l3.uuid from SystemTagVO t, L3NetworkVO l3 where t.resourceType = :ttype and t.tag like :tag" +
-                " and t.resourceUuid = l3.l2NetworkUuid and l3.uuid in (:l3Uuids)";
-        TypedQuery<Tuple> tq = dbf.getEntityManager().createQuery(sql, Tuple.class);
-        tq.setParameter("tag", TagUtils.tagPatternToSqlPattern(KVMSystemTags.L2_BRIDGE_NAME.getTagFormat()));
-        tq.setParameter("l3Uuids", l3Uuids);
-        tq.setParameter("ttype", L2NetworkVO.class.getSimpleName());
-        ts = tq.getResultList();
-
-        Map<String, String> bridgeNames = new HashMap<String, String>();
-        for (Tuple t : ts) {
-            bridgeNames.put(t.get(1, String.class), t.get(0, String.class));
+        Set<String> l3Uuids = new HashSet<String>();
+        for (VmNicVO nic : allNics) {
+            l3Uuids.add(nic.getL3NetworkUuid());
         }
+        Map<String, L3Network> l3s = l3View.getL3Networks(l3Uuids);
 
-        sql = "select t.tag, vm.uuid from SystemTagVO t, VmInstanceVO vm where t.resourceType = :ttype" +
-                " and t.tag like :tag and t.resourceUuid = vm.uuid and vm.uuid in (:vmUuids)";
-        tq = dbf.getEntityManager().createQuery(sql, Tuple.class);
-        tq.setParameter("tag", TagUtils.tagPatternToSqlPattern(VmSystemTags.HOSTNAME.getTagFormat()));
-        tq.setParameter("ttype", VmInstanceVO.class.getSimpleName());
-        tq.setParameter("vmUuids", vmDefaultL3.keySet());
-        Map<String, String> hostnames = new HashMap<String, String>();
-        for (Tuple t : ts) {
-            hostnames.put(t.get(1, String.class), t.get(0, String.class));
+        List<VmNicVO> nics = new ArrayList<VmNicVO>();
+        for (VmNicVO nic : allNics) {
+            L3Network l3 = l3s.get(nic.getL3NetworkUuid());
+            if (l3 != null && l3.flat) {
+                nics.add(nic);
+            }
         }
-
-        sql = "select l3 from L3NetworkVO l3 where l3.uuid in (:l3Uuids)";
-        TypedQuery<L3NetworkVO> l3q = dbf.getEntityManager().createQuery(sql, L3NetworkVO.class);
-        l3q.setParameter("l3Uuids", l3Uuids);
-        List<L3NetworkVO> l3s = l3q.getResultList();
-        Map<String, L3NetworkVO> l3Map = new HashMap<String, L3NetworkVO>();
-        for (L3NetworkVO l3 : l3s) {
-            l3Map.put(l3.getUuid(), l3);
+        if (nics.isEmpty()) {
+            return null;
         }
 
+        Map<String, String> hostnames = l3View.getHostnames(vmDefaultL3.keySet());
         List<DhcpInfo> dhcpInfoList = new ArrayList<DhcpInfo>();
         for (VmNicVO nic : nics) {
-            DhcpInfo info = new DhcpInfo();
-            info.bridgeName = KVMSystemTags.L2_BRIDGE_NAME.getTokenByTag(bridgeNames.get(nic.getL3NetworkUuid()), KVMSystemTags.L2_BRIDGE_NAME_TOKEN);
-            DebugUtils.Assert(info.bridgeName != null, "bridge name cannot be null");
-            info.mac = nic.getMac();
-            info.netmask = nic.getNetmask();
-            info.isDefaultL3Network = nic.getL3NetworkUuid().equals(vmDefaultL3.get(nic.getVmInstanceUuid()));
-            info.ip = nic.getIp();
-            info.gateway = nic.getGateway();
-
-            L3NetworkVO l3 = l3Map.get(nic.getL3NetworkUuid());
-            info.dnsDomain = l3.getDnsDomain();
-            info.dns = CollectionUtils.transformToList(l3.getDns(), new Function<String, L3NetworkDnsVO>() {
-                @Override
-                public String call(L3NetworkDnsVO arg) {
-                    return arg.getDns();
-                }
-            });
+            dhcpInfoList.add(makeDhcpInfo(nic, l3s.get(nic.getL3NetworkUuid()), vmDefaultL3.get(nic.getVmInstanceUuid()),
+                    hostnames.get(nic.getVmInstanceUuid())));
+        }
 
-            if (info.isDefaultL3Network) {
-                info.hostname = hostnames.get(nic.getVmInstanceUuid());
-                if (info.hostname == null) {
-                    info.hostname = nic.getIp().replaceAll("\\.", "-");
-                }
+        return dhcpInfoList;
+    }
 
-                if (info.dnsDomain != null) {
-                    info.hostname = String.format("%s.%s", info.hostname, info.dnsDomain);
-                }
+    private DhcpInfo makeDhcpInfo(VmNicVO nic, L3Network l3, String defaultL3Uuid, String hostname) {
+        DhcpInfo info = new DhcpInfo();
+        info.bridgeName = l3.bridgeName;
+        DebugUtils.Assert(info.bridgeName != null, "bridge name cannot be null");
+        info.mac = nic.getMac();
+        info.netmask = nic.getNetmask();
+        info.isDefaultL3Network = nic.getL3NetworkUuid().equals(defaultL3Uuid);
+        info.ip = nic.getIp();
+        info.gateway = nic.getGateway();
+        info.dnsDomain = l3.dnsDomain;
+        info.dns = l3.dns;
+
+        if (info.isDefaultL3Network) {
+            info.hostname = hostname;
+            if (info.hostname == null) {
+                info.hostname = nic.getIp().replaceAll("\\.", "-");
             }
 
-            info.l3NetworkUuid = l3.getUuid();
-
-            dhcpInfoList.add(info);
+            if (info.dnsDomain != null) {
+                info.hostname = String.format("%s.%s", info.hostname, info.dnsDomain);
+            }
         }
 
-        return dhcpInfoList;
+        info.l3NetworkUuid = l3.uuid;
+        return info;
     }
 
 
@@ -301,6 +283,7 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
 
     @Override
     public void afterDeleteL3Network(L3NetworkInventory inventory) {
+        l3View.remove(inventory.getUuid());
         UsedIpInventory dhchip = getDHCPServerIP(inventory.getUuid());
         if (dhchip != null) {
             deleteDhcpServerIp(dhchip);
@@ -330,73 +313,11 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
             }
         });
 
-        sql = "select t.tag, l3.uuid from SystemTagVO t, L3NetworkVO l3 where t.resourceType = :ttype and t.tag like :tag" +
-                " and t.resourceUuid = l3.l2NetworkUuid and l3.uuid in (:l3Uuids)";
-        TypedQuery<Tuple> tq = dbf.getEntityManager().createQuery(sql, Tuple.class);
-        tq.setParameter("tag", TagUtils.tagPatternToSqlPattern(KVMSystemTags.L2_BRIDGE_NAME.getTagFormat()));
-        tq.setParameter("l3Uuids", l3Uuids);
-        tq.setParameter("ttype", L2NetworkVO.class.getSimpleName());
-        List<Tuple> ts = tq.getResultList();
-
-        Map<String, String> bridgeNames = new HashMap<String, String>();
-        for (Tuple t : ts) {
-            bridgeNames.put(t.get(1, String.class), t.get(0, String.class));
-        }
-
-        sql = "select t.tag, vm.uuid from SystemTagVO t, VmInstanceVO vm where t.resourceType = :ttype" +
-                " and t.tag like :tag and t.resourceUuid = vm.uuid and vm.uuid = :vmUuid";
-        tq = dbf.getEntityManager().createQuery(sql, Tuple.class);
-        tq.setParameter("tag", TagUtils.tagPatternToSqlPattern(VmSystemTags.HOSTNAME.getTagFormat()));
-        tq.setParameter("ttype", VmInstanceVO.class.getSimpleName());
-        tq.setParameter("vmUuid", vm.getUuid());
-        Map<String, String> hostnames = new HashMap<String, String>();
-        for (Tuple t : ts) {
-            hostnames.put(t.get(1, String.class), t.get(0, String.class));
-        }
-
-        sql = "select l3 from L3NetworkVO l3 where l3.uuid in (:l3Uuids)";
-        TypedQuery<L3NetworkVO> l3q = dbf.getEntityManager().createQuery(sql, L3NetworkVO.class);
-        l3q.setParameter("l3Uuids", l3Uuids);
-        List<L3NetworkVO> l3s = l3q.getResultList();
-        Map<String, L3NetworkVO> l3Map = new HashMap<String, L3NetworkVO>();
-        for (L3NetworkVO l3 : l3s) {
-            l3Map.put(l3.getUuid(), l3);
-        }
-
+        Map<String, L3Network> l3s = l3View.getL3Networks(l3Uuids);
+        Map<String, String> hostnames = l3View.getHostnames(list(vm.getUuid()));
         List<DhcpInfo> dhcpInfoList = new ArrayList<DhcpInfo>();
         for (VmNicVO nic : nics) {
-            DhcpInfo info = new DhcpInfo();
-            info.bridgeName = KVMSystemTags.L2_BRIDGE_NAME.getTokenByTag(bridgeNames.get(nic.getL3NetworkUuid()), KVMSystemTags.L2_BRIDGE_NAME_TOKEN);
-            DebugUtils.Assert(info.bridgeName != null, "bridge name cannot be null");
-            info.mac = nic.getMac();
-            info.netmask = nic.getNetmask();
-            info.isDefaultL3Network = nic.getL3NetworkUuid().equals(vm.getDefaultL3NetworkUuid());
-            info.ip = nic.getIp();
-            info.gateway = nic.getGateway();
-
-            L3NetworkVO l3 = l3Map.get(nic.getL3NetworkUuid());
-            info.dnsDomain = l3.getDnsDomain();
-            info.dns = CollectionUtils.transformToList(l3.getDns(), new Function<String, L3NetworkDnsVO>() {
-                @Override
-                public String call(L3NetworkDnsVO arg) {
-                    return arg.getDns();
-                }
-            });
-
-            if (info.isDefaultL3Network) {
-                info.hostname = hostnames.get(nic.getVmInstanceUuid());
-                if (info.hostname == null) {
-                    info.hostname = nic.getIp().replaceAll("\\.", "-");
-                }
-
-                if (info.dnsDomain != null) {
-                    info.hostname = String.format("%s.%s", info.hostname, info.dnsDomain);
-                }
-            }
-
-            info.l3NetworkUuid = l3.getUuid();
-
-            dhcpInfoList.add(info);
+            dhcpInfoList.add(makeDhcpInfo(nic, l3s.get(nic.getL3NetworkUuid()), vm.getDefaultL3NetworkUuid(), hostnames.get(vm.getUuid())));
         }
 
         return dhcpInfoList;
@@ -691,7 +612,9 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                         if (!reply.isSuccess()) {
                             trigger.fail(reply.getError());
                         } else {
-                            applyDhcpToHosts(dhcpInfoList, context.getInventory().getUuid(), true, new Completion(trigger) {
+                            KVMHostAsyncHttpCallReply r = reply.castReply();
+                            ConnectRsp rsp = r.toResponse(ConnectRsp.class);
+                            batchApplyDhcpToHost(dhcpInfoList, context.getInventory().getUuid(), rsp.dhcpStateId, new Completion(trigger) {
                                 @Override
                                 public void success() {
                                     trigger.next();
@@ -730,6 +653,32 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     public static class ApplyDhcpRsp extends KVMAgentCommands.AgentResponse {
     }
 
+    public static class L3DhcpTO {
+        public String l3NetworkUuid;
+        public String bridgeName;
+        public String dhcpServerIp;
+        public String dhcpNetmask;
+        public List<DhcpInfo> dhcp;
+    }
+
+    /**
+     * prepares the DHCP server and applies DHCP entries of every L3 network in one call,
+     * the agent does the same as PrepareDhcpCmd and ApplyDhcpCmd for each L3 network
+     *
+     * when rebuild is false, the command is a delta against the table having the stateId: dhcp of each L3 network
+     * only contains new or changed entries and releaseDhcp contains entries to remove. The agent remembers stateId
+     * and reports it back in ConnectRsp.dhcpStateId as long as its DHCP table survives
+     */
+    public static class BatchApplyDhcpCmd extends KVMAgentCommands.AgentCommand {
+        public List<L3DhcpTO> l3s;
+        public boolean rebuild;
+        public String stateId;
+        public List<DhcpInfo> releaseDhcp;
+    }
+
+    public static class BatchApplyDhcpRsp extends KVMAgentCommands.AgentResponse {
+    }
+
     public static class ReleaseDhcpCmd extends KVMAgentCommands.AgentCommand {
         public List<DhcpInfo> dhcp;
     }
@@ -750,7 +699,8 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
     }
 
     public static class ConnectRsp extends KVMAgentCommands.AgentResponse {
-
+        // the stateId of the last BatchApplyDhcpCmd applied, null if the agent lost or never had a DHCP table
+        public String dhcpStateId;
     }
 
     public NetworkServiceProviderType getProviderType() {
@@ -796,6 +746,176 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
         });
     }
 
+    private void batchApplyDhcpToHost(final List<DhcpInfo> dhcpInfo, final String hostUuid, String reportedStateId, final Completion completion) {
+        final HostDhcpState lastState = hostDhcpStates.get(hostUuid);
+        final boolean delta = reportedStateId != null && lastState != null && reportedStateId.equals(lastState.id);
+        final String stateId = delta ? lastState.id : Platform.getUuid();
+
+        final Map<String, L3DhcpTO> l3s = new LinkedHashMap<String, L3DhcpTO>();
+        final Map<String, DhcpInfo> wanted = new HashMap<String, DhcpInfo>();
+        for (DhcpInfo d : dhcpInfo) {
+            wanted.put(d.mac, d);
+
+            // every L3 network is sent even it has nothing changed, the agent prepares the DHCP server again after
+            // the connect flushed ebtables
+            L3DhcpTO to = l3s.get(d.l3NetworkUuid);
+            if (to == null) {
+                to = new L3DhcpTO();
+                to.l3NetworkUuid = d.l3NetworkUuid;
+                to.bridgeName = d.bridgeName;
+                to.dhcp = new ArrayList<DhcpInfo>();
+                l3s.put(d.l3NetworkUuid, to);
+            }
+
+            if (delta) {
+                DhcpInfo old = lastState.entries.get(d.mac);
+                if (old != null && JSONObjectUtil.toJsonString(old).equals(JSONObjectUtil.toJsonString(d))) {
+                    continue;
+                }
+            }
+
+            to.dhcp.add(d);
+        }
+
+        final List<DhcpInfo> releaseDhcp = new ArrayList<DhcpInfo>();
+        if (delta) {
+            for (DhcpInfo old : lastState.entries.values()) {
+                if (!wanted.containsKey(old.mac)) {
+                    releaseDhcp.add(old);
+                }
+            }
+        }
+
+        final List<FlatDhcpAcquireDhcpServerIpMsg> msgs = new ArrayList<FlatDhcpAcquireDhcpServerIpMsg>();
+        for (L3DhcpTO to : l3s.values()) {
+            UsedIpInventory ip = l3NetworkDhcpServerIp.get(to.l3NetworkUuid);
+            if (ip != null) {
+                to.dhcpServerIp = ip.getIp();
+                to.dhcpNetmask = ip.getNetmask();
+                continue;
+            }
+
+            FlatDhcpAcquireDhcpServerIpMsg msg = new FlatDhcpAcquireDhcpServerIpMsg();
+            msg.setL3NetworkUuid(to.l3NetworkUuid);
+            bus.makeTargetServiceIdByResourceUuid(msg, FlatNetworkServiceConstant.SERVICE_ID, to.l3NetworkUuid);
+            msgs.add(msg);
+        }
+
+        FlowChain chain = FlowChainBuilder.newShareFlowChain();
+        chain.setName(String.format("flat-dhcp-provider-batch-apply-dhcp-to-host-%s", hostUuid));
+        chain.then(new ShareFlow() {
+            @Override
+            public void setup() {
+                if (!msgs.isEmpty()) {
+                    flow(new NoRollbackFlow() {
+                        String __name__ = "get-dhcp-server-ips";
+
+                        @Override
+                        public void run(final FlowTrigger trigger, Map data) {
+                            bus.send(msgs, new CloudBusListCallBack(trigger) {
+                                @Override
+                                public void run(List<MessageReply> replies) {
+                                    for (int i = 0; i < replies.size(); i++) {
+                                        MessageReply reply = replies.get(i);
+                                        if (!reply.isSuccess()) {
+                                            trigger.fail(reply.getError());
+                                            return;
+                                        }
+
+                                        FlatDhcpAcquireDhcpServerIpMsg msg = msgs.get(i);
+                                        FlatDhcpAcquireDhcpServerIpReply r = reply.castReply();
+                                        L3DhcpTO to = l3s.get(msg.getL3NetworkUuid());
+                                        to.dhcpServerIp = r.getIp();
+                                        to.dhcpNetmask = r.getNetmask();
+                                    }
+
+                                    trigger.next();
+                                }
+                            });
+                        }
+                    });
+                }
+
+                flow(new NoRollbackFlow() {
+                    String __name__ = "batch-apply-dhcp";
+
+                    @Override
+                    public void run(final FlowTrigger trigger, Map data) {
+                        BatchApplyDhcpCmd cmd = new BatchApplyDhcpCmd();
+                        cmd.l3s = new ArrayList<L3DhcpTO>(l3s.values());
+                        cmd.rebuild = !delta;
+                        cmd.stateId = stateId;
+                        cmd.releaseDhcp = releaseDhcp;
+
+                        KVMHostAsyncHttpCallMsg msg = new KVMHostAsyncHttpCallMsg();
+                        msg.setCommand(cmd);
+                        msg.setCommandTimeout(timeoutMgr.getTimeout(cmd.getClass(), "5m"));
+                        msg.setHostUuid(hostUuid);
+                        msg.setPath(BATCH_APPLY_DHCP_PATH);
+                        msg.setNoStatusCheck(true);
+                        bus.makeTargetServiceIdByResourceUuid(msg, HostConstant.SERVICE_ID, hostUuid);
+                        bus.send(msg, new CloudBusCallBack(trigger) {
+                            @Override
+                            public void run(MessageReply reply) {
+                                if (!reply.isSuccess() && SysErrors.TIMEOUT.toString().equals(reply.getError().getCode())) {
+                                    trigger.fail(reply.getError());
+                                    return;
+                                }
+
+                                if (!reply.isSuccess()) {
+                                    hostDhcpStates.remove(hostUuid);
+                                    // agents without the batch path answer 404, program each L3 network by prepare/apply
+                                    logger.debug(String.format("the agent on the host[uuid:%s] failed to batch apply dhcp, it may not" +
+                                            " support %s, apply dhcp for each L3 network instead. %s", hostUuid, BATCH_APPLY_DHCP_PATH, reply.getError()));
+                                    applyDhcpToHosts(dhcpInfo, hostUuid, true, new Completion(trigger) {
+                                        @Override
+                                        public void success() {
+                                            trigger.next();
+                                        }
+
+                                        @Override
+                                        public void fail(ErrorCode errorCode) {
+                                            trigger.fail(errorCode);
+                                        }
+                                    });
+                                    return;
+                                }
+
+                                KVMHostAsyncHttpCallReply r = reply.castReply();
+                                BatchApplyDhcpRsp rsp = r.toResponse(BatchApplyDhcpRsp.class);
+                                if (!rsp.isSuccess()) {
+                                    trigger.fail(errf.stringToOperationError(rsp.getError()));
+                                    return;
+                                }
+
+                                HostDhcpState state = new HostDhcpState();
+                                state.id = stateId;
+                                state.entries.putAll(wanted);
+                                hostDhcpStates.put(hostUuid, state);
+                                trigger.next();
+                            }
+                        });
+                    }
+                });
+
+                done(new FlowDoneHandler(completion) {
+                    @Override
+                    public void handle(Map data) {
+                        completion.success();
+                    }
+                });
+
+                error(new FlowErrorHandler(completion) {
+                    @Override
+                    public void handle(ErrorCode errCode, Map data) {
+                        hostDhcpStates.remove(hostUuid);
+                        completion.fail(errCode);
+                    }
+                });
+            }
+        }).start();
+    }
+
     private void applyDhcpToHosts(List<DhcpInfo> dhcpInfo, final String hostUuid, final boolean rebuild, final Completion completion) {
         final Map<String, List<DhcpInfo>> l3DhcpMap = new HashMap<String, List<DhcpInfo>>();
         for (DhcpInfo d : dhcpInfo) {
@@ -934,6 +1054,13 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                         done(new FlowDoneHandler(completion) {
                             @Override
                             public void handle(Map data) {
+                                HostDhcpState state = hostDhcpStates.get(hostUuid);
+                                if (state != null) {
+                                    for (DhcpInfo i : info) {
+                                        state.entries.put(i.mac, i);
+                                    }
+                                }
+
                                 apply();
                             }
                         });
@@ -993,6 +1120,13 @@ public class FlatDhcpBackend extends AbstractService implements NetworkServiceDh
                     return;
                 }
 
+                HostDhcpState state = hostDhcpStates.get(hostUuid);
+                if (state != null) {
+                    for (DhcpInfo i : cmd.dhcp) {
+                        state.entries.remove(i.mac);
+                    }
+                }
+
                 completion.done();
             }
         });
@@ -33,19 +33,16 @@ import org.zstack.kvm.KVMHostConnectExtensionPoint;
 import org.zstack.kvm.KVMHostConnectedContext;
 import org.zstack.network.service.eip.EipBackend;
 import org.zstack.network.service.eip.EipStruct;
-import org.zstack.network.service.eip.EipVO;
+import org.zstack.network.service.flat.FlatL3NetworkView.EipBinding;
 import org.zstack.network.service.flat.FlatNetworkServiceConstant.AgentCmd;
 import org.zstack.network.service.flat.FlatNetworkServiceConstant.AgentRsp;
-import org.zstack.network.service.vip.VipVO;
 import org.zstack.utils.CollectionUtils;
-import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
 
-import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -69,6 +66,8 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
     private DatabaseFacade dbf;
     @Autowired
     private GCFacade gcf;
+    @Autowired
+    private FlatL3NetworkView l3View;
 
     public static class EipTO {
         public String vmUuid;
@@ -292,29 +291,6 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
         };
     }
 
-    @Transactional
-    private Map<String, String> getPublicL3BridgeNamesByVipUuids(List<String> vipsUuids) {
-        String sql = "select l3.uuid, vip.uuid from L3NetworkVO l3, VipVO vip where vip.l3NetworkUuid = l3.uuid and vip.uuid in (:uuids)";
-        TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
-        q.setParameter("uuids", vipsUuids);
-        List<Tuple> ts = q.getResultList();
-        Map<String, String> vipL3 = new HashMap<String, String>();
-        for (Tuple t : ts) {
-            String l3Uuid = t.get(0, String.class);
-            String vipUuid = t.get(1, String.class);
-            vipL3.put(vipUuid, l3Uuid);
-        }
-
-        DebugUtils.Assert(!vipL3.isEmpty(), "how can we get an empty public L3Network list?");
-
-        Map<String, String> brNames = new BridgeNameFinder().findByL3Uuids(vipL3.values());
-        Map<String, String> vipBr = new HashMap<String, String>();
-        for (Map.Entry<String, String> e : vipL3.entrySet()) {
-            vipBr.put(e.getKey(), brNames.get(e.getValue()));
-        }
-        return vipBr;
-    }
-
     @Transactional
     private List<EipTO> getEipsByNics(List<VmNicVO> vmNics) {
         List<String> nicUuids = CollectionUtils.transformToList(vmNics, new Function<String, VmNicVO>() {
@@ -324,49 +300,31 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
             }
         });
 
-        String sql = "select eip from EipVO eip where eip.vmNicUuid in (:nicUuids)";
-        TypedQuery<EipVO> q = dbf.getEntityManager().createQuery(sql, EipVO.class);
-        q.setParameter("nicUuids", nicUuids);
-        List<EipVO> eips = q.getResultList();
-        if (eips.isEmpty()) {
+        Map<String, List<EipBinding>> bindings = l3View.getEipBindings(nicUuids);
+        if (bindings.isEmpty()) {
             return null;
         }
 
-        List<String> vipUuids = CollectionUtils.transformToList(eips, new Function<String, EipVO>() {
-            @Override
-            public String call(EipVO arg) {
-                return arg.getVipUuid();
-            }
-        });
-        sql = "select vip from VipVO vip where vip.uuid in (:uuids)";
-        TypedQuery<VipVO> vq = dbf.getEntityManager().createQuery(sql, VipVO.class);
-        vq.setParameter("uuids", vipUuids);
-        List<VipVO> vips = vq.getResultList();
-        final Map<String, VipVO> vipMap = new HashMap<String, VipVO>();
-        for (VipVO v : vips) {
-            vipMap.put(v.getUuid(), v);
+        List<String> l3Uuids = new ArrayList<String>();
+        for (VmNicVO nic : vmNics) {
+            l3Uuids.add(nic.getL3NetworkUuid());
         }
-
-        List<String> l3Uuids = CollectionUtils.transformToList(vmNics, new Function<String, VmNicVO>() {
-            @Override
-            public String call(VmNicVO arg) {
-                return arg.getL3NetworkUuid();
+        for (List<EipBinding> bs : bindings.values()) {
+            for (EipBinding b : bs) {
+                l3Uuids.add(b.vipL3NetworkUuid);
             }
-        });
+        }
+        Map<String, String> bridgeNames = l3View.getBridgeNames(l3Uuids);
 
-        final Map<String, VmNicVO> nicMap = new HashMap<String, VmNicVO>();
+        List<EipTO> tos = new ArrayList<EipTO>();
         for (VmNicVO nic : vmNics) {
-            nicMap.put(nic.getUuid(), nic);
-        }
-        final Map<String, String> bridgeNames = new BridgeNameFinder().findByL3Uuids(l3Uuids);
-        final Map<String, String> pubBridgeNames = getPublicL3BridgeNamesByVipUuids(vipUuids);
+            List<EipBinding> bs = bindings.get(nic.getUuid());
+            if (bs == null) {
+                continue;
+            }
 
-        return CollectionUtils.transformToList(eips, new Function<EipTO, EipVO>() {
-            @Override
-            public EipTO call(EipVO eip) {
+            for (EipBinding b : bs) {
                 EipTO to = new EipTO();
-                VmNicVO nic = nicMap.get(eip.getVmNicUuid());
-                VipVO vip = vipMap.get(eip.getVipUuid());
                 to.vmUuid = nic.getVmInstanceUuid();
                 to.nicName = nic.getInternalName();
                 to.nicGateway = nic.getGateway();
@@ -374,14 +332,16 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
                 to.nicIp = nic.getIp();
                 to.nicMac = nic.getMac();
                 to.nicUuid = nic.getUuid();
-                to.vip = eip.getVipIp();
-                to.vipGateway = vip.getGateway();
-                to.vipNetmask = vip.getNetmask();
+                to.vip = b.vipIp;
+                to.vipGateway = b.vipGateway;
+                to.vipNetmask = b.vipNetmask;
                 to.vmBridgeName = bridgeNames.get(nic.getL3NetworkUuid());
-                to.publicBridgeName = pubBridgeNames.get(eip.getVipUuid());
-                return to;
+                to.publicBridgeName = bridgeNames.get(b.vipL3NetworkUuid);
+                tos.add(to);
             }
-        });
+        }
+
+        return tos;
     }
 
     private void batchDeleteEips(List<EipTO> eips, String hostUuid, final Completion completion) {
@@ -398,6 +358,7 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
         ctx.setRunnerClass(GCDeleteEipRunner.class);
         ctx.setContextClass(GCDeleteEipContext.class);
         ctx.setName(String.format("delete-eips-on-host-%s", hostUuid));
+        ctx.setResourceUuid(hostUuid);
         ctx.setContext(c);
 
         GCEventTrigger trigger = new GCEventTrigger();
@@ -576,8 +537,13 @@ public class FlatEipBackend implements EipBackend, KVMHostConnectExtensionPoint,
         to.vip = struct.getVip().getIp();
         to.vipGateway = struct.getVip().getGateway();
         to.vipNetmask = struct.getVip().getNetmask();
-        to.vmBridgeName = new BridgeNameFinder().findByL3Uuid(struct.getNic().getL3NetworkUuid());
-        to.publicBridgeName = new BridgeNameFinder().findByL3Uuid(struct.getVip().getL3NetworkUuid());
+        Map<String, String> bridgeNames = l3View.getBridgeNames(list(struct.getNic().getL3NetworkUuid(), struct.getVip().getL3NetworkUuid()));
+        to.vmBridgeName = bridgeNames.get(struct.getNic().getL3NetworkUuid());
+        to.publicBridgeName = bridgeNames.get(struct.getVip().getL3NetworkUuid());
+        if (to.vmBridgeName == null || to.publicBridgeName == null) {
+            throw new CloudRuntimeException(String.format("cannot find L2 bridge name for the L3 network[uuid:%s]",
+                    to.vmBridgeName == null ? struct.getNic().getL3NetworkUuid() : struct.getVip().getL3NetworkUuid()));
+        }
         return to;
     }
 
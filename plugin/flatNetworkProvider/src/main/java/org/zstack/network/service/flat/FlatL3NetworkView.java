@@ -0,0 +1,493 @@
+package org.zstack.network.service.flat;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.compute.vm.VmSystemTags;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.EntityEvent;
+import org.zstack.core.db.EntityLifeCycleCallback;
+import org.zstack.core.db.HardDeleteEntityExtensionPoint;
+import org.zstack.header.Component;
+import org.zstack.header.network.l3.L3NetworkDnsVO;
+import org.zstack.header.network.l3.L3NetworkVO;
+import org.zstack.header.network.service.NetworkServiceL3NetworkRefVO;
+import org.zstack.header.tag.SystemTagInventory;
+import org.zstack.header.tag.SystemTagLifeCycleListener;
+import org.zstack.header.vm.VmInstanceVO;
+import org.zstack.network.service.eip.EipVO;
+import org.zstack.network.service.flat.FlatNetworkServiceCanonicalEvents.FlatL3NetworkViewChangedData;
+import org.zstack.network.service.vip.VipVO;
+import org.zstack.utils.CollectionUtils;
+import org.zstack.utils.TagUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.function.Function;
+import org.zstack.utils.gson.JSONObjectUtil;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.zstack.utils.CollectionDSL.list;
+
+/**
+ * memoizes what flat network services need of L3 networks, so connecting hosts don't query L3 networks,
+ * network service references, bridge name tags, hostname tags and EIPs of the same L3 networks again and again.
+ *
+ * bridge names never change once L2 networks are created and are kept until L3 networks are deleted. DNS,
+ * DNS domain, network service references, hostnames of VMs and EIPs bound to VM nics are dropped when they are
+ * changed; the management node changing them fires /flatNetworkService/l3NetworkView/change after the transaction
+ * completes so other management nodes drop them as well. VIPs don't change once created, EIPs are dropped when their
+ * VIPs are deleted.
+ */
+public class FlatL3NetworkView implements Component, HardDeleteEntityExtensionPoint {
+    private static final CLogger logger = Utils.getLogger(FlatL3NetworkView.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private EventFacade evtf;
+
+    public static class L3Network {
+        public String uuid;
+        public boolean flat;
+        public String bridgeName;
+        public String dnsDomain;
+        public List<String> dns;
+    }
+
+    public static class EipBinding {
+        public String eipUuid;
+        public String vmNicUuid;
+        public String vipUuid;
+        public String vipIp;
+        public String vipGateway;
+        public String vipNetmask;
+        public String vipL3NetworkUuid;
+    }
+
+    private static final String NO_HOSTNAME = "";
+
+    private Map<String, L3Network> l3Networks = new ConcurrentHashMap<String, L3Network>();
+    private Map<String, String> bridgeNames = new ConcurrentHashMap<String, String>();
+    // vm uuid -> hostname, NO_HOSTNAME if the vm has no hostname tag
+    private Map<String, String> hostnames = new ConcurrentHashMap<String, String>();
+    // vm nic uuid -> eips bound to the nic
+    private Map<String, List<EipBinding>> eips = new ConcurrentHashMap<String, List<EipBinding>>();
+    // eip uuid -> vm nic uuid, to find the nic an eip was bound to when it is detached or deleted
+    private Map<String, String> eipNics = new ConcurrentHashMap<String, String>();
+    // bumped by every change, what was loaded before a change is not memoized
+    private final AtomicLong generation = new AtomicLong();
+    private volatile String flatProviderUuid;
+
+    private String getFlatProviderUuid() {
+        if (flatProviderUuid == null) {
+            String sql = "select p.uuid from NetworkServiceProviderVO p where p.type = :ptype";
+            TypedQuery<String> q = dbf.getEntityManager().createQuery(sql, String.class);
+            q.setParameter("ptype", FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING);
+            List<String> ret = q.getResultList();
+            flatProviderUuid = ret.isEmpty() ? null : ret.get(0);
+        }
+
+        return flatProviderUuid;
+    }
+
+    @Transactional(readOnly = true)
+    private Map<String, L3Network> load(Collection<String> l3Uuids) {
+        long gen = generation.get();
+        String sql = "select l3 from L3NetworkVO l3 where l3.uuid in (:l3Uuids)";
+        TypedQuery<L3NetworkVO> q = dbf.getEntityManager().createQuery(sql, L3NetworkVO.class);
+        q.setParameter("l3Uuids", l3Uuids);
+        List<L3NetworkVO> vos = q.getResultList();
+
+        List<String> noBridgeNames = new ArrayList<String>();
+        for (String uuid : l3Uuids) {
+            if (!bridgeNames.containsKey(uuid)) {
+                noBridgeNames.add(uuid);
+            }
+        }
+        if (!noBridgeNames.isEmpty()) {
+            bridgeNames.putAll(new BridgeNameFinder().findByL3Uuids(noBridgeNames));
+        }
+
+        String providerUuid = getFlatProviderUuid();
+        Map<String, L3Network> ret = new HashMap<String, L3Network>();
+        for (L3NetworkVO vo : vos) {
+            L3Network l3 = new L3Network();
+            l3.uuid = vo.getUuid();
+            l3.bridgeName = bridgeNames.get(vo.getUuid());
+            l3.dnsDomain = vo.getDnsDomain();
+            l3.dns = CollectionUtils.transformToList(vo.getDns(), new Function<String, L3NetworkDnsVO>() {
+                @Override
+                public String call(L3NetworkDnsVO arg) {
+                    return arg.getDns();
+                }
+            });
+            for (NetworkServiceL3NetworkRefVO ref : vo.getNetworkServices()) {
+                if (ref.getNetworkServiceProviderUuid().equals(providerUuid)) {
+                    l3.flat = true;
+                    break;
+                }
+            }
+
+            ret.put(l3.uuid, l3);
+        }
+
+        if (gen == generation.get()) {
+            l3Networks.putAll(ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return L3 networks by uuid, deleted L3 networks are not in the map
+     */
+    public Map<String, L3Network> getL3Networks(Collection<String> l3Uuids) {
+        Map<String, L3Network> ret = new HashMap<String, L3Network>();
+        Set<String> toLoad = new HashSet<String>();
+        for (String uuid : l3Uuids) {
+            L3Network l3 = l3Networks.get(uuid);
+            if (l3 == null) {
+                toLoad.add(uuid);
+            } else {
+                ret.put(uuid, l3);
+            }
+        }
+
+        if (!toLoad.isEmpty()) {
+            ret.putAll(load(toLoad));
+        }
+
+        return ret;
+    }
+
+    public Map<String, String> getBridgeNames(Collection<String> l3Uuids) {
+        Map<String, String> ret = new HashMap<String, String>();
+        List<String> toFind = new ArrayList<String>();
+        for (String uuid : l3Uuids) {
+            String brName = bridgeNames.get(uuid);
+            if (brName == null) {
+                toFind.add(uuid);
+            } else {
+                ret.put(uuid, brName);
+            }
+        }
+
+        if (!toFind.isEmpty()) {
+            Map<String, String> found = new BridgeNameFinder().findByL3Uuids(toFind);
+            bridgeNames.putAll(found);
+            ret.putAll(found);
+        }
+
+        return ret;
+    }
+
+    @Transactional(readOnly = true)
+    private Map<String, String> loadHostnames(Collection<String> vmUuids) {
+        long gen = generation.get();
+        String sql = "select t.tag, t.resourceUuid from SystemTagVO t where t.resourceType = :ttype" +
+                " and t.tag like :tag and t.resourceUuid in (:vmUuids)";
+        TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("tag", TagUtils.tagPatternToSqlPattern(VmSystemTags.HOSTNAME.getTagFormat()));
+        q.setParameter("ttype", VmInstanceVO.class.getSimpleName());
+        q.setParameter("vmUuids", vmUuids);
+        Map<String, String> ret = new HashMap<String, String>();
+        for (Tuple t : q.getResultList()) {
+            ret.put(t.get(1, String.class), VmSystemTags.HOSTNAME.getTokenByTag(t.get(0, String.class), VmSystemTags.HOSTNAME_TOKEN));
+        }
+
+        if (gen == generation.get()) {
+            for (String vmUuid : vmUuids) {
+                String hostname = ret.get(vmUuid);
+                hostnames.put(vmUuid, hostname == null ? NO_HOSTNAME : hostname);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return hostnames by vm uuid, vms without the hostname tag are not in the map
+     */
+    public Map<String, String> getHostnames(Collection<String> vmUuids) {
+        Map<String, String> ret = new HashMap<String, String>();
+        List<String> toLoad = new ArrayList<String>();
+        for (String uuid : vmUuids) {
+            String hostname = hostnames.get(uuid);
+            if (hostname == null) {
+                toLoad.add(uuid);
+            } else if (!NO_HOSTNAME.equals(hostname)) {
+                ret.put(uuid, hostname);
+            }
+        }
+
+        if (!toLoad.isEmpty()) {
+            ret.putAll(loadHostnames(toLoad));
+        }
+
+        return ret;
+    }
+
+    @Transactional(readOnly = true)
+    private Map<String, List<EipBinding>> loadEipBindings(Collection<String> nicUuids) {
+        long gen = generation.get();
+        String sql = "select eip.uuid, eip.vmNicUuid, vip.uuid, eip.vipIp, vip.gateway, vip.netmask, vip.l3NetworkUuid" +
+                " from EipVO eip, VipVO vip where eip.vipUuid = vip.uuid and eip.vmNicUuid in (:nicUuids)";
+        TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("nicUuids", nicUuids);
+
+        Map<String, List<EipBinding>> ret = new HashMap<String, List<EipBinding>>();
+        for (String nicUuid : nicUuids) {
+            ret.put(nicUuid, new ArrayList<EipBinding>());
+        }
+        for (Tuple t : q.getResultList()) {
+            EipBinding b = new EipBinding();
+            b.eipUuid = t.get(0, String.class);
+            b.vmNicUuid = t.get(1, String.class);
+            b.vipUuid = t.get(2, String.class);
+            b.vipIp = t.get(3, String.class);
+            b.vipGateway = t.get(4, String.class);
+            b.vipNetmask = t.get(5, String.class);
+            b.vipL3NetworkUuid = t.get(6, String.class);
+            ret.get(b.vmNicUuid).add(b);
+        }
+
+        if (gen == generation.get()) {
+            for (List<EipBinding> bs : ret.values()) {
+                for (EipBinding b : bs) {
+                    eipNics.put(b.eipUuid, b.vmNicUuid);
+                }
+            }
+            eips.putAll(ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return EIPs bound to the vm nics by nic uuid, nics without EIP are not in the map
+     */
+    public Map<String, List<EipBinding>> getEipBindings(Collection<String> nicUuids) {
+        Map<String, List<EipBinding>> found = new HashMap<String, List<EipBinding>>();
+        List<String> toLoad = new ArrayList<String>();
+        for (String uuid : nicUuids) {
+            List<EipBinding> bs = eips.get(uuid);
+            if (bs == null) {
+                toLoad.add(uuid);
+            } else {
+                found.put(uuid, bs);
+            }
+        }
+
+        if (!toLoad.isEmpty()) {
+            found.putAll(loadEipBindings(toLoad));
+        }
+
+        Map<String, List<EipBinding>> ret = new HashMap<String, List<EipBinding>>();
+        for (Map.Entry<String, List<EipBinding>> e : found.entrySet()) {
+            if (!e.getValue().isEmpty()) {
+                ret.put(e.getKey(), e.getValue());
+            }
+        }
+        return ret;
+    }
+
+    private void dropEipsOfNic(String nicUuid) {
+        List<EipBinding> bs = eips.remove(nicUuid);
+        if (bs != null) {
+            for (EipBinding b : bs) {
+                eipNics.remove(b.eipUuid);
+            }
+        }
+    }
+
+    private void drop(FlatL3NetworkViewChangedData d) {
+        generation.incrementAndGet();
+
+        if (d.getL3NetworkUuid() != null) {
+            l3Networks.remove(d.getL3NetworkUuid());
+            if (d.isL3NetworkDeleted()) {
+                bridgeNames.remove(d.getL3NetworkUuid());
+            }
+        }
+
+        if (d.getVmUuid() != null) {
+            hostnames.remove(d.getVmUuid());
+        }
+
+        if (d.getEipUuid() != null) {
+            String nicUuid = eipNics.remove(d.getEipUuid());
+            if (nicUuid != null) {
+                dropEipsOfNic(nicUuid);
+            }
+        }
+
+        if (d.getVmNicUuid() != null) {
+            dropEipsOfNic(d.getVmNicUuid());
+        }
+
+        if (d.getVipUuid() != null) {
+            for (List<EipBinding> bs : eips.values()) {
+                for (EipBinding b : bs) {
+                    if (b.vipUuid.equals(d.getVipUuid())) {
+                        dropEipsOfNic(b.vmNicUuid);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void changed(final FlatL3NetworkViewChangedData d) {
+        drop(d);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evtf.fire(FlatNetworkServiceCanonicalEvents.FLAT_L3_NETWORK_VIEW_CHANGED_PATH, d);
+            return;
+        }
+
+        // readers may load the old data before the transaction commits, drop it again after it completes
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                drop(d);
+                evtf.fire(FlatNetworkServiceCanonicalEvents.FLAT_L3_NETWORK_VIEW_CHANGED_PATH, d);
+            }
+        });
+    }
+
+    public void invalidate(String l3Uuid) {
+        FlatL3NetworkViewChangedData d = new FlatL3NetworkViewChangedData();
+        d.setL3NetworkUuid(l3Uuid);
+        changed(d);
+    }
+
+    public void remove(String l3Uuid) {
+        FlatL3NetworkViewChangedData d = new FlatL3NetworkViewChangedData();
+        d.setL3NetworkUuid(l3Uuid);
+        d.setL3NetworkDeleted(true);
+        changed(d);
+    }
+
+    private void hostnameChanged(SystemTagInventory tag) {
+        if (!VmSystemTags.HOSTNAME.isMatch(tag.getTag())) {
+            return;
+        }
+
+        FlatL3NetworkViewChangedData d = new FlatL3NetworkViewChangedData();
+        d.setVmUuid(tag.getResourceUuid());
+        changed(d);
+    }
+
+    private void eipChanged(EipVO eip) {
+        FlatL3NetworkViewChangedData d = new FlatL3NetworkViewChangedData();
+        d.setEipUuid(eip.getUuid());
+        d.setVmNicUuid(eip.getVmNicUuid());
+        changed(d);
+    }
+
+    @Override
+    public List<Class> getEntityClassForHardDeleteEntityExtension() {
+        return list((Class) EipVO.class, VipVO.class);
+    }
+
+    @Override
+    public void postHardDelete(Collection entityIds, Class entityClass) {
+        for (Object id : entityIds) {
+            FlatL3NetworkViewChangedData d = new FlatL3NetworkViewChangedData();
+            if (entityClass == EipVO.class) {
+                d.setEipUuid((String) id);
+            } else {
+                // eips are deleted with their vip by the database
+                d.setVipUuid((String) id);
+            }
+            changed(d);
+        }
+    }
+
+    @Override
+    public boolean start() {
+        EntityLifeCycleCallback dnsChanged = new EntityLifeCycleCallback() {
+            @Override
+            public void entityLifeCycleEvent(EntityEvent evt, Object o) {
+                invalidate(((L3NetworkDnsVO) o).getL3NetworkUuid());
+            }
+        };
+        dbf.installEntityLifeCycleCallback(L3NetworkDnsVO.class, EntityEvent.POST_PERSIST, dnsChanged);
+        dbf.installEntityLifeCycleCallback(L3NetworkDnsVO.class, EntityEvent.POST_REMOVE, dnsChanged);
+
+        EntityLifeCycleCallback serviceChanged = new EntityLifeCycleCallback() {
+            @Override
+            public void entityLifeCycleEvent(EntityEvent evt, Object o) {
+                invalidate(((NetworkServiceL3NetworkRefVO) o).getL3NetworkUuid());
+            }
+        };
+        dbf.installEntityLifeCycleCallback(NetworkServiceL3NetworkRefVO.class, EntityEvent.POST_PERSIST, serviceChanged);
+        dbf.installEntityLifeCycleCallback(NetworkServiceL3NetworkRefVO.class, EntityEvent.POST_REMOVE, serviceChanged);
+
+        dbf.installEntityLifeCycleCallback(L3NetworkVO.class, EntityEvent.POST_UPDATE, new EntityLifeCycleCallback() {
+            @Override
+            public void entityLifeCycleEvent(EntityEvent evt, Object o) {
+                invalidate(((L3NetworkVO) o).getUuid());
+            }
+        });
+
+        EntityLifeCycleCallback eipChanged = new EntityLifeCycleCallback() {
+            @Override
+            public void entityLifeCycleEvent(EntityEvent evt, Object o) {
+                eipChanged((EipVO) o);
+            }
+        };
+        dbf.installEntityLifeCycleCallback(EipVO.class, EntityEvent.POST_PERSIST, eipChanged);
+        dbf.installEntityLifeCycleCallback(EipVO.class, EntityEvent.POST_UPDATE, eipChanged);
+        dbf.installEntityLifeCycleCallback(EipVO.class, EntityEvent.POST_REMOVE, eipChanged);
+
+        VmSystemTags.HOSTNAME.installLifeCycleListener(new SystemTagLifeCycleListener() {
+            @Override
+            public void tagCreated(SystemTagInventory tag) {
+                hostnameChanged(tag);
+            }
+
+            @Override
+            public void tagDeleted(SystemTagInventory tag) {
+                hostnameChanged(tag);
+            }
+
+            @Override
+            public void tagUpdated(SystemTagInventory old, SystemTagInventory newTag) {
+                hostnameChanged(newTag);
+            }
+        });
+
+        evtf.on(FlatNetworkServiceCanonicalEvents.FLAT_L3_NETWORK_VIEW_CHANGED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                if (Platform.getManagementServerId().equals(tokens.get(EventFacade.META_DATA_MANAGEMENT_NODE_ID))) {
+                    return;
+                }
+
+                FlatL3NetworkViewChangedData d = (FlatL3NetworkViewChangedData) data;
+                if (logger.isTraceEnabled()) {
+                    logger.trace(String.format("the flat L3 network view is changed by another management node, drop %s",
+                            JSONObjectUtil.toJsonString(d)));
+                }
+                drop(d);
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+package org.zstack.network.service.flat;
+
+import org.zstack.header.message.NeedJsonSchema;
+
+/**
+ */
+public class FlatNetworkServiceCanonicalEvents {
+    public static final String FLAT_L3_NETWORK_VIEW_CHANGED_PATH = "/flatNetworkService/l3NetworkView/change";
+
+    @NeedJsonSchema
+    public static class FlatL3NetworkViewChangedData {
+        private String l3NetworkUuid;
+        private boolean l3NetworkDeleted;
+        private String vmUuid;
+        private String eipUuid;
+        private String vmNicUuid;
+        private String vipUuid;
+
+        public String getL3NetworkUuid() {
+            return l3NetworkUuid;
+        }
+
+        public void setL3NetworkUuid(String l3NetworkUuid) {
+            this.l3NetworkUuid = l3NetworkUuid;
+        }
+
+        public boolean isL3NetworkDeleted() {
+            return l3NetworkDeleted;
+        }
+
+        public void setL3NetworkDeleted(boolean l3NetworkDeleted) {
+            this.l3NetworkDeleted = l3NetworkDeleted;
+        }
+
+        public String getVmUuid() {
+            return vmUuid;
+        }
+
+        public void setVmUuid(String vmUuid) {
+            this.vmUuid = vmUuid;
+        }
+
+        public String getEipUuid() {
+            return eipUuid;
+        }
+
+        public void setEipUuid(String eipUuid) {
+            this.eipUuid = eipUuid;
+        }
+
+        public String getVmNicUuid() {
+            return vmNicUuid;
+        }
+
+        public void setVmNicUuid(String vmNicUuid) {
+            this.vmNicUuid = vmNicUuid;
+        }
+
+        public String getVipUuid() {
+            return vipUuid;
+        }
+
+        public void setVipUuid(String vipUuid) {
+            this.vipUuid = vipUuid;
+        }
+    }
+}
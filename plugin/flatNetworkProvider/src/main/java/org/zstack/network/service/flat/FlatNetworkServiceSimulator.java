@@ -25,6 +25,9 @@ import org.zstack.network.service.flat.FlatUserdataBackend.ReleaseUserdataCmd;
 import org.zstack.network.service.flat.FlatUserdataBackend.ReleaseUserdataRsp;
 import org.zstack.utils.gson.JSONObjectUtil;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
 /**
  * Created by frank on 9/19/2015.
  */
@@ -100,11 +103,27 @@ public class FlatNetworkServiceSimulator {
         return null;
     }
 
+    @RequestMapping(value = FlatDhcpBackend.BATCH_APPLY_DHCP_PATH, method = RequestMethod.POST)
+    public @ResponseBody String batchApplyDhcp(HttpEntity<String> entity, HttpServletResponse rsp) throws IOException {
+        if (!config.batchApplyDhcpSupported) {
+            // what an agent without the batch path answers
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        BatchApplyDhcpCmd cmd = JSONObjectUtil.toObject(entity.getBody(), BatchApplyDhcpCmd.class);
+        config.batchApplyDhcpCmds.add(cmd);
+        config.dhcpStateId = cmd.stateId;
+        reply(entity, new BatchApplyDhcpRsp());
+        return null;
+    }
+
     @RequestMapping(value = FlatDhcpBackend.DHCP_CONNECT_PATH, method = RequestMethod.POST)
     public @ResponseBody String connect(HttpEntity<String> entity) {
         ConnectCmd cmd = JSONObjectUtil.toObject(entity.getBody(), ConnectCmd.class);
         config.connectCmds.add(cmd);
         ConnectRsp rsp = new ConnectRsp();
+        rsp.dhcpStateId = config.dhcpStateKept ? config.dhcpStateId : null;
         reply(entity, rsp);
         return null;
     }
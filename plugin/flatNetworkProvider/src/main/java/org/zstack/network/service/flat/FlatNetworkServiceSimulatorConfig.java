@@ -1,6 +1,7 @@
 package org.zstack.network.service.flat;
 
 import org.zstack.network.service.flat.FlatDhcpBackend.ApplyDhcpCmd;
+import org.zstack.network.service.flat.FlatDhcpBackend.BatchApplyDhcpCmd;
 import org.zstack.network.service.flat.FlatDhcpBackend.PrepareDhcpCmd;
 import org.zstack.network.service.flat.FlatDhcpBackend.ReleaseDhcpCmd;
 import org.zstack.network.service.flat.FlatDnsBackend.SetDnsCmd;
@@ -22,6 +23,11 @@ public class FlatNetworkServiceSimulatorConfig {
     public List<ReleaseDhcpCmd> releaseDhcpCmds = new ArrayList<ReleaseDhcpCmd>();
     public List<SetDnsCmd> setDnsCmds = new ArrayList<SetDnsCmd>();
     public List<PrepareDhcpCmd> prepareDhcpCmdList = new ArrayList<PrepareDhcpCmd>();
+    public List<BatchApplyDhcpCmd> batchApplyDhcpCmds = new ArrayList<BatchApplyDhcpCmd>();
+    public volatile boolean batchApplyDhcpSupported = true;
+    // whether connect reports the stateId of the last batch apply, what an agent whose DHCP table survived does
+    public volatile boolean dhcpStateKept = false;
+    public volatile String dhcpStateId;
     public List<ApplyUserdataCmd> applyUserdataCmds = new ArrayList<ApplyUserdataCmd>();
     public List<ReleaseUserdataCmd> releaseUserdataCmds = new ArrayList<ReleaseUserdataCmd>();
     public List<FlatDhcpBackend.ConnectCmd> connectCmds = new ArrayList<FlatDhcpBackend.ConnectCmd>();
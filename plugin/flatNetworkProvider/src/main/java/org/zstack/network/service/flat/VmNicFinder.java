@@ -8,12 +8,11 @@ import org.zstack.core.db.DatabaseFacade;
 import org.zstack.header.vm.VmInstanceConstant;
 import org.zstack.header.vm.VmInstanceState;
 import org.zstack.header.vm.VmNicVO;
+import org.zstack.network.service.flat.FlatL3NetworkView.L3Network;
 
 import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import static org.zstack.utils.CollectionDSL.list;
 
@@ -24,6 +23,8 @@ import static org.zstack.utils.CollectionDSL.list;
 public class VmNicFinder {
     @Autowired
     private DatabaseFacade dbf;
+    @Autowired
+    private FlatL3NetworkView l3View;
 
     @Transactional
     public List<VmNicVO> findVmNicsByVmUuid(String vmUuid) {
@@ -59,14 +60,25 @@ public class VmNicFinder {
             vmDefaultL3.put(t.get(0, String.class), t.get(1, String.class));
         }
 
-        sql = "select nic from VmNicVO nic, L3NetworkVO l3, NetworkServiceL3NetworkRefVO ref, NetworkServiceProviderVO provider where nic.l3NetworkUuid = l3.uuid" +
-                " and ref.l3NetworkUuid = l3.uuid and ref.networkServiceProviderUuid = provider.uuid " +
-                " and provider.type = :ptype and nic.vmInstanceUuid in (:vmUuids) group by nic.uuid";
-
+        // whether L3 networks are served by the flat provider comes from the shared view instead of joins
+        sql = "select nic from VmNicVO nic where nic.vmInstanceUuid in (:vmUuids)";
         TypedQuery<VmNicVO> nq = dbf.getEntityManager().createQuery(sql, VmNicVO.class);
-        nq.setParameter("ptype", FlatNetworkServiceConstant.FLAT_NETWORK_SERVICE_TYPE_STRING);
         nq.setParameter("vmUuids", vmDefaultL3.keySet());
-        List<VmNicVO> nics = nq.getResultList();
+        List<VmNicVO> allNics = nq.getResultList();
+
+        Set<String> l3Uuids = new HashSet<String>();
+        for (VmNicVO nic : allNics) {
+            l3Uuids.add(nic.getL3NetworkUuid());
+        }
+        Map<String, L3Network> l3s = l3View.getL3Networks(l3Uuids);
+
+        List<VmNicVO> nics = new ArrayList<VmNicVO>();
+        for (VmNicVO nic : allNics) {
+            L3Network l3 = l3s.get(nic.getL3NetworkUuid());
+            if (l3 != null && l3.flat) {
+                nics.add(nic);
+            }
+        }
         if (nics.isEmpty()) {
             return null;
         }
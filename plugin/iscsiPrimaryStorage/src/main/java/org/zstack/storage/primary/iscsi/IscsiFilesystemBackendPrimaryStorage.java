@@ -526,7 +526,7 @@ public class IscsiFilesystemBackendPrimaryStorage extends PrimaryStorageBase {
 
     private void reportCapacity(AgentCapacityResponse ret) {
         if (ret.getTotalCapacity() != null && ret.getAvailableCapacity() != null) {
-            new PrimaryStorageCapacityUpdater(self.getUuid()).updateAvailablePhysicalCapacity(ret.getAvailableCapacity());
+            new PrimaryStorageCapacityUpdater(self.getUuid()).reportAvailablePhysicalCapacity(ret.getAvailableCapacity());
         }
     }
 
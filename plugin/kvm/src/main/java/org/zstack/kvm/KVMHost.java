@@ -1,5 +1,7 @@
 package org.zstack.kvm;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestClientException;
@@ -50,6 +52,8 @@ import org.zstack.utils.ssh.Ssh;
 import org.zstack.utils.ssh.SshResult;
 
 import javax.persistence.TypedQuery;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -94,6 +98,7 @@ public class KVMHost extends HostBase implements Host {
     private String getConsolePortPath;
 
     private String agentPackageName = KVMGlobalProperty.AGENT_PACKAGE_NAME;
+    private static String agentDigest;
 
     KVMHost(KVMHostVO self, KVMHostContext context) {
         super(self);
@@ -1880,6 +1885,28 @@ public class KVMHost extends HostBase implements Host {
         HostSystemTags.OS_VERSION.createInherentTag(self.getUuid(), map(e(HostSystemTags.OS_VERSION_TOKEN, version)));
     }
     
+    // the MD5 of the agent package and zstacklib deployed by this management node
+    private synchronized static String getAgentDigest(String agentPackageName) {
+        if (agentDigest == null) {
+            StringBuilder sb = new StringBuilder();
+            for (String path : Arrays.asList(SshFileMd5Checker.ZSTACKLIB_SRC_PATH,
+                    PathUtil.findFileOnClassPath(String.format("ansible/kvm/%s", agentPackageName), true).getAbsolutePath())) {
+                FileInputStream fis = null;
+                try {
+                    fis = new FileInputStream(path);
+                    sb.append(DigestUtils.md5Hex(fis));
+                } catch (IOException e) {
+                    throw new CloudRuntimeException(e);
+                } finally {
+                    IOUtils.closeQuietly(fis);
+                }
+            }
+            agentDigest = DigestUtils.md5Hex(sb.toString());
+        }
+
+        return agentDigest;
+    }
+
     @Override
     public void connectHook(final ConnectHostInfo info, final Completion complete) {
         if (CoreGlobalProperty.UNIT_TEST_ON) {
@@ -1894,6 +1921,8 @@ public class KVMHost extends HostBase implements Host {
             FlowChain chain = FlowChainBuilder.newShareFlowChain();
             chain.setName(String.format("run-ansible-for-kvm-%s", self.getUuid()));
             chain.then(new ShareFlow() {
+                boolean agentCurrent;
+
                 @Override
                 public void setup() {
                     if (info.isNewAdded()) {
@@ -1923,11 +1952,48 @@ public class KVMHost extends HostBase implements Host {
                         });
                     }
 
+                    if (!info.isNewAdded() && info.isSkipDeployIfAgentCurrent()) {
+                        flow(new NoRollbackFlow() {
+                            String __name__ = "check-if-agent-current";
+
+                            @Override
+                            public void run(final FlowTrigger trigger, Map data) {
+                                String digest = KVMSystemTags.AGENT_DIGEST.getTokenByResourceUuid(self.getUuid(), KVMSystemTags.AGENT_DIGEST_TOKEN);
+                                if (!getAgentDigest(agentPackageName).equals(digest)) {
+                                    trigger.next();
+                                    return;
+                                }
+
+                                // the agent deployed by us is running, skip the ansible;
+                                // a down agent is deployed by the ansible anyway, don't wait for it long
+                                restf.echo(echoPath, new Completion(trigger) {
+                                    @Override
+                                    public void success() {
+                                        logger.debug(String.format("the agent on kvm host[uuid:%s, ip:%s] is current, skip deploying it",
+                                                self.getUuid(), self.getManagementIp()));
+                                        agentCurrent = true;
+                                        trigger.next();
+                                    }
+
+                                    @Override
+                                    public void fail(ErrorCode errorCode) {
+                                        trigger.next();
+                                    }
+                                }, TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(3));
+                            }
+                        });
+                    }
+
                     flow(new NoRollbackFlow() {
                         String __name__ = "apply-ansible-playbook";
 
                         @Override
                         public void run(final FlowTrigger trigger, Map data) {
+                            if (agentCurrent) {
+                                trigger.next();
+                                return;
+                            }
+
                             String srcPath = PathUtil.findFileOnClassPath(String.format("ansible/kvm/%s", agentPackageName), true).getAbsolutePath();
                             String destPath = String.format("/var/lib/zstack/kvm/%s", agentPackageName);
                             SshFileMd5Checker checker = new SshFileMd5Checker();
@@ -1953,6 +2019,8 @@ public class KVMHost extends HostBase implements Host {
                             runner.run(new Completion(trigger) {
                                 @Override
                                 public void success() {
+                                    KVMSystemTags.AGENT_DIGEST.recreateInherentTag(self.getUuid(),
+                                            map(e(KVMSystemTags.AGENT_DIGEST_TOKEN, getAgentDigest(agentPackageName))));
                                     trigger.next();
                                 }
 
@@ -1969,6 +2037,11 @@ public class KVMHost extends HostBase implements Host {
 
                         @Override
                         public void run(final FlowTrigger trigger, Map data) {
+                            if (agentCurrent) {
+                                trigger.next();
+                                return;
+                            }
+
                             restf.echo(echoPath, new Completion(trigger) {
                                 @Override
                                 public void success() {
@@ -19,6 +19,9 @@ public class KVMSystemTags {
     public static final String HVM_CPU_FLAG_TOKEN = "flag";
     public static PatternedSystemTag HVM_CPU_FLAG = new PatternedSystemTag(String.format("hvm::{%s}", HVM_CPU_FLAG_TOKEN), HostVO.class);
 
+    public static final String AGENT_DIGEST_TOKEN = "digest";
+    public static PatternedSystemTag AGENT_DIGEST = new PatternedSystemTag(String.format("kvmagent::digest::{%s}", AGENT_DIGEST_TOKEN), HostVO.class);
+
     public static SystemTag VIRTIO_SCSI = new SystemTag("capability:virtio-scsi", HostVO.class);
 
     public static final String L2_BRIDGE_NAME_TOKEN = "name";
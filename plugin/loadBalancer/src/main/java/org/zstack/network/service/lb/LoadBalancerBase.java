@@ -35,7 +35,9 @@ import org.zstack.network.service.vip.VipVO;
 import org.zstack.tag.TagManager;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.DebugUtils;
+import org.zstack.utils.Utils;
 import org.zstack.utils.function.Function;
+import org.zstack.utils.logging.CLogger;
 
 import javax.persistence.TypedQuery;
 import java.util.*;
@@ -62,6 +64,15 @@ public class LoadBalancerBase {
     @Autowired
     private VipManager vipMgr;
 
+    private static final CLogger logger = Utils.getLogger(LoadBalancerBase.class);
+
+    private static final String PENDING_REFRESH = "refresh";
+    private static final String PENDING_ACTIVE_NICS = "active-nics";
+    // requests answered by one update of a load balancer, keyed by the kind of the update and the load balancer uuid;
+    // a request arriving while such an update is waiting in the queue of the load balancer joins it instead of queuing
+    // an update of its own
+    private static final Map<String, List<Message>> pendingRequests = new HashMap<String, List<Message>>();
+
     private LoadBalancerVO self;
 
     private String getSyncId() {
@@ -139,8 +150,63 @@ public class LoadBalancerBase {
     }
 
     private void handle(final RefreshLoadBalancerMsg msg) {
-        final RefreshLoadBalancerReply reply = new RefreshLoadBalancerReply();
-        thdf.chainSubmit(new ChainTask() {
+        submitRefresh(msg);
+    }
+
+    private boolean addPendingRequest(String type, Message msg) {
+        String key = String.format("%s-%s", type, self.getUuid());
+        synchronized (pendingRequests) {
+            List<Message> msgs = pendingRequests.get(key);
+            boolean first = msgs == null;
+            if (first) {
+                msgs = new ArrayList<Message>();
+                pendingRequests.put(key, msgs);
+            }
+            msgs.add(msg);
+            return first;
+        }
+    }
+
+    private <T extends Message> List<T> takePendingRequests(String type) {
+        synchronized (pendingRequests) {
+            List<Message> msgs = pendingRequests.remove(String.format("%s-%s", type, self.getUuid()));
+            List<T> ret = new ArrayList<T>();
+            if (msgs != null) {
+                for (Message m : msgs) {
+                    ret.add((T) m);
+                }
+            }
+            return ret;
+        }
+    }
+
+    private void replyRefresh(Message msg, LoadBalancerInventory inv, ErrorCode err) {
+        if (msg instanceof APIRefreshLoadBalancerMsg) {
+            APIRefreshLoadBalancerEvent evt = new APIRefreshLoadBalancerEvent(msg.getId());
+            if (err != null) {
+                evt.setErrorCode(err);
+            } else {
+                evt.setInventory(inv);
+            }
+            bus.publish(evt);
+        } else {
+            RefreshLoadBalancerReply reply = new RefreshLoadBalancerReply();
+            if (err != null) {
+                reply.setError(err);
+            } else {
+                reply.setInventory(inv);
+            }
+            bus.reply(msg, reply);
+        }
+    }
+
+    private void submitRefresh(final Message msg) {
+        if (!addPendingRequest(PENDING_REFRESH, msg)) {
+            // a refresh is waiting in the queue, it will answer this request too
+            return;
+        }
+
+        thdf.chainSubmit(new ChainTask(msg) {
             @Override
             public String getSyncSignature() {
                 return getSyncId();
@@ -148,21 +214,37 @@ public class LoadBalancerBase {
 
             @Override
             public void run(final SyncTaskChain chain) {
-                refresh(new Completion(msg, chain) {
-                    @Override
-                    public void success() {
-                        reply.setInventory(getInventory());
-                        bus.reply(msg, reply);
-                        chain.next();
-                    }
+                final List<Message> msgs = takePendingRequests(PENDING_REFRESH);
+                if (msgs.size() > 1) {
+                    logger.debug(String.format("coalesced %s refresh requests of the load balancer[uuid:%s] into one", msgs.size(), self.getUuid()));
+                }
 
-                    @Override
-                    public void fail(ErrorCode errorCode) {
-                        reply.setError(errorCode);
-                        bus.reply(msg, reply);
-                        chain.next();
+                try {
+                    refresh(new Completion(chain) {
+                        @Override
+                        public void success() {
+                            LoadBalancerInventory inv = getInventory();
+                            for (Message m : msgs) {
+                                replyRefresh(m, inv, null);
+                            }
+                            chain.next();
+                        }
+
+                        @Override
+                        public void fail(ErrorCode errorCode) {
+                            for (Message m : msgs) {
+                                replyRefresh(m, null, errorCode);
+                            }
+                            chain.next();
+                        }
+                    });
+                } catch (Throwable t) {
+                    ErrorCode err = errf.throwableToInternalError(t);
+                    for (Message m : msgs) {
+                        replyRefresh(m, null, err);
                     }
-                });
+                    chain.next();
+                }
             }
 
             @Override
@@ -322,24 +404,27 @@ public class LoadBalancerBase {
         }).start();
     }
 
-    private void deactiveVmNic(final LoadBalancerActiveVmNicMsg msg, final NoErrorCompletion completion) {
-        checkIfNicIsAdded(msg.getVmNicUuids());
+    private void activeVmNics(final List<LoadBalancerActiveVmNicMsg> msgs, final NoErrorCompletion completion) {
+        self = dbf.reload(self);
 
-        LoadBalancerListenerVO l = CollectionUtils.find(self.getListeners(), new Function<LoadBalancerListenerVO, LoadBalancerListenerVO>() {
-            @Override
-            public LoadBalancerListenerVO call(LoadBalancerListenerVO arg) {
-                return arg.getUuid().equals(msg.getListenerUuid()) ? arg : null;
-            }
-        });
+        final List<LoadBalancerListenerVmNicRefVO> refs = new ArrayList<LoadBalancerListenerVmNicRefVO>();
+        for (final LoadBalancerActiveVmNicMsg msg : msgs) {
+            checkIfNicIsAdded(msg.getVmNicUuids());
 
-        final List<LoadBalancerListenerVmNicRefVO> refs = CollectionUtils.transformToList(l.getVmNicRefs(), new Function<LoadBalancerListenerVmNicRefVO, LoadBalancerListenerVmNicRefVO>() {
-            @Override
-            public LoadBalancerListenerVmNicRefVO call(LoadBalancerListenerVmNicRefVO arg) {
-                return msg.getVmNicUuids().contains(arg.getVmNicUuid()) ? arg : null;
-            }
-        });
+            LoadBalancerListenerVO l = CollectionUtils.find(self.getListeners(), new Function<LoadBalancerListenerVO, LoadBalancerListenerVO>() {
+                @Override
+                public LoadBalancerListenerVO call(LoadBalancerListenerVO arg) {
+                    return arg.getUuid().equals(msg.getListenerUuid()) ? arg : null;
+                }
+            });
 
-        final LoadBalancerActiveVmNicReply reply = new LoadBalancerActiveVmNicReply();
+            refs.addAll(CollectionUtils.transformToList(l.getVmNicRefs(), new Function<LoadBalancerListenerVmNicRefVO, LoadBalancerListenerVmNicRefVO>() {
+                @Override
+                public LoadBalancerListenerVmNicRefVO call(LoadBalancerListenerVmNicRefVO arg) {
+                    return msg.getVmNicUuids().contains(arg.getVmNicUuid()) ? arg : null;
+                }
+            }));
+        }
 
         FlowChain chain = FlowChainBuilder.newShareFlowChain();
         chain.setName(String.format("active-vm-nics-on-lb-%s", self.getUuid()));
@@ -399,19 +484,24 @@ public class LoadBalancerBase {
                     }
                 });
 
-                done(new FlowDoneHandler(msg) {
+                done(new FlowDoneHandler(completion) {
                     @Override
                     public void handle(Map data) {
-                        bus.reply(msg, reply);
+                        for (LoadBalancerActiveVmNicMsg msg : msgs) {
+                            bus.reply(msg, new LoadBalancerActiveVmNicReply());
+                        }
                         completion.done();
                     }
                 });
 
-                error(new FlowErrorHandler(msg) {
+                error(new FlowErrorHandler(completion) {
                     @Override
                     public void handle(ErrorCode errCode, Map data) {
-                        reply.setError(errCode);
-                        bus.reply(msg, reply);
+                        for (LoadBalancerActiveVmNicMsg msg : msgs) {
+                            LoadBalancerActiveVmNicReply reply = new LoadBalancerActiveVmNicReply();
+                            reply.setError(errCode);
+                            bus.reply(msg, reply);
+                        }
                         completion.done();
                     }
                 });
@@ -420,6 +510,11 @@ public class LoadBalancerBase {
     }
 
     private void handle(final LoadBalancerActiveVmNicMsg msg) {
+        if (!addPendingRequest(PENDING_ACTIVE_NICS, msg)) {
+            // the nics are activated with the ones of requests waiting in the queue by one update of the backend
+            return;
+        }
+
         thdf.chainSubmit(new ChainTask(msg) {
             @Override
             public String getSyncSignature() {
@@ -428,17 +523,32 @@ public class LoadBalancerBase {
 
             @Override
             public void run(final SyncTaskChain chain) {
-                deactiveVmNic(msg, new NoErrorCompletion(msg, chain) {
-                    @Override
-                    public void done() {
-                        chain.next();
+                List<LoadBalancerActiveVmNicMsg> msgs = takePendingRequests(PENDING_ACTIVE_NICS);
+                if (msgs.size() > 1) {
+                    logger.debug(String.format("coalesced %s requests activating vm nics on the load balancer[uuid:%s] into one", msgs.size(), self.getUuid()));
+                }
+
+                try {
+                    activeVmNics(msgs, new NoErrorCompletion(chain) {
+                        @Override
+                        public void done() {
+                            chain.next();
+                        }
+                    });
+                } catch (Throwable t) {
+                    ErrorCode err = errf.throwableToInternalError(t);
+                    for (LoadBalancerActiveVmNicMsg m : msgs) {
+                        LoadBalancerActiveVmNicReply reply = new LoadBalancerActiveVmNicReply();
+                        reply.setError(err);
+                        bus.reply(m, reply);
                     }
-                });
+                    chain.next();
+                }
             }
 
             @Override
             public String getName() {
-                return "deactive-nic";
+                return "active-nic";
             }
         });
     }
@@ -462,37 +572,7 @@ public class LoadBalancerBase {
     }
 
     private void handle(final APIRefreshLoadBalancerMsg msg) {
-        final APIRefreshLoadBalancerEvent evt = new APIRefreshLoadBalancerEvent(msg.getId());
-        thdf.chainSubmit(new ChainTask(msg) {
-            @Override
-            public String getSyncSignature() {
-                return getSyncId();
-            }
-
-            @Override
-            public void run(final SyncTaskChain chain) {
-                refresh(new Completion(msg, chain) {
-                    @Override
-                    public void success() {
-                        evt.setInventory(getInventory());
-                        bus.publish(evt);
-                        chain.next();
-                    }
-
-                    @Override
-                    public void fail(ErrorCode errorCode) {
-                        evt.setErrorCode(errorCode);
-                        bus.publish(evt);
-                        chain.next();
-                    }
-                });
-            }
-
-            @Override
-            public String getName() {
-                return "refresh-lb";
-            }
-        });
+        submitRefresh(msg);
     }
 
     private void handle(final APIDeleteLoadBalancerMsg msg) {
@@ -1,7 +1,6 @@
 package org.zstack.network.service.lb;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.transaction.annotation.Transactional;
 import org.zstack.core.Platform;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.MessageSafe;
@@ -36,7 +35,6 @@ import org.zstack.network.service.vip.VipManager;
 import org.zstack.network.service.vip.VipVO;
 import org.zstack.tag.TagManager;
 
-import javax.persistence.TypedQuery;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -421,17 +419,8 @@ public class LoadBalancerManagerImpl extends AbstractService implements LoadBala
                 return list(usage);
             }
 
-            @Transactional(readOnly = true)
             private long getUsedLb(String accountUuid) {
-                String sql = "select count(lb) from LoadBalancerVO lb, AccountResourceRefVO ref where ref.resourceUuid = lb.uuid and " +
-                        "ref.accountUuid = :auuid and ref.resourceType = :rtype";
-
-                TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
-                q.setParameter("auuid", accountUuid);
-                q.setParameter("rtype", LoadBalancerVO.class.getSimpleName());
-                Long en = q.getSingleResult();
-                en = en == null ? 0 : en;
-                return en;
+                return acntMgr.getResourceCount(accountUuid, LoadBalancerVO.class);
             }
 
             private void check(APICreateLoadBalancerMsg msg, Map<String, QuotaPair> pairs) {
@@ -386,11 +386,55 @@ public class LocalStorageBase extends PrimaryStorageBase {
             handle((LocalStorageReturnHostCapacityMsg) msg);
         } else if (msg instanceof LocalStorageHypervisorSpecificMessage) {
             handle((LocalStorageHypervisorSpecificMessage) msg);
+        } else if (msg instanceof PrimaryStorageRemoveCachedImageMsg) {
+            handle((PrimaryStorageRemoveCachedImageMsg) msg);
         } else {
             super.handleLocalMessage(msg);
         }
     }
 
+    private void handle(final PrimaryStorageRemoveCachedImageMsg msg) {
+        // image caches have no LocalStorageResourceRefVO, the host is encoded in the install url
+        final ImageCacheInventory cache = msg.getInventory();
+        ErrorCode err = checkImageCacheRemovable(cache);
+        if (err != null) {
+            PrimaryStorageRemoveCachedImageReply reply = new PrimaryStorageRemoveCachedImageReply();
+            reply.setError(err);
+            bus.reply(msg, reply);
+            return;
+        }
+
+        LocalStorageKvmBackend.CacheInstallPath path = new LocalStorageKvmBackend.CacheInstallPath();
+        path.fullPath = cache.getInstallUrl();
+        path.disassemble();
+        final String hostUuid = path.hostUuid;
+
+        LocalStorageHypervisorFactory f = getHypervisorBackendFactoryByHostUuid(hostUuid);
+        LocalStorageHypervisorBackend bkd = f.getHypervisorBackend(self);
+        bkd.deleteBits(path.installPath, hostUuid, new Completion(msg) {
+            @Override
+            public void success() {
+                returnCapacityToHost(hostUuid, cache.getSize());
+
+                ReturnPrimaryStorageCapacityMsg rmsg = new ReturnPrimaryStorageCapacityMsg();
+                rmsg.setPrimaryStorageUuid(self.getUuid());
+                rmsg.setDiskSize(cache.getSize());
+                rmsg.setNoOverProvisioning(true);
+                bus.makeTargetServiceIdByResourceUuid(rmsg, PrimaryStorageConstant.SERVICE_ID, self.getUuid());
+                bus.send(rmsg);
+
+                bus.reply(msg, new PrimaryStorageRemoveCachedImageReply());
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                PrimaryStorageRemoveCachedImageReply reply = new PrimaryStorageRemoveCachedImageReply();
+                reply.setError(errorCode);
+                bus.reply(msg, reply);
+            }
+        });
+    }
+
     private void handle(LocalStorageHypervisorSpecificMessage msg) {
         LocalStorageHypervisorFactory f = getHypervisorBackendFactoryByHostUuid(msg.getHostUuid());
         LocalStorageHypervisorBackend bkd = f.getHypervisorBackend(self);
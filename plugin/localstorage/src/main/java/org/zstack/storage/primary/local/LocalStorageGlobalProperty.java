@@ -12,4 +12,8 @@ public class LocalStorageGlobalProperty {
     public static int KVM_SftpDownloadBitsCmd_TIMEOUT;
     @GlobalProperty(name="LocalStorage.kvm.SftpUploadBitsCmd.timeout", defaultValue = "3600")
     public static int KVM_SftpUploadBitsCmd_TIMEOUT;
+    @GlobalProperty(name="LocalStorage.kvm.copyBits.chunkSize", defaultValue = "67108864")
+    public static long KVM_COPY_BITS_CHUNK_SIZE;
+    @GlobalProperty(name="LocalStorage.kvm.copyBits.parallelChunks", defaultValue = "4")
+    public static int KVM_COPY_BITS_PARALLEL_CHUNKS;
 }
@@ -47,6 +47,7 @@ import org.zstack.header.volume.VolumeType;
 import org.zstack.header.volume.VolumeVO;
 import org.zstack.identity.AccountManager;
 import org.zstack.kvm.*;
+import org.zstack.storage.primary.ImageCacheManager;
 import org.zstack.storage.primary.PrimaryStoragePathMaker;
 import org.zstack.storage.primary.local.LocalStorageKvmMigrateVmFlow.CopyBitsFromRemoteCmd;
 import org.zstack.storage.primary.local.MigrateBitsStruct.ResourceInfo;
@@ -695,6 +696,8 @@ public class LocalStorageKvmBackend extends LocalStorageHypervisorBackend {
         return hostUuid;
     }
 
+    public static final String MD5_NOT_CALCULATED = "not calculated";
+
     public static class CacheInstallPath {
         public String fullPath;
         public String hostUuid;
@@ -730,6 +733,16 @@ public class LocalStorageKvmBackend extends LocalStorageHypervisorBackend {
             DebugUtils.Assert(primaryStorageInstallPath != null, "primaryStorageInstallPath cannot be null");
             DebugUtils.Assert(backupStorageInstallPath != null, "backupStorageInstallPath cannot be null");
 
+            String key = String.format("download-image-%s-to-localstorage-%s-cache-host-%s", image.getUuid(), self.getUuid(), hostUuid);
+            imageCacheMgr.coalesceDownload(key, new ImageCacheManager.Download<String>() {
+                @Override
+                public void run(ReturnValueCompletion<String> completion) {
+                    downloadInQueue(completion);
+                }
+            }, completion);
+        }
+
+        private void downloadInQueue(final ReturnValueCompletion<String> completion) {
             thdf.chainSubmit(new ChainTask(completion) {
                 @Override
                 public String getSyncSignature() {
@@ -833,7 +846,7 @@ public class LocalStorageKvmBackend extends LocalStorageHypervisorBackend {
                                     vo.setImageUuid(image.getUuid());
                                     vo.setPrimaryStorageUuid(self.getUuid());
                                     vo.setSize(image.getSize());
-                                    vo.setMd5sum("not calculated");
+                                    vo.setMd5sum(MD5_NOT_CALCULATED);
 
                                     CacheInstallPath path = new CacheInstallPath();
                                     path.installPath = primaryStorageInstallPath;
@@ -1074,6 +1087,7 @@ public class LocalStorageKvmBackend extends LocalStorageHypervisorBackend {
         ctx.setContextClass(GCDeleteBitsContext.class);
         ctx.setRunnerClass(GCDeleteBitsRunner.class);
         ctx.setName(String.format("local-storage-delete-%s-%s", self.getUuid(), c.getInstallPath()));
+        ctx.setResourceUuid(c.getHostUuid());
         ctx.setContext(c);
 
         GCEventTrigger trigger = new GCEventTrigger();
@@ -94,6 +94,16 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
         public String dstIp;
         public String dstPassword;
         public String dstUsername;
+        // files are split into chunks of chunkSize bytes, parallelChunks of them are transferred at the same time
+        // and each is verified by its checksum on the dst host after transferred
+        public long chunkSize = LocalStorageGlobalProperty.KVM_COPY_BITS_CHUNK_SIZE;
+        public int parallelChunks = LocalStorageGlobalProperty.KVM_COPY_BITS_PARALLEL_CHUNKS;
+    }
+
+    public static class CopyBitsFromRemoteRsp extends AgentResponse {
+        // true if the agent verified every chunk on the dst host, agents copying whole files don't set it and the
+        // files are verified by md5 afterwards
+        public boolean verified;
     }
 
     class BackingImage {
@@ -101,6 +111,9 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
         String path;
         Long size;
         String md5;
+        // the path is a cache of the same image having the same md5 on the dst host, not a copy of the src one
+        boolean deduped;
+        boolean verified;
     }
 
     @Override
@@ -276,6 +289,13 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                                 return;
                             }
 
+                            final ImageCacheVO cache = findImageCache(ref.getPrimaryStorageUuid(), srcHostUuid, backingImage.path);
+                            if (cache != null && cache.getMd5sum() != null && !LocalStorageKvmBackend.MD5_NOT_CALCULATED.equals(cache.getMd5sum())) {
+                                backingImage.md5 = cache.getMd5sum();
+                                trigger.next();
+                                return;
+                            }
+
                             GetMd5Cmd cmd = new GetMd5Cmd();
                             GetMd5TO to = new GetMd5TO();
                             to.resourceUuid = "backing-file";
@@ -286,6 +306,11 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                                 @Override
                                 public void success(GetMd5Rsp rsp) {
                                     backingImage.md5 = rsp.md5s.get(0).md5;
+                                    if (cache != null) {
+                                        // image caches are immutable, remember the md5 for next migrations
+                                        cache.setMd5sum(backingImage.md5);
+                                        dbf.update(cache);
+                                    }
                                     trigger.next();
                                 }
 
@@ -318,11 +343,12 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                                     cmd.dstPassword = dstHost.getPassword();
                                     cmd.paths = list(backingImage.path);
 
-                                    callKvmHost(srcHostUuid, ref.getPrimaryStorageUuid(), COPY_TO_REMOTE_BITS_PATH, cmd, AgentResponse.class,
-                                            new ReturnValueCompletion<AgentResponse>(trigger, chain) {
+                                    callKvmHost(srcHostUuid, ref.getPrimaryStorageUuid(), COPY_TO_REMOTE_BITS_PATH, cmd, CopyBitsFromRemoteRsp.class,
+                                            new ReturnValueCompletion<CopyBitsFromRemoteRsp>(trigger, chain) {
                                         @Override
-                                        public void success(AgentResponse rsp) {
+                                        public void success(CopyBitsFromRemoteRsp rsp) {
                                             s = true;
+                                            backingImage.verified = rsp.verified;
                                             trigger.next();
                                             chain.next();
                                         }
@@ -359,6 +385,10 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                                         logger.debug(String.format("found %s on the dst host[uuid:%s], don't copy it",
                                                 backingImage.path, dstHostUuid));
                                         trigger.next();
+                                    } else if (snapshotTrees.isEmpty()) {
+                                        // snapshots of the volume are copied with the backing file path in their chain,
+                                        // so only volumes without snapshots can be rebased to another file
+                                        dedupeOrMigrate(trigger);
                                     } else {
                                         migrate(trigger);
                                     }
@@ -372,9 +402,61 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                             });
                         }
 
+                        private void dedupeOrMigrate(final FlowTrigger trigger) {
+                            // only caches of the image the volume is created from, they are kept while volumes
+                            // created from the image exist; a cache of another image having the same md5 may be
+                            // evicted while it backs the volume
+                            String imageUuid = rootVolume.getRootImageUuid();
+                            if (imageUuid == null) {
+                                migrate(trigger);
+                                return;
+                            }
+
+                            SimpleQuery<ImageCacheVO> q = dbf.createQuery(ImageCacheVO.class);
+                            q.select(ImageCacheVO_.installUrl);
+                            q.add(ImageCacheVO_.primaryStorageUuid, Op.EQ, ref.getPrimaryStorageUuid());
+                            q.add(ImageCacheVO_.imageUuid, Op.EQ, imageUuid);
+                            q.add(ImageCacheVO_.installUrl, Op.LIKE, String.format("%%hostUuid://%s%%", dstHostUuid));
+                            q.add(ImageCacheVO_.md5sum, Op.EQ, backingImage.md5);
+                            q.setLimit(1);
+                            String installUrl = q.findValue();
+                            if (installUrl == null) {
+                                migrate(trigger);
+                                return;
+                            }
+
+                            CacheInstallPath path = new CacheInstallPath();
+                            path.fullPath = installUrl;
+                            final String dstPath = path.disassemble().installPath;
+                            checkIfExistOnDst(dstPath, new ReturnValueCompletion<Boolean>(trigger) {
+                                @Override
+                                public void success(Boolean existing) {
+                                    if (!existing) {
+                                        migrate(trigger);
+                                        return;
+                                    }
+
+                                    logger.debug(String.format("found %s having the same md5 as %s on the dst host[uuid:%s], use it as the backing file",
+                                            dstPath, backingImage.path, dstHostUuid));
+                                    backingImage.path = dstPath;
+                                    backingImage.deduped = true;
+                                    trigger.next();
+                                }
+
+                                @Override
+                                public void fail(ErrorCode errorCode) {
+                                    trigger.fail(errorCode);
+                                }
+                            });
+                        }
+
                         private void checkIfExistOnDst(final ReturnValueCompletion<Boolean> completion) {
+                            checkIfExistOnDst(backingImage.path, completion);
+                        }
+
+                        private void checkIfExistOnDst(String path, final ReturnValueCompletion<Boolean> completion) {
                             CheckBitsCmd cmd = new CheckBitsCmd();
-                            cmd.path = backingImage.path;
+                            cmd.path = path;
 
                             callKvmHost(dstHostUuid, ref.getPrimaryStorageUuid(), LocalStorageKvmBackend.CHECK_BITS_PATH,
                                     cmd, CheckBitsRsp.class, new ReturnValueCompletion<CheckBitsRsp>(completion) {
@@ -425,6 +507,12 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                                 return;
                             }
 
+                            if (backingImage.verified) {
+                                logger.debug(String.format("the copy of %s has been verified by the agent, skip this flow", backingImage.path));
+                                trigger.next();
+                                return;
+                            }
+
                             Md5TO to = new Md5TO();
                             to.resourceUuid = "backing-file";
                             to.path = backingImage.path;
@@ -740,6 +828,18 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
         }).start();
     }
 
+    private ImageCacheVO findImageCache(String psUuid, String hostUuid, String path) {
+        CacheInstallPath cpath = new CacheInstallPath();
+        cpath.installPath = path;
+        cpath.hostUuid = hostUuid;
+
+        SimpleQuery<ImageCacheVO> q = dbf.createQuery(ImageCacheVO.class);
+        q.add(ImageCacheVO_.primaryStorageUuid, Op.EQ, psUuid);
+        q.add(ImageCacheVO_.installUrl, Op.EQ, cpath.makeFullPath());
+        q.setLimit(1);
+        return q.find();
+    }
+
     private void returnCapacityToHost(final String dstHostUuid, final String primaryStorageUuid, final Long size) {
         LocalStorageReturnHostCapacityMsg msg = new LocalStorageReturnHostCapacityMsg();
         msg.setHostUuid(dstHostUuid);
@@ -881,6 +981,8 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
 
             class Context {
                 List<Md5TO> md5s;
+                // the agent has verified the copy by checksums of chunks, no need to compare md5s
+                boolean verified;
             }
 
             final Context context = new Context();
@@ -906,38 +1008,6 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                 }
             });
 
-            flows.add(new NoRollbackFlow() {
-                String __name__ = "get-snapshot-md5";
-
-                @Override
-                public void run(final FlowTrigger trigger, Map data) {
-                    GetMd5Cmd cmd = new GetMd5Cmd();
-                    cmd.md5s = CollectionUtils.transformToList(children, new Function<GetMd5TO, VolumeSnapshotInventory>() {
-                        @Override
-                        public GetMd5TO call(VolumeSnapshotInventory arg) {
-                            GetMd5TO to = new GetMd5TO();
-                            to.path = arg.getPrimaryStorageInstallPath();
-                            to.resourceUuid = arg.getUuid();
-                            return to;
-                        }
-                    });
-
-                    callKvmHost(srcHostUuid, p.volume.getPrimaryStorageUuid(), LocalStorageKvmBackend.GET_MD5_PATH, cmd,
-                            GetMd5Rsp.class, new ReturnValueCompletion<GetMd5Rsp>(trigger) {
-                        @Override
-                        public void success(GetMd5Rsp rsp) {
-                            context.md5s = rsp.md5s;
-                            trigger.next();
-                        }
-
-                        @Override
-                        public void fail(ErrorCode errorCode) {
-                            trigger.fail(errorCode);
-                        }
-                    });
-                }
-            });
-
             flows.add(new Flow() {
                 String __name__ = String.format("copy-snapshots-for-volume-%s-on-dst-host", p.volume.getUuid());
 
@@ -956,9 +1026,10 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                     cmd.dstIp = dstHost.getManagementIp();
                     cmd.dstPassword = dstHost.getPassword();
                     cmd.dstUsername = dstHost.getUsername();
-                    callKvmHost(srcHostUuid, p.volume.getPrimaryStorageUuid(), COPY_TO_REMOTE_BITS_PATH, cmd, AgentResponse.class, new ReturnValueCompletion<AgentResponse>(trigger) {
+                    callKvmHost(srcHostUuid, p.volume.getPrimaryStorageUuid(), COPY_TO_REMOTE_BITS_PATH, cmd, CopyBitsFromRemoteRsp.class, new ReturnValueCompletion<CopyBitsFromRemoteRsp>(trigger) {
                         @Override
-                        public void success(AgentResponse returnValue) {
+                        public void success(CopyBitsFromRemoteRsp rsp) {
+                            context.verified = rsp.verified;
                             trigger.next();
                         }
 
@@ -1003,11 +1074,53 @@ public class LocalStorageKvmMigrateVmFlow extends NoRollbackFlow {
                 }
             });
 
+            flows.add(new NoRollbackFlow() {
+                String __name__ = "get-snapshot-md5";
+
+                @Override
+                public void run(final FlowTrigger trigger, Map data) {
+                    if (context.verified) {
+                        trigger.next();
+                        return;
+                    }
+
+                    GetMd5Cmd cmd = new GetMd5Cmd();
+                    cmd.md5s = CollectionUtils.transformToList(children, new Function<GetMd5TO, VolumeSnapshotInventory>() {
+                        @Override
+                        public GetMd5TO call(VolumeSnapshotInventory arg) {
+                            GetMd5TO to = new GetMd5TO();
+                            to.path = arg.getPrimaryStorageInstallPath();
+                            to.resourceUuid = arg.getUuid();
+                            return to;
+                        }
+                    });
+
+                    callKvmHost(srcHostUuid, p.volume.getPrimaryStorageUuid(), LocalStorageKvmBackend.GET_MD5_PATH, cmd,
+                            GetMd5Rsp.class, new ReturnValueCompletion<GetMd5Rsp>(trigger) {
+                        @Override
+                        public void success(GetMd5Rsp rsp) {
+                            context.md5s = rsp.md5s;
+                            trigger.next();
+                        }
+
+                        @Override
+                        public void fail(ErrorCode errorCode) {
+                            trigger.fail(errorCode);
+                        }
+                    });
+                }
+            });
+
             flows.add(new NoRollbackFlow() {
                 String __name__ = "check-snapshots-md5-on-dst-host";
 
                 @Override
                 public void run(final FlowTrigger trigger, Map data) {
+                    if (context.verified) {
+                        trigger.next();
+                        return;
+                    }
+
                     CheckMd5sumCmd cmd = new CheckMd5sumCmd();
                     cmd.md5s = context.md5s;
 
@@ -4,6 +4,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.servlet.ModelAndView;
 import org.zstack.storage.primary.local.LocalStorageKvmBackend.*;
 import org.zstack.storage.primary.local.LocalStorageKvmMigrateVmFlow.CopyBitsFromRemoteCmd;
+import org.zstack.storage.primary.local.LocalStorageKvmMigrateVmFlow.CopyBitsFromRemoteRsp;
 import org.zstack.storage.primary.local.LocalStorageKvmMigrateVmFlow.RebaseSnapshotBackingFilesCmd;
 import org.zstack.storage.primary.local.LocalStorageKvmMigrateVmFlow.VerifySnapshotChainCmd;
 import org.zstack.storage.primary.local.LocalStorageKvmSftpBackupStorageMediatorImpl.SftpDownloadBitsCmd;
@@ -110,9 +111,10 @@ public class LocalStorageSimulator {
     public @ResponseBody
     String copyBitsFromRemote(HttpEntity<String> entity) {
         CopyBitsFromRemoteCmd cmd = JSONObjectUtil.toObject(entity.getBody(), CopyBitsFromRemoteCmd.class);
-        AgentResponse rsp = new AgentResponse();
+        CopyBitsFromRemoteRsp rsp = new CopyBitsFromRemoteRsp();
         if (config.copyBitsFromRemoteSuccess) {
             config.copyBitsFromRemoteCmds.add(cmd);
+            rsp.verified = config.copyBitsFromRemoteVerified;
         } else {
             rsp.setError("on purpose");
             rsp.setSuccess(false);
@@ -176,7 +178,7 @@ public class LocalStorageSimulator {
         CheckBitsCmd cmd = JSONObjectUtil.toObject(entity.getBody(), CheckBitsCmd.class);
         config.checkBitsCmds.add(cmd);
         CheckBitsRsp rsp = new CheckBitsRsp();
-        rsp.existing = config.checkBitsSuccess;
+        rsp.existing = config.checkBitsSuccess || config.existingBits.contains(cmd.path);
         reply(entity, rsp);
         return null;
     }
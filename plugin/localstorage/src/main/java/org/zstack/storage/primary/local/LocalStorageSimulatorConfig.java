@@ -7,10 +7,7 @@ import org.zstack.storage.primary.local.LocalStorageKvmMigrateVmFlow.VerifySnaps
 import org.zstack.storage.primary.local.LocalStorageKvmSftpBackupStorageMediatorImpl.SftpDownloadBitsCmd;
 import org.zstack.storage.primary.local.LocalStorageKvmSftpBackupStorageMediatorImpl.SftpUploadBitsCmd;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Created by frank on 7/1/2015.
@@ -46,5 +43,8 @@ public class LocalStorageSimulatorConfig {
     public volatile Long backingFileSize;
     public volatile boolean checkMd5Success = true;
     public volatile boolean checkBitsSuccess = true;
+    // paths existing even if checkBitsSuccess is false
+    public Set<String> existingBits = new HashSet<String>();
     public volatile boolean copyBitsFromRemoteSuccess = true;
+    public volatile boolean copyBitsFromRemoteVerified = false;
 }
@@ -2,6 +2,7 @@ package org.zstack.storage.primary.nfs;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
+import org.zstack.compute.vm.ImageBackupStorageSelector;
 import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.cloudbus.CloudBusListCallBack;
 import org.zstack.core.db.SimpleQuery;
@@ -19,6 +20,7 @@ import org.zstack.header.core.*;
 import org.zstack.header.core.workflow.*;
 import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.host.*;
+import org.zstack.header.image.ImageBackupStorageRefInventory;
 import org.zstack.header.image.ImageConstant.ImageMediaType;
 import org.zstack.header.image.ImageInventory;
 import org.zstack.header.message.Message;
@@ -38,6 +40,7 @@ import org.zstack.header.volume.VolumeFormat;
 import org.zstack.header.volume.VolumeInventory;
 import org.zstack.header.volume.VolumeVO;
 import org.zstack.kvm.KVMConstant;
+import org.zstack.storage.primary.ImageCacheManager;
 import org.zstack.storage.primary.PrimaryStorageBase;
 import org.zstack.storage.primary.PrimaryStoragePathMaker;
 import org.zstack.storage.primary.nfs.NfsPrimaryStorageBackend.CreateBitsFromSnapshotResult;
@@ -74,9 +77,7 @@ public class NfsPrimaryStorage extends PrimaryStorageBase {
 
     @Override
     protected void handleLocalMessage(Message msg) {
-        if (msg instanceof PrimaryStorageRemoveCachedImageMsg) {
-            handle((PrimaryStorageRemoveCachedImageMsg) msg);
-        } else if (msg instanceof TakeSnapshotMsg) {
+        if (msg instanceof TakeSnapshotMsg) {
             handle((TakeSnapshotMsg) msg);
         } else if (msg instanceof DeleteSnapshotOnPrimaryStorageMsg) {
             handle((DeleteSnapshotOnPrimaryStorageMsg) msg);
@@ -90,11 +91,69 @@ public class NfsPrimaryStorage extends PrimaryStorageBase {
             handle((CreateVolumeFromVolumeSnapshotOnPrimaryStorageMsg) msg);
         } else if (msg instanceof MergeVolumeSnapshotOnPrimaryStorageMsg) {
             handle((MergeVolumeSnapshotOnPrimaryStorageMsg)msg);
+        } else if (msg instanceof DownloadImageToPrimaryStorageCacheMsg) {
+            handle((DownloadImageToPrimaryStorageCacheMsg) msg);
         } else {
             super.handleLocalMessage(msg);
         }
     }
 
+    private void handle(final DownloadImageToPrimaryStorageCacheMsg msg) {
+        final DownloadImageToPrimaryStorageCacheReply reply = new DownloadImageToPrimaryStorageCacheReply();
+        final ImageInventory img = msg.getImage();
+
+        ImageBackupStorageSelector selector = new ImageBackupStorageSelector();
+        selector.setZoneUuid(self.getZoneUuid());
+        selector.setImageUuid(img.getUuid());
+        final String bsUuid = selector.select();
+        if (bsUuid == null) {
+            reply.setError(errf.stringToOperationError(
+                    String.format("the image[uuid:%s, name:%s] is not available to download on any backup storage in the zone[uuid:%s]",
+                            img.getUuid(), img.getName(), self.getZoneUuid())
+            ));
+            bus.reply(msg, reply);
+            return;
+        }
+
+        ImageSpec ispec = new ImageSpec();
+        ispec.setInventory(img);
+        ispec.setSelectedBackupStorage(CollectionUtils.find(img.getBackupStorageRefs(), new Function<ImageBackupStorageRefInventory, ImageBackupStorageRefInventory>() {
+            @Override
+            public ImageBackupStorageRefInventory call(ImageBackupStorageRefInventory arg) {
+                return arg.getBackupStorageUuid().equals(bsUuid) ? arg : null;
+            }
+        }));
+
+        downloadImageToCache(ispec, new ReturnValueCompletion<ImageCacheInventory>(msg) {
+            @Override
+            public void success(ImageCacheInventory returnValue) {
+                reply.setInstallPath(returnValue.getInstallUrl());
+                bus.reply(msg, reply);
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                reply.setError(errorCode);
+                bus.reply(msg, reply);
+            }
+        });
+    }
+
+    // the job queue runs downloads of the same image one by one, callers coming while one is running share its result
+    private void downloadImageToCache(final ImageSpec ispec, ReturnValueCompletion<ImageCacheInventory> completion) {
+        final PrimaryStorageInventory pinv = getSelfInventory();
+        final String jobName = NfsPrimaryStorageKvmHelper.makeDownloadImageJobName(ispec.getInventory(), pinv);
+        imageCacheMgr.coalesceDownload(jobName, new ImageCacheManager.Download<ImageCacheInventory>() {
+            @Override
+            public void run(final ReturnValueCompletion<ImageCacheInventory> completion) {
+                NfsDownloadImageToCacheJob job = new NfsDownloadImageToCacheJob();
+                job.setPrimaryStorage(pinv);
+                job.setImage(ispec);
+                jobf.execute(jobName, NfsPrimaryStorageKvmHelper.makeJobOwnerName(pinv), job, completion, ImageCacheInventory.class);
+            }
+        }, completion);
+    }
+
     @Override
     protected void handle(final APIReconnectPrimaryStorageMsg msg) {
         thdf.chainSubmit(new ChainTask(msg) {
@@ -562,6 +621,7 @@ public class NfsPrimaryStorage extends PrimaryStorageBase {
                 ctx.setContext(c);
                 ctx.setInterval(NfsPrimaryStorageGlobalProperty.BITS_DELETION_GC_INTERVAL);
                 ctx.setName(String.format("nfs-gc-volume-snapshot-%s-%s", self.getUuid(), sinv.getUuid()));
+                ctx.setResourceUuid(self.getUuid());
                 gcf.schedule(ctx);
 
                 //TODO: alarm
@@ -639,19 +699,6 @@ public class NfsPrimaryStorage extends PrimaryStorageBase {
         });
     }
 
-    private void handle(PrimaryStorageRemoveCachedImageMsg msg) {
-        if (self.getAttachedClusterRefs().isEmpty()) {
-            PrimaryStorageRemoveCachedImageReply reply = new PrimaryStorageRemoveCachedImageReply();
-            errf.stringToOperationError(String.format("primary storage[uuid:%s] doesn't attach to any cluster", self.getUuid()));
-            bus.reply(msg, reply);
-            return;
-        }
-        
-        PrimaryStorageClusterRefVO ref = self.getAttachedClusterRefs().iterator().next();
-        ClusterVO cluster = dbf.findByUuid(ref.getClusterUuid(), ClusterVO.class);
-        getBackend(HypervisorType.valueOf(cluster.getHypervisorType())).deleteImageCache(msg.getInventory());
-    }
-
     @Transactional(readOnly = true)
     private NfsPrimaryStorageBackend getUsableBackend() {
         List<String> cuuids = CollectionUtils.transformToList(self.getAttachedClusterRefs(), new Function<String, PrimaryStorageClusterRefVO>() {
@@ -737,24 +784,18 @@ public class NfsPrimaryStorage extends PrimaryStorageBase {
                     flow(new NoRollbackFlow() {
                         @Override
                         public void run(final FlowTrigger trigger, Map data) {
-                            NfsDownloadImageToCacheJob job = new NfsDownloadImageToCacheJob();
-                            job.setImage(ispec);
-                            job.setPrimaryStorage(primaryStorage);
-
-                            jobf.execute(NfsPrimaryStorageKvmHelper.makeDownloadImageJobName(image, primaryStorage),
-                                    NfsPrimaryStorageKvmHelper.makeJobOwnerName(primaryStorage), job,
-                                    new ReturnValueCompletion<ImageCacheInventory>(trigger) {
-                                        @Override
-                                        public void success(ImageCacheInventory returnValue) {
-                                            imageCache = returnValue;
-                                            trigger.next();
-                                        }
+                            downloadImageToCache(ispec, new ReturnValueCompletion<ImageCacheInventory>(trigger) {
+                                @Override
+                                public void success(ImageCacheInventory returnValue) {
+                                    imageCache = returnValue;
+                                    trigger.next();
+                                }
 
-                                        @Override
-                                        public void fail(ErrorCode errorCode) {
-                                            trigger.fail(errorCode);
-                                        }
-                                    }, ImageCacheInventory.class);
+                                @Override
+                                public void fail(ErrorCode errorCode) {
+                                    trigger.fail(errorCode);
+                                }
+                            });
                         }
                     });
 
@@ -866,6 +907,7 @@ public class NfsPrimaryStorage extends PrimaryStorageBase {
                 ctx.setRunnerClass(GCBitsDeletionRunner.class);
                 ctx.setContextClass(GCBitsDeletionContext.class);
                 ctx.setName(String.format("nfs-gc-volume-%s-%s", self.getUuid(), vol.getUuid()));
+                ctx.setResourceUuid(self.getUuid());
                 ctx.setInterval(NfsPrimaryStorageGlobalProperty.BITS_DELETION_GC_INTERVAL);
                 gcf.schedule(ctx);
 
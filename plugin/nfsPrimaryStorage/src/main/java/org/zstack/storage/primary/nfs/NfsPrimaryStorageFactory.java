@@ -177,7 +177,7 @@ public class NfsPrimaryStorageFactory implements NfsPrimaryStorageManager, Prima
     @Override
     public void reportCapacityIfNeeded(String psUuid, NfsPrimaryStorageAgentResponse rsp) {
         if (rsp.getAvailableCapacity() != null && rsp.getTotalCapacity() != null) {
-            new PrimaryStorageCapacityUpdater(psUuid).updateAvailablePhysicalCapacity(rsp.getAvailableCapacity());
+            new PrimaryStorageCapacityUpdater(psUuid).reportAvailablePhysicalCapacity(rsp.getAvailableCapacity());
         }
     }
 
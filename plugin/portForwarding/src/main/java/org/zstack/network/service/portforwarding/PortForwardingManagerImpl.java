@@ -786,16 +786,8 @@ public class PortForwardingManagerImpl extends AbstractService implements PortFo
                 return list(usage);
             }
 
-            @Transactional(readOnly = true)
             private long getUsedPf(String accountUuid) {
-                String sql = "select count(pf) from PortForwardingRuleVO pf, AccountResourceRefVO ref where pf.uuid = ref.resourceUuid" +
-                        " and ref.accountUuid = :auuid and ref.resourceType = :rtype";
-                TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
-                q.setParameter("auuid", accountUuid);
-                q.setParameter("rtype", PortForwardingRuleVO.class.getSimpleName());
-                Long pfn = q.getSingleResult();
-                pfn = pfn == null ? 0 : pfn;
-                return pfn;
+                return acntMgr.getResourceCount(accountUuid, PortForwardingRuleVO.class);
             }
 
             private void check(APICreatePortForwardingRuleMsg msg, Map<String, QuotaPair> pairs) {
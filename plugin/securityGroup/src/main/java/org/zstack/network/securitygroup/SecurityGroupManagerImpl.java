@@ -102,16 +102,8 @@ public class SecurityGroupManagerImpl extends AbstractService implements Securit
                 return list(usage);
             }
 
-            @Transactional(readOnly = true)
             private long getUsedSg(String accountUuid) {
-                String sql = "select count(sg) from SecurityGroupVO sg, AccountResourceRefVO ref where ref.resourceUuid = sg.uuid" +
-                        " and ref.accountUuid = :auuid and ref.resourceType = :rtype";
-                TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
-                q.setParameter("auuid", accountUuid);
-                q.setParameter("rtype", SecurityGroupVO.class.getSimpleName());
-                Long sgn = q.getSingleResult();
-                sgn = sgn == null ? 0 : sgn;
-                return sgn;
+                return acntMgr.getResourceCount(accountUuid, SecurityGroupVO.class);
             }
 
             private void check(APICreateSecurityGroupMsg msg, Map<String, QuotaPair> pairs) {
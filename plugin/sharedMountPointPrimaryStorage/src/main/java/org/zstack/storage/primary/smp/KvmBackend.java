@@ -48,6 +48,7 @@ import org.zstack.kvm.MergeVolumeSnapshotOnKvmMsg;
 import org.zstack.storage.backup.sftp.GetSftpBackupStorageDownloadCredentialMsg;
 import org.zstack.storage.backup.sftp.GetSftpBackupStorageDownloadCredentialReply;
 import org.zstack.storage.backup.sftp.SftpBackupStorageConstant;
+import org.zstack.storage.primary.ImageCacheManager;
 import org.zstack.storage.primary.PrimaryStorageCapacityUpdater;
 import org.zstack.storage.primary.PrimaryStoragePathMaker;
 import org.zstack.storage.primary.PrimaryStoragePhysicalCapacityManager;
@@ -339,6 +340,16 @@ public class KvmBackend extends HypervisorBackend {
             DebugUtils.Assert(primaryStorageInstallPath != null, "primaryStorageInstallPath cannot be null");
             DebugUtils.Assert(backupStorageInstallPath != null, "backupStorageInstallPath cannot be null");
 
+            String key = String.format("download-image-%s-to-shared-mountpoint-storage-%s-cache", image.getUuid(), self.getUuid());
+            imageCacheMgr.coalesceDownload(key, new ImageCacheManager.Download<String>() {
+                @Override
+                public void run(ReturnValueCompletion<String> completion) {
+                    downloadInQueue(completion);
+                }
+            }, completion);
+        }
+
+        private void downloadInQueue(final ReturnValueCompletion<String> completion) {
             thdf.chainSubmit(new ChainTask() {
                 @Override
                 public String getSyncSignature() {
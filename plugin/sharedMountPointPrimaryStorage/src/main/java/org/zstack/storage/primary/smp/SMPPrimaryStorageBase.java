@@ -372,11 +372,41 @@ public class SMPPrimaryStorageBase extends PrimaryStorageBase {
             handle((MergeVolumeSnapshotOnPrimaryStorageMsg) msg);
         } else if (msg instanceof SMPPrimaryStorageHypervisorSpecificMessage) {
             handle((SMPPrimaryStorageHypervisorSpecificMessage) msg);
+        } else if (msg instanceof DownloadImageToPrimaryStorageCacheMsg) {
+            handle((DownloadImageToPrimaryStorageCacheMsg) msg);
         } else {
             super.handleLocalMessage(msg);
         }
     }
 
+    private void handle(final DownloadImageToPrimaryStorageCacheMsg msg) {
+        final DownloadImageToPrimaryStorageCacheReply reply = new DownloadImageToPrimaryStorageCacheReply();
+        List<String> cuuids = findClustersHavingHosts();
+        if (cuuids.isEmpty()) {
+            reply.setError(errf.stringToOperationError(
+                    String.format("the shared mount point primary storage[uuid:%s] is not attached to any cluster having connected hosts",
+                            self.getUuid())
+            ));
+            bus.reply(msg, reply);
+            return;
+        }
+
+        HypervisorBackend bkd = getHypervisorFactoryByClusterUuid(cuuids.get(0)).getHypervisorBackend(self);
+        bkd.downloadImageToCache(msg.getImage(), new ReturnValueCompletion<String>(msg) {
+            @Override
+            public void success(String installPath) {
+                reply.setInstallPath(installPath);
+                bus.reply(msg, reply);
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                reply.setError(errorCode);
+                bus.reply(msg, reply);
+            }
+        });
+    }
+
     private void handle(SMPPrimaryStorageHypervisorSpecificMessage msg) {
         HypervisorFactory f = getHypervisorFactoryByHypervisorType(msg.getHypervisorType());
         HypervisorBackend bkd = f.getHypervisorBackend(self);
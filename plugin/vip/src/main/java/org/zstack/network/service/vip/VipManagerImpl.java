@@ -1,7 +1,6 @@
 package org.zstack.network.service.vip;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.transaction.annotation.Transactional;
 import org.zstack.core.Platform;
 import org.zstack.core.cascade.CascadeConstant;
 import org.zstack.core.cascade.CascadeFacade;
@@ -40,7 +39,6 @@ import org.zstack.utils.DebugUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
-import javax.persistence.TypedQuery;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -604,16 +602,8 @@ public class VipManagerImpl extends AbstractService implements VipManager, Repor
                 return list(usage);
             }
 
-            @Transactional(readOnly = true)
             private long getUsedVip(String accountUuid) {
-                String sql = "select count(vip) from VipVO vip, AccountResourceRefVO ref where ref.resourceUuid = vip.uuid" +
-                        " and ref.accountUuid = :auuid and ref.resourceType = :rtype";
-                TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
-                q.setParameter("auuid", accountUuid);
-                q.setParameter("rtype", VipVO.class.getSimpleName());
-                Long vn = q.getSingleResult();
-                vn = vn == null ? 0 : vn;
-                return vn;
+                return acntMgr.getResourceCount(accountUuid, VipVO.class);
             }
 
             private void check(APICreateVipMsg msg, Map<String, QuotaPair> pairs) {
@@ -57,5 +57,6 @@ public interface VirtualRouterConstant {
         IS_NEW_CREATED,
         IS_RECONNECT,
         VIPS,
+        DHCP_DNS_SNAPSHOT,
     }
 }
@@ -0,0 +1,167 @@
+package org.zstack.network.service.virtualrouter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.compute.vm.VmSystemTags;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.network.service.NetworkServiceType;
+import org.zstack.header.vm.VmInstanceConstant;
+import org.zstack.header.vm.VmInstanceState;
+import org.zstack.header.vm.VmNicInventory;
+import org.zstack.network.service.virtualrouter.VirtualRouterCommands.DhcpInfo;
+import org.zstack.network.service.virtualrouter.VirtualRouterConstant.Param;
+
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import java.util.*;
+
+/**
+ * DHCP entries and DNS of L3 networks served by virtual routers.
+ *
+ * a snapshot of what a virtual router should serve is built in one database pass when the virtual router starts
+ * or reconnects, and is shared by the DHCP and DNS sync flows, which push all of it to the virtual router
+ */
+public class VirtualRouterDhcpDnsState {
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private VirtualRouterManager vrMgr;
+
+    public static class Snapshot {
+        // l3 uuid -> mac -> entry
+        private Map<String, Map<String, DhcpInfo>> dhcp = new HashMap<String, Map<String, DhcpInfo>>();
+        private Set<String> dns = new LinkedHashSet<String>();
+
+        public List<DhcpInfo> getDhcpEntries() {
+            List<DhcpInfo> ret = new ArrayList<DhcpInfo>();
+            for (Map<String, DhcpInfo> entries : dhcp.values()) {
+                ret.addAll(entries.values());
+            }
+            return ret;
+        }
+
+        public Set<String> getDns() {
+            return dns;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    private void buildSnapshot(VirtualRouterVmInventory vr, List<String> dhcpL3Uuids, List<String> dnsL3Uuids, Snapshot snapshot) {
+        Set<String> l3Uuids = new HashSet<String>(dhcpL3Uuids);
+        l3Uuids.addAll(dnsL3Uuids);
+        if (l3Uuids.isEmpty()) {
+            return;
+        }
+
+        String sql = "select dns.l3NetworkUuid, dns.dns from L3NetworkDnsVO dns where dns.l3NetworkUuid in (:l3Uuids)";
+        TypedQuery<Tuple> q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("l3Uuids", l3Uuids);
+        Map<String, List<String>> l3Dns = new HashMap<String, List<String>>();
+        for (Tuple t : q.getResultList()) {
+            String l3Uuid = t.get(0, String.class);
+            List<String> dns = l3Dns.get(l3Uuid);
+            if (dns == null) {
+                dns = new ArrayList<String>();
+                l3Dns.put(l3Uuid, dns);
+            }
+            dns.add(t.get(1, String.class));
+        }
+
+        for (String l3Uuid : dnsL3Uuids) {
+            List<String> dns = l3Dns.get(l3Uuid);
+            if (dns != null) {
+                snapshot.dns.addAll(dns);
+            }
+        }
+
+        if (dhcpL3Uuids.isEmpty()) {
+            return;
+        }
+
+        sql = "select ref.l3NetworkUuid from NetworkServiceL3NetworkRefVO ref where ref.l3NetworkUuid in (:l3Uuids) and ref.networkServiceType = :stype";
+        TypedQuery<String> sq = dbf.getEntityManager().createQuery(sql, String.class);
+        sq.setParameter("l3Uuids", dhcpL3Uuids);
+        sq.setParameter("stype", NetworkServiceType.SNAT.toString());
+        Set<String> snatL3Uuids = new HashSet<String>(sq.getResultList());
+
+        sql = "select nic.l3NetworkUuid, vm.uuid, vm.defaultL3NetworkUuid, nic.ip, nic.mac, nic.netmask, nic.gateway, l3.dnsDomain" +
+                " from VmNicVO nic, VmInstanceVO vm, L3NetworkVO l3 where l3.uuid = vm.defaultL3NetworkUuid and vm.state = :vmState" +
+                " and nic.vmInstanceUuid = vm.uuid and vm.type = :vmType and nic.l3NetworkUuid in (:l3Uuids)";
+        q = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        q.setParameter("l3Uuids", dhcpL3Uuids);
+        q.setParameter("vmType", VmInstanceConstant.USER_VM_TYPE);
+        q.setParameter("vmState", VmInstanceState.Running);
+        List<Tuple> ts = q.getResultList();
+        if (ts.isEmpty()) {
+            return;
+        }
+
+        List<String> defaultVmUuids = new ArrayList<String>();
+        for (Tuple t : ts) {
+            if (t.get(0, String.class).equals(t.get(2, String.class))) {
+                defaultVmUuids.add(t.get(1, String.class));
+            }
+        }
+        Map<String, List<String>> hostnameTags = defaultVmUuids.isEmpty() ? new HashMap<String, List<String>>() :
+                VmSystemTags.HOSTNAME.getTags(defaultVmUuids);
+
+        for (Tuple t : ts) {
+            String l3Uuid = t.get(0, String.class);
+            String vmUuid = t.get(1, String.class);
+
+            DhcpInfo info = new DhcpInfo();
+            info.setIp(t.get(3, String.class));
+            info.setMac(t.get(4, String.class));
+            info.setNetmask(t.get(5, String.class));
+            info.setGateway(t.get(6, String.class));
+            VmNicInventory vrNic = vr.getGuestNicByL3NetworkUuid(l3Uuid);
+            if (vrNic != null) {
+                info.setVrNicMac(vrNic.getMac());
+            }
+
+            if (l3Uuid.equals(t.get(2, String.class))) {
+                info.setDefaultL3Network(true);
+                info.setDnsDomain(t.get(7, String.class));
+                List<String> tags = hostnameTags.get(vmUuid);
+                if (tags != null) {
+                    String hostname = VmSystemTags.HOSTNAME.getTokenByTag(tags.get(0), VmSystemTags.HOSTNAME_TOKEN);
+                    if (info.getDnsDomain() != null) {
+                        hostname = String.format("%s.%s", hostname, info.getDnsDomain());
+                    }
+                    info.setHostname(hostname);
+                }
+            }
+
+            if (snatL3Uuids.contains(l3Uuid)) {
+                info.setDns(Arrays.asList(vr.getGuestNic().getIp()));
+            } else {
+                List<String> dns = l3Dns.get(l3Uuid);
+                info.setDns(dns == null ? new ArrayList<String>() : dns);
+            }
+
+            Map<String, DhcpInfo> entries = snapshot.dhcp.get(l3Uuid);
+            if (entries == null) {
+                entries = new LinkedHashMap<String, DhcpInfo>();
+                snapshot.dhcp.put(l3Uuid, entries);
+            }
+            entries.put(info.getMac(), info);
+        }
+    }
+
+    /**
+     * @return the snapshot of the virtual router, built once for all flows sharing the flow data
+     */
+    public Snapshot getSnapshot(VirtualRouterVmInventory vr, Map data) {
+        Snapshot snapshot = (Snapshot) data.get(Param.DHCP_DNS_SNAPSHOT.toString());
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        snapshot = new Snapshot();
+        List<String> nwServed = vr.getGuestL3Networks();
+        buildSnapshot(vr, vrMgr.selectL3NetworksNeedingSpecificNetworkService(nwServed, NetworkServiceType.DHCP),
+                vrMgr.selectL3NetworksNeedingSpecificNetworkService(nwServed, NetworkServiceType.DNS), snapshot);
+        data.put(Param.DHCP_DNS_SNAPSHOT.toString(), snapshot);
+        return snapshot;
+    }
+}
@@ -6,15 +6,11 @@ import org.springframework.beans.factory.annotation.Configurable;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.db.DatabaseFacade;
-import org.zstack.core.db.SimpleQuery;
-import org.zstack.core.db.SimpleQuery.Op;
 import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.core.timeout.ApiTimeoutManager;
 import org.zstack.header.core.workflow.FlowTrigger;
 import org.zstack.header.core.workflow.NoRollbackFlow;
 import org.zstack.header.message.MessageReply;
-import org.zstack.header.network.l3.L3NetworkDnsVO;
-import org.zstack.header.network.l3.L3NetworkDnsVO_;
 import org.zstack.header.network.service.NetworkServiceType;
 import org.zstack.header.vm.VmInstanceConstant;
 import org.zstack.network.service.virtualrouter.*;
@@ -41,6 +37,8 @@ public class VirtualRouterSyncDnsOnStartFlow extends NoRollbackFlow {
     private ErrorFacade errf;
     @Autowired
     private ApiTimeoutManager apiTimeoutManager;
+    @Autowired
+    private VirtualRouterDhcpDnsState dhcpDnsState;
 
     @Override
     public void run(final FlowTrigger chain, final Map data) {
@@ -60,18 +58,12 @@ public class VirtualRouterSyncDnsOnStartFlow extends NoRollbackFlow {
 
         new VirtualRouterRoleManager().makeDnsRole(vr.getUuid());
 
-        SimpleQuery<L3NetworkDnsVO> query = dbf.createQuery(L3NetworkDnsVO.class);
-        query.select(L3NetworkDnsVO_.dns);
-        query.add(L3NetworkDnsVO_.l3NetworkUuid, Op.IN, l3Uuids);
-        List<String> lst = query.listValue();
-        if (lst.isEmpty()) {
+        Set<String> dnsAddresses = dhcpDnsState.getSnapshot(vr, data).getDns();
+        if (dnsAddresses.isEmpty()) {
             chain.next();
             return;
         }
 
-        Set<String> dnsAddresses = new HashSet<String>(lst.size());
-        dnsAddresses.addAll(lst);
-
         final List<DnsInfo> dns = new ArrayList<DnsInfo>(dnsAddresses.size());
         for (String d : dnsAddresses) {
             DnsInfo dinfo = new DnsInfo();
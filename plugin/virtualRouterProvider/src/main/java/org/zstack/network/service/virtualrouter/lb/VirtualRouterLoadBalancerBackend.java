@@ -17,6 +17,7 @@ import org.zstack.header.core.workflow.*;
 import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.header.managementnode.ManagementNodeChangeListener;
 import org.zstack.header.message.MessageReply;
 import org.zstack.header.network.l3.L3NetworkInventory;
 import org.zstack.header.network.l3.L3NetworkVO;
@@ -38,19 +39,19 @@ import org.zstack.tag.TagManager;
 import org.zstack.utils.CollectionUtils;
 import org.zstack.utils.Utils;
 import org.zstack.utils.function.Function;
+import org.zstack.utils.gson.JSONObjectUtil;
 import org.zstack.utils.logging.CLogger;
 
 import javax.persistence.TypedQuery;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.zstack.utils.CollectionDSL.list;
 
 /**
  * Created by frank on 8/9/2015.
  */
-public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
+public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend, ManagementNodeChangeListener {
     private static CLogger logger = Utils.getLogger(VirtualRouterLoadBalancerBackend.class);
 
     @Autowired
@@ -70,6 +71,36 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
     @Autowired
     private ApiTimeoutManager apiTimeoutManager;
 
+    // configurations of load balancers last pushed to virtual routers successfully; adding or removing nics and
+    // listeners is not pushed if the resulting configuration equals the pushed one, so HAProxy is not reloaded for
+    // nothing. refresh() always pushes. They are dropped when management nodes join or leave, as the virtual routers
+    // may then be managed by another node; a push sent before that is not remembered when it returns
+    private final Map<String, PushedLb> pushedLbs = new ConcurrentHashMap<String, PushedLb>();
+    private volatile int pushedGeneration;
+
+    private static class PushedLb {
+        String vrUuid;
+        Map<String, LbTO> listeners = new HashMap<String, LbTO>();
+    }
+
+    static class LbDelta {
+        List<String> addedListeners = new ArrayList<String>();
+        List<String> removedListeners = new ArrayList<String>();
+        List<String> changedListeners = new ArrayList<String>();
+        Map<String, List<String>> addedNicIps = new HashMap<String, List<String>>();
+        Map<String, List<String>> removedNicIps = new HashMap<String, List<String>>();
+
+        boolean isEmpty() {
+            return addedListeners.isEmpty() && removedListeners.isEmpty() && changedListeners.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("added listeners%s, removed listeners%s, changed listeners%s, added backends%s, removed backends%s",
+                    addedListeners, removedListeners, changedListeners, addedNicIps, removedNicIps);
+        }
+    }
+
     @Transactional(readOnly = true)
     private VirtualRouterVmInventory findVirtualRouterVm(String lbUuid) {
         String sql = "select vr from VirtualRouterVmVO vr, VirtualRouterLoadBalancerRefVO ref where ref.virtualRouterVmUuid =" +
@@ -229,13 +260,107 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
         });
     }
 
-    private void refresh(VirtualRouterVmInventory vr, LoadBalancerStruct struct, final Completion completion) {
+    private static String signature(LbTO to) {
+        LbTO s = JSONObjectUtil.rehashObject(to, LbTO.class);
+        if (s.nicIps != null) {
+            s.nicIps.removeAll(Collections.singleton(null));
+            Collections.sort(s.nicIps);
+        }
+        if (s.parameters != null) {
+            Collections.sort(s.parameters);
+        }
+        return JSONObjectUtil.toJsonString(s);
+    }
+
+    private static Set<String> nicIps(LbTO to) {
+        Set<String> ips = new HashSet<String>();
+        if (to.nicIps != null) {
+            ips.addAll(to.nicIps);
+            ips.remove(null);
+        }
+        return ips;
+    }
+
+    static LbDelta diff(Map<String, LbTO> pushed, List<LbTO> tos) {
+        LbDelta delta = new LbDelta();
+        Set<String> listenerUuids = new HashSet<String>();
+        for (LbTO to : tos) {
+            listenerUuids.add(to.listenerUuid);
+            LbTO old = pushed.get(to.listenerUuid);
+            if (old == null) {
+                delta.addedListeners.add(to.listenerUuid);
+                continue;
+            }
+
+            if (signature(old).equals(signature(to))) {
+                continue;
+            }
+
+            delta.changedListeners.add(to.listenerUuid);
+            Set<String> oldIps = nicIps(old);
+            Set<String> newIps = nicIps(to);
+            Set<String> added = new HashSet<String>(newIps);
+            added.removeAll(oldIps);
+            Set<String> removed = new HashSet<String>(oldIps);
+            removed.removeAll(newIps);
+            if (!added.isEmpty()) {
+                delta.addedNicIps.put(to.listenerUuid, new ArrayList<String>(added));
+            }
+            if (!removed.isEmpty()) {
+                delta.removedNicIps.put(to.listenerUuid, new ArrayList<String>(removed));
+            }
+        }
+
+        for (String luuid : pushed.keySet()) {
+            if (!listenerUuids.contains(luuid)) {
+                delta.removedListeners.add(luuid);
+            }
+        }
+
+        return delta;
+    }
+
+    private synchronized void markPushed(String vrUuid, String lbUuid, List<LbTO> tos, int generation) {
+        if (generation != pushedGeneration) {
+            return;
+        }
+
+        PushedLb p = new PushedLb();
+        p.vrUuid = vrUuid;
+        for (LbTO to : tos) {
+            p.listeners.put(to.listenerUuid, to);
+        }
+        pushedLbs.put(lbUuid, p);
+    }
+
+    private void refresh(final VirtualRouterVmInventory vr, final LoadBalancerStruct struct, boolean force, final Completion completion) {
+        final String lbUuid = struct.getLb().getUuid();
+        final List<LbTO> tos = makeLbTOs(struct);
+
+        PushedLb pushed = pushedLbs.get(lbUuid);
+        if (!force && pushed != null && pushed.vrUuid.equals(vr.getUuid())) {
+            LbDelta delta = diff(pushed.listeners, tos);
+            if (delta.isEmpty()) {
+                logger.debug(String.format("configuration of the load balancer[uuid:%s] on the virtual router[uuid:%s] is unchanged, skip refreshing",
+                        lbUuid, vr.getUuid()));
+                completion.success();
+                return;
+            }
+
+            // the agent only reloads HAProxy by complete configurations, push all listeners
+            logger.debug(String.format("refresh the load balancer[uuid:%s] on the virtual router[uuid:%s]: %s", lbUuid, vr.getUuid(), delta));
+        }
+
+        // until the result is known, the configuration on the virtual router is unknown
+        pushedLbs.remove(lbUuid);
+        final int generation = pushedGeneration;
+
         VirtualRouterAsyncHttpCallMsg msg = new VirtualRouterAsyncHttpCallMsg();
         msg.setVmInstanceUuid(vr.getUuid());
         msg.setPath(REFRESH_LB_PATH);
 
         RefreshLbCmd cmd = new RefreshLbCmd();
-        cmd.lbs = makeLbTOs(struct);
+        cmd.lbs = tos;
 
         msg.setCommand(cmd);
         msg.setCommandTimeout(apiTimeoutManager.getTimeout(cmd.getClass(), "5m"));
@@ -246,6 +371,7 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
                 if (reply.isSuccess()) {
                     RefreshLbRsp rsp = ((VirtualRouterAsyncHttpCallReply) reply).toResponse(RefreshLbRsp.class);
                     if (rsp.isSuccess()) {
+                        markPushed(vr.getUuid(), lbUuid, tos, generation);
                         completion.success();
                     } else {
                         completion.fail(errf.stringToOperationError(rsp.getError()));
@@ -257,9 +383,9 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
         });
     }
 
-    private void startVrIfNeededAndRefresh(final VirtualRouterVmInventory vr, final LoadBalancerStruct struct, final Completion completion) {
+    private void startVrIfNeededAndRefresh(final VirtualRouterVmInventory vr, final LoadBalancerStruct struct, final boolean force, final Completion completion) {
         if (!VmInstanceState.Stopped.toString().equals(vr.getState())) {
-            refresh(vr, struct, completion);
+            refresh(vr, struct, force, completion);
             return;
         }
 
@@ -346,7 +472,7 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
 
                     @Override
                     public void run(final FlowTrigger trigger, Map data) {
-                        refresh(vr, struct, new Completion(trigger) {
+                        refresh(vr, struct, force, new Completion(trigger) {
                             @Override
                             public void success() {
                                 trigger.next();
@@ -381,7 +507,7 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
     public void addVmNics(final LoadBalancerStruct struct, List<VmNicInventory> nics, final Completion completion) {
         VirtualRouterVmInventory vr = findVirtualRouterVm(struct.getLb().getUuid());
         if (vr != null) {
-            startVrIfNeededAndRefresh(vr, struct, completion);
+            startVrIfNeededAndRefresh(vr, struct, false, completion);
             return;
         }
 
@@ -545,7 +671,7 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
 
                     @Override
                     public void run(final FlowTrigger trigger, Map data) {
-                        refresh(vr, struct, new Completion(trigger) {
+                        refresh(vr, struct, false, new Completion(trigger) {
                             @Override
                             public void success() {
                                 trigger.next();
@@ -606,7 +732,7 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
             return;
         }
 
-        refresh(vr, struct, completion);
+        refresh(vr, struct, false, completion);
     }
 
     @Override
@@ -618,7 +744,7 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
             ));
         }
 
-        startVrIfNeededAndRefresh(vr, struct, completion);
+        startVrIfNeededAndRefresh(vr, struct, false, completion);
     }
 
     @Override
@@ -635,11 +761,13 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
             return;
         }
 
-        refresh(vr, struct, completion);
+        refresh(vr, struct, false, completion);
     }
 
     @Override
     public void destroyLoadBalancer(final LoadBalancerStruct struct, final Completion completion) {
+        pushedLbs.remove(struct.getLb().getUuid());
+
         FlowChain chain = FlowChainBuilder.newShareFlowChain();
         chain.setName(String.format("delete-lb-%s-from-vr", struct.getLb().getUuid()));
         chain.then(new ShareFlow() {
@@ -757,14 +885,19 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
             return;
         }
 
-        startVrIfNeededAndRefresh(vr, struct, completion);
+        startVrIfNeededAndRefresh(vr, struct, true, completion);
     }
 
-    void syncOnStart(VirtualRouterVmInventory vr, List<LoadBalancerStruct> structs, final Completion completion) {
+    void syncOnStart(final VirtualRouterVmInventory vr, List<LoadBalancerStruct> structs, final Completion completion) {
         List<LbTO> tos = new ArrayList<LbTO>();
+        final Map<String, List<LbTO>> tosByLb = new HashMap<String, List<LbTO>>();
         for (LoadBalancerStruct s : structs) {
-            tos.addAll(makeLbTOs(s));
+            List<LbTO> lbtos = makeLbTOs(s);
+            tos.addAll(lbtos);
+            tosByLb.put(s.getLb().getUuid(), lbtos);
+            pushedLbs.remove(s.getLb().getUuid());
         }
+        final int generation = pushedGeneration;
 
         RefreshLbCmd cmd = new RefreshLbCmd();
         cmd.lbs = tos;
@@ -784,6 +917,9 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
                     VirtualRouterAsyncHttpCallReply kr = reply.castReply();
                     RefreshLbRsp rsp = kr.toResponse(RefreshLbRsp.class);
                     if (rsp.isSuccess()) {
+                        for (Map.Entry<String, List<LbTO>> e : tosByLb.entrySet()) {
+                            markPushed(vr.getUuid(), e.getKey(), e.getValue(), generation);
+                        }
                         completion.success();
                     } else {
                         completion.fail(errf.stringToOperationError(rsp.getError()));
@@ -799,4 +935,29 @@ public class VirtualRouterLoadBalancerBackend implements LoadBalancerBackend {
     public String getNetworkServiceProviderType() {
         return VirtualRouterConstant.VIRTUAL_ROUTER_PROVIDER_TYPE;
     }
+
+    private synchronized void dropAllPushed() {
+        pushedGeneration++;
+        pushedLbs.clear();
+    }
+
+    @Override
+    public void nodeJoin(String nodeId) {
+        dropAllPushed();
+    }
+
+    @Override
+    public void nodeLeft(String nodeId) {
+        dropAllPushed();
+    }
+
+    @Override
+    public void iAmDead(String nodeId) {
+        dropAllPushed();
+    }
+
+    @Override
+    public void iJoin(String nodeId) {
+        dropAllPushed();
+    }
 }
@@ -0,0 +1,374 @@
+package org.zstack.portal.apimediator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.errorcode.ErrorFacade;
+import org.zstack.core.thread.Task;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.apimediator.PortalErrors;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.identity.SessionVO;
+import org.zstack.header.message.APIMessage;
+import org.zstack.header.message.APISyncCallMessage;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * admits API messages into the api workers of ApiMediator.
+ *
+ * messages are put into two lanes having their own workers: the read lane for APISyncCallMessage, which are queries
+ * and other read-only APIs, and the write lane for others; so a storm of writing APIs doesn't delay queries the UI
+ * issues. In a lane, messages of different accounts are dispatched by weighted fair queuing, an account having
+ * thousands of messages queued takes its share of workers, not all of them.
+ *
+ * a message is rejected at once with a retry-after hint if the token bucket of its account or its API class is empty,
+ * or too many messages of the account are queued
+ */
+public class ApiAdmissionController implements ApiAdmissionControllerMXBean {
+    private static final CLogger logger = Utils.getLogger(ApiAdmissionController.class);
+
+    private static final String NO_SESSION = "no-session";
+
+    private final ThreadFacade thdf;
+    private final DatabaseFacade dbf;
+    private final ErrorFacade errf;
+
+    private int workerNum = 5;
+    private int readWorkerNum = 5;
+    private double accountRate;
+    private double accountBurst;
+    private int maxQueuedPerAccount = 1000;
+    private Map<String, Double> apiClassRates = new HashMap<String, Double>();
+    private Map<String, Double> accountWeights = new HashMap<String, Double>();
+
+    private final Map<String, Lane> lanes = new LinkedHashMap<String, Lane>();
+    private final Map<String, Integer> queuedByAccount = new HashMap<String, Integer>();
+    private final Cache<String, TokenBucket> accountBuckets = CacheBuilder.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES).build();
+    private final Map<String, TokenBucket> apiClassBuckets = new HashMap<String, TokenBucket>();
+    private final Cache<String, String> sessionAccounts = CacheBuilder.newBuilder()
+            .maximumSize(10000).expireAfterWrite(10, TimeUnit.MINUTES).build();
+
+    public interface Handler {
+        void handle(APIMessage msg);
+    }
+
+    private static class TokenBucket {
+        double rate;
+        double burst;
+        double tokens;
+        long lastRefill;
+
+        TokenBucket(double rate, double burst) {
+            this.rate = rate;
+            this.burst = burst;
+            tokens = burst;
+            lastRefill = System.nanoTime();
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+
+        boolean available(long now) {
+            refill(now);
+            return tokens >= 1;
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+
+        long retryAfter() {
+            return (long) Math.ceil((1 - tokens) * 1000 / rate);
+        }
+    }
+
+    private class Request implements Comparable<Request> {
+        APIMessage msg;
+        Handler handler;
+        String accountUuid;
+        double finishTag;
+        long order;
+        long queuedTime = System.currentTimeMillis();
+
+        @Override
+        public int compareTo(Request o) {
+            if (finishTag != o.finishTag) {
+                return finishTag < o.finishTag ? -1 : 1;
+            }
+
+            return order < o.order ? -1 : (order == o.order ? 0 : 1);
+        }
+    }
+
+    private class Lane {
+        String name;
+        int workers;
+        int inFlight;
+        // start-time fair queuing, a message is tagged by max(virtual time, last tag of its account) + 1 / weight,
+        // and messages are dispatched in the order of tags
+        double virtualTime;
+        long seq;
+        Map<String, Double> lastTags = new HashMap<String, Double>();
+        PriorityQueue<Request> queue = new PriorityQueue<Request>();
+
+        long dispatched;
+        long rejected;
+        double averageDelay;
+        long maxDelay;
+
+        Lane(String name, int workers) {
+            this.name = name;
+            this.workers = workers;
+        }
+    }
+
+    public ApiAdmissionController(ThreadFacade thdf, DatabaseFacade dbf, ErrorFacade errf) {
+        this.thdf = thdf;
+        this.dbf = dbf;
+        this.errf = errf;
+    }
+
+    private static Map<String, Double> parseRates(String str) {
+        Map<String, Double> ret = new HashMap<String, Double>();
+        if (str == null || str.trim().isEmpty()) {
+            return ret;
+        }
+
+        for (String s : str.split(",")) {
+            String[] pair = s.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException(String.format("invalid configuration[%s], it must be in format of name:number,name:number", str));
+            }
+            ret.put(pair[0].trim(), Double.valueOf(pair[1].trim()));
+        }
+        return ret;
+    }
+
+    public void setWorkerNum(int workerNum) {
+        this.workerNum = workerNum;
+    }
+
+    public void setReadWorkerNum(int readWorkerNum) {
+        this.readWorkerNum = readWorkerNum;
+    }
+
+    public void setAccountRate(double accountRate) {
+        this.accountRate = accountRate;
+    }
+
+    public void setAccountBurst(double accountBurst) {
+        this.accountBurst = accountBurst;
+    }
+
+    public void setMaxQueuedPerAccount(int maxQueuedPerAccount) {
+        this.maxQueuedPerAccount = maxQueuedPerAccount;
+    }
+
+    public void setApiClassRates(String apiClassRates) {
+        this.apiClassRates = parseRates(apiClassRates);
+    }
+
+    public void setAccountWeights(String accountWeights) {
+        this.accountWeights = parseRates(accountWeights);
+    }
+
+    public void init() {
+        lanes.put("read", new Lane("read", readWorkerNum));
+        lanes.put("write", new Lane("write", workerNum));
+        for (Map.Entry<String, Double> e : apiClassRates.entrySet()) {
+            apiClassBuckets.put(e.getKey(), new TokenBucket(e.getValue(), Math.max(1, e.getValue())));
+        }
+    }
+
+    private String getAccountUuid(APIMessage msg) {
+        if (msg.getSession() == null || msg.getSession().getUuid() == null) {
+            return NO_SESSION;
+        }
+
+        if (msg.getSession().getAccountUuid() != null) {
+            return msg.getSession().getAccountUuid();
+        }
+
+        String suuid = msg.getSession().getUuid();
+        String auuid = sessionAccounts.getIfPresent(suuid);
+        if (auuid == null) {
+            SessionVO vo = dbf.findByUuid(suuid, SessionVO.class);
+            // an invalid session is rejected by the identity interceptor later, till then it's a tenant of its own
+            auuid = vo == null ? suuid : vo.getAccountUuid();
+            sessionAccounts.put(suuid, auuid);
+        }
+        return auuid;
+    }
+
+    private ErrorCode reject(Lane lane, APIMessage msg, String reason, long retryAfter) {
+        lane.rejected++;
+        ErrorCode err = errf.instantiateErrorCode(PortalErrors.TOO_MANY_REQUESTS,
+                String.format("%s, retry after %s milliseconds", reason, retryAfter));
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("[API Admission]: rejected API message[%s], %s", msg.getMessageName(), err.getDetails()));
+        }
+        return err;
+    }
+
+    /**
+     * @return null if the message is queued, otherwise the error to reply with, whose details tell when to retry
+     */
+    public ErrorCode submit(APIMessage msg, Handler handler) {
+        String accountUuid = getAccountUuid(msg);
+        Lane lane = lanes.get(msg instanceof APISyncCallMessage ? "read" : "write");
+
+        synchronized (this) {
+            long now = System.nanoTime();
+            Integer queued = queuedByAccount.get(accountUuid);
+            queued = queued == null ? 0 : queued;
+            if (queued >= maxQueuedPerAccount) {
+                long retryAfter = Math.max(1, (long) lane.averageDelay);
+                return reject(lane, msg, String.format("the account[uuid:%s] has %s API messages queued", accountUuid, queued), retryAfter);
+            }
+
+            TokenBucket ab = null;
+            if (accountRate > 0) {
+                ab = accountBuckets.getIfPresent(accountUuid);
+                if (ab == null) {
+                    ab = new TokenBucket(accountRate, accountBurst > 0 ? accountBurst : Math.max(1, accountRate));
+                    accountBuckets.put(accountUuid, ab);
+                }
+
+                if (!ab.available(now)) {
+                    return reject(lane, msg, String.format("the account[uuid:%s] calls APIs faster than %s per second", accountUuid, accountRate), ab.retryAfter());
+                }
+            }
+
+            TokenBucket cb = apiClassBuckets.get(msg.getClass().getSimpleName());
+            if (cb != null && !cb.available(now)) {
+                return reject(lane, msg, String.format("%s is called faster than %s per second", msg.getMessageName(), cb.rate), cb.retryAfter());
+            }
+
+            if (ab != null) {
+                ab.take();
+            }
+            if (cb != null) {
+                cb.take();
+            }
+
+            Request r = new Request();
+            r.msg = msg;
+            r.handler = handler;
+            r.accountUuid = accountUuid;
+            r.order = lane.seq++;
+            Double weight = accountWeights.get(accountUuid);
+            Double last = lane.lastTags.get(accountUuid);
+            r.finishTag = Math.max(lane.virtualTime, last == null ? 0 : last) + 1 / (weight == null ? 1 : weight);
+            lane.lastTags.put(accountUuid, r.finishTag);
+            lane.queue.add(r);
+            queuedByAccount.put(accountUuid, queued + 1);
+        }
+
+        dispatch(lane);
+        return null;
+    }
+
+    private void dispatch(final Lane lane) {
+        List<Request> toRun = new ArrayList<Request>();
+        synchronized (this) {
+            while (lane.inFlight < lane.workers && !lane.queue.isEmpty()) {
+                Request r = lane.queue.poll();
+                lane.virtualTime = r.finishTag;
+                lane.inFlight++;
+                toRun.add(r);
+
+                int queued = queuedByAccount.get(r.accountUuid) - 1;
+                if (queued == 0) {
+                    queuedByAccount.remove(r.accountUuid);
+                } else {
+                    queuedByAccount.put(r.accountUuid, queued);
+                }
+
+                Double last = lane.lastTags.get(r.accountUuid);
+                if (last != null && last <= lane.virtualTime) {
+                    // no message of the account is queued in the lane
+                    lane.lastTags.remove(r.accountUuid);
+                }
+
+                long delay = System.currentTimeMillis() - r.queuedTime;
+                lane.dispatched++;
+                lane.averageDelay = lane.averageDelay * 0.9 + delay * 0.1;
+                lane.maxDelay = Math.max(lane.maxDelay, delay);
+            }
+        }
+
+        for (final Request r : toRun) {
+            thdf.submit(new Task<Void>() {
+                @Override
+                public String getName() {
+                    return String.format("api.worker.%s", lane.name);
+                }
+
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        r.handler.handle(r.msg);
+                    } finally {
+                        synchronized (ApiAdmissionController.this) {
+                            lane.inFlight--;
+                        }
+                        dispatch(lane);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getQueued() {
+        Map<String, Integer> ret = new LinkedHashMap<String, Integer>();
+        for (Lane l : lanes.values()) {
+            ret.put(l.name, l.queue.size());
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getDispatched() {
+        Map<String, Long> ret = new LinkedHashMap<String, Long>();
+        for (Lane l : lanes.values()) {
+            ret.put(l.name, l.dispatched);
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getRejected() {
+        Map<String, Long> ret = new LinkedHashMap<String, Long>();
+        for (Lane l : lanes.values()) {
+            ret.put(l.name, l.rejected);
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getAverageQueueingDelay() {
+        Map<String, Long> ret = new LinkedHashMap<String, Long>();
+        for (Lane l : lanes.values()) {
+            ret.put(l.name, (long) l.averageDelay);
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getMaxQueueingDelay() {
+        Map<String, Long> ret = new LinkedHashMap<String, Long>();
+        for (Lane l : lanes.values()) {
+            ret.put(l.name, l.maxDelay);
+        }
+        return ret;
+    }
+}
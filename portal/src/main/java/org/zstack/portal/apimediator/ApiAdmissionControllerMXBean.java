@@ -0,0 +1,17 @@
+package org.zstack.portal.apimediator;
+
+import java.util.Map;
+
+/**
+ */
+public interface ApiAdmissionControllerMXBean {
+    Map<String, Integer> getQueued();
+
+    Map<String, Long> getDispatched();
+
+    Map<String, Long> getRejected();
+
+    Map<String, Long> getAverageQueueingDelay();
+
+    Map<String, Long> getMaxQueueingDelay();
+}
@@ -8,10 +8,12 @@ import org.zstack.core.cloudbus.CloudBusCallBack;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.db.DatabaseFacade;
 import org.zstack.core.errorcode.ErrorFacade;
-import org.zstack.core.thread.SyncTask;
+import org.zstack.core.jmx.JmxFacade;
+import org.zstack.core.thread.Task;
 import org.zstack.core.thread.ThreadFacade;
 import org.zstack.header.AbstractService;
 import org.zstack.header.apimediator.*;
+import org.zstack.header.errorcode.ErrorCode;
 import org.zstack.header.errorcode.SysErrors;
 import org.zstack.header.managementnode.*;
 import org.zstack.header.message.APICreateMessage;
@@ -43,11 +45,20 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
     private ErrorFacade errf;
     @Autowired
     private DatabaseFacade dbf;
+    @Autowired
+    private JmxFacade jmxf;
 
     private ApiMessageProcessor processor;
+    private ApiAdmissionController admission;
 
     private List<String> serviceConfigFolders;
     private int apiWorkerNum = 5;
+    private int apiReadWorkerNum = 5;
+    private double apiAccountRate;
+    private double apiAccountBurst;
+    private int apiMaxQueuedPerAccount = 1000;
+    private String apiClassRates;
+    private String apiAccountWeights;
 
     private void dispatchMessage(APIMessage msg) {
         ApiMessageDescriptor desc = processor.getApiMessageDescriptor(msg);
@@ -86,41 +97,46 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
     }
 
 
+    @MessageSafe
+    private void doHandleMessage(Message msg) {
+        if (msg instanceof APIIsReadyToGoMsg) {
+            handle((APIIsReadyToGoMsg) msg);
+        } else if (msg instanceof APIGetVersionMsg) {
+            handle((APIGetVersionMsg) msg);
+        } else {
+            dispatchMessage((APIMessage) msg);
+        }
+    }
+
     @Override
     public void handleMessage(final Message msg) {
-        thdf.syncSubmit(new SyncTask<Object>() {
-            @Override
-            public String getSyncSignature() {
-                return "api.worker";
-            }
-
-            @Override
-            public int getSyncLevel() {
-                return apiWorkerNum;
-            }
-
-            @Override
-            public String getName() {
-                return "api.worker";
-            }
+        if (msg instanceof APIIsReadyToGoMsg || msg instanceof APIGetVersionMsg) {
+            // probes of the management node are not subject to admission, they must be answered when APIs are throttled
+            thdf.submit(new Task<Object>() {
+                @Override
+                public String getName() {
+                    return "api.worker";
+                }
 
-            @MessageSafe
-            public void handleMessage(Message msg) {
-                if (msg instanceof APIIsReadyToGoMsg) {
-                    handle((APIIsReadyToGoMsg) msg);
-                } else if (msg instanceof APIGetVersionMsg) {
-                    handle((APIGetVersionMsg) msg);
-                } else {
-                    dispatchMessage((APIMessage) msg);
+                @Override
+                public Object call() throws Exception {
+                    doHandleMessage(msg);
+                    return null;
                 }
-            }
+            });
+            return;
+        }
 
+        ErrorCode err = admission.submit((APIMessage) msg, new ApiAdmissionController.Handler() {
             @Override
-            public Object call() throws Exception {
-                handleMessage(msg);
-                return null;
+            public void handle(APIMessage amsg) {
+                doHandleMessage(amsg);
             }
         });
+
+        if (err != null) {
+            bus.replyErrorByMessageType(msg, err);
+        }
     }
 
     @Transactional(readOnly = true)
@@ -176,6 +192,18 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
         Map<String, Object> config = new HashMap<String, Object>();
         config.put("serviceConfigFolders", serviceConfigFolders);
         processor = new ApiMessageProcessorImpl(config);
+
+        admission = new ApiAdmissionController(thdf, dbf, errf);
+        admission.setWorkerNum(apiWorkerNum);
+        admission.setReadWorkerNum(apiReadWorkerNum);
+        admission.setAccountRate(apiAccountRate);
+        admission.setAccountBurst(apiAccountBurst);
+        admission.setMaxQueuedPerAccount(apiMaxQueuedPerAccount);
+        admission.setApiClassRates(apiClassRates);
+        admission.setAccountWeights(apiAccountWeights);
+        admission.init();
+        jmxf.registerBean("ApiAdmissionController", admission);
+
         bus.registerService(this);
         return true;
     }
@@ -194,6 +222,30 @@ public class ApiMediatorImpl extends AbstractService implements ApiMediator, Glo
         this.apiWorkerNum = apiWorkerNum;
     }
 
+    public void setApiReadWorkerNum(int apiReadWorkerNum) {
+        this.apiReadWorkerNum = apiReadWorkerNum;
+    }
+
+    public void setApiAccountRate(double apiAccountRate) {
+        this.apiAccountRate = apiAccountRate;
+    }
+
+    public void setApiAccountBurst(double apiAccountBurst) {
+        this.apiAccountBurst = apiAccountBurst;
+    }
+
+    public void setApiMaxQueuedPerAccount(int apiMaxQueuedPerAccount) {
+        this.apiMaxQueuedPerAccount = apiMaxQueuedPerAccount;
+    }
+
+    public void setApiClassRates(String apiClassRates) {
+        this.apiClassRates = apiClassRates;
+    }
+
+    public void setApiAccountWeights(String apiAccountWeights) {
+        this.apiAccountWeights = apiAccountWeights;
+    }
+
     @Override
     public List<Class> getMessageClassToIntercept() {
         List<Class> lst = new ArrayList<Class>();
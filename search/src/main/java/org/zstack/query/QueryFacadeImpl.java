@@ -6,6 +6,7 @@ import org.zstack.core.CoreGlobalProperty;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.componentloader.PluginRegistry;
+import org.zstack.core.db.ReadFromReplica;
 import org.zstack.core.errorcode.ErrorFacade;
 import org.zstack.header.errorcode.OperationFailureException;
 import org.zstack.header.AbstractService;
@@ -49,6 +50,7 @@ public class QueryFacadeImpl extends AbstractService implements QueryFacade, Glo
     }
 
     @Override
+    @ReadFromReplica
     public <T> List<T> query(APIQueryMessage msg, Class<T> inventoryClass) {
         validateConditions(msg.getConditions());
 
@@ -58,6 +60,7 @@ public class QueryFacadeImpl extends AbstractService implements QueryFacade, Glo
     }
 
     @Override
+    @ReadFromReplica
     public long count(APIQueryMessage msg, Class inventoryClass) {
         validateConditions(msg.getConditions());
 
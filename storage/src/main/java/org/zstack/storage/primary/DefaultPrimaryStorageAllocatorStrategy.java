@@ -39,7 +39,7 @@ class DefaultPrimaryStorageAllocatorStrategy implements PrimaryStorageAllocatorS
         return PrimaryStorageInventory.valueOf(candidates);
     }
 
-    private List<PrimaryStorageVO> allocateAll(PrimaryStorageAllocationSpec spec) {
+    protected List<PrimaryStorageVO> allocateAll(PrimaryStorageAllocationSpec spec) {
         class Result {
             List<PrimaryStorageVO> result;
             ErrorCode errorCode;
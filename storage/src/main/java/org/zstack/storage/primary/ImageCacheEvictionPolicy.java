@@ -0,0 +1,14 @@
+package org.zstack.storage.primary;
+
+/**
+ */
+public enum ImageCacheEvictionPolicy {
+    /**
+     * evict the cache whose image is least recently used
+     */
+    LRU,
+    /**
+     * evict the cache whose image is least frequently used
+     */
+    LFU
+}
@@ -0,0 +1,33 @@
+package org.zstack.storage.primary;
+
+import org.zstack.header.core.ReturnValueCompletion;
+import org.zstack.header.image.ImageInventory;
+
+/**
+ */
+public interface ImageCacheManager {
+    /**
+     * record that a volume on the primary storage is created from the image,
+     * the statistics drive prefetching popular images and evicting cold caches
+     */
+    void recordDemand(String primaryStorageUuid, String imageUuid);
+
+    /**
+     * download the image to the cache of the primary storage, concurrent calls for the same image
+     * and primary storage share one transfer
+     * @param completion returns the install path in the cache
+     */
+    void downloadImageToCache(String primaryStorageUuid, ImageInventory image, ReturnValueCompletion<String> completion);
+
+    interface Download<T> {
+        void run(ReturnValueCompletion<T> completion);
+    }
+
+    /**
+     * run the download unless a download of the same key is running on this management node, in which case
+     * the completion waits for the running one and shares its result. Primary storage download images to their
+     * caches through it, so creating volumes and prefetching from the same image share one transfer
+     * @param key identifies the cache downloaded to, e.g. the primary storage, the image and the host of local storage
+     */
+    <T> void coalesceDownload(String key, Download<T> download, ReturnValueCompletion<T> completion);
+}
@@ -0,0 +1,446 @@
+package org.zstack.storage.primary;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusCallBack;
+import org.zstack.core.cloudbus.ResourceDestinationMaker;
+import org.zstack.core.config.GlobalConfig;
+import org.zstack.core.config.GlobalConfigUpdateExtensionPoint;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.errorcode.ErrorFacade;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.header.core.ReturnValueCompletion;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.image.ImageConstant.ImageMediaType;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.image.ImageStatus;
+import org.zstack.header.image.ImageVO;
+import org.zstack.header.message.MessageReply;
+import org.zstack.header.storage.primary.*;
+import org.zstack.utils.SizeUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.TypedQuery;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * tracks how often images are used on primary storage, prefetches popular images to primary storage
+ * in background and evicts cold image caches when primary storage runs short of capacity
+ */
+public class ImageCacheManagerImpl implements ImageCacheManager, Component {
+    private static final CLogger logger = Utils.getLogger(ImageCacheManagerImpl.class);
+
+    @Autowired
+    private CloudBus bus;
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private ThreadFacade thdf;
+    @Autowired
+    private ResourceDestinationMaker destMaker;
+    @Autowired
+    private ErrorFacade errf;
+
+    private static class Demand {
+        long count;
+        long lastAccessTime;
+
+        synchronized void hit() {
+            count ++;
+            lastAccessTime = System.currentTimeMillis();
+        }
+    }
+
+    // imageUuid -> demand on all primary storage managed by this node
+    private Map<String, Demand> imageDemands = new ConcurrentHashMap<String, Demand>();
+    // primaryStorageUuid-imageUuid -> demand
+    private Map<String, Demand> cacheDemands = new ConcurrentHashMap<String, Demand>();
+    // download key -> completions waiting for the same download
+    private final Map<String, List<ReturnValueCompletion>> downloading = new HashMap<String, List<ReturnValueCompletion>>();
+    // primaryStorageUuid-imageUuid -> time of the last failed prefetch
+    private Map<String, Long> prefetchFailures = new ConcurrentHashMap<String, Long>();
+    // ids of image caches failed to evict, they are not retried until the management node restarts
+    private Set<Long> evictionFailures = Collections.synchronizedSet(new HashSet<Long>());
+    private AtomicInteger prefetching = new AtomicInteger();
+
+    private Future<Void> scanTask;
+
+    private static String makeKey(String primaryStorageUuid, String imageUuid) {
+        return String.format("%s-%s", primaryStorageUuid, imageUuid);
+    }
+
+    private Demand getDemand(Map<String, Demand> demands, String key) {
+        Demand d = demands.get(key);
+        if (d == null) {
+            synchronized (demands) {
+                d = demands.get(key);
+                if (d == null) {
+                    d = new Demand();
+                    demands.put(key, d);
+                }
+            }
+        }
+        return d;
+    }
+
+    @Override
+    public void recordDemand(String primaryStorageUuid, String imageUuid) {
+        getDemand(imageDemands, imageUuid).hit();
+        getDemand(cacheDemands, makeKey(primaryStorageUuid, imageUuid)).hit();
+    }
+
+    private List<ReturnValueCompletion> takeWaiters(String key) {
+        synchronized (downloading) {
+            return downloading.remove(key);
+        }
+    }
+
+    @Override
+    public <T> void coalesceDownload(final String key, Download<T> download, ReturnValueCompletion<T> completion) {
+        synchronized (downloading) {
+            List<ReturnValueCompletion> waiters = downloading.get(key);
+            if (waiters != null) {
+                logger.debug(String.format("the download[%s] is running, wait for it", key));
+                waiters.add(completion);
+                return;
+            }
+
+            waiters = new ArrayList<ReturnValueCompletion>();
+            waiters.add(completion);
+            downloading.put(key, waiters);
+        }
+
+        ReturnValueCompletion<T> done = new ReturnValueCompletion<T>() {
+            @Override
+            public void success(T returnValue) {
+                for (ReturnValueCompletion w : takeWaiters(key)) {
+                    w.success(returnValue);
+                }
+            }
+
+            @Override
+            public void fail(ErrorCode errorCode) {
+                for (ReturnValueCompletion w : takeWaiters(key)) {
+                    w.fail(errorCode);
+                }
+            }
+        };
+
+        try {
+            download.run(done);
+        } catch (Throwable t) {
+            logger.warn(String.format("unhandled exception when running the download[%s]", key), t);
+            done.fail(errf.throwableToInternalError(t));
+        }
+    }
+
+    @Override
+    public void downloadImageToCache(final String primaryStorageUuid, final ImageInventory image, ReturnValueCompletion<String> completion) {
+        // the primary storage coalesces the download again with volume creation, see coalesceDownload()
+        coalesceDownload(makeKey(primaryStorageUuid, image.getUuid()), new Download<String>() {
+            @Override
+            public void run(final ReturnValueCompletion<String> completion) {
+                DownloadImageToPrimaryStorageCacheMsg msg = new DownloadImageToPrimaryStorageCacheMsg();
+                msg.setPrimaryStorageUuid(primaryStorageUuid);
+                msg.setImage(image);
+                bus.makeTargetServiceIdByResourceUuid(msg, PrimaryStorageConstant.SERVICE_ID, primaryStorageUuid);
+                bus.send(msg, new CloudBusCallBack(completion) {
+                    @Override
+                    public void run(MessageReply reply) {
+                        if (reply.isSuccess()) {
+                            completion.success(((DownloadImageToPrimaryStorageCacheReply) reply).getInstallPath());
+                        } else {
+                            completion.fail(reply.getError());
+                        }
+                    }
+                });
+            }
+        }, completion);
+    }
+
+    private List<String> getPopularImages() {
+        long threshold = PrimaryStorageGlobalConfig.IMAGE_CACHE_PREFETCH_DEMAND_THRESHOLD.value(Long.class);
+        List<Map.Entry<String, Demand>> popular = new ArrayList<Map.Entry<String, Demand>>();
+        for (Map.Entry<String, Demand> e : imageDemands.entrySet()) {
+            if (e.getValue().count >= threshold) {
+                popular.add(e);
+            }
+        }
+
+        Collections.sort(popular, new Comparator<Map.Entry<String, Demand>>() {
+            @Override
+            public int compare(Map.Entry<String, Demand> o1, Map.Entry<String, Demand> o2) {
+                return Long.valueOf(o2.getValue().count).compareTo(o1.getValue().count);
+            }
+        });
+
+        List<String> imageUuids = new ArrayList<String>(popular.size());
+        for (Map.Entry<String, Demand> e : popular) {
+            imageUuids.add(e.getKey());
+        }
+        return imageUuids;
+    }
+
+    @Transactional(readOnly = true)
+    private List<String> findPrimaryStorageToPrefetch(ImageVO image) {
+        String sql = "select distinct ps.uuid from PrimaryStorageVO ps, PrimaryStorageCapacityVO cap, BackupStorageZoneRefVO ref, ImageBackupStorageRefVO iref" +
+                " where ps.uuid = cap.uuid and ps.zoneUuid = ref.zoneUuid and ref.backupStorageUuid = iref.backupStorageUuid" +
+                " and iref.imageUuid = :imageUuid and ps.status = :psStatus and ps.state = :psState" +
+                " and (cap.availableCapacity - :size) * 100 > cap.totalCapacity * :threshold" +
+                " and ps.uuid not in (select c.primaryStorageUuid from ImageCacheVO c where c.imageUuid = :imageUuid)";
+        TypedQuery<String> q = dbf.getEntityManager().createQuery(sql, String.class);
+        q.setParameter("imageUuid", image.getUuid());
+        q.setParameter("psStatus", PrimaryStorageStatus.Connected);
+        q.setParameter("psState", PrimaryStorageState.Enabled);
+        q.setParameter("size", image.getSize());
+        q.setParameter("threshold", PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_CAPACITY_THRESHOLD.value(Long.class));
+        return q.getResultList();
+    }
+
+    private void prefetch() {
+        List<String> imageUuids = getPopularImages();
+        if (imageUuids.isEmpty()) {
+            return;
+        }
+
+        int parallelism = PrimaryStorageGlobalConfig.IMAGE_CACHE_PREFETCH_PARALLELISM_DEGREE.value(Integer.class);
+        // the bandwidth is enforced as a budget of bytes transferred per scan interval
+        long budget = SizeUtils.sizeStringToBytes(PrimaryStorageGlobalConfig.IMAGE_CACHE_PREFETCH_BANDWIDTH.value())
+                * PrimaryStorageGlobalConfig.IMAGE_CACHE_SCAN_INTERVAL.value(Long.class);
+        long failureBackoff = TimeUnit.SECONDS.toMillis(PrimaryStorageGlobalConfig.IMAGE_CACHE_SCAN_INTERVAL.value(Long.class) * 10);
+
+        for (String imageUuid : imageUuids) {
+            ImageVO image = dbf.findByUuid(imageUuid, ImageVO.class);
+            if (image == null) {
+                imageDemands.remove(imageUuid);
+                continue;
+            }
+
+            if (image.getStatus() != ImageStatus.Ready || image.getMediaType() != ImageMediaType.RootVolumeTemplate) {
+                continue;
+            }
+
+            for (final String psUuid : findPrimaryStorageToPrefetch(image)) {
+                if (!destMaker.isManagedByUs(psUuid)) {
+                    continue;
+                }
+
+                final String key = makeKey(psUuid, imageUuid);
+                Long lastFailure = prefetchFailures.get(key);
+                if (lastFailure != null && System.currentTimeMillis() - lastFailure < failureBackoff) {
+                    continue;
+                }
+
+                if (prefetching.get() >= parallelism) {
+                    return;
+                }
+
+                if (image.getSize() > budget) {
+                    return;
+                }
+
+                budget -= image.getSize();
+                prefetching.incrementAndGet();
+
+                final ImageInventory inv = ImageInventory.valueOf(image);
+                logger.debug(String.format("prefetch the image[uuid:%s, name:%s] to the primary storage[uuid:%s]",
+                        inv.getUuid(), inv.getName(), psUuid));
+                downloadImageToCache(psUuid, inv, new ReturnValueCompletion<String>() {
+                    @Override
+                    public void success(String returnValue) {
+                        prefetching.decrementAndGet();
+                        prefetchFailures.remove(key);
+                        logger.debug(String.format("prefetched the image[uuid:%s, name:%s] to the primary storage[uuid:%s]",
+                                inv.getUuid(), inv.getName(), psUuid));
+                    }
+
+                    @Override
+                    public void fail(ErrorCode errorCode) {
+                        prefetching.decrementAndGet();
+                        prefetchFailures.put(key, System.currentTimeMillis());
+                        logger.warn(String.format("failed to prefetch the image[uuid:%s, name:%s] to the primary storage[uuid:%s], %s",
+                                inv.getUuid(), inv.getName(), psUuid, errorCode));
+                    }
+                });
+            }
+        }
+    }
+
+    @Transactional(readOnly = true)
+    private List<PrimaryStorageCapacityVO> findPrimaryStorageUnderCapacityPressure() {
+        String sql = "select cap from PrimaryStorageCapacityVO cap, PrimaryStorageVO ps where cap.uuid = ps.uuid" +
+                " and ps.status = :psStatus and cap.totalCapacity > 0 and cap.availableCapacity * 100 < cap.totalCapacity * :threshold";
+        TypedQuery<PrimaryStorageCapacityVO> q = dbf.getEntityManager().createQuery(sql, PrimaryStorageCapacityVO.class);
+        q.setParameter("psStatus", PrimaryStorageStatus.Connected);
+        q.setParameter("threshold", PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_CAPACITY_THRESHOLD.value(Long.class));
+        return q.getResultList();
+    }
+
+    // a cache is unused when no volume, including deleted but not expunged ones, is created from its image.
+    // Caches of expunged images are never unused, see PrimaryStorageBase.checkImageCacheRemovable()
+    @Transactional(readOnly = true)
+    private List<ImageCacheVO> findUnusedImageCaches(String psUuid) {
+        String sql = "select c from ImageCacheVO c where c.primaryStorageUuid = :psUuid and c.state = :state and c.mediaType = :mediaType" +
+                " and c.imageUuid is not null and c.id not in (select ref.imageCacheId from ImageCacheVolumeRefVO ref)" +
+                " and c.imageUuid not in (select vol.rootImageUuid from VolumeVO vol" +
+                " where vol.primaryStorageUuid = :psUuid and vol.rootImageUuid is not null)";
+        TypedQuery<ImageCacheVO> q = dbf.getEntityManager().createQuery(sql, ImageCacheVO.class);
+        q.setParameter("psUuid", psUuid);
+        q.setParameter("state", ImageCacheState.ready);
+        q.setParameter("mediaType", ImageMediaType.RootVolumeTemplate);
+        return q.getResultList();
+    }
+
+    private void sortByEvictionPolicy(final String psUuid, List<ImageCacheVO> caches) {
+        final ImageCacheEvictionPolicy policy = ImageCacheEvictionPolicy.valueOf(PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_POLICY.value());
+        Collections.sort(caches, new Comparator<ImageCacheVO>() {
+            private long lastAccessTime(ImageCacheVO c) {
+                Demand d = c.getImageUuid() == null ? null : cacheDemands.get(makeKey(psUuid, c.getImageUuid()));
+                if (d != null) {
+                    return d.lastAccessTime;
+                }
+
+                // not used since the management node started
+                return c.getLastOpDate() != null ? c.getLastOpDate().getTime() : c.getCreateDate().getTime();
+            }
+
+            private long count(ImageCacheVO c) {
+                Demand d = c.getImageUuid() == null ? null : cacheDemands.get(makeKey(psUuid, c.getImageUuid()));
+                return d == null ? 0 : d.count;
+            }
+
+            @Override
+            public int compare(ImageCacheVO o1, ImageCacheVO o2) {
+                if (policy == ImageCacheEvictionPolicy.LFU) {
+                    int ret = Long.valueOf(count(o1)).compareTo(count(o2));
+                    if (ret != 0) {
+                        return ret;
+                    }
+                }
+
+                return Long.valueOf(lastAccessTime(o1)).compareTo(lastAccessTime(o2));
+            }
+        });
+    }
+
+    private void evict(final ImageCacheVO cache) {
+        cache.setState(ImageCacheState.deleting);
+        final ImageCacheVO ic = dbf.updateAndRefresh(cache);
+
+        // the primary storage knows where its caches are installed and which capacity to return,
+        // e.g. caches of local storage live on hosts and have no LocalStorageResourceRefVO
+        PrimaryStorageRemoveCachedImageMsg msg = new PrimaryStorageRemoveCachedImageMsg();
+        msg.setInventory(ImageCacheInventory.valueOf(ic));
+        bus.makeTargetServiceIdByResourceUuid(msg, PrimaryStorageConstant.SERVICE_ID, ic.getPrimaryStorageUuid());
+        bus.send(msg, new CloudBusCallBack() {
+            @Override
+            public void run(MessageReply reply) {
+                if (!reply.isSuccess()) {
+                    ic.setState(ImageCacheState.ready);
+                    dbf.update(ic);
+                    evictionFailures.add(ic.getId());
+                    logger.warn(String.format("failed to evict the image cache[id:%s, install url:%s] on the primary storage[uuid:%s], %s",
+                            ic.getId(), ic.getInstallUrl(), ic.getPrimaryStorageUuid(), reply.getError()));
+                    return;
+                }
+
+                dbf.remove(ic);
+                logger.debug(String.format("evicted the image cache[id:%s, image uuid:%s, install url:%s] on the primary storage[uuid:%s]",
+                        ic.getId(), ic.getImageUuid(), ic.getInstallUrl(), ic.getPrimaryStorageUuid()));
+            }
+        });
+    }
+
+    private void evict() {
+        long threshold = PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_CAPACITY_THRESHOLD.value(Long.class);
+        for (PrimaryStorageCapacityVO cap : findPrimaryStorageUnderCapacityPressure()) {
+            if (!destMaker.isManagedByUs(cap.getUuid())) {
+                continue;
+            }
+
+            long required = cap.getTotalCapacity() * threshold / 100 - cap.getAvailableCapacity();
+            List<ImageCacheVO> caches = findUnusedImageCaches(cap.getUuid());
+            sortByEvictionPolicy(cap.getUuid(), caches);
+
+            for (ImageCacheVO c : caches) {
+                if (required <= 0) {
+                    break;
+                }
+
+                if (evictionFailures.contains(c.getId())) {
+                    continue;
+                }
+
+                required -= c.getSize();
+                evict(c);
+            }
+        }
+    }
+
+    private void startScanTask() {
+        if (scanTask != null) {
+            scanTask.cancel(true);
+        }
+
+        scanTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return PrimaryStorageGlobalConfig.IMAGE_CACHE_SCAN_INTERVAL.value(Long.class);
+            }
+
+            @Override
+            public String getName() {
+                return "image-cache-manager-scan";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    if (PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_ENABLE.value(Boolean.class)) {
+                        evict();
+                    }
+
+                    if (PrimaryStorageGlobalConfig.IMAGE_CACHE_PREFETCH_ENABLE.value(Boolean.class)) {
+                        prefetch();
+                    }
+                } catch (Throwable t) {
+                    logger.warn("unhandled exception when scanning image caches", t);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean start() {
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_SCAN_INTERVAL.installUpdateExtension(new GlobalConfigUpdateExtensionPoint() {
+            @Override
+            public void updateGlobalConfig(GlobalConfig oldConfig, GlobalConfig newConfig) {
+                startScanTask();
+            }
+        });
+
+        startScanTask();
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (scanTask != null) {
+            scanTask.cancel(true);
+        }
+        return true;
+    }
+}
@@ -37,6 +37,7 @@ import org.zstack.header.storage.primary.PrimaryStorageCanonicalEvent.PrimarySto
 import org.zstack.header.storage.snapshot.VolumeSnapshotConstant;
 import org.zstack.header.storage.snapshot.VolumeSnapshotReportPrimaryStorageCapacityUsageMsg;
 import org.zstack.header.storage.snapshot.VolumeSnapshotReportPrimaryStorageCapacityUsageReply;
+import org.zstack.header.vm.VmInstanceSpec.ImageSpec;
 import org.zstack.header.volume.VolumeConstant;
 import org.zstack.header.volume.VolumeReportPrimaryStorageCapacityUsageMsg;
 import org.zstack.header.volume.VolumeReportPrimaryStorageCapacityUsageReply;
@@ -77,6 +78,8 @@ public abstract class PrimaryStorageBase extends AbstractPrimaryStorage {
     protected PrimaryStorageOverProvisioningManager ratioMgr;
     @Autowired
     protected EventFacade evtf;
+    @Autowired
+    protected ImageCacheManager imageCacheMgr;
 
     public static class PhysicalCapacityUsage {
         public long totalPhysicalSize;
@@ -148,10 +151,20 @@ public abstract class PrimaryStorageBase extends AbstractPrimaryStorage {
 		}
 	}
 
+    private void recordImageDemand(InstantiateRootVolumeFromTemplateMsg msg) {
+        ImageSpec ispec = msg.getTemplateSpec();
+        if (ispec != null && ispec.getInventory() != null) {
+            imageCacheMgr.recordDemand(self.getUuid(), ispec.getInventory().getUuid());
+        }
+    }
+
 	protected void handleLocalMessage(Message msg) {
 	    if (msg instanceof PrimaryStorageReportPhysicalCapacityMsg) {
 	        handle((PrimaryStorageReportPhysicalCapacityMsg) msg);
 	    } else if (msg instanceof InstantiateVolumeMsg) {
+	        if (msg instanceof InstantiateRootVolumeFromTemplateMsg) {
+	            recordImageDemand((InstantiateRootVolumeFromTemplateMsg) msg);
+	        }
 	        handle((InstantiateVolumeMsg)msg);
 	    } else if (msg instanceof DeleteVolumeOnPrimaryStorageMsg) {
 	        handle((DeleteVolumeOnPrimaryStorageMsg)msg);
@@ -175,11 +188,72 @@ public abstract class PrimaryStorageBase extends AbstractPrimaryStorage {
             handle((AskVolumeSnapshotCapabilityMsg) msg);
         } else if (msg instanceof TakePrimaryStorageCapacityMsg) {
             handle((TakePrimaryStorageCapacityMsg) msg);
+        } else if (msg instanceof PrimaryStorageRemoveCachedImageMsg) {
+            handle((PrimaryStorageRemoveCachedImageMsg) msg);
 	    } else {
 	        bus.dealWithUnknownMessage(msg);
 	    }
 	}
 
+    @Transactional(readOnly = true)
+    private String findHypervisorTypeOfAttachedCluster() {
+        String sql = "select cluster.hypervisorType from ClusterVO cluster, PrimaryStorageClusterRefVO ref" +
+                " where cluster.uuid = ref.clusterUuid and ref.primaryStorageUuid = :psUuid";
+        TypedQuery<String> q = dbf.getEntityManager().createQuery(sql, String.class);
+        q.setParameter("psUuid", self.getUuid());
+        q.setMaxResults(1);
+        List<String> types = q.getResultList();
+        return types.isEmpty() ? null : types.get(0);
+    }
+
+    // the image of an orphaned cache has been expunged, which set imageUuid and the rootImageUuid of volumes created
+    // from it to NULL. Nothing tells whether volumes still use the cache, e.g. as the backing file of linked clone
+    // qcow2 volumes, so orphaned caches are never removed
+    protected ErrorCode checkImageCacheRemovable(ImageCacheInventory cache) {
+        if (cache.getImageUuid() == null) {
+            return errf.stringToOperationError(String.format("the image of the image cache[id:%s, install url:%s] has been expunged," +
+                    " volumes may still use the cache as backing file, keep it", cache.getId(), cache.getInstallUrl()));
+        }
+
+        return null;
+    }
+
+    // the default way to remove an image cache for primary storage whose install url is a plain path on the storage,
+    // primary storage whose caches live on hosts overrides it
+    protected void handle(final PrimaryStorageRemoveCachedImageMsg msg) {
+        final ImageCacheInventory cache = msg.getInventory();
+        ErrorCode err = checkImageCacheRemovable(cache);
+        if (err != null) {
+            PrimaryStorageRemoveCachedImageReply r = new PrimaryStorageRemoveCachedImageReply();
+            r.setError(err);
+            bus.reply(msg, r);
+            return;
+        }
+
+        DeleteBitsOnPrimaryStorageMsg dmsg = new DeleteBitsOnPrimaryStorageMsg();
+        dmsg.setPrimaryStorageUuid(self.getUuid());
+        dmsg.setInstallPath(cache.getInstallUrl());
+        dmsg.setHypervisorType(findHypervisorTypeOfAttachedCluster());
+        dmsg.setBitsUuid(cache.getImageUuid());
+        dmsg.setBitsType(ImageCacheVO.class.getSimpleName());
+        bus.makeTargetServiceIdByResourceUuid(dmsg, PrimaryStorageConstant.SERVICE_ID, self.getUuid());
+        bus.send(dmsg, new CloudBusCallBack(msg) {
+            @Override
+            public void run(MessageReply reply) {
+                PrimaryStorageRemoveCachedImageReply r = new PrimaryStorageRemoveCachedImageReply();
+                if (!reply.isSuccess()) {
+                    r.setError(reply.getError());
+                    bus.reply(msg, r);
+                    return;
+                }
+
+                PrimaryStorageCapacityUpdater updater = new PrimaryStorageCapacityUpdater(self.getUuid());
+                updater.increaseAvailableCapacity(cache.getSize());
+                bus.reply(msg, r);
+            }
+        });
+    }
+
     private void handle(TakePrimaryStorageCapacityMsg msg) {
         PrimaryStorageCapacityUpdater updater = new PrimaryStorageCapacityUpdater(self.getUuid());
         updater.decreaseAvailableCapacity(msg.getSize());
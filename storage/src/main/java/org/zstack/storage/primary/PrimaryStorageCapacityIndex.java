@@ -0,0 +1,356 @@
+package org.zstack.storage.primary;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.thread.PeriodicTask;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.Component;
+import org.zstack.header.storage.primary.*;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * keeps primary storage, their attached clusters, capacities and cached images in memory for
+ * PrimaryStorageScoredAllocatorFlow, so an allocation doesn't join primary storage with clusters and hosts
+ * and query image caches every time.
+ *
+ * the index is loaded by the first allocation using it, so management nodes not using the scored strategy never
+ * load it; from then on it's reloaded periodically and before the next allocation once primary storage are attached,
+ * detached, deleted or change state. Between two reloads, capacity reserved by allocations of this management node is
+ * deducted from the indexed capacity, and every allocation adds to the load of the chosen primary storage;
+ * the load decays by half every loadHalfLife seconds and approximates the I/O burst caused by new volumes
+ */
+public class PrimaryStorageCapacityIndex implements Component, PrimaryStorageAttachExtensionPoint,
+        PrimaryStorageDetachExtensionPoint, PrimaryStorageChangeStateExtensionPoint {
+    private static final CLogger logger = Utils.getLogger(PrimaryStorageCapacityIndex.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private ThreadFacade thdf;
+    @Autowired
+    private EventFacade evtf;
+
+    private long refreshInterval = 30;
+    private long loadHalfLife = 60;
+    private double capacityWeight = 1;
+    private double imageCacheWeight = 1;
+    private double loadWeight = 1;
+
+    public static class Entry {
+        private PrimaryStorageVO primaryStorage;
+        private Set<String> clusterUuids = new HashSet<String>();
+        private Set<String> imageUuids = new HashSet<String>();
+
+        public Entry(PrimaryStorageVO primaryStorage) {
+            this.primaryStorage = primaryStorage;
+            for (PrimaryStorageClusterRefVO ref : primaryStorage.getAttachedClusterRefs()) {
+                clusterUuids.add(ref.getClusterUuid());
+            }
+        }
+
+        public void addImageCache(String imageUuid) {
+            imageUuids.add(imageUuid);
+        }
+
+        public PrimaryStorageVO getPrimaryStorage() {
+            return primaryStorage;
+        }
+
+        public String getUuid() {
+            return primaryStorage.getUuid();
+        }
+
+        public boolean isAttachedToCluster(String clusterUuid) {
+            return clusterUuids.contains(clusterUuid);
+        }
+
+        public boolean isAttachedToAnyCluster(Collection<String> clusterUuids) {
+            for (String uuid : clusterUuids) {
+                if (this.clusterUuids.contains(uuid)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean hasImageCache(String imageUuid) {
+            return imageUuids.contains(imageUuid);
+        }
+    }
+
+    private static class Load {
+        double value;
+        long lastUpdateTime = System.currentTimeMillis();
+
+        double decay(long halfLife) {
+            long now = System.currentTimeMillis();
+            value = value * Math.pow(0.5, (double) (now - lastUpdateTime) / TimeUnit.SECONDS.toMillis(halfLife));
+            lastUpdateTime = now;
+            return value;
+        }
+    }
+
+    private volatile Map<String, Entry> entries = new HashMap<String, Entry>();
+    private volatile boolean dirty = true;
+    // primaryStorageUuid -> bytes reserved by allocations since the last reload
+    private Map<String, Long> reserved = new ConcurrentHashMap<String, Long>();
+    private final Map<String, Load> loads = new HashMap<String, Load>();
+    private Map<String, Long> imageSizes = new ConcurrentHashMap<String, Long>();
+
+    private volatile Future<Void> refreshTask;
+
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public void setLoadHalfLife(long loadHalfLife) {
+        this.loadHalfLife = loadHalfLife;
+    }
+
+    public void setCapacityWeight(double capacityWeight) {
+        this.capacityWeight = capacityWeight;
+    }
+
+    public void setImageCacheWeight(double imageCacheWeight) {
+        this.imageCacheWeight = imageCacheWeight;
+    }
+
+    public void setLoadWeight(double loadWeight) {
+        this.loadWeight = loadWeight;
+    }
+
+    @Transactional(readOnly = true)
+    protected Map<String, Entry> load() {
+        Map<String, Entry> ret = new HashMap<String, Entry>();
+        String sql = "select pri from PrimaryStorageVO pri";
+        TypedQuery<PrimaryStorageVO> q = dbf.getEntityManager().createQuery(sql, PrimaryStorageVO.class);
+        for (PrimaryStorageVO vo : q.getResultList()) {
+            if (vo.getCapacity() == null) {
+                // the primary storage is being added
+                continue;
+            }
+
+            ret.put(vo.getUuid(), new Entry(vo));
+        }
+
+        sql = "select i.primaryStorageUuid, i.imageUuid from ImageCacheVO i";
+        TypedQuery<Tuple> iq = dbf.getEntityManager().createQuery(sql, Tuple.class);
+        for (Tuple t : iq.getResultList()) {
+            Entry e = ret.get(t.get(0, String.class));
+            if (e != null) {
+                e.addImageCache(t.get(1, String.class));
+            }
+        }
+
+        return ret;
+    }
+
+    public synchronized void reload() {
+        dirty = false;
+        Map<String, Entry> newEntries = load();
+        reserved.clear();
+        entries = newEntries;
+
+        synchronized (loads) {
+            loads.keySet().retainAll(newEntries.keySet());
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("[Primary Storage Allocation] reloaded %s primary storage to the capacity index", newEntries.size()));
+        }
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public Collection<Entry> getEntries() {
+        if (refreshTask == null) {
+            startRefreshTask();
+        }
+
+        if (dirty) {
+            reload();
+        }
+
+        return entries.values();
+    }
+
+    public long getAvailableCapacity(Entry e) {
+        Long r = reserved.get(e.getUuid());
+        long avail = e.primaryStorage.getCapacity().getAvailableCapacity();
+        return r == null ? avail : avail - r;
+    }
+
+    public double getLoad(String primaryStorageUuid) {
+        synchronized (loads) {
+            Load l = loads.get(primaryStorageUuid);
+            return l == null ? 0 : l.decay(loadHalfLife);
+        }
+    }
+
+    /**
+     * @return the size of the image, or null if the image has been deleted
+     */
+    @Transactional(readOnly = true)
+    public Long getImageSize(String imageUuid) {
+        Long size = imageSizes.get(imageUuid);
+        if (size == null) {
+            String sql = "select i.size from ImageVO i where i.uuid = :uuid";
+            TypedQuery<Long> q = dbf.getEntityManager().createQuery(sql, Long.class);
+            q.setParameter("uuid", imageUuid);
+            List<Long> sizes = q.getResultList();
+            if (sizes.isEmpty()) {
+                logger.warn(String.format("[Primary Storage Allocation] cannot find the image[uuid:%s], it may have been deleted", imageUuid));
+                return null;
+            }
+
+            size = sizes.get(0);
+            // the size is unknown until the image is downloaded to backup storage
+            if (size > 0) {
+                imageSizes.put(imageUuid, size);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * scores the primary storage by its free capacity ratio, whether it has the image cached
+     * and its recent allocations; the higher the better
+     */
+    public double score(Entry e, String imageUuid) {
+        long total = e.primaryStorage.getCapacity().getTotalCapacity();
+        double free = total <= 0 ? 0 : Math.max(0, (double) getAvailableCapacity(e) / total);
+        double cached = imageUuid != null && e.hasImageCache(imageUuid) ? 1 : 0;
+        double load = 1 / (1 + getLoad(e.getUuid()));
+        return capacityWeight * free + imageCacheWeight * cached + loadWeight * load;
+    }
+
+    public void recordAllocation(String primaryStorageUuid, long size) {
+        synchronized (reserved) {
+            Long r = reserved.get(primaryStorageUuid);
+            reserved.put(primaryStorageUuid, r == null ? size : r + size);
+        }
+
+        synchronized (loads) {
+            Load l = loads.get(primaryStorageUuid);
+            if (l == null) {
+                l = new Load();
+                loads.put(primaryStorageUuid, l);
+            }
+            l.decay(loadHalfLife);
+            l.value ++;
+        }
+    }
+
+    private synchronized void startRefreshTask() {
+        if (refreshTask != null) {
+            return;
+        }
+
+        refreshTask = thdf.submitPeriodicTask(new PeriodicTask() {
+            @Override
+            public TimeUnit getTimeUnit() {
+                return TimeUnit.SECONDS;
+            }
+
+            @Override
+            public long getInterval() {
+                return refreshInterval;
+            }
+
+            @Override
+            public String getName() {
+                return "primary-storage-capacity-index-refresh";
+            }
+
+            @Override
+            public void run() {
+                try {
+                    reload();
+                } catch (Throwable t) {
+                    logger.warn("unhandled exception when reloading the primary storage capacity index", t);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean start() {
+        evtf.on(PrimaryStorageCanonicalEvent.PRIMARY_STORAGE_DELETED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                markDirty();
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean stop() {
+        if (refreshTask != null) {
+            refreshTask.cancel(true);
+        }
+        return true;
+    }
+
+    @Override
+    public void preAttachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) throws PrimaryStorageException {
+    }
+
+    @Override
+    public void beforeAttachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) {
+    }
+
+    @Override
+    public void failToAttachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) {
+    }
+
+    @Override
+    public void afterAttachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) {
+        markDirty();
+    }
+
+    @Override
+    public void preDetachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) throws PrimaryStorageException {
+    }
+
+    @Override
+    public void beforeDetachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) {
+    }
+
+    @Override
+    public void failToDetachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) {
+    }
+
+    @Override
+    public void afterDetachPrimaryStorage(PrimaryStorageInventory inventory, String clusterUuid) {
+        markDirty();
+    }
+
+    @Override
+    public void preChangePrimaryStorageState(PrimaryStorageInventory inv, PrimaryStorageStateEvent evt, PrimaryStorageState nextState) throws PrimaryStorageException {
+    }
+
+    @Override
+    public void beforeChangePrimaryStorageState(PrimaryStorageInventory inv, PrimaryStorageStateEvent evt, PrimaryStorageState nextState) {
+    }
+
+    @Override
+    public void afterChangePrimaryStorageState(PrimaryStorageInventory inv, PrimaryStorageStateEvent evt, PrimaryStorageState previousState) {
+        markDirty();
+    }
+}
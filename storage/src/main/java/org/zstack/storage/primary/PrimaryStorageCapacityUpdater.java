@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.transaction.annotation.Transactional;
 import org.zstack.core.cloudbus.CloudBus;
 import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.WriteBehindStatusStore;
 import org.zstack.header.exception.CloudRuntimeException;
 import org.zstack.header.storage.primary.PrimaryStorageCapacityUpdaterRunnable;
 import org.zstack.header.storage.primary.PrimaryStorageCapacityVO;
@@ -17,6 +18,7 @@ import org.zstack.utils.logging.CLogger;
 import javax.persistence.LockModeType;
 import javax.persistence.TypedQuery;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by frank on 10/19/2015.
@@ -30,11 +32,14 @@ public class PrimaryStorageCapacityUpdater {
     private DatabaseFacade dbf;
     @Autowired
     private CloudBus bus;
+    @Autowired
+    private WriteBehindStatusStore statusStore;
 
     private String primaryStorageUuid;
     private TypedQuery<PrimaryStorageCapacityVO> query;
     private PrimaryStorageCapacityVO capacityVO;
     private PrimaryStorageCapacityVO originalCopy;
+    private long statusVersion;
 
     private long totalForLog;
     private long availForLog;
@@ -98,6 +103,15 @@ public class PrimaryStorageCapacityUpdater {
             originalCopy.setAvailablePhysicalCapacity(capacityVO.getAvailablePhysicalCapacity());
             originalCopy.setTotalPhysicalCapacity(capacityVO.getTotalPhysicalCapacity());
             originalCopy.setSystemUsedCapacity(capacityVO.getSystemUsedCapacity());
+
+            // the physical capacity queued by reportAvailablePhysicalCapacity() is newer than the one in the database,
+            // write it along; the version is read first so a report queued after it is not dropped by merge()
+            statusVersion = statusStore.version(PrimaryStorageCapacityVO.class, capacityVO.getUuid());
+            Map<String, Object> queued = statusStore.getQueued(PrimaryStorageCapacityVO.class, capacityVO.getUuid());
+            Long physicalAvail = (Long) queued.get("availablePhysicalCapacity");
+            if (physicalAvail != null) {
+                capacityVO.setAvailablePhysicalCapacity(physicalAvail);
+            }
         }
 
         return capacityVO != null;
@@ -117,6 +131,7 @@ public class PrimaryStorageCapacityUpdater {
 
     private void merge() {
         capacityVO = dbf.getEntityManager().merge(capacityVO);
+        statusStore.forget(PrimaryStorageCapacityVO.class, capacityVO.getUuid(), statusVersion);
         logCapacityChange();
         checkResize();
     }
@@ -133,6 +148,14 @@ public class PrimaryStorageCapacityUpdater {
         return true;
     }
 
+    /**
+     * the available physical capacity reported along with responses of agents, it's written behind without locking
+     * the capacity and only when it changes
+     */
+    public void reportAvailablePhysicalCapacity(long avail) {
+        statusStore.update(PrimaryStorageCapacityVO.class, primaryStorageUuid, "availablePhysicalCapacity", avail);
+    }
+
     @Transactional
     public boolean increaseAvailableCapacity(long size) {
         if (!lockCapacity()) {
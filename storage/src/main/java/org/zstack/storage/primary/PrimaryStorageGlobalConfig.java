@@ -14,4 +14,20 @@ public class PrimaryStorageGlobalConfig {
     public static GlobalConfig IMAGE_CACHE_GARBAGE_COLLECTOR_INTERVAL = new GlobalConfig(CATEGORY, "imageCache.garbageCollector.interval");
     @GlobalConfigValidation
     public static GlobalConfig RESERVED_CAPACITY = new GlobalConfig(CATEGORY, "reservedCapacity");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig IMAGE_CACHE_SCAN_INTERVAL = new GlobalConfig(CATEGORY, "imageCache.scan.interval");
+    @GlobalConfigValidation
+    public static GlobalConfig IMAGE_CACHE_PREFETCH_ENABLE = new GlobalConfig(CATEGORY, "imageCache.prefetch.enable");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig IMAGE_CACHE_PREFETCH_DEMAND_THRESHOLD = new GlobalConfig(CATEGORY, "imageCache.prefetch.demandThreshold");
+    @GlobalConfigValidation(numberGreaterThan = 0)
+    public static GlobalConfig IMAGE_CACHE_PREFETCH_PARALLELISM_DEGREE = new GlobalConfig(CATEGORY, "imageCache.prefetch.parallelismDegree");
+    @GlobalConfigValidation
+    public static GlobalConfig IMAGE_CACHE_PREFETCH_BANDWIDTH = new GlobalConfig(CATEGORY, "imageCache.prefetch.bandwidth");
+    @GlobalConfigValidation
+    public static GlobalConfig IMAGE_CACHE_EVICTION_ENABLE = new GlobalConfig(CATEGORY, "imageCache.eviction.enable");
+    @GlobalConfigValidation(validValues = {"LRU", "LFU"})
+    public static GlobalConfig IMAGE_CACHE_EVICTION_POLICY = new GlobalConfig(CATEGORY, "imageCache.eviction.policy");
+    @GlobalConfigValidation(inNumberRange = {0, 100})
+    public static GlobalConfig IMAGE_CACHE_EVICTION_CAPACITY_THRESHOLD = new GlobalConfig(CATEGORY, "imageCache.eviction.capacityThreshold");
 }
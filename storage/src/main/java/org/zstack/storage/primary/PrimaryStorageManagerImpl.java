@@ -64,6 +64,8 @@ public class PrimaryStorageManagerImpl extends AbstractService implements Primar
     private PrimaryStorageOverProvisioningManager ratioMgr;
     @Autowired
     private PrimaryStoragePhysicalCapacityManager physicalCapacityMgr;
+    @Autowired
+    private PrimaryStorageCapacityIndex capacityIndex;
 
     private Map<String, RecalculatePrimaryStorageCapacityExtensionPoint> recalculateCapacityExtensions = new HashMap<String, RecalculatePrimaryStorageCapacityExtensionPoint>();
     private Map<String, PrimaryStorageFactory> primaryStorageFactories = Collections.synchronizedMap(new HashMap<String, PrimaryStorageFactory>());
@@ -468,6 +470,9 @@ public class PrimaryStorageManagerImpl extends AbstractService implements Primar
 
             if (reserve(inv, requiredSize)) {
                 target = inv;
+                if (PrimaryStorageConstant.SCORED_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE.equals(allocatorStrategyType)) {
+                    capacityIndex.recordAllocation(inv.getUuid(), requiredSize);
+                }
                 break;
             } else {
                 errs.add(String.format("unable to reserve capacity on the primary storage[uuid:%s], it has no space", inv.getUuid()));
@@ -0,0 +1,134 @@
+package org.zstack.storage.primary;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.errorcode.ErrorFacade;
+import org.zstack.header.core.workflow.FlowTrigger;
+import org.zstack.header.core.workflow.NoRollbackFlow;
+import org.zstack.header.errorcode.OperationFailureException;
+import org.zstack.header.storage.primary.*;
+import org.zstack.header.storage.primary.PrimaryStorageConstant.AllocatorParams;
+import org.zstack.storage.primary.PrimaryStorageCapacityIndex.Entry;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import javax.persistence.TypedQuery;
+import java.util.*;
+
+/**
+ * replaces PrimaryStorageMainAllocatorFlow in the scored allocator chain; candidates are picked from
+ * PrimaryStorageCapacityIndex instead of the database and sorted by their scores, the best first
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public class PrimaryStorageScoredAllocatorFlow extends NoRollbackFlow {
+    private static CLogger logger = Utils.getLogger(PrimaryStorageScoredAllocatorFlow.class);
+
+    @Autowired
+    protected DatabaseFacade dbf;
+    @Autowired
+    protected ErrorFacade errf;
+    @Autowired
+    protected PrimaryStorageOverProvisioningManager ratioMgr;
+    @Autowired
+    protected PrimaryStorageCapacityIndex index;
+
+    @Transactional(readOnly = true)
+    private String findClusterUuidOfHost(String hostUuid) {
+        String sql = "select host.clusterUuid from HostVO host where host.uuid = :huuid";
+        TypedQuery<String> q = dbf.getEntityManager().createQuery(sql, String.class);
+        q.setParameter("huuid", hostUuid);
+        List<String> ret = q.getResultList();
+        return ret.isEmpty() ? null : ret.get(0);
+    }
+
+    private boolean matchLocation(Entry e, PrimaryStorageAllocationSpec spec, String hostClusterUuid) {
+        if (spec.getRequiredPrimaryStorageUuid() != null) {
+            return spec.getRequiredPrimaryStorageUuid().equals(e.getUuid());
+        } else if (spec.getRequiredHostUuid() != null) {
+            return hostClusterUuid != null && e.isAttachedToCluster(hostClusterUuid);
+        } else if (spec.getRequiredClusterUuids() != null && !spec.getRequiredClusterUuids().isEmpty()) {
+            return e.isAttachedToAnyCluster(spec.getRequiredClusterUuids());
+        } else if (spec.getRequiredZoneUuid() != null) {
+            return spec.getRequiredZoneUuid().equals(e.getPrimaryStorage().getZoneUuid());
+        } else {
+            return true;
+        }
+    }
+
+    private boolean hasCapacity(Entry e, PrimaryStorageAllocationSpec spec, boolean createNewVm) {
+        long avail = index.getAvailableCapacity(e);
+        if (createNewVm) {
+            long requiredSize = ratioMgr.calculateByRatio(e.getUuid(), spec.getSize());
+            if (!e.hasImageCache(spec.getImageUuid())) {
+                Long imageSize = index.getImageSize(spec.getImageUuid());
+                // the image has been deleted, count its size as the size of the volume created from it
+                requiredSize += imageSize == null ? spec.getSize() : imageSize;
+            }
+
+            return avail > requiredSize;
+        } else {
+            return ratioMgr.calculatePrimaryStorageAvailableCapacityByRatio(e.getUuid(), avail) > spec.getSize();
+        }
+    }
+
+    private List<PrimaryStorageVO> allocate(final PrimaryStorageAllocationSpec spec) {
+        String hostClusterUuid = spec.getRequiredPrimaryStorageUuid() == null && spec.getRequiredHostUuid() != null ?
+                findClusterUuidOfHost(spec.getRequiredHostUuid()) : null;
+        boolean createNewVm = PrimaryStorageAllocationPurpose.CreateNewVm.toString().equals(spec.getPurpose()) && spec.getImageUuid() != null;
+
+        final Map<String, Double> scores = new HashMap<String, Double>();
+        List<PrimaryStorageVO> res = new ArrayList<PrimaryStorageVO>();
+        for (Entry e : index.getEntries()) {
+            PrimaryStorageVO vo = e.getPrimaryStorage();
+            if (vo.getState() != PrimaryStorageState.Enabled || vo.getStatus() != PrimaryStorageStatus.Connected) {
+                continue;
+            }
+
+            if (!matchLocation(e, spec, hostClusterUuid) || !hasCapacity(e, spec, createNewVm)) {
+                continue;
+            }
+
+            scores.put(vo.getUuid(), index.score(e, spec.getImageUuid()));
+            res.add(vo);
+        }
+
+        Collections.sort(res, new Comparator<PrimaryStorageVO>() {
+            @Override
+            public int compare(PrimaryStorageVO o1, PrimaryStorageVO o2) {
+                return Double.compare(scores.get(o2.getUuid()), scores.get(o1.getUuid()));
+            }
+        });
+
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("[Primary Storage Allocation] scores of candidates for the allocation[msg id:%s]: %s",
+                    spec.getAllocationMessage().getId(), scores));
+        }
+
+        return res;
+    }
+
+    @Override
+    public void run(FlowTrigger trigger, Map data) {
+        PrimaryStorageAllocationSpec spec = (PrimaryStorageAllocationSpec) data.get(AllocatorParams.SPEC);
+        List<PrimaryStorageVO> res = allocate(spec);
+        if (res.isEmpty()) {
+            // the index may not see changes made by other management nodes yet
+            index.markDirty();
+            res = allocate(spec);
+        }
+
+        if (res.isEmpty()) {
+            throw new OperationFailureException(errf.stringToOperationError(
+                    String.format("cannot find primary storage satisfying conditions[primary storage:%s, host:%s, clusters:%s, zone:%s, state:%s, status:%s, available capacity > %s]",
+                            spec.getRequiredPrimaryStorageUuid(), spec.getRequiredHostUuid(), spec.getRequiredClusterUuids(), spec.getRequiredZoneUuid(),
+                            PrimaryStorageState.Enabled, PrimaryStorageStatus.Connected, spec.getSize())
+            ));
+        }
+
+        data.put(AllocatorParams.CANDIDATES, res);
+        trigger.next();
+    }
+}
@@ -0,0 +1,22 @@
+package org.zstack.storage.primary;
+
+import org.zstack.core.workflow.FlowChainBuilder;
+import org.zstack.header.storage.primary.PrimaryStorageAllocationSpec;
+import org.zstack.header.storage.primary.PrimaryStorageInventory;
+
+import java.util.List;
+
+/**
+ * keeps the candidates in the order of their scores instead of shuffling them; PrimaryStorageManagerImpl counts
+ * the allocation to the candidate the capacity is actually reserved on
+ */
+class ScoredPrimaryStorageAllocatorStrategy extends DefaultPrimaryStorageAllocatorStrategy {
+    ScoredPrimaryStorageAllocatorStrategy(FlowChainBuilder builder) {
+        super(builder);
+    }
+
+    @Override
+    public List<PrimaryStorageInventory> allocateAllCandidates(PrimaryStorageAllocationSpec spec) {
+        return PrimaryStorageInventory.valueOf(allocateAll(spec));
+    }
+}
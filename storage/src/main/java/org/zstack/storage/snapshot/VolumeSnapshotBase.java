@@ -34,6 +34,8 @@ public class VolumeSnapshotBase implements VolumeSnapshot {
     private CloudBus bus;
     @Autowired
     private DatabaseFacade dbf;
+    @Autowired
+    private VolumeSnapshotTreeCache treeCache;
 
     protected VolumeSnapshotVO self;
 
@@ -118,6 +120,8 @@ public class VolumeSnapshotBase implements VolumeSnapshot {
                                     });
 
                                     dbf.remove(ref);
+                                    self.getBackupStorageRefs().remove(ref);
+                                    treeCache.update(getSelfInventory());
                                     trigger.next();
                                 }
                             });
@@ -188,6 +192,8 @@ public class VolumeSnapshotBase implements VolumeSnapshot {
                     ref.setVolumeSnapshotUuid(self.getUuid());
                     ref.setBackupStorageUuid(msg.getBackupStorage().getUuid());
                     dbf.persist(ref);
+                    self.getBackupStorageRefs().add(ref);
+                    treeCache.update(getSelfInventory());
                 }
 
                 bus.reply(msg, reply);
@@ -198,6 +204,7 @@ public class VolumeSnapshotBase implements VolumeSnapshot {
     private void changeStatus(VolumeSnapshotStatus.StatusEvent event) {
         self.setStatus(self.getStatus().nextState(event));
         dbf.update(self);
+        treeCache.update(getSelfInventory());
     }
 
     private void handle(final VolumeSnapshotPrimaryStorageDeletionMsg msg) {
@@ -209,6 +216,7 @@ public class VolumeSnapshotBase implements VolumeSnapshot {
                 self.setPrimaryStorageInstallPath(null);
                 self.setPrimaryStorageUuid(null);
                 dbf.update(self);
+                treeCache.update(getSelfInventory());
                 bus.reply(msg, dreply);
             }
 
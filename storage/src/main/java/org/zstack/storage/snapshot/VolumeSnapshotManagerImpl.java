@@ -46,6 +46,8 @@ public class VolumeSnapshotManagerImpl extends AbstractService implements Volume
     private AccountManager acntMgr;
     @Autowired
     private ErrorFacade errf;
+    @Autowired
+    private VolumeSnapshotTreeCache treeCache;
 
     private void passThrough(VolumeSnapshotMessage msg) {
         VolumeSnapshotVO vo = dbf.findByUuid(msg.getSnapshotUuid(), VolumeSnapshotVO.class);
@@ -281,6 +283,12 @@ public class VolumeSnapshotManagerImpl extends AbstractService implements Volume
             DebugUtils.Assert(false, "should not be here");
         }
 
+        if (s.getParent() != null) {
+            treeCache.update(Arrays.asList(s.getParent(), s.getCurrent()));
+        } else {
+            treeCache.update(s.getCurrent());
+        }
+
         final VolumeSnapshotStruct struct = s;
         TakeSnapshotMsg tmsg = new TakeSnapshotMsg();
         tmsg.setPrimaryStorageUuid(primaryStorageUuid);
@@ -307,9 +315,16 @@ public class VolumeSnapshotManagerImpl extends AbstractService implements Volume
                     }
                     svo = dbf.updateAndRefresh(svo);
                     ret.setInventory(VolumeSnapshotInventory.valueOf(svo));
+                    treeCache.update(ret.getInventory());
                     bus.reply(msg, ret);
                 } else {
                     rollbackSnapshot(struct.getCurrent().getUuid());
+                    List<String> uuids = new ArrayList<String>();
+                    uuids.add(struct.getCurrent().getUuid());
+                    if (struct.getParent() != null) {
+                        uuids.add(struct.getParent().getUuid());
+                    }
+                    treeCache.refresh(struct.getCurrent().getTreeUuid(), uuids);
                     ret.setError(reply.getError());
                     bus.reply(msg, ret);
                 }
@@ -81,6 +81,8 @@ public class VolumeSnapshotTreeBase {
     private ErrorFacade errf;
     @Autowired
     private CascadeFacade casf;
+    @Autowired
+    private VolumeSnapshotTreeCache treeCache;
     protected static OperationChecker allowedStatus = new OperationChecker(true);
 
     static {
@@ -121,12 +123,26 @@ public class VolumeSnapshotTreeBase {
 
         currentRoot = vo;
         buildFullSnapshotTree();
-        currentLeaf = fullTree.findSnapshot(new Function<Boolean, VolumeSnapshotInventory>() {
-            @Override
-            public Boolean call(VolumeSnapshotInventory arg) {
-                return arg.getUuid().equals(currentRoot.getUuid());
-            }
-        });
+        currentLeaf = fullTree == null ? null : fullTree.findSnapshot(currentRoot.getUuid());
+        if (currentLeaf == null || isStale(currentLeaf.getInventory())) {
+            // changed by a way the cache doesn't know, or by another management node whose event hasn't arrived
+            logger.debug(String.format("the cached volume snapshot tree[uuid:%s] is stale, reload it", currentRoot.getTreeUuid()));
+            treeCache.invalidate(currentRoot.getTreeUuid());
+            buildFullSnapshotTree();
+            currentLeaf = fullTree.findSnapshot(currentRoot.getUuid());
+        }
+    }
+
+    private boolean isStale(VolumeSnapshotInventory inv) {
+        return inv.isLatest() != currentRoot.isLatest() || !inv.getStatus().equals(currentRoot.getStatus().toString())
+                || !equals(inv.getParentUuid(), currentRoot.getParentUuid())
+                || !equals(inv.getPrimaryStorageUuid(), currentRoot.getPrimaryStorageUuid())
+                || !equals(inv.getPrimaryStorageInstallPath(), currentRoot.getPrimaryStorageInstallPath())
+                || inv.getBackupStorageRefs().size() != currentRoot.getBackupStorageRefs().size();
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
     }
 
     private VolumeSnapshotInventory getSelfInventory() {
@@ -134,11 +150,7 @@ public class VolumeSnapshotTreeBase {
     }
 
     private void buildFullSnapshotTree() {
-        SimpleQuery<VolumeSnapshotVO> q = dbf.createQuery(VolumeSnapshotVO.class);
-        q.add(VolumeSnapshotVO_.treeUuid, SimpleQuery.Op.EQ, currentRoot.getTreeUuid());
-        List<VolumeSnapshotVO> vos = q.list();
-
-        fullTree = VolumeSnapshotTree.fromVOs(vos);
+        fullTree = treeCache.getTree(currentRoot.getTreeUuid());
     }
 
     public VolumeSnapshotTreeBase(VolumeSnapshotVO vo, boolean syncOnVolume) {
@@ -385,13 +397,16 @@ public class VolumeSnapshotTreeBase {
                             q.executeUpdate();
                         }
                     }.run();
+
+                    treeCache.invalidateVolume(currentRoot.getVolumeUuid());
                 }
 
                 if (!msg.isVolumeDeletion() && finalAncestorOfLatest && currentRoot.getParentUuid() != null) {
                     // reset latest
                     VolumeSnapshotVO vo = dbf.findByUuid(currentRoot.getParentUuid(), VolumeSnapshotVO.class);
                     vo.setLatest(true);
-                    dbf.update(vo);
+                    vo = dbf.updateAndRefresh(vo);
+                    treeCache.update(VolumeSnapshotInventory.valueOf(vo));
                     logger.debug(String.format("reset latest snapshot of tree[uuid:%s] to snapshot[uuid:%s]",
                             currentRoot.getTreeUuid(), currentRoot.getParentUuid()));
                 }
@@ -1221,6 +1236,7 @@ public class VolumeSnapshotTreeBase {
         }
         if (update) {
             self = dbf.updateAndRefresh(self);
+            treeCache.update(VolumeSnapshotInventory.valueOf(self));
         }
 
         APIUpdateVolumeSnapshotEvent evt = new APIUpdateVolumeSnapshotEvent(msg.getId());
@@ -1255,6 +1271,7 @@ public class VolumeSnapshotTreeBase {
         });
 
         dbf.removeByPrimaryKeys(uuids, VolumeSnapshotVO.class);
+        treeCache.remove(currentRoot.getTreeUuid(), uuids);
 
         SimpleQuery<VolumeSnapshotVO> tq = dbf.createQuery(VolumeSnapshotVO.class);
         tq.add(VolumeSnapshotVO_.treeUuid, Op.EQ, currentRoot.getTreeUuid());
@@ -1701,6 +1718,7 @@ public class VolumeSnapshotTreeBase {
                         volume.setInstallPath(newVolumeInstallPath);
                         dbf.update(volume);
                         updateLatest();
+                        treeCache.resetLatest(currentRoot.getTreeUuid(), currentRoot.getUuid());
                         bus.publish(evt);
                         completion.done();
                     }
@@ -0,0 +1,245 @@
+package org.zstack.storage.snapshot;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.Component;
+import org.zstack.header.storage.snapshot.*;
+import org.zstack.header.storage.snapshot.VolumeSnapshotCanonicalEvents.VolumeSnapshotTreeChangedData;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+
+/**
+ * caches snapshot trees by tree uuid so operations on a tree don't load every snapshot of it from the database.
+ *
+ * a cached tree keeps inventories of its snapshots indexed by uuid and a version bumped by every change; changes made
+ * by this management node are applied to the inventories in place, and the VolumeSnapshotTree is rebuilt from them in
+ * memory at most once per version. A tree returned by getTree() is never modified afterwards, callers can keep it
+ * for the whole operation. Other management nodes drop their copy of a tree on the canonical event fired for each change
+ */
+public class VolumeSnapshotTreeCache implements Component {
+    private static final CLogger logger = Utils.getLogger(VolumeSnapshotTreeCache.class);
+
+    @Autowired
+    private DatabaseFacade dbf;
+    @Autowired
+    private EventFacade evtf;
+
+    private int maxTrees = 2000;
+
+    private class CachedTree {
+        String treeUuid;
+        String volumeUuid;
+        long version;
+        long builtVersion = -1;
+        Map<String, VolumeSnapshotInventory> snapshots = new LinkedHashMap<String, VolumeSnapshotInventory>();
+        VolumeSnapshotTree tree;
+
+        VolumeSnapshotTree getTree() {
+            if (builtVersion != version) {
+                tree = VolumeSnapshotTree.fromInventories(new ArrayList<VolumeSnapshotInventory>(snapshots.values()));
+                builtVersion = version;
+            }
+
+            return tree;
+        }
+    }
+
+    private final Map<String, CachedTree> trees = new LinkedHashMap<String, CachedTree>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedTree> eldest) {
+            return size() > maxTrees;
+        }
+    };
+
+    public void setMaxTrees(int maxTrees) {
+        this.maxTrees = maxTrees;
+    }
+
+    private CachedTree load(String treeUuid) {
+        SimpleQuery<VolumeSnapshotVO> q = dbf.createQuery(VolumeSnapshotVO.class);
+        q.add(VolumeSnapshotVO_.treeUuid, Op.EQ, treeUuid);
+        List<VolumeSnapshotVO> vos = q.list();
+        if (vos.isEmpty()) {
+            return null;
+        }
+
+        CachedTree t = new CachedTree();
+        t.treeUuid = treeUuid;
+        for (VolumeSnapshotInventory inv : VolumeSnapshotInventory.valueOf(vos)) {
+            t.snapshots.put(inv.getUuid(), inv);
+            t.volumeUuid = inv.getVolumeUuid();
+        }
+        return t;
+    }
+
+    private void changed(CachedTree t, String treeUuid, String volumeUuid) {
+        if (t != null) {
+            t.version++;
+            if (t.snapshots.isEmpty()) {
+                trees.remove(t.treeUuid);
+            }
+        }
+
+        VolumeSnapshotTreeChangedData d = new VolumeSnapshotTreeChangedData();
+        d.setTreeUuid(treeUuid);
+        d.setVolumeUuid(volumeUuid);
+        evtf.fire(VolumeSnapshotCanonicalEvents.VOLUME_SNAPSHOT_TREE_CHANGED_PATH, d);
+    }
+
+    /**
+     * @return the tree of the current version, or null if the tree has no snapshot
+     */
+    public synchronized VolumeSnapshotTree getTree(String treeUuid) {
+        CachedTree t = trees.get(treeUuid);
+        if (t == null) {
+            t = load(treeUuid);
+            if (t == null) {
+                return null;
+            }
+
+            trees.put(treeUuid, t);
+        }
+
+        return t.getTree();
+    }
+
+    /**
+     * adds or replaces snapshots in their cached trees; the inventories must not be modified after
+     */
+    public synchronized void update(List<VolumeSnapshotInventory> invs) {
+        Map<String, CachedTree> changedTrees = new LinkedHashMap<String, CachedTree>();
+        for (VolumeSnapshotInventory inv : invs) {
+            CachedTree t = trees.get(inv.getTreeUuid());
+            if (t != null) {
+                t.snapshots.put(inv.getUuid(), inv);
+            }
+            changedTrees.put(inv.getTreeUuid(), t);
+        }
+
+        for (Map.Entry<String, CachedTree> e : changedTrees.entrySet()) {
+            changed(e.getValue(), e.getKey(), null);
+        }
+    }
+
+    public void update(VolumeSnapshotInventory inv) {
+        update(Arrays.asList(inv));
+    }
+
+    public synchronized void remove(String treeUuid, Collection<String> snapshotUuids) {
+        CachedTree t = trees.get(treeUuid);
+        if (t != null) {
+            for (String uuid : snapshotUuids) {
+                t.snapshots.remove(uuid);
+            }
+        }
+
+        changed(t, treeUuid, null);
+    }
+
+    /**
+     * reloads the given snapshots of the tree, snapshots no longer in the database are removed
+     */
+    public synchronized void refresh(String treeUuid, Collection<String> snapshotUuids) {
+        CachedTree t = trees.get(treeUuid);
+        if (t != null && !snapshotUuids.isEmpty()) {
+            SimpleQuery<VolumeSnapshotVO> q = dbf.createQuery(VolumeSnapshotVO.class);
+            q.add(VolumeSnapshotVO_.uuid, Op.IN, snapshotUuids);
+            List<VolumeSnapshotVO> vos = q.list();
+            Set<String> found = new HashSet<String>();
+            for (VolumeSnapshotVO vo : vos) {
+                if (treeUuid.equals(vo.getTreeUuid())) {
+                    t.snapshots.put(vo.getUuid(), VolumeSnapshotInventory.valueOf(vo));
+                    found.add(vo.getUuid());
+                }
+            }
+
+            for (String uuid : snapshotUuids) {
+                if (!found.contains(uuid)) {
+                    t.snapshots.remove(uuid);
+                }
+            }
+        }
+
+        changed(t, treeUuid, null);
+    }
+
+    /**
+     * reloads the old and the new latest snapshot after the latest flag of the tree has been moved
+     */
+    public synchronized void resetLatest(String treeUuid, String latestUuid) {
+        Set<String> uuids = new HashSet<String>();
+        uuids.add(latestUuid);
+        CachedTree t = trees.get(treeUuid);
+        if (t != null) {
+            for (VolumeSnapshotInventory inv : t.snapshots.values()) {
+                if (inv.isLatest()) {
+                    uuids.add(inv.getUuid());
+                }
+            }
+        }
+
+        refresh(treeUuid, uuids);
+    }
+
+    public synchronized void invalidate(String treeUuid) {
+        trees.remove(treeUuid);
+        changed(null, treeUuid, null);
+    }
+
+    public synchronized void invalidateVolume(String volumeUuid) {
+        Iterator<CachedTree> it = trees.values().iterator();
+        while (it.hasNext()) {
+            if (volumeUuid.equals(it.next().volumeUuid)) {
+                it.remove();
+            }
+        }
+
+        changed(null, null, volumeUuid);
+    }
+
+    private synchronized void drop(VolumeSnapshotTreeChangedData d) {
+        if (d.getTreeUuid() != null) {
+            trees.remove(d.getTreeUuid());
+        } else if (d.getVolumeUuid() != null) {
+            Iterator<CachedTree> it = trees.values().iterator();
+            while (it.hasNext()) {
+                if (d.getVolumeUuid().equals(it.next().volumeUuid)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean start() {
+        evtf.on(VolumeSnapshotCanonicalEvents.VOLUME_SNAPSHOT_TREE_CHANGED_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                if (Platform.getManagementServerId().equals(tokens.get(EventFacade.META_DATA_MANAGEMENT_NODE_ID))) {
+                    return;
+                }
+
+                VolumeSnapshotTreeChangedData d = (VolumeSnapshotTreeChangedData) data;
+                if (logger.isTraceEnabled()) {
+                    logger.trace(String.format("volume snapshot tree[uuid:%s] of volume[uuid:%s] is changed by another management node, drop it from the cache",
+                            d.getTreeUuid(), d.getVolumeUuid()));
+                }
+                drop(d);
+            }
+        });
+
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        return true;
+    }
+}
@@ -10,14 +10,40 @@ import org.zstack.utils.TagUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import static org.zstack.utils.StringDSL.s;
 
 /**
  */
 public class PatternedSystemTag extends SystemTag {
+    private final Pattern sqlPattern;
+
     public PatternedSystemTag(String tagFormat, Class resourceClass) {
         super(tagFormat, resourceClass);
+        sqlPattern = sqlPatternToRegex(useTagFormat());
+    }
+
+    private static Pattern sqlPatternToRegex(String sqlPattern) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sqlPattern.length(); i++) {
+            char c = sqlPattern.charAt(i);
+            if (c == '%') {
+                sb.append(".*");
+            } else if (c == '_') {
+                sb.append(".");
+            } else if (c == '\\' && i + 1 < sqlPattern.length()) {
+                sb.append(Pattern.quote(String.valueOf(sqlPattern.charAt(++i))));
+            } else {
+                sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    @Override
+    protected boolean isQueryMatch(String tag) {
+        return sqlPattern.matcher(tag).matches();
     }
 
     @Override
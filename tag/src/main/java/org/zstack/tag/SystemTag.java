@@ -14,7 +14,6 @@ import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
 import javax.persistence.Query;
-import javax.persistence.Tuple;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -103,16 +102,34 @@ public class SystemTag {
         return Op.EQ;
     }
 
+    /**
+     * @return true if the tag meets the condition of useOp() and useTagFormat(), compared as MySQL does with
+     * the default case-insensitive collation
+     */
+    protected boolean isQueryMatch(String tag) {
+        return useTagFormat().equalsIgnoreCase(tag);
+    }
+
+    private List<String> getMatchedTags(List<SystemTagInventory> tags) {
+        List<String> ret = new ArrayList<String>();
+        if (tags == null) {
+            return ret;
+        }
+
+        for (SystemTagInventory tag : tags) {
+            if (isQueryMatch(tag.getTag())) {
+                ret.add(tag.getTag());
+            }
+        }
+        return ret;
+    }
+
     public boolean hasTag(String resourceUuid) {
         return hasTag(resourceUuid, resourceClass);
     }
 
     public boolean hasTag(String resourceUuid, Class resourceClass) {
-        SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
-        q.add(SystemTagVO_.resourceType, Op.EQ, resourceClass.getSimpleName());
-        q.add(SystemTagVO_.resourceUuid, Op.EQ, resourceUuid);
-        q.add(SystemTagVO_.tag, useOp(), useTagFormat());
-        return q.isExists();
+        return !getTags(resourceUuid, resourceClass).isEmpty();
     }
 
     public void copy(String srcUuid, Class srcClass, String dstUuid, Class dstClass) {
@@ -133,12 +150,7 @@ public class SystemTag {
     }
 
     public List<String> getTags(String resourceUuid, Class resourceClass) {
-        SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
-        q.select(SystemTagVO_.tag);
-        q.add(SystemTagVO_.resourceType, Op.EQ, resourceClass.getSimpleName());
-        q.add(SystemTagVO_.resourceUuid, Op.EQ, resourceUuid);
-        q.add(SystemTagVO_.tag, useOp(), useTagFormat());
-        return q.listValue();
+        return getMatchedTags(tagMgr.getSystemTags(resourceUuid, resourceClass.getSimpleName()));
     }
 
     public List<String> getTags(String resourceUuid) {
@@ -158,21 +170,12 @@ public class SystemTag {
     }
 
     public Map<String, List<String>> getTags(List<String> resourceUuids, Class resourceClass) {
-        SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
-        q.select(SystemTagVO_.tag, SystemTagVO_.resourceUuid);
-        q.add(SystemTagVO_.resourceType, Op.EQ, resourceClass.getSimpleName());
-        q.add(SystemTagVO_.resourceUuid, Op.IN, resourceUuids);
-        q.add(SystemTagVO_.tag, useOp(), useTagFormat());
-        List<Tuple> ts = q.listTuple();
         Map<String, List<String>> ret = new HashMap<String, List<String>>();
-        for (Tuple t : ts) {
-            String uuid = t.get(1, String.class);
-            List<String> tags = ret.get(uuid);
-            if (tags == null) {
-                tags = new ArrayList<String>();
-                ret.put(uuid, tags);
+        for (Map.Entry<String, List<SystemTagInventory>> e : tagMgr.getSystemTags(resourceUuids, resourceClass.getSimpleName()).entrySet()) {
+            List<String> tags = getMatchedTags(e.getValue());
+            if (!tags.isEmpty()) {
+                ret.put(e.getKey(), tags);
             }
-            tags.add(t.get(0, String.class));
         }
         return ret;
     }
@@ -0,0 +1,59 @@
+package org.zstack.tag;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.zstack.header.tag.SystemTagInventory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the in-memory cache of system tags keyed by resource type and resource uuid, a resource without system tags
+ * is cached as an empty list.
+ *
+ * every invalidation bumps the generation, tags loaded before an invalidation are not put into the cache;
+ * that keeps a reader racing with a writer from caching the old tags
+ */
+class SystemTagCache {
+    private final Cache<String, List<SystemTagInventory>> tags = CacheBuilder.newBuilder()
+            .maximumSize(TagGlobalProperty.SYSTEM_TAG_CACHE_MAX_SIZE)
+            .expireAfterWrite(TagGlobalProperty.SYSTEM_TAG_CACHE_TTL, TimeUnit.SECONDS)
+            .build();
+    private final AtomicLong generation = new AtomicLong();
+
+    private static String key(String resourceType, String resourceUuid) {
+        return resourceType + ":" + resourceUuid;
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    List<SystemTagInventory> get(String resourceType, String resourceUuid) {
+        return tags.getIfPresent(key(resourceType, resourceUuid));
+    }
+
+    void put(String resourceType, String resourceUuid, List<SystemTagInventory> inventories, long generation) {
+        List<SystemTagInventory> value = Collections.unmodifiableList(inventories);
+        synchronized (this) {
+            if (this.generation.get() == generation) {
+                tags.put(key(resourceType, resourceUuid), value);
+            }
+        }
+    }
+
+    void invalidate(Collection<String> resourceTypes, Collection<String> resourceUuids) {
+        synchronized (this) {
+            generation.incrementAndGet();
+        }
+
+        for (String type : resourceTypes) {
+            for (String uuid : resourceUuids) {
+                tags.invalidate(key(type, uuid));
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.zstack.tag;
+
+import org.zstack.header.message.NeedJsonSchema;
+
+import java.util.List;
+
+/**
+ */
+public class TagCanonicalEvents {
+    public static final String SYSTEM_TAG_CACHE_INVALIDATE_PATH = "/tag/systemTagCache/invalidate";
+
+    @NeedJsonSchema
+    public static class SystemTagCacheInvalidateData {
+        private List<String> resourceTypes;
+        private List<String> resourceUuids;
+
+        public List<String> getResourceTypes() {
+            return resourceTypes;
+        }
+
+        public void setResourceTypes(List<String> resourceTypes) {
+            this.resourceTypes = resourceTypes;
+        }
+
+        public List<String> getResourceUuids() {
+            return resourceUuids;
+        }
+
+        public void setResourceUuids(List<String> resourceUuids) {
+            this.resourceUuids = resourceUuids;
+        }
+    }
+}
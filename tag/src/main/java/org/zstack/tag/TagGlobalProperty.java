@@ -0,0 +1,16 @@
+package org.zstack.tag;
+
+import org.zstack.core.GlobalProperty;
+import org.zstack.core.GlobalPropertyDefinition;
+
+/**
+ */
+@GlobalPropertyDefinition
+public class TagGlobalProperty {
+    @GlobalProperty(name="systemTagCache", defaultValue = "true")
+    public static boolean SYSTEM_TAG_CACHE;
+    @GlobalProperty(name="systemTagCache.maxSize", defaultValue = "100000")
+    public static long SYSTEM_TAG_CACHE_MAX_SIZE;
+    @GlobalProperty(name="systemTagCache.ttl", defaultValue = "300")
+    public static long SYSTEM_TAG_CACHE_TTL;
+}
@@ -7,6 +7,7 @@ import org.zstack.header.tag.TagInventory;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  */
@@ -37,6 +38,19 @@ public interface TagManager {
 
     List<String> findUserTags(String resourceUuid);
 
+    /**
+     * @return all system tags of the resource, served by the system tag cache
+     */
+    List<SystemTagInventory> getSystemTags(String resourceUuid, String resourceType);
+
+    /**
+     * @return system tags of the resources keyed by resource uuid, resources having no system tag are not in the map.
+     * Tags of resources not in the system tag cache are loaded by one query for every 1000 resources and cached,
+     * callers working on many resources call this before looking up tags of every single resource.
+     * Returned inventories are shared by the cache and must not be modified
+     */
+    Map<String, List<SystemTagInventory>> getSystemTags(Collection<String> resourceUuids, String resourceType);
+
     boolean hasSystemTag(String resourceUuid, String tag);
 
     boolean hasSystemTag(String resourceUuid, Enum tag);
@@ -2,8 +2,12 @@ package org.zstack.tag;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.zstack.core.Platform;
 import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
 import org.zstack.core.cloudbus.MessageSafe;
 import org.zstack.core.componentloader.PluginRegistry;
 import org.zstack.core.db.DatabaseFacade;
@@ -24,6 +28,7 @@ import org.zstack.header.message.Message;
 import org.zstack.header.query.APIQueryReply;
 import org.zstack.header.tag.*;
 import org.zstack.query.QueryFacade;
+import org.zstack.tag.TagCanonicalEvents.SystemTagCacheInvalidateData;
 import org.zstack.utils.*;
 import org.zstack.utils.function.Function;
 import org.zstack.utils.logging.CLogger;
@@ -53,7 +58,10 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     private ErrorFacade errf;
     @Autowired
     private PluginRegistry pluginRgty;
+    @Autowired
+    private EventFacade evtf;
 
+    private SystemTagCache systemTagCache;
     private List<SystemTag> systemTags = new ArrayList<SystemTag>();
     private Map<String, List<SystemTag>> resourceTypeSystemTagMap = new HashMap<String, List<SystemTag>>();
     private Map<String, Class> resourceTypeClassMap = new HashMap<String, Class>();
@@ -107,6 +115,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     }
 
     void init() {
+        systemTagCache = new SystemTagCache();
+
         for (EntityType<?> entity : dbf.getEntityManager().getMetamodel().getEntities()) {
             Class type =  entity.getJavaType();
             String name = type.getSimpleName();
@@ -243,6 +253,7 @@ public class TagManagerImpl extends AbstractService implements TagManager,
             @Override
             public void run() {
                 dbf.remove(finalVo);
+                invalidateSystemTagCache(list(finalVo.getResourceType()), list(finalVo.getResourceUuid()));
             }
         });
 
@@ -348,6 +359,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
             ntag.setResourceUuid(dstResourceUuid);
             dbf.getEntityManager().persist(ntag);
         }
+
+        invalidateSystemTagCache(list(dstResourceType), list(dstResourceUuid));
     }
 
     @Override
@@ -386,6 +399,111 @@ public class TagManagerImpl extends AbstractService implements TagManager,
         return q.listValue();
     }
 
+    @Override
+    public List<SystemTagInventory> getSystemTags(String resourceUuid, String resourceType) {
+        List<SystemTagInventory> tags = getSystemTags(list(resourceUuid), resourceType).get(resourceUuid);
+        return tags == null ? new ArrayList<SystemTagInventory>() : tags;
+    }
+
+    @Override
+    public Map<String, List<SystemTagInventory>> getSystemTags(Collection<String> resourceUuids, String resourceType) {
+        Map<String, List<SystemTagInventory>> ret = new HashMap<String, List<SystemTagInventory>>();
+        Set<String> misses = new LinkedHashSet<String>();
+        for (String uuid : resourceUuids) {
+            List<SystemTagInventory> tags = TagGlobalProperty.SYSTEM_TAG_CACHE ? systemTagCache.get(resourceType, uuid) : null;
+            if (tags == null) {
+                misses.add(uuid);
+            } else if (!tags.isEmpty()) {
+                ret.put(uuid, new ArrayList<SystemTagInventory>(tags));
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return ret;
+        }
+
+        long generation = systemTagCache.getGeneration();
+        Map<String, List<SystemTagInventory>> loaded = loadSystemTags(new ArrayList<String>(misses), resourceType);
+        for (String uuid : misses) {
+            List<SystemTagInventory> tags = loaded.get(uuid);
+            if (tags == null) {
+                tags = new ArrayList<SystemTagInventory>();
+            }
+
+            if (TagGlobalProperty.SYSTEM_TAG_CACHE) {
+                systemTagCache.put(resourceType, uuid, tags, generation);
+            }
+
+            if (!tags.isEmpty()) {
+                ret.put(uuid, new ArrayList<SystemTagInventory>(tags));
+            }
+        }
+
+        return ret;
+    }
+
+    @Transactional(readOnly = true)
+    private Map<String, List<SystemTagInventory>> loadSystemTags(List<String> resourceUuids, String resourceType) {
+        Map<String, List<SystemTagInventory>> ret = new HashMap<String, List<SystemTagInventory>>();
+        int step = 1000;
+        for (int i = 0; i < resourceUuids.size(); i += step) {
+            String sql = "select t from SystemTagVO t where t.resourceType = :rtype and t.resourceUuid in (:ruuids)";
+            TypedQuery<SystemTagVO> q = dbf.getEntityManager().createQuery(sql, SystemTagVO.class);
+            q.setParameter("rtype", resourceType);
+            q.setParameter("ruuids", resourceUuids.subList(i, Math.min(i + step, resourceUuids.size())));
+            for (SystemTagVO vo : q.getResultList()) {
+                List<SystemTagInventory> tags = ret.get(vo.getResourceUuid());
+                if (tags == null) {
+                    tags = new ArrayList<SystemTagInventory>();
+                    ret.put(vo.getResourceUuid(), tags);
+                }
+                tags.add(SystemTagInventory.valueOf(vo));
+            }
+        }
+        return ret;
+    }
+
+    private void invalidateSystemTagCache(final List<String> resourceTypes, final List<String> resourceUuids) {
+        systemTagCache.invalidate(resourceTypes, resourceUuids);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            broadcastSystemTagCacheInvalidation(resourceTypes, resourceUuids);
+            return;
+        }
+
+        // readers may load the old tags before the transaction commits, invalidate again after it completes
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                systemTagCache.invalidate(resourceTypes, resourceUuids);
+                broadcastSystemTagCacheInvalidation(resourceTypes, resourceUuids);
+            }
+        });
+    }
+
+    private void invalidateSystemTagCache(List<SystemTagInventory> tags) {
+        Map<String, List<String>> uuidsByType = new HashMap<String, List<String>>();
+        for (SystemTagInventory tag : tags) {
+            List<String> uuids = uuidsByType.get(tag.getResourceType());
+            if (uuids == null) {
+                uuids = new ArrayList<String>();
+                uuidsByType.put(tag.getResourceType(), uuids);
+            }
+            uuids.add(tag.getResourceUuid());
+        }
+
+        for (Map.Entry<String, List<String>> e : uuidsByType.entrySet()) {
+            invalidateSystemTagCache(list(e.getKey()), e.getValue());
+        }
+    }
+
+    private void broadcastSystemTagCacheInvalidation(List<String> resourceTypes, List<String> resourceUuids) {
+        SystemTagCacheInvalidateData data = new SystemTagCacheInvalidateData();
+        data.setResourceTypes(resourceTypes);
+        data.setResourceUuids(resourceUuids);
+        evtf.fire(TagCanonicalEvents.SYSTEM_TAG_CACHE_INVALIDATE_PATH, data);
+    }
+
     private boolean hasTag(String resourceUuid, String tag, TagType tagType) {
         if (tagType == TagType.System) {
             SimpleQuery<SystemTagVO> q = dbf.createQuery(SystemTagVO.class);
@@ -456,6 +574,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     }
 
     private void fireTagDeleted(List<SystemTagInventory> tags) {
+        invalidateSystemTagCache(tags);
+
         for (SystemTagInventory tag : tags) {
             List<SystemTagLifeCycleExtension> exts = lifeCycleExtensions.get(tag.getResourceType());
             if (exts != null) {
@@ -471,6 +591,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     }
 
     private void fireTagCreated(List<SystemTagInventory> tags) {
+        invalidateSystemTagCache(tags);
+
         for (SystemTagInventory tag : tags) {
             List<SystemTagLifeCycleExtension> exts = lifeCycleExtensions.get(tag.getResourceType());
             if (exts != null) {
@@ -486,6 +608,8 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     }
 
     private void fireTagUpdated(SystemTagInventory old, SystemTagInventory newTag) {
+        invalidateSystemTagCache(list(old, newTag));
+
         List<SystemTagLifeCycleExtension> exts = lifeCycleExtensions.get(old.getResourceType());
         if (exts != null) {
             for (SystemTagLifeCycleExtension ext : exts) {
@@ -626,6 +750,18 @@ public class TagManagerImpl extends AbstractService implements TagManager,
     @Override
     public boolean start() {
         populateExtensions();
+
+        evtf.on(TagCanonicalEvents.SYSTEM_TAG_CACHE_INVALIDATE_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                if (Platform.getManagementServerId().equals(tokens.get(EventFacade.META_DATA_MANAGEMENT_NODE_ID))) {
+                    return;
+                }
+
+                SystemTagCacheInvalidateData d = (SystemTagCacheInvalidateData) data;
+                systemTagCache.invalidate(d.getResourceTypes(), d.getResourceUuids());
+            }
+        });
         return true;
     }
 
@@ -662,6 +798,12 @@ public class TagManagerImpl extends AbstractService implements TagManager,
         q.setParameter("resourceTypes", rtypes);
         q.setParameter("resourceUuids", entityIds);
         q.executeUpdate();
+
+        List<String> uuids = new ArrayList<String>();
+        for (Object id : entityIds) {
+            uuids.add(id.toString());
+        }
+        invalidateSystemTagCache(rtypes, uuids);
     }
 
     @Override
@@ -1512,6 +1512,31 @@ public class Api implements CloudBusEventListener {
         return createVmByFullConfig(inv, rootDiskOfferingUuid, l3NetworkUuids, diskOfferingUuids, adminSession);
     }
 
+    public List<APIBatchCreateVmInstanceEvent.Result> batchCreateVm(VmInstanceInventory inv, int count, String rootDiskOfferingUuid,
+            List<String> l3NetworkUuids, List<String> diskOfferingUuids) throws ApiSenderException {
+        APIBatchCreateVmInstanceMsg msg = new APIBatchCreateVmInstanceMsg();
+        msg.setCount(count);
+        msg.setSession(adminSession);
+        msg.setDataDiskOfferingUuids(diskOfferingUuids);
+        msg.setDescription(inv.getDescription());
+        msg.setImageUuid(inv.getImageUuid());
+        msg.setInstanceOfferingUuid(inv.getInstanceOfferingUuid());
+        msg.setL3NetworkUuids(l3NetworkUuids);
+        msg.setName(inv.getName());
+        msg.setZoneUuid(inv.getZoneUuid());
+        msg.setClusterUuid(inv.getClusterUuid());
+        msg.setHostUuid(inv.getHostUuid());
+        msg.setRootDiskOfferingUuid(rootDiskOfferingUuid);
+        msg.setDefaultL3NetworkUuid(inv.getDefaultL3NetworkUuid());
+        if (msg.getL3NetworkUuids().size() > 1 && msg.getDefaultL3NetworkUuid() == null) {
+            msg.setDefaultL3NetworkUuid(msg.getL3NetworkUuids().get(0));
+        }
+        ApiSender sender = new ApiSender();
+        sender.setTimeout(timeout);
+        APIBatchCreateVmInstanceEvent evt = sender.send(msg, APIBatchCreateVmInstanceEvent.class);
+        return evt.getResults();
+    }
+
     public List<VmInstanceInventory> listVmInstances(List<String> uuids) throws ApiSenderException {
         APIListVmInstanceMsg msg = new APIListVmInstanceMsg(uuids);
         msg.setSession(adminSession);
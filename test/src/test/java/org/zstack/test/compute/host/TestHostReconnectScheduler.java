@@ -0,0 +1,118 @@
+package org.zstack.test.compute.host;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.compute.host.HostGlobalConfig;
+import org.zstack.compute.host.HostReconnectScheduler;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.header.host.ConnectHostMsg;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.message.AbstractBeforeDeliveryMessageInterceptor;
+import org.zstack.header.message.Message;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.deployer.Deployer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. set load.rate to 4, load.parallelismDegree to 10
+ * 2. reconnect 12 hosts, one of them has a running vm
+ *
+ * confirm the host having the running vm is connected first
+ * confirm no more than 4 hosts start to connect in a second besides the initial burst
+ * confirm the parallelism grows from 1 to 10 as hosts get connected
+ *
+ * 3. set load.latencyThreshold to 1 second and make connecting hosts take 2 seconds
+ * 4. reconnect a host
+ *
+ * confirm the parallelism is halved
+ */
+public class TestHostReconnectScheduler {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    HostReconnectScheduler scheduler;
+    final List<String> connected = Collections.synchronizedList(new ArrayList<String>());
+    final List<Long> connectTimes = Collections.synchronizedList(new ArrayList<Long>());
+    volatile boolean slow;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        deployer = new Deployer("deployerXml/host/TestHostReconnectScheduler.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        scheduler = loader.getComponent(HostReconnectScheduler.class);
+    }
+
+    private void waitForDone(long num) throws InterruptedException {
+        for (int i = 0; i < 300 && scheduler.getSucceeded() + scheduler.getFailed() < num; i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        Assert.assertEquals(num, scheduler.getSucceeded() + scheduler.getFailed());
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        HostGlobalConfig.HOST_LOAD_RATE.updateValue(4);
+        HostGlobalConfig.HOST_LOAD_PARALLELISM_DEGREE.updateValue(10);
+
+        bus.installBeforeDeliveryMessageInterceptor(new AbstractBeforeDeliveryMessageInterceptor() {
+            @Override
+            public void intercept(Message msg) {
+                connected.add(((ConnectHostMsg) msg).getHostUuid());
+                connectTimes.add(System.currentTimeMillis());
+                if (slow) {
+                    try {
+                        TimeUnit.SECONDS.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, ConnectHostMsg.class);
+
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        List<String> huuids = new ArrayList<String>();
+        for (HostInventory h : deployer.hosts.values()) {
+            huuids.add(h.getUuid());
+        }
+        Assert.assertEquals(12, huuids.size());
+
+        scheduler.reconnect(huuids);
+        waitForDone(12);
+        Assert.assertEquals(12, scheduler.getSucceeded());
+        Assert.assertEquals(0, scheduler.getQueued());
+        Assert.assertEquals(0, scheduler.getInFlight());
+
+        Assert.assertEquals(12, connected.size());
+        Assert.assertEquals(vm.getHostUuid(), connected.get(0));
+
+        // the bucket holds 4 tokens at the beginning, then 4 hosts start to connect per second
+        long first = connectTimes.get(0);
+        for (int i = 4; i < connectTimes.size(); i++) {
+            long elapsed = connectTimes.get(i) - first;
+            Assert.assertTrue(String.format("host %s started to connect after %sms", i, elapsed), elapsed >= (i - 4) * 250 - 50);
+        }
+        Assert.assertEquals(10, scheduler.getParallelism());
+
+        HostGlobalConfig.HOST_LOAD_LATENCY_THRESHOLD.updateValue(1);
+        // let the bucket refill
+        TimeUnit.SECONDS.sleep(1);
+        slow = true;
+        scheduler.reconnect(huuids.subList(0, 1));
+        waitForDone(13);
+        Assert.assertEquals(5, scheduler.getParallelism());
+    }
+}
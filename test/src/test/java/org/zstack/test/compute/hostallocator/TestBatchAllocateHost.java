@@ -0,0 +1,91 @@
+package org.zstack.test.compute.hostallocator;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.allocator.BatchAllocateHostMsg;
+import org.zstack.header.allocator.BatchAllocateHostReply;
+import org.zstack.header.allocator.HostAllocatorConstant;
+import org.zstack.header.configuration.InstanceOfferingInventory;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.network.l3.L3NetworkInventory;
+import org.zstack.header.storage.primary.PrimaryStorageCapacityVO;
+import org.zstack.header.storage.primary.PrimaryStorageInventory;
+import org.zstack.header.vm.VmInstanceConstant.VmOperation;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.deployer.Deployer;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 1. allocate hosts in batch for 8 vms, the hosts have memory for all vms but their primary storage only
+ * has capacity for the disks of 3 vms
+ *
+ * confirm only 3 vms are placed
+ */
+public class TestBatchAllocateHost {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        deployer = new Deployer("deployerXml/vm/TestBatchAllocateHost.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        InstanceOfferingInventory ioinv = deployer.instanceOfferings.get("TestInstanceOffering");
+        ImageInventory iminv = deployer.images.get("TestImage");
+        L3NetworkInventory l3 = deployer.l3Networks.get("TestL3Network1");
+        PrimaryStorageInventory ps = deployer.primaryStorages.get("TestPrimaryStorage");
+
+        long avail = dbf.findByUuid(ps.getUuid(), PrimaryStorageCapacityVO.class).getAvailableCapacity();
+        long diskSize = avail / 3 - 1;
+
+        BatchAllocateHostMsg msg = new BatchAllocateHostMsg();
+        msg.setVmNum(8);
+        msg.setDiskSize(diskSize);
+        msg.setCpuCapacity(ioinv.getCpuNum() * ioinv.getCpuSpeed());
+        msg.setMemoryCapacity(ioinv.getMemorySize());
+        msg.setL3NetworkUuids(Arrays.asList(l3.getUuid()));
+        msg.setImage(iminv);
+        msg.setVmOperation(VmOperation.NewCreate.toString());
+        msg.setAllocatorStrategy(HostAllocatorConstant.DEFAULT_HOST_ALLOCATOR_STRATEGY_TYPE);
+        msg.setVmInstance(vm);
+        msg.setServiceId(bus.makeLocalServiceId(HostAllocatorConstant.SERVICE_ID));
+        BatchAllocateHostReply reply = (BatchAllocateHostReply) bus.call(msg);
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertEquals(8, reply.getHosts().size());
+
+        int placed = 0;
+        Set<String> hosts = new HashSet<String>();
+        for (HostInventory h : reply.getHosts()) {
+            if (h != null) {
+                placed ++;
+                hosts.add(h.getUuid());
+            }
+        }
+        Assert.assertEquals(3, placed);
+        // the two hosts share the primary storage
+        Assert.assertEquals(2, hosts.size());
+    }
+}
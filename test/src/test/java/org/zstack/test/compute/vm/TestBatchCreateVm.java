@@ -0,0 +1,103 @@
+package org.zstack.test.compute.vm;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.EventCallback;
+import org.zstack.core.cloudbus.EventFacade;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.configuration.InstanceOfferingInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.network.l3.L3NetworkInventory;
+import org.zstack.header.vm.*;
+import org.zstack.header.vm.APIBatchCreateVmInstanceEvent.Result;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.deployer.Deployer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1. create 8 vms in batch on two hosts that can hold 3 vms each
+ *
+ * confirm 6 vms are created and spread on both hosts
+ * confirm 2 vms fail because of no capacity
+ * confirm the result of each vm is reported by the canonical event
+ */
+public class TestBatchCreateVm {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    EventFacade evtf;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        deployer = new Deployer("deployerXml/vm/TestBatchCreateVm.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        evtf = loader.getComponent(EventFacade.class);
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        final AtomicInteger reported = new AtomicInteger();
+        evtf.on(VmCanonicalEvents.VM_BATCH_CREATE_RESULT_PATH, new EventCallback() {
+            @Override
+            public void run(Map tokens, Object data) {
+                reported.incrementAndGet();
+            }
+        });
+
+        InstanceOfferingInventory ioinv = deployer.instanceOfferings.get("TestInstanceOffering");
+        ImageInventory iminv = deployer.images.get("TestImage");
+        L3NetworkInventory l3 = deployer.l3Networks.get("TestL3Network1");
+
+        VmInstanceInventory vm = new VmInstanceInventory();
+        vm.setName("batch");
+        vm.setInstanceOfferingUuid(ioinv.getUuid());
+        vm.setImageUuid(iminv.getUuid());
+        List<Result> results = api.batchCreateVm(vm, 8, null, Arrays.asList(l3.getUuid()), null);
+        Assert.assertEquals(8, results.size());
+
+        Map<String, Integer> vmNumOnHosts = new HashMap<String, Integer>();
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            Assert.assertEquals(i, r.getIndex());
+            if (r.getError() != null) {
+                failures ++;
+                Assert.assertFalse(dbf.isExist(r.getVmInstanceUuid(), VmInstanceVO.class));
+                continue;
+            }
+
+            Assert.assertEquals(VmInstanceState.Running.toString(), r.getInventory().getState());
+            Assert.assertEquals(String.format("batch-%s", i), r.getInventory().getName());
+            Integer num = vmNumOnHosts.get(r.getInventory().getHostUuid());
+            vmNumOnHosts.put(r.getInventory().getHostUuid(), num == null ? 1 : num + 1);
+        }
+
+        Assert.assertEquals(2, failures);
+        Assert.assertEquals(2, vmNumOnHosts.size());
+        for (int num : vmNumOnHosts.values()) {
+            Assert.assertEquals(3, num);
+        }
+
+        SimpleQuery<VmInstanceVO> q = dbf.createQuery(VmInstanceVO.class);
+        q.add(VmInstanceVO_.state, Op.EQ, VmInstanceState.Running);
+        Assert.assertEquals(6, q.count().longValue());
+
+        // canonical events are delivered asynchronously
+        TimeUnit.SECONDS.sleep(1);
+        Assert.assertEquals(8, reported.get());
+    }
+}
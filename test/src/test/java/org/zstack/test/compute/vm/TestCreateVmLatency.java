@@ -0,0 +1,86 @@
+package org.zstack.test.compute.vm;
+
+import junit.framework.Assert;
+import org.apache.commons.lang.time.StopWatch;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.configuration.DiskOfferingInventory;
+import org.zstack.header.configuration.InstanceOfferingInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.network.l3.L3NetworkInventory;
+import org.zstack.header.vm.VmInstanceConstant;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.header.vm.VmInstanceState;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.deployer.Deployer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * measure the latency of creating VMs one by one on the simulator.
+ *
+ * run with -DFlowChain.parallelIndependentFlows=false to compare with running
+ * the create-vm flows one after another
+ */
+public class TestCreateVmLatency {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    int vmNum = Integer.valueOf(System.getProperty("vmNum", "50"));
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        deployer = new Deployer("deployerXml/vm/TestCreateVmLatency.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        dbf = loader.getComponent(DatabaseFacade.class);
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        CoreGlobalProperty.VM_TRACER_ON = false;
+        InstanceOfferingInventory ioinv = deployer.instanceOfferings.get("TestInstanceOffering");
+        ImageInventory iminv = deployer.images.get("TestImage");
+        DiskOfferingInventory root = deployer.diskOfferings.get("TestRootDiskOffering");
+        List<String> nws = new ArrayList<String>();
+        for (L3NetworkInventory l3 : deployer.l3Networks.values()) {
+            nws.add(l3.getUuid());
+        }
+
+        List<Long> timeCost = new ArrayList<Long>(vmNum);
+        for (int i = 0; i < vmNum; i++) {
+            VmInstanceInventory vm = new VmInstanceInventory();
+            vm.setName("vm-" + i);
+            vm.setType(VmInstanceConstant.USER_VM_TYPE);
+            vm.setInstanceOfferingUuid(ioinv.getUuid());
+            vm.setImageUuid(iminv.getUuid());
+
+            StopWatch watch = new StopWatch();
+            watch.start();
+            vm = api.createVmByFullConfig(vm, root.getUuid(), nws, new ArrayList<String>());
+            watch.stop();
+            timeCost.add(watch.getTime());
+            Assert.assertEquals(VmInstanceState.Running.toString(), vm.getState());
+        }
+
+        Collections.sort(timeCost);
+        long total = 0;
+        for (long t : timeCost) {
+            total += t;
+        }
+
+        System.out.println(String.format("created %s VMs with parallelIndependentFlows=%s, avg: %sms, min: %sms, p50: %sms," +
+                        " p90: %sms, max: %sms", vmNum, CoreGlobalProperty.PARALLEL_INDEPENDENT_FLOWS, total / vmNum,
+                timeCost.get(0), timeCost.get(vmNum / 2), timeCost.get(vmNum * 9 / 10), timeCost.get(vmNum - 1)));
+    }
+}
@@ -0,0 +1,181 @@
+package org.zstack.test.core.db;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zstack.core.db.DbGlobalProperty;
+import org.zstack.core.db.ReadReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+
+/**
+ * 1. route a read-only transaction out of and in the replica scope
+ *
+ * confirm only the one in the replica scope goes to the replica
+ *
+ * 2. make the replica lag behind more than the max staleness, stop the replication and recover it
+ *
+ * confirm read-only transactions go to the primary until the replica recovers
+ *
+ * 3. make the replica not replicating from any database
+ *
+ * confirm it's not used unless it's marked as standalone
+ *
+ * 4. make the replica unable to be connected
+ *
+ * confirm connections fall back to the primary until a check finds the replica healthy
+ */
+public class TestReadReplicaRoutingDataSource {
+    FakeDatabase primary;
+    FakeDatabase replica;
+    ReadReplicaRoutingDataSource ds;
+    long maxStaleness;
+
+    static class FakeDatabase implements InvocationHandler {
+        String name;
+        volatile boolean down;
+        volatile boolean replicating = true;
+        // null means the replication is not running
+        volatile Long lag = 0L;
+
+        FakeDatabase(String name) {
+            this.name = name;
+        }
+
+        DataSource dataSource() {
+            return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataSource.class}, this);
+        }
+
+        private Object proxy(Class clz, InvocationHandler handler) {
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{clz}, handler);
+        }
+
+        private ResultSet slaveStatus() {
+            return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+                boolean read;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("next")) {
+                        boolean ret = replicating && !read;
+                        read = true;
+                        return ret;
+                    } else if (method.getName().equals("getLong")) {
+                        return lag == null ? 0L : lag;
+                    } else if (method.getName().equals("wasNull")) {
+                        return lag == null;
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("getConnection")) {
+                return null;
+            }
+
+            if (down) {
+                throw new SQLException(String.format("%s is down", name));
+            }
+
+            return proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("toString")) {
+                        return name;
+                    } else if (method.getName().equals("createStatement")) {
+                        return proxy(Statement.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                                return method.getName().equals("executeQuery") ? slaveStatus() : null;
+                            }
+                        });
+                    }
+
+                    return null;
+                }
+            });
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        maxStaleness = DbGlobalProperty.READ_REPLICA_MAX_STALENESS;
+        DbGlobalProperty.READ_REPLICA_MAX_STALENESS = 5;
+        DbGlobalProperty.READ_REPLICA_ROUTE_ALL_READ_ONLY_TRANSACTIONS = false;
+        DbGlobalProperty.READ_REPLICA_STANDALONE = false;
+
+        primary = new FakeDatabase("primary");
+        replica = new FakeDatabase("replica");
+        ds = new ReadReplicaRoutingDataSource();
+        ds.setPrimary(primary.dataSource());
+        ds.setReplica(replica.dataSource());
+        ds.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ReadReplicaRoutingDataSource.exitReplicaScope();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        DbGlobalProperty.READ_REPLICA_MAX_STALENESS = maxStaleness;
+        DbGlobalProperty.READ_REPLICA_STANDALONE = false;
+    }
+
+    private String route() throws SQLException {
+        return ds.getConnection().toString();
+    }
+
+    @Test
+    public void test() throws SQLException {
+        // not checked yet
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReadReplicaRoutingDataSource.enterReplicaScope();
+        Assert.assertEquals(primary.name, route());
+
+        ds.checkReplica();
+        Assert.assertEquals(replica.name, route());
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        Assert.assertEquals(primary.name, route());
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReadReplicaRoutingDataSource.exitReplicaScope();
+        Assert.assertEquals(primary.name, route());
+        ReadReplicaRoutingDataSource.enterReplicaScope();
+
+        replica.lag = 10L;
+        ds.checkReplica();
+        Assert.assertEquals(primary.name, route());
+        replica.lag = null;
+        ds.checkReplica();
+        Assert.assertEquals(primary.name, route());
+        replica.lag = 5L;
+        ds.checkReplica();
+        Assert.assertEquals(replica.name, route());
+
+        replica.replicating = false;
+        ds.checkReplica();
+        Assert.assertEquals(primary.name, route());
+        DbGlobalProperty.READ_REPLICA_STANDALONE = true;
+        ds.checkReplica();
+        Assert.assertEquals(replica.name, route());
+
+        replica.down = true;
+        Assert.assertEquals(primary.name, route());
+        replica.down = false;
+        Assert.assertEquals(primary.name, route());
+        ds.checkReplica();
+        Assert.assertEquals(replica.name, route());
+
+        replica.down = true;
+        ds.checkReplica();
+        Assert.assertEquals(primary.name, route());
+    }
+}
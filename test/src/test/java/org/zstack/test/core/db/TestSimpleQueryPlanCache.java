@@ -0,0 +1,149 @@
+package org.zstack.test.core.db;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.springframework.transaction.annotation.Transactional;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.DbGlobalProperty;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Od;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.db.SimpleQueryPlanCache;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.test.core.db.PersonVO.Sex;
+
+import javax.persistence.Tuple;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 1. run queries of different shapes with the plan cache disabled and enabled
+ *
+ * confirm both return the same results
+ * confirm queries of the same shape hit the cache
+ *
+ * the per-query overhead with and without the plan cache is printed,
+ * use -DqueryNum to change the number of queries measured
+ */
+public class TestSimpleQueryPlanCache {
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    SimpleQueryPlanCache cache;
+    int personNum = 100;
+    int queryNum = Integer.valueOf(System.getProperty("queryNum", "10000"));
+
+    @Configurable(preConstruction = true, autowire = Autowire.BY_TYPE, dependencyCheck = true)
+    class Persist {
+        @Transactional
+        void persist() {
+            for (int i = 0; i < personNum; i++) {
+                PersonVO vo = new PersonVO();
+                vo.setAge(i);
+                vo.setDate(new Date());
+                vo.setDescription("This is person " + String.valueOf(i));
+                vo.setMarriage((i % 5 == 0));
+                vo.setName("Person" + String.valueOf(i));
+                vo.setSex(i % 2 == 0 ? Sex.FEMALE : Sex.MALE);
+                vo.setTitle(String.valueOf(i) + "Person");
+                dbf.getEntityManager().persist(vo);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        cache = loader.getComponent(SimpleQueryPlanCache.class);
+        new Persist().persist();
+    }
+
+    private List<Object> runQueries(int age) {
+        List<Object> ret = new ArrayList<Object>();
+
+        SimpleQuery<PersonVO> q = dbf.createQuery(PersonVO.class);
+        q.add(PersonVO_.sex, Op.EQ, Sex.FEMALE);
+        q.add(PersonVO_.age, Op.GT, age);
+        q.orderBy(PersonVO_.age, Od.DESC);
+        for (Object o : q.list()) {
+            ret.add(((PersonVO) o).getName());
+        }
+
+        q = dbf.createQuery(PersonVO.class);
+        q.select(PersonVO_.name);
+        q.add(PersonVO_.age, Op.IN, Arrays.asList(age, age + 1, age + 2));
+        q.add(PersonVO_.description, Op.NOT_NULL);
+        ret.add(q.listValue());
+
+        q = dbf.createQuery(PersonVO.class);
+        q.select(PersonVO_.name, PersonVO_.age);
+        q.add(PersonVO_.name, Op.LIKE, "Person1%");
+        q.add(PersonVO_.age, Op.NOT_IN, age, age + 10);
+        q.orderBy(PersonVO_.age, Od.ASC);
+        for (Tuple t : q.listTuple()) {
+            ret.add(t.get(0, String.class) + t.get(1, Integer.class));
+        }
+
+        q = dbf.createQuery(PersonVO.class);
+        q.select(PersonVO_.age);
+        q.add(PersonVO_.name, Op.EQ, "Person" + age);
+        ret.add(q.findValue());
+
+        q = dbf.createQuery(PersonVO.class);
+        q.add(PersonVO_.marriage, Op.EQ, true);
+        q.add(PersonVO_.age, Op.LTE, age);
+        ret.add(q.count());
+
+        q = dbf.createQuery(PersonVO.class);
+        q.add(PersonVO_.name, Op.EQ, "Person" + age);
+        ret.add(q.isExists());
+
+        return ret;
+    }
+
+    private long measure() {
+        long start = System.nanoTime();
+        for (int i = 0; i < queryNum; i++) {
+            SimpleQuery<PersonVO> q = dbf.createQuery(PersonVO.class);
+            q.select(PersonVO_.age);
+            q.add(PersonVO_.name, Op.EQ, "Person" + (i % personNum));
+            q.add(PersonVO_.sex, Op.IN, Sex.FEMALE, Sex.MALE);
+            q.findValue();
+        }
+        return (System.nanoTime() - start) / queryNum / 1000;
+    }
+
+    @Test
+    public void test() {
+        DbGlobalProperty.SIMPLE_QUERY_PLAN_CACHE = false;
+        List<Object> expected = runQueries(30);
+        Assert.assertEquals(0, cache.getSize());
+
+        DbGlobalProperty.SIMPLE_QUERY_PLAN_CACHE = true;
+        Assert.assertEquals(expected, runQueries(30));
+        Assert.assertEquals(6, cache.getSize());
+        Assert.assertEquals(6, cache.getMisses());
+
+        Assert.assertEquals(runQueries(50), runQueries(50));
+        Assert.assertEquals(6, cache.getSize());
+        Assert.assertEquals(12, cache.getHits());
+
+        DbGlobalProperty.SIMPLE_QUERY_PLAN_CACHE = false;
+        measure();
+        long without = measure();
+        DbGlobalProperty.SIMPLE_QUERY_PLAN_CACHE = true;
+        measure();
+        long with = measure();
+        System.out.println(String.format("%s queries, per-query overhead without plan cache: %sus, with plan cache: %sus, hit rate: %s",
+                queryNum, without, with, cache.getHitRate()));
+    }
+}
@@ -0,0 +1,87 @@
+package org.zstack.test.core.gc;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.gc.*;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.utils.TimeUtils;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * schedule 20 jobs on each of 3 resources
+ *
+ * confirm all jobs run, and jobs of the same resource never run at the same time
+ */
+public class TestGC8 {
+    ComponentLoader loader;
+    GCFacade gcf;
+    static ThreadFacade thdf;
+    static AtomicInteger done = new AtomicInteger();
+    static Map<String, AtomicInteger> running = new ConcurrentHashMap<String, AtomicInteger>();
+    static volatile boolean overlapped;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.build();
+        gcf = loader.getComponent(GCFacade.class);
+        thdf = loader.getComponent(ThreadFacade.class);
+    }
+
+    public static class TRunner implements GCRunner {
+        @Override
+        public void run(final GCContext context, final GCCompletion completion) {
+            final AtomicInteger r = running.get(context.getResourceUuid());
+            if (r.incrementAndGet() > 1) {
+                overlapped = true;
+            }
+
+            thdf.submitTimeoutTask(new Runnable() {
+                @Override
+                public void run() {
+                    r.decrementAndGet();
+                    done.incrementAndGet();
+                    completion.success();
+                }
+            }, TimeUnit.MILLISECONDS, 10);
+        }
+    }
+
+    @Test
+    public void test() {
+        for (int i = 0; i < 3; i++) {
+            String resourceUuid = String.format("resource-%s", i);
+            running.put(resourceUuid, new AtomicInteger());
+
+            for (int j = 0; j < 20; j++) {
+                TimeBasedGCEphemeralContext<String> context = new TimeBasedGCEphemeralContext<String>();
+                context.setName(String.format("test-gc-%s-%s", i, j));
+                context.setResourceUuid(resourceUuid);
+                context.setRunner(new TRunner());
+                context.setInterval(1);
+                context.setTimeUnit(TimeUnit.SECONDS);
+                gcf.schedule(context);
+            }
+        }
+
+        TimeUtils.loopExecuteUntilTimeoutIgnoreException(10, 1, TimeUnit.SECONDS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return done.get() == 60;
+            }
+        });
+
+        Assert.assertEquals(60, done.get());
+        Assert.assertFalse(overlapped);
+    }
+}
@@ -0,0 +1,67 @@
+package org.zstack.test.core.job;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.job.*;
+import org.zstack.header.core.ReturnValueCompletion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public class FakeJob3 implements Job {
+    @JobContext
+    String stringValue;
+    @JobContext
+    long longValue;
+    @JobContext
+    int intValue;
+    @JobContext
+    boolean booleanValue;
+    @JobContext
+    double doubleValue;
+    @JobContext
+    String nullValue;
+    @JobContext
+    ArrayList<String> listValue;
+
+    // the context of the job in the database when it runs
+    byte[] context;
+
+    @Autowired
+    private FakeJobConfig fl;
+    @Autowired
+    private DatabaseFacade dbf;
+
+    private FakeJob3() {
+    }
+
+    public FakeJob3(String stringValue, long longValue, int intValue, boolean booleanValue, double doubleValue, ArrayList<String> listValue) {
+        this.stringValue = stringValue;
+        this.longValue = longValue;
+        this.intValue = intValue;
+        this.booleanValue = booleanValue;
+        this.doubleValue = doubleValue;
+        this.listValue = listValue;
+    }
+
+    @Override
+    public void run(ReturnValueCompletion<Object> complete) {
+        try {
+            SimpleQuery<JobQueueEntryVO> q = dbf.createQuery(JobQueueEntryVO.class);
+            q.add(JobQueueEntryVO_.name, Op.EQ, FakeJob3.class.getName());
+            q.add(JobQueueEntryVO_.state, Op.EQ, JobState.Processing);
+            List<JobQueueEntryVO> vos = q.list();
+            if (vos.size() == 1) {
+                context = vos.get(0).getContext();
+            }
+            fl.contextJobs.add(this);
+        } finally {
+            complete.success(null);
+        }
+    }
+}
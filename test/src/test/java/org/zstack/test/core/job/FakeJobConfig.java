@@ -2,6 +2,7 @@ package org.zstack.test.core.job;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class FakeJobConfig {
     List<Long> indexs = new ArrayList<Long>();
@@ -9,4 +10,5 @@ public class FakeJobConfig {
     boolean success;
     volatile int jdbRepeatNum;
     volatile boolean condition = false;
+    List<FakeJob3> contextJobs = new CopyOnWriteArrayList<FakeJob3>();
 }
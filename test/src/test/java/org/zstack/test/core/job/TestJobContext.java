@@ -0,0 +1,83 @@
+package org.zstack.test.core.job;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.job.JobGlobalProperty;
+import org.zstack.core.job.JobQueueFacade;
+import org.zstack.test.Api;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. run a job having job contexts of all kinds of types, with JobQueueFacade.compactContext off
+ * 2. run the job again with JobQueueFacade.compactContext on
+ *
+ * confirm the context is saved by java serialization when compactContext is off, and is decoded
+ * confirm the context is saved in the compact format when compactContext is on, and is decoded
+ */
+public class TestJobContext {
+    ComponentLoader loader;
+    JobQueueFacade jobf;
+    FakeJobConfig fl;
+    boolean compactContext;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("JobForUnitTest.xml").addXml("PortalForUnitTest.xml").addXml("AccountManager.xml").build();
+        jobf = loader.getComponent(JobQueueFacade.class);
+        fl = loader.getComponent(FakeJobConfig.class);
+        compactContext = JobGlobalProperty.JOB_QUEUE_COMPACT_CONTEXT;
+        new Api().startServer();
+    }
+
+    @After
+    public void tearDown() {
+        JobGlobalProperty.JOB_QUEUE_COMPACT_CONTEXT = compactContext;
+    }
+
+    private FakeJob3 runJob() throws InterruptedException {
+        fl.contextJobs.clear();
+        FakeJob3 job = new FakeJob3("hello world", Long.MAX_VALUE, -1, true, 3.14, new ArrayList<String>(Arrays.asList("a", "b")));
+        jobf.execute("fake-job", "TestJobContext", job);
+        for (int i = 0; i < 50 && fl.contextJobs.isEmpty(); i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+
+        Assert.assertEquals(1, fl.contextJobs.size());
+        FakeJob3 ret = fl.contextJobs.get(0);
+        Assert.assertNotSame(job, ret);
+        Assert.assertEquals(job.stringValue, ret.stringValue);
+        Assert.assertEquals(job.longValue, ret.longValue);
+        Assert.assertEquals(job.intValue, ret.intValue);
+        Assert.assertEquals(job.booleanValue, ret.booleanValue);
+        Assert.assertEquals(job.doubleValue, ret.doubleValue);
+        Assert.assertNull(ret.nullValue);
+        Assert.assertEquals(job.listValue, ret.listValue);
+        Assert.assertNotNull(ret.context);
+        return ret;
+    }
+
+    @Test
+    public void test() throws InterruptedException {
+        JobGlobalProperty.JOB_QUEUE_COMPACT_CONTEXT = false;
+        FakeJob3 job = runJob();
+        // the java serialization stream magic
+        Assert.assertEquals((byte) 0xAC, job.context[0]);
+        Assert.assertEquals((byte) 0xED, job.context[1]);
+
+        JobGlobalProperty.JOB_QUEUE_COMPACT_CONTEXT = true;
+        job = runJob();
+        Assert.assertEquals('Z', job.context[0]);
+        Assert.assertEquals('J', job.context[1]);
+        Assert.assertEquals(1, job.context[2]);
+    }
+}
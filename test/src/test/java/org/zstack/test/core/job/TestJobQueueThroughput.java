@@ -0,0 +1,76 @@
+package org.zstack.test.core.job;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.job.JobQueueFacade;
+import org.zstack.header.core.Completion;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.test.Api;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1. submit jobs to one queue
+ * 2. submit the same number of jobs spread over many queues
+ *
+ * confirm all jobs complete
+ * report jobs per second of both
+ */
+public class TestJobQueueThroughput {
+    CLogger logger = Utils.getLogger(TestJobQueueThroughput.class);
+    ComponentLoader loader;
+    JobQueueFacade jobf;
+    int num = 1000;
+    int queueNum = 20;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("JobForUnitTest.xml").addXml("PortalForUnitTest.xml").addXml("AccountManager.xml").build();
+        jobf = loader.getComponent(JobQueueFacade.class);
+        new Api().startServer();
+    }
+
+    private double run(String prefix, int queues) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(num);
+        final AtomicInteger failures = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        for (long i = 0; i < num; i++) {
+            jobf.execute(String.format("%s-%s", prefix, i % queues), "TestJobQueueThroughput", new FakeJob(i), new Completion() {
+                @Override
+                public void success() {
+                    latch.countDown();
+                }
+
+                @Override
+                public void fail(ErrorCode errorCode) {
+                    logger.debug(errorCode.toString());
+                    failures.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(latch.await(240, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        long cost = System.currentTimeMillis() - start;
+        double rate = num * 1000.0 / Math.max(1, cost);
+        logger.info(String.format("[Job Queue Throughput]: %s jobs in %s queues done in %s ms, %.1f jobs/s", num, queues, cost, rate));
+        return rate;
+    }
+
+    @Test
+    public void test() throws InterruptedException {
+        run("single-queue", 1);
+        run("multi-queue", queueNum);
+    }
+}
@@ -0,0 +1,105 @@
+package org.zstack.test.core.keyvalue;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.keyvalue.KeyValueFacade;
+import org.zstack.core.keyvalue.KeyValueQuery;
+import org.zstack.core.keyvalue.KeyValueVO;
+import org.zstack.core.keyvalue.KeyValueVO_;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 1. persist an entity
+ * 2. update some fields
+ *
+ * confirm only the changed rows are rewritten and rows of removed fields are deleted
+ * confirm numeric conditions compare numbers not strings
+ * confirm fields can be read without loading the whole entity
+ */
+public class TestKeyValue3 {
+    ComponentLoader loader;
+    KeyValueFacade kvf;
+    DatabaseFacade dbf;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.build();
+        kvf = loader.getComponent(KeyValueFacade.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+    }
+
+    private KeyValueVO findRow(String uuid, String key) {
+        SimpleQuery<KeyValueVO> q = dbf.createQuery(KeyValueVO.class);
+        q.add(KeyValueVO_.uuid, Op.EQ, uuid);
+        q.add(KeyValueVO_.entityKey, Op.EQ, key);
+        return q.find();
+    }
+
+    @Test
+    public void test() {
+        KeyValueTestEntity e = new KeyValueTestEntity();
+        e.list1.add(1);
+        e.list1.add(2);
+        kvf.persist(e);
+
+        KeyValueVO a1 = findRow(e.getUuid(), "a1");
+        KeyValueVO b1 = findRow(e.getUuid(), "b1");
+        Assert.assertNotNull(a1);
+        Assert.assertEquals(10d, a1.getNumberValue());
+
+        e.a1 = 11;
+        e.list1 = new ArrayList<Integer>();
+        e.list1.add(1);
+        kvf.update(e);
+
+        KeyValueVO a1u = findRow(e.getUuid(), "a1");
+        Assert.assertEquals(a1.getId(), a1u.getId());
+        Assert.assertEquals("11", a1u.getEntityValue());
+        Assert.assertEquals(11d, a1u.getNumberValue());
+        Assert.assertEquals(b1.getId(), findRow(e.getUuid(), "b1").getId());
+        Assert.assertNotNull(findRow(e.getUuid(), "list1[0]"));
+        Assert.assertNull(findRow(e.getUuid(), "list1[1]"));
+
+        KeyValueTestEntity ue = kvf.find(e.getUuid());
+        Assert.assertEquals(11, ue.a1);
+        Assert.assertEquals(1, ue.list1.size());
+        Assert.assertEquals(e.timestamp, ue.timestamp);
+
+        KeyValueTestEntity e2 = new KeyValueTestEntity();
+        e2.b1 = 9;
+        kvf.persist(e2);
+
+        // string compare would put "9" after "100"
+        KeyValueQuery<KeyValueTestEntity> q = new KeyValueQuery<KeyValueTestEntity>(KeyValueTestEntity.class);
+        q.and(q.entity().getB1(), org.zstack.core.keyvalue.Op.LT, 50);
+        List<KeyValueTestEntity> tes = q.list();
+        Assert.assertEquals(1, tes.size());
+        Assert.assertEquals(e2.getUuid(), tes.get(0).getUuid());
+
+        q = new KeyValueQuery<KeyValueTestEntity>(KeyValueTestEntity.class);
+        q.and(q.entity().getA1(), org.zstack.core.keyvalue.Op.EQ, 11);
+        q.select(q.entity().getC2());
+        q.select(q.entity().getB1());
+        Map<String, Object> fields = q.findFields();
+        Assert.assertNotNull(fields);
+        Assert.assertEquals(2, fields.size());
+        Assert.assertEquals("hello world", fields.get("c2"));
+        Assert.assertEquals(100, fields.get("b1"));
+
+        fields = kvf.findFields(e2.getUuid(), "b1", "d");
+        Assert.assertEquals(9, fields.get("b1"));
+        Assert.assertEquals(9, fields.get("d"));
+    }
+}
@@ -0,0 +1,72 @@
+package org.zstack.test.core.keyvalue;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.keyvalue.KeyValueFacade;
+import org.zstack.core.keyvalue.KeyValueQuery;
+import org.zstack.core.keyvalue.KeyValueVO;
+import org.zstack.core.keyvalue.KeyValueVO_;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+import java.util.List;
+
+/**
+ * 1. persist entities
+ * 2. clear numberValue of the rows of one entity, like rows written before the upgrade adding numberValue
+ *
+ * confirm numeric conditions still find the entity by entityValue
+ * confirm the entity is still readable
+ */
+public class TestKeyValue4 {
+    ComponentLoader loader;
+    KeyValueFacade kvf;
+    DatabaseFacade dbf;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.build();
+        kvf = loader.getComponent(KeyValueFacade.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+    }
+
+    @Test
+    public void test() {
+        KeyValueTestEntity e1 = new KeyValueTestEntity();
+        kvf.persist(e1);
+        KeyValueTestEntity e2 = new KeyValueTestEntity();
+        e2.a1 = 11;
+        kvf.persist(e2);
+
+        SimpleQuery<KeyValueVO> q = dbf.createQuery(KeyValueVO.class);
+        q.add(KeyValueVO_.uuid, Op.EQ, e1.getUuid());
+        List<KeyValueVO> rows = q.list();
+        Assert.assertFalse(rows.isEmpty());
+        for (KeyValueVO vo : rows) {
+            vo.setNumberValue(null);
+            dbf.update(vo);
+        }
+
+        KeyValueQuery<KeyValueTestEntity> kq = new KeyValueQuery<KeyValueTestEntity>(KeyValueTestEntity.class);
+        kq.and(kq.entity().getA1(), org.zstack.core.keyvalue.Op.EQ, 10);
+        List<KeyValueTestEntity> tes = kq.list();
+        Assert.assertEquals(1, tes.size());
+        Assert.assertEquals(e1.getUuid(), tes.get(0).getUuid());
+
+        kq = new KeyValueQuery<KeyValueTestEntity>(KeyValueTestEntity.class);
+        kq.and(kq.entity().getA1(), org.zstack.core.keyvalue.Op.NOT_EQ, 10);
+        tes = kq.list();
+        Assert.assertEquals(1, tes.size());
+        Assert.assertEquals(e2.getUuid(), tes.get(0).getUuid());
+
+        KeyValueTestEntity fe1 = kvf.find(e1.getUuid());
+        Assert.assertEquals(10, fe1.getA1());
+    }
+}
@@ -0,0 +1,95 @@
+package org.zstack.test.core.rest;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.rest.RESTApiDecoder;
+import org.zstack.header.message.APIEvent;
+import org.zstack.header.rest.RESTApiFacade;
+import org.zstack.header.rest.RestAPIResponse;
+import org.zstack.header.rest.RestAPIState;
+import org.zstack.header.rest.RestAPIVO;
+import org.zstack.header.zone.APICreateZoneMsg;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. set RESTApiFacade.persistMode to Batch
+ * 2. send some APIs through RESTApiFacade and long poll their results
+ *
+ * confirm the results are served from memory
+ * confirm the RestAPIVO of the APIs are written with the results by the batch writer
+ */
+public class TestRESTApiFacadeBatch {
+    Api api;
+    ComponentLoader loader;
+    RESTApiFacade restApi;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        System.setProperty("RESTApiFacade.persistMode", "Batch");
+        System.setProperty("RESTApiFacade.persistBatchInterval", "200");
+        try {
+            BeanConstructor con = new BeanConstructor();
+            loader = con.addXml("PortalForUnitTest.xml").addXml("ZoneManager.xml").addXml("AccountManager.xml").build();
+        } finally {
+            System.clearProperty("RESTApiFacade.persistMode");
+            System.clearProperty("RESTApiFacade.persistBatchInterval");
+        }
+        restApi = loader.getComponent(RESTApiFacade.class);
+        api = new Api();
+        api.startServer();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        api.loginAsAdmin();
+
+        List<RestAPIResponse> rsps = new ArrayList<RestAPIResponse>();
+        for (int i = 0; i < 10; i++) {
+            APICreateZoneMsg msg = new APICreateZoneMsg();
+            msg.setSession(api.getAdminSession());
+            msg.setName("Zone-" + i);
+            rsps.add(restApi.send(msg));
+        }
+
+        List<RestAPIResponse> results = new ArrayList<RestAPIResponse>();
+        for (RestAPIResponse rsp : rsps) {
+            RestAPIResponse ret = restApi.getResult(rsp.getUuid(), 30);
+            Assert.assertEquals(RestAPIState.Done.toString(), ret.getState());
+            APIEvent evt = (APIEvent) RESTApiDecoder.loads(ret.getResult());
+            Assert.assertTrue(evt.isSuccess());
+            results.add(ret);
+        }
+
+        TimeUnit.SECONDS.sleep(2);
+        for (RestAPIResponse ret : results) {
+            RestAPIVO vo = findRestAPIVO(ret.getUuid());
+            Assert.assertNotNull(vo);
+            Assert.assertEquals(RestAPIState.Done, vo.getState());
+            Assert.assertEquals(ret.getResult(), vo.getResult());
+        }
+
+        api.stopServer();
+    }
+
+    private RestAPIVO findRestAPIVO(String uuid) {
+        EntityManagerFactory emf = loader.getComponentByBeanName("RESTApiEntityManagerFactory");
+        EntityManager mgr = emf.createEntityManager();
+        try {
+            return mgr.find(RestAPIVO.class, uuid);
+        } finally {
+            mgr.close();
+        }
+    }
+}
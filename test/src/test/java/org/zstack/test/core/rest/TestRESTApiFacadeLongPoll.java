@@ -0,0 +1,109 @@
+package org.zstack.test.core.rest;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.rest.RESTApiDecoder;
+import org.zstack.header.message.AbstractBeforeDeliveryMessageInterceptor;
+import org.zstack.header.message.Message;
+import org.zstack.header.rest.RESTApiFacade;
+import org.zstack.header.rest.RestAPIResponse;
+import org.zstack.header.rest.RestAPIState;
+import org.zstack.header.rest.RestAPIVO;
+import org.zstack.header.zone.APICreateZoneEvent;
+import org.zstack.header.zone.APICreateZoneMsg;
+import org.zstack.header.zone.ZoneVO;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. delay the delivery of an API for 3 seconds
+ * 2. send the API through RESTApiFacade and long poll its result
+ *
+ * confirm a short long poll returns the API still processing
+ * confirm a long poll waits until the API is done and returns the result
+ * confirm the result is persisted to RestAPIVO in Sync mode
+ */
+public class TestRESTApiFacadeLongPoll {
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    CloudBus bus;
+    RESTApiFacade restApi;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("PortalForUnitTest.xml").addXml("ZoneManager.xml").addXml("AccountManager.xml").build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        bus = loader.getComponent(CloudBus.class);
+        restApi = loader.getComponent(RESTApiFacade.class);
+        api = new Api();
+        api.startServer();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        api.loginAsAdmin();
+        bus.installBeforeDeliveryMessageInterceptor(new AbstractBeforeDeliveryMessageInterceptor() {
+            @Override
+            public void intercept(Message msg) {
+                try {
+                    TimeUnit.SECONDS.sleep(3);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, APICreateZoneMsg.class);
+
+        APICreateZoneMsg msg = new APICreateZoneMsg();
+        msg.setSession(api.getAdminSession());
+        msg.setName("Zone-0");
+        RestAPIResponse rsp = restApi.send(msg);
+        Assert.assertEquals(RestAPIState.Processing.toString(), rsp.getState());
+
+        rsp = restApi.getResult(rsp.getUuid(), 1);
+        Assert.assertEquals(RestAPIState.Processing.toString(), rsp.getState());
+        Assert.assertNull(rsp.getResult());
+
+        rsp = restApi.getResult(rsp.getUuid(), 30);
+        Assert.assertEquals(RestAPIState.Done.toString(), rsp.getState());
+        APICreateZoneEvent evt = (APICreateZoneEvent) RESTApiDecoder.loads(rsp.getResult());
+        Assert.assertTrue(evt.isSuccess());
+        Assert.assertNotNull(dbf.findByUuid(evt.getInventory().getUuid(), ZoneVO.class));
+
+        // served from memory after the API is done
+        RestAPIResponse again = restApi.getResult(rsp.getUuid(), 30);
+        Assert.assertEquals(rsp.getResult(), again.getResult());
+
+        // the result is written to RestAPIVO right after waking up the pollers
+        TimeUnit.SECONDS.sleep(1);
+        RestAPIVO vo = findRestAPIVO(rsp.getUuid());
+        Assert.assertNotNull(vo);
+        Assert.assertEquals(RestAPIState.Done, vo.getState());
+        Assert.assertEquals(rsp.getResult(), vo.getResult());
+
+        Assert.assertNull(restApi.getResult("not-existing-api-uuid", 1));
+        api.stopServer();
+    }
+
+    private RestAPIVO findRestAPIVO(String uuid) {
+        EntityManagerFactory emf = loader.getComponentByBeanName("RESTApiEntityManagerFactory");
+        EntityManager mgr = emf.createEntityManager();
+        try {
+            return mgr.find(RestAPIVO.class, uuid);
+        } finally {
+            mgr.close();
+        }
+    }
+}
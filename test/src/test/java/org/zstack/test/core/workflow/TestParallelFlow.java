@@ -0,0 +1,146 @@
+package org.zstack.test.core.workflow;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.zstack.core.workflow.FlowChainBuilder;
+import org.zstack.core.workflow.ParallelFlow;
+import org.zstack.header.core.workflow.*;
+import org.zstack.header.errorcode.ErrorCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1. build a chain from a builder having two adjacent independent flows
+ * 2. make one of the independent flows fail
+ *
+ * confirm the independent flows are grouped and run at the same time
+ * confirm the flow after them runs only when both complete
+ * confirm both independent flows are rolled back when one of them fails
+ */
+public class TestParallelFlow {
+    static AtomicInteger running = new AtomicInteger();
+    static AtomicInteger maxRunning = new AtomicInteger();
+    static AtomicInteger rollbacks = new AtomicInteger();
+    static volatile boolean fail;
+
+    static void runAsync(final FlowTrigger trigger, final boolean success) {
+        int r = running.incrementAndGet();
+        if (r > maxRunning.get()) {
+            maxRunning.set(r);
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(500);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+
+                running.decrementAndGet();
+                if (success) {
+                    trigger.next();
+                } else {
+                    trigger.fail(null);
+                }
+            }
+        }).start();
+    }
+
+    @IndependentFlow
+    public static class IndependentFlow1 implements Flow {
+        @Override
+        public void run(FlowTrigger trigger, Map data) {
+            runAsync(trigger, true);
+        }
+
+        @Override
+        public void rollback(FlowRollback trigger, Map data) {
+            rollbacks.incrementAndGet();
+            trigger.rollback();
+        }
+    }
+
+    @IndependentFlow
+    public static class IndependentFlow2 implements Flow {
+        @Override
+        public void run(FlowTrigger trigger, Map data) {
+            runAsync(trigger, !fail);
+        }
+
+        @Override
+        public void rollback(FlowRollback trigger, Map data) {
+            rollbacks.incrementAndGet();
+            trigger.rollback();
+        }
+    }
+
+    public static class LastFlow extends NoRollbackFlow {
+        @Override
+        public void run(FlowTrigger trigger, Map data) {
+            Assert.assertEquals(0, running.get());
+            data.put("last", true);
+            trigger.next();
+        }
+    }
+
+    private FlowChain build() {
+        List<Flow> flows = new ArrayList<Flow>();
+        flows.add(new IndependentFlow1());
+        flows.add(new IndependentFlow2());
+        flows.add(new LastFlow());
+        FlowChainBuilder builder = FlowChainBuilder.newBuilder();
+        builder.setFlows(flows);
+        return builder.construct().build("test-parallel-flow");
+    }
+
+    @Test
+    public void test() throws InterruptedException {
+        FlowChain chain = build();
+        Assert.assertEquals(2, chain.getFlows().size());
+        Assert.assertTrue(chain.getFlows().get(0) instanceof ParallelFlow);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] success = {false};
+        chain.done(new FlowDoneHandler() {
+            @Override
+            public void handle(Map data) {
+                success[0] = data.containsKey("last");
+                latch.countDown();
+            }
+        }).error(new FlowErrorHandler() {
+            @Override
+            public void handle(ErrorCode errCode, Map data) {
+                latch.countDown();
+            }
+        }).start();
+        latch.await(10, TimeUnit.SECONDS);
+        Assert.assertTrue(success[0]);
+        Assert.assertEquals(2, maxRunning.get());
+
+        fail = true;
+        final CountDownLatch latch1 = new CountDownLatch(1);
+        final boolean[] failed = {false};
+        build().done(new FlowDoneHandler() {
+            @Override
+            public void handle(Map data) {
+                latch1.countDown();
+            }
+        }).error(new FlowErrorHandler() {
+            @Override
+            public void handle(ErrorCode errCode, Map data) {
+                failed[0] = !data.containsKey("last");
+                latch1.countDown();
+            }
+        }).start();
+        latch1.await(10, TimeUnit.SECONDS);
+        Assert.assertTrue(failed[0]);
+        Assert.assertEquals(2, rollbacks.get());
+    }
+}
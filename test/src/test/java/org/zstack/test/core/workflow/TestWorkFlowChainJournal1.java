@@ -0,0 +1,137 @@
+package org.zstack.test.core.workflow;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Od;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.db.StepJournal;
+import org.zstack.core.workflow.*;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.test.Api;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+import org.zstack.utils.path.PathUtil;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. run a work flow chain and take the step journal when the chain is in the middle of flow-1, as a crash does
+ * 2. restart the step journal with the taken journal whose last line is half written
+ *
+ * confirm the chain is replayed to the database and the broken line is skipped
+ * confirm the chain can be carried on from flow-1
+ */
+public class TestWorkFlowChainJournal1 {
+    CLogger logger = Utils.getLogger(TestWorkFlowChainJournal1.class);
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    StepJournal journal;
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    int[] count = new int[3];
+
+    class Flow implements WorkFlow {
+        int index;
+
+        Flow(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void process(WorkFlowContext ctx) throws WorkFlowException {
+            count[index]++;
+            if (index == 1 && count[index] == 1) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new CloudRuntimeException(e);
+                }
+            }
+        }
+
+        @Override
+        public void rollback(WorkFlowContext ctx) {
+        }
+
+        @Override
+        public String getName() {
+            return "flow-" + index;
+        }
+    }
+
+    private WorkFlowChain newChain() {
+        return new WorkFlowChain("TestWorkFlowChainJournal1").add(new Flow(0)).add(new Flow(1)).add(new Flow(2)).build();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("PortalForUnitTest.xml").addXml("AccountManager.xml").build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        journal = loader.getComponent(StepJournal.class);
+        api = new Api();
+        api.startServer();
+    }
+
+    @Test
+    public void test() throws Exception {
+        Assert.assertTrue(journal.isEnabled());
+        final WorkFlowChain chain = newChain();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    chain.run();
+                } catch (WorkFlowException e) {
+                    logger.warn(e.getMessage(), e);
+                }
+            }
+        });
+        t.start();
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        File journalFile = new File(PathUtil.join(CoreGlobalProperty.USER_HOME, "step_journal", "journal.log"));
+        String crashed = FileUtils.readFileToString(journalFile);
+        release.countDown();
+        t.join(TimeUnit.SECONDS.toMillis(10));
+        // the chain ended within the persist threshold, it never touched the database
+        Assert.assertNull(dbf.findByUuid(chain.getUuid(), WorkFlowChainVO.class));
+
+        journal.stop();
+        FileUtils.writeStringToFile(journalFile, crashed + "{\"op\":\"put\",\"gro");
+        journal.start();
+        Assert.assertEquals(0, journalFile.length());
+
+        WorkFlowChainVO cvo = dbf.findByUuid(chain.getUuid(), WorkFlowChainVO.class);
+        Assert.assertNotNull(cvo);
+        Assert.assertEquals(WorkFlowChainState.Processing, cvo.getState());
+        SimpleQuery<WorkFlowVO> q = dbf.createQuery(WorkFlowVO.class);
+        q.add(WorkFlowVO_.chainUuid, Op.EQ, chain.getUuid());
+        q.orderBy(WorkFlowVO_.position, Od.ASC);
+        List<WorkFlowVO> vos = q.list();
+        Assert.assertEquals(2, vos.size());
+        Assert.assertEquals(WorkFlowState.Done, vos.get(0).getState());
+        Assert.assertEquals(WorkFlowState.Processing, vos.get(1).getState());
+
+        newChain().carryOn(chain.getUuid());
+        Assert.assertEquals(1, count[0]);
+        Assert.assertEquals(2, count[1]);
+        Assert.assertEquals(2, count[2]);
+        cvo = dbf.findByUuid(chain.getUuid(), WorkFlowChainVO.class);
+        Assert.assertEquals(WorkFlowChainState.ProcessDone, cvo.getState());
+    }
+}
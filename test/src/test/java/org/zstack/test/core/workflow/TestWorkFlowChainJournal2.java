@@ -0,0 +1,112 @@
+package org.zstack.test.core.workflow;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.DbGlobalProperty;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.workflow.*;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.test.Api;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. set StepJournal.persistThreshold to 1 second
+ * 2. run a chain finishing at once and a chain whose flow-1 takes 3 seconds
+ *
+ * confirm the short chain never touches the database
+ * confirm the long chain is written to the database while it's running, and continues in the database
+ */
+public class TestWorkFlowChainJournal2 {
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    long threshold;
+    String longChainUuid;
+    boolean inDbWhenRunning;
+
+    class Flow implements WorkFlow {
+        int index;
+        boolean slow;
+
+        Flow(int index, boolean slow) {
+            this.index = index;
+            this.slow = slow;
+        }
+
+        @Override
+        public void process(WorkFlowContext ctx) throws WorkFlowException {
+            if (!slow) {
+                return;
+            }
+
+            if (index == 1) {
+                try {
+                    TimeUnit.SECONDS.sleep(3);
+                } catch (InterruptedException e) {
+                    throw new CloudRuntimeException(e);
+                }
+            } else if (index == 2) {
+                inDbWhenRunning = dbf.findByUuid(longChainUuid, WorkFlowChainVO.class) != null;
+            }
+        }
+
+        @Override
+        public void rollback(WorkFlowContext ctx) {
+        }
+
+        @Override
+        public String getName() {
+            return "flow-" + index;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("PortalForUnitTest.xml").addXml("AccountManager.xml").build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        threshold = DbGlobalProperty.STEP_JOURNAL_PERSIST_THRESHOLD;
+        DbGlobalProperty.STEP_JOURNAL_PERSIST_THRESHOLD = 1;
+        api = new Api();
+        api.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        DbGlobalProperty.STEP_JOURNAL_PERSIST_THRESHOLD = threshold;
+    }
+
+    @Test
+    public void test() throws WorkFlowException {
+        WorkFlowChain shortChain = new WorkFlowChain("short").add(new Flow(0, false)).add(new Flow(1, false)).build();
+        shortChain.run();
+        Assert.assertNull(dbf.findByUuid(shortChain.getUuid(), WorkFlowChainVO.class));
+
+        WorkFlowChain longChain = new WorkFlowChain("long").add(new Flow(0, true)).add(new Flow(1, true)).add(new Flow(2, true)).build();
+        longChainUuid = longChain.getUuid();
+        longChain.run();
+        Assert.assertTrue(inDbWhenRunning);
+
+        WorkFlowChainVO cvo = dbf.findByUuid(longChainUuid, WorkFlowChainVO.class);
+        Assert.assertNotNull(cvo);
+        Assert.assertEquals(WorkFlowChainState.ProcessDone, cvo.getState());
+        Assert.assertEquals(2, cvo.getCurrentPosition());
+        SimpleQuery<WorkFlowVO> q = dbf.createQuery(WorkFlowVO.class);
+        q.add(WorkFlowVO_.chainUuid, Op.EQ, longChainUuid);
+        List<WorkFlowVO> vos = q.list();
+        Assert.assertEquals(3, vos.size());
+        for (WorkFlowVO vo : vos) {
+            Assert.assertEquals(WorkFlowState.Done, vo.getState());
+        }
+    }
+}
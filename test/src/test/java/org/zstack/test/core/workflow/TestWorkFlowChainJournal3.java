@@ -0,0 +1,119 @@
+package org.zstack.test.core.workflow;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Od;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.db.StepJournal;
+import org.zstack.core.workflow.*;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.test.Api;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. run a work flow chain and stop the step journal when the chain is in the middle of flow-1
+ *
+ * confirm the running chain is written to the database when the journal stops
+ * confirm the chain continues in the database and finishes
+ */
+public class TestWorkFlowChainJournal3 {
+    CLogger logger = Utils.getLogger(TestWorkFlowChainJournal3.class);
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    StepJournal journal;
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    class Flow implements WorkFlow {
+        int index;
+
+        Flow(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void process(WorkFlowContext ctx) throws WorkFlowException {
+            if (index == 1) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new CloudRuntimeException(e);
+                }
+            }
+        }
+
+        @Override
+        public void rollback(WorkFlowContext ctx) {
+        }
+
+        @Override
+        public String getName() {
+            return "flow-" + index;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("PortalForUnitTest.xml").addXml("AccountManager.xml").build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        journal = loader.getComponent(StepJournal.class);
+        api = new Api();
+        api.startServer();
+    }
+
+    @Test
+    public void test() throws Exception {
+        final WorkFlowChain chain = new WorkFlowChain("TestWorkFlowChainJournal3").add(new Flow(0)).add(new Flow(1)).add(new Flow(2)).build();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    chain.run();
+                } catch (WorkFlowException e) {
+                    logger.warn(e.getMessage(), e);
+                }
+            }
+        });
+        t.start();
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        journal.stop();
+        WorkFlowChainVO cvo = dbf.findByUuid(chain.getUuid(), WorkFlowChainVO.class);
+        Assert.assertNotNull(cvo);
+        Assert.assertEquals(WorkFlowChainState.Processing, cvo.getState());
+        SimpleQuery<WorkFlowVO> q = dbf.createQuery(WorkFlowVO.class);
+        q.add(WorkFlowVO_.chainUuid, Op.EQ, chain.getUuid());
+        q.orderBy(WorkFlowVO_.position, Od.ASC);
+        List<WorkFlowVO> vos = q.list();
+        Assert.assertEquals(2, vos.size());
+        Assert.assertEquals(WorkFlowState.Done, vos.get(0).getState());
+        Assert.assertEquals(WorkFlowState.Processing, vos.get(1).getState());
+
+        release.countDown();
+        t.join(TimeUnit.SECONDS.toMillis(10));
+        cvo = dbf.findByUuid(chain.getUuid(), WorkFlowChainVO.class);
+        Assert.assertEquals(WorkFlowChainState.ProcessDone, cvo.getState());
+        vos = q.list();
+        Assert.assertEquals(3, vos.size());
+        for (WorkFlowVO vo : vos) {
+            Assert.assertEquals(WorkFlowState.Done, vo.getState());
+        }
+
+        journal.start();
+    }
+}
@@ -0,0 +1,137 @@
+package org.zstack.test.core.workflow;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.CoreGlobalProperty;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.DbGlobalProperty;
+import org.zstack.core.workflow.*;
+import org.zstack.header.exception.CloudRuntimeException;
+import org.zstack.test.Api;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.utils.Utils;
+import org.zstack.utils.gson.JSONObjectUtil;
+import org.zstack.utils.logging.CLogger;
+import org.zstack.utils.path.PathUtil;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. set StepJournal.maxSize to 0 so the journal is compacted every time the persist task runs
+ * 2. run some chains to the end, then run a chain blocking in flow-1
+ * 3. wait for the persist task
+ *
+ * confirm the compacted journal only has the last snapshots of the blocking chain
+ * confirm the blocking chain finishes without touching the database
+ */
+public class TestWorkFlowChainJournal4 {
+    CLogger logger = Utils.getLogger(TestWorkFlowChainJournal4.class);
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    long maxSize;
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    class Flow implements WorkFlow {
+        int index;
+        boolean block;
+
+        Flow(int index, boolean block) {
+            this.index = index;
+            this.block = block;
+        }
+
+        @Override
+        public void process(WorkFlowContext ctx) throws WorkFlowException {
+            if (block && index == 1) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new CloudRuntimeException(e);
+                }
+            }
+        }
+
+        @Override
+        public void rollback(WorkFlowContext ctx) {
+        }
+
+        @Override
+        public String getName() {
+            return "flow-" + index;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("PortalForUnitTest.xml").addXml("AccountManager.xml").build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        maxSize = DbGlobalProperty.STEP_JOURNAL_MAX_SIZE;
+        DbGlobalProperty.STEP_JOURNAL_MAX_SIZE = 0;
+        api = new Api();
+        api.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        DbGlobalProperty.STEP_JOURNAL_MAX_SIZE = maxSize;
+    }
+
+    @Test
+    public void test() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            new WorkFlowChain("short-" + i).add(new Flow(0, false)).add(new Flow(1, false)).build().run();
+        }
+
+        final WorkFlowChain chain = new WorkFlowChain("TestWorkFlowChainJournal4").add(new Flow(0, true)).add(new Flow(1, true)).add(new Flow(2, true)).build();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    chain.run();
+                } catch (WorkFlowException e) {
+                    logger.warn(e.getMessage(), e);
+                }
+            }
+        });
+        t.start();
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // the persist task runs every StepJournal.persistThreshold/2 seconds
+        TimeUnit.SECONDS.sleep(DbGlobalProperty.STEP_JOURNAL_PERSIST_THRESHOLD / 2 + 1);
+
+        File journalFile = new File(PathUtil.join(CoreGlobalProperty.USER_HOME, "step_journal", "journal.log"));
+        List<String> lines = FileUtils.readLines(journalFile);
+        // begin, the chain, flow-0 and flow-1
+        Assert.assertEquals(4, lines.size());
+        String group = null;
+        for (String line : lines) {
+            Map r = JSONObjectUtil.toObject(line, LinkedHashMap.class);
+            Assert.assertFalse("end".equals(r.get("op")));
+            if (group == null) {
+                Assert.assertEquals("begin", r.get("op"));
+                group = (String) r.get("group");
+            } else {
+                Assert.assertEquals(group, r.get("group"));
+            }
+        }
+
+        release.countDown();
+        t.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertNull(dbf.findByUuid(chain.getUuid(), WorkFlowChainVO.class));
+    }
+}
@@ -0,0 +1,92 @@
+package org.zstack.test.core.workflow;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.DbGlobalProperty;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.core.db.StepJournal;
+import org.zstack.core.workflow.*;
+import org.zstack.test.Api;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+/**
+ * 1. set StepJournal.enabled to false
+ * 2. run a work flow chain
+ *
+ * confirm every step of the chain is written to the database while it's running
+ */
+public class TestWorkFlowChainJournal5 {
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    StepJournal journal;
+    String chainUuid;
+    boolean chainInDb;
+    WorkFlowState flow0State;
+
+    class Flow implements WorkFlow {
+        int index;
+
+        Flow(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void process(WorkFlowContext ctx) throws WorkFlowException {
+            if (index == 1) {
+                chainInDb = dbf.findByUuid(chainUuid, WorkFlowChainVO.class) != null;
+                SimpleQuery<WorkFlowVO> q = dbf.createQuery(WorkFlowVO.class);
+                q.add(WorkFlowVO_.chainUuid, Op.EQ, chainUuid);
+                q.add(WorkFlowVO_.position, Op.EQ, 0);
+                WorkFlowVO vo = q.find();
+                flow0State = vo == null ? null : vo.getState();
+            }
+        }
+
+        @Override
+        public void rollback(WorkFlowContext ctx) {
+        }
+
+        @Override
+        public String getName() {
+            return "flow-" + index;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        loader = con.addXml("PortalForUnitTest.xml").addXml("AccountManager.xml").build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        journal = loader.getComponent(StepJournal.class);
+        DbGlobalProperty.STEP_JOURNAL_ENABLED = false;
+        api = new Api();
+        api.startServer();
+    }
+
+    @After
+    public void tearDown() {
+        DbGlobalProperty.STEP_JOURNAL_ENABLED = true;
+    }
+
+    @Test
+    public void test() throws WorkFlowException {
+        Assert.assertFalse(journal.isEnabled());
+
+        WorkFlowChain chain = new WorkFlowChain("TestWorkFlowChainJournal5").add(new Flow(0)).add(new Flow(1)).build();
+        chainUuid = chain.getUuid();
+        chain.run();
+
+        Assert.assertTrue(chainInDb);
+        Assert.assertEquals(WorkFlowState.Done, flow0State);
+        WorkFlowChainVO cvo = dbf.findByUuid(chainUuid, WorkFlowChainVO.class);
+        Assert.assertEquals(WorkFlowChainState.ProcessDone, cvo.getState());
+    }
+}
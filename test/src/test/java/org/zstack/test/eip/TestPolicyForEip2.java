@@ -0,0 +1,95 @@
+package org.zstack.test.eip;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.identity.*;
+import org.zstack.header.network.l3.L3NetworkInventory;
+import org.zstack.network.service.eip.EipConstant;
+import org.zstack.network.service.eip.EipInventory;
+import org.zstack.network.service.eip.EipVO;
+import org.zstack.network.service.vip.VipConstant;
+import org.zstack.network.service.vip.VipInventory;
+import org.zstack.network.service.vip.VipVO;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.test.identity.IdentityCreator;
+import org.zstack.utils.CollectionUtils;
+import org.zstack.utils.function.Function;
+
+import java.util.List;
+
+/**
+ * test quota usage counters of resources deleted by foreign keys
+ *
+ * 1. create an eip
+ * 2. delete its vip from the database, the eip is deleted by the foreign key
+ *
+ * confirm the usage of both vip and eip is 0
+ * confirm the account reference of the eip is removed
+ */
+public class TestPolicyForEip2 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/eip/TestPolicyForEip.xml", con);
+        deployer.addSpringConfig("VirtualRouter.xml");
+        deployer.addSpringConfig("VirtualRouterSimulator.xml");
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.addSpringConfig("vip.xml");
+        deployer.addSpringConfig("eip.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        dbf = loader.getComponent(DatabaseFacade.class);
+    }
+
+    private long getUsed(final String quotaName, SessionInventory session) throws ApiSenderException {
+        List<Quota.QuotaUsage> usages = api.getQuotaUsage(null, session);
+        Quota.QuotaUsage u = CollectionUtils.find(usages, new Function<Quota.QuotaUsage, Quota.QuotaUsage>() {
+            @Override
+            public Quota.QuotaUsage call(Quota.QuotaUsage arg) {
+                return arg.getName().equals(quotaName) ? arg : null;
+            }
+        });
+        Assert.assertNotNull(u);
+        return u.getUsed();
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        L3NetworkInventory l3 = deployer.l3Networks.get("PublicNetwork");
+
+        IdentityCreator identityCreator = new IdentityCreator(api);
+        identityCreator.useAccount("test");
+        SessionInventory session = identityCreator.getAccountSession();
+
+        VipInventory vip = api.acquireIp(l3.getUuid(), session);
+        EipInventory eip = api.createEip("eip", vip.getUuid(), null, session);
+        Assert.assertEquals(1, getUsed(VipConstant.QUOTA_VIP_NUM, session));
+        Assert.assertEquals(1, getUsed(EipConstant.QUOTA_EIP_NUM, session));
+
+        dbf.removeByPrimaryKey(vip.getUuid(), VipVO.class);
+        Assert.assertFalse(dbf.isExist(eip.getUuid(), EipVO.class));
+
+        Assert.assertEquals(0, getUsed(VipConstant.QUOTA_VIP_NUM, session));
+        Assert.assertEquals(0, getUsed(EipConstant.QUOTA_EIP_NUM, session));
+
+        SimpleQuery<AccountResourceRefVO> q = dbf.createQuery(AccountResourceRefVO.class);
+        q.add(AccountResourceRefVO_.resourceUuid, Op.EQ, eip.getUuid());
+        Assert.assertFalse(q.isExists());
+    }
+}
@@ -0,0 +1,132 @@
+package org.zstack.test.lb;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.cloudbus.CloudBusCallBack;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.message.MessageReply;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.network.service.lb.*;
+import org.zstack.network.service.virtualrouter.lb.VirtualRouterLoadBalancerBackend;
+import org.zstack.simulator.virtualrouter.VirtualRouterSimulatorConfig;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.zstack.utils.CollectionDSL.list;
+
+/**
+ * 1. create a lb
+ * 2. active the vm nic already active on the lb
+ *
+ * confirm the lb is not refreshed on the vr
+ *
+ * 3. send many refresh requests of the lb at once
+ *
+ * confirm all requests succeed
+ * confirm the lb is refreshed on the vr fewer times than the requests
+ *
+ * 4. refresh the lb by API
+ *
+ * confirm the lb is refreshed on the vr
+ *
+ * 5. make another management node join, then active the vm nic already active on the lb
+ *
+ * confirm the lb is refreshed on the vr
+ */
+public class TestVirtualRouterLb19 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    VirtualRouterSimulatorConfig vconfig;
+    int num = 20;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/lb/TestVirtualRouterLb.xml", con);
+        deployer.addSpringConfig("VirtualRouter.xml");
+        deployer.addSpringConfig("VirtualRouterSimulator.xml");
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.addSpringConfig("vip.xml");
+        deployer.addSpringConfig("lb.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        vconfig = loader.getComponent(VirtualRouterSimulatorConfig.class);
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        session = api.loginAsAdmin();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        LoadBalancerInventory lb = deployer.loadBalancers.get("lb");
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        LoadBalancerVO lbvo = dbf.findByUuid(lb.getUuid(), LoadBalancerVO.class);
+        LoadBalancerListenerVO listener = lbvo.getListeners().iterator().next();
+
+        vconfig.refreshLbCmds.clear();
+        LoadBalancerActiveVmNicMsg amsg = new LoadBalancerActiveVmNicMsg();
+        amsg.setLoadBalancerUuid(lb.getUuid());
+        amsg.setListenerUuid(listener.getUuid());
+        amsg.setVmNicUuids(list(vm.getVmNics().get(0).getUuid()));
+        bus.makeTargetServiceIdByResourceUuid(amsg, LoadBalancerConstants.SERVICE_ID, lb.getUuid());
+        MessageReply reply = bus.call(amsg);
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertTrue(vconfig.refreshLbCmds.isEmpty());
+
+        final CountDownLatch latch = new CountDownLatch(num);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < num; i++) {
+            RefreshLoadBalancerMsg msg = new RefreshLoadBalancerMsg();
+            msg.setUuid(lb.getUuid());
+            bus.makeTargetServiceIdByResourceUuid(msg, LoadBalancerConstants.SERVICE_ID, lb.getUuid());
+            bus.send(msg, new CloudBusCallBack() {
+                @Override
+                public void run(MessageReply reply) {
+                    if (!reply.isSuccess()) {
+                        failures.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(latch.await(60, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        Assert.assertFalse(vconfig.refreshLbCmds.isEmpty());
+        Assert.assertTrue(vconfig.refreshLbCmds.size() < num);
+
+        vconfig.refreshLbCmds.clear();
+        api.refreshLoadBalancer(lb.getUuid());
+        Assert.assertEquals(1, vconfig.refreshLbCmds.size());
+
+        // the vr may have been configured by another management node
+        loader.getComponent(VirtualRouterLoadBalancerBackend.class).nodeJoin(Platform.getUuid());
+        vconfig.refreshLbCmds.clear();
+        amsg = new LoadBalancerActiveVmNicMsg();
+        amsg.setLoadBalancerUuid(lb.getUuid());
+        amsg.setListenerUuid(listener.getUuid());
+        amsg.setVmNicUuids(list(vm.getVmNics().get(0).getUuid()));
+        bus.makeTargetServiceIdByResourceUuid(amsg, LoadBalancerConstants.SERVICE_ID, lb.getUuid());
+        reply = bus.call(amsg);
+        Assert.assertTrue(reply.isSuccess());
+        Assert.assertEquals(1, vconfig.refreshLbCmds.size());
+    }
+}
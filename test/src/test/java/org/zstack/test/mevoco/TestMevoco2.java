@@ -29,7 +29,7 @@ import org.zstack.header.vm.VmInstanceInventory;
 import org.zstack.header.vm.VmInstanceVO;
 import org.zstack.header.vm.VmNicVO;
 import org.zstack.kvm.APIAddKVMHostMsg;
-import org.zstack.network.service.flat.FlatDhcpBackend.ApplyDhcpCmd;
+import org.zstack.network.service.flat.FlatDhcpBackend.L3DhcpTO;
 import org.zstack.network.service.flat.FlatDhcpBackend.DhcpInfo;
 import org.zstack.network.service.flat.FlatNetworkServiceSimulatorConfig;
 import org.zstack.storage.primary.local.LocalStorageKvmSftpBackupStorageMediatorImpl.SftpDownloadBitsCmd;
@@ -167,11 +167,11 @@ public class TestMevoco2 {
 
         Assert.assertEquals(num, vms.size());
 
-        fconfig.applyDhcpCmdList.clear();
+        fconfig.batchApplyDhcpCmds.clear();
         HostInventory host = deployer.hosts.get("host1");
         api.reconnectHost(host.getUuid());
-        Assert.assertFalse(fconfig.applyDhcpCmdList.isEmpty());
-        ApplyDhcpCmd cmd = fconfig.applyDhcpCmdList.get(0);
+        Assert.assertEquals(1, fconfig.batchApplyDhcpCmds.size());
+        L3DhcpTO cmd = fconfig.batchApplyDhcpCmds.get(0).l3s.get(0);
         Assert.assertEquals(num+1, cmd.dhcp.size());
 
         List<VmInstanceVO> vms = dbf.listAll(VmInstanceVO.class);
@@ -31,9 +31,9 @@ import org.zstack.mevoco.KVMAddOns.NicQos;
 import org.zstack.mevoco.KVMAddOns.VolumeQos;
 import org.zstack.mevoco.MevocoConstants;
 import org.zstack.mevoco.MevocoSystemTags;
-import org.zstack.network.service.flat.FlatDhcpBackend.ApplyDhcpCmd;
+import org.zstack.network.service.flat.FlatDhcpBackend.BatchApplyDhcpCmd;
 import org.zstack.network.service.flat.FlatDhcpBackend.DhcpInfo;
-import org.zstack.network.service.flat.FlatDhcpBackend.PrepareDhcpCmd;
+import org.zstack.network.service.flat.FlatDhcpBackend.L3DhcpTO;
 import org.zstack.network.service.flat.FlatNetworkServiceConstant;
 import org.zstack.network.service.flat.FlatNetworkServiceSimulatorConfig;
 import org.zstack.network.service.flat.FlatNetworkSystemTags;
@@ -137,16 +137,19 @@ public class TestMevoco20 {
 
         api.attachNetworkServiceToL3Network(l3.getUuid(), vo.getUuid(), list(NetworkServiceType.DHCP.toString()));
 
-        fconfig.applyDhcpCmdList.clear();
+        fconfig.batchApplyDhcpCmds.clear();
 
         fconfig.connectCmds.clear();
         HostInventory host = deployer.hosts.get("host1");
         api.reconnectHost(host.getUuid());
 
         VmNicInventory nic = vm.getVmNics().get(0);
-        ApplyDhcpCmd acmd = fconfig.applyDhcpCmdList.get(0);
-        Assert.assertFalse(acmd.dhcp.isEmpty());
-        DhcpInfo dhcp = acmd.dhcp.get(0);
+        Assert.assertEquals(1, fconfig.batchApplyDhcpCmds.size());
+        BatchApplyDhcpCmd bcmd = fconfig.batchApplyDhcpCmds.get(0);
+        Assert.assertTrue(bcmd.rebuild);
+        L3DhcpTO l3dhcp = bcmd.l3s.get(0);
+        Assert.assertFalse(l3dhcp.dhcp.isEmpty());
+        DhcpInfo dhcp = l3dhcp.dhcp.get(0);
         Assert.assertEquals(nic.getIp(), dhcp.ip);
         Assert.assertEquals(nic.getMac(), dhcp.mac);
         Assert.assertEquals(nic.getGateway(), dhcp.gateway);
@@ -162,12 +165,10 @@ public class TestMevoco20 {
         String dhcpServerIpUuid = tokens.get(FlatNetworkSystemTags.L3_NETWORK_DHCP_IP_UUID_TOKEN);
         UsedIpVO ipvo = dbf.findByUuid(dhcpServerIpUuid, UsedIpVO.class);
         Assert.assertNotNull(ipvo);
-        Assert.assertFalse(fconfig.prepareDhcpCmdList.isEmpty());
-        PrepareDhcpCmd cmd = fconfig.prepareDhcpCmdList.get(0);
         Assert.assertEquals(ipvo.getIp(), dhcpServerIp);
-        Assert.assertEquals(dhcpServerIp, cmd.dhcpServerIp);
-        Assert.assertEquals(dhcp.bridgeName, cmd.bridgeName);
-        Assert.assertEquals(ipvo.getNetmask(), cmd.dhcpNetmask);
+        Assert.assertEquals(dhcpServerIp, l3dhcp.dhcpServerIp);
+        Assert.assertEquals(dhcp.bridgeName, l3dhcp.bridgeName);
+        Assert.assertEquals(ipvo.getNetmask(), l3dhcp.dhcpNetmask);
 
         Assert.assertEquals(1, fconfig.connectCmds.size());
     }
@@ -0,0 +1,95 @@
+package org.zstack.test.mevoco;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.header.vm.VmNicInventory;
+import org.zstack.network.service.flat.FlatDhcpBackend.ApplyDhcpCmd;
+import org.zstack.network.service.flat.FlatDhcpBackend.DhcpInfo;
+import org.zstack.network.service.flat.FlatNetworkServiceSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig.Capacity;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.data.SizeUnit;
+
+/**
+ * 1. make the agent not support batch applying dhcp
+ * 2. reconnect the host
+ *
+ * confirm the dhcp of the vm is programmed by the prepare/apply calls of each L3 network
+ */
+public class TestMevoco24 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    LocalStorageSimulatorConfig config;
+    FlatNetworkServiceSimulatorConfig fconfig;
+    long totalSize = SizeUnit.GIGABYTE.toByte(100);
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/mevoco/TestMevoco.xml", con);
+        deployer.addSpringConfig("mevocoRelated.xml");
+        deployer.load();
+
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(LocalStorageSimulatorConfig.class);
+        fconfig = loader.getComponent(FlatNetworkServiceSimulatorConfig.class);
+
+        Capacity c = new Capacity();
+        c.total = totalSize;
+        c.avail = totalSize;
+
+        config.capacityMap.put("host1", c);
+
+        deployer.build();
+        api = deployer.getApi();
+        session = api.loginAsAdmin();
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        VmNicInventory nic = vm.getVmNics().get(0);
+
+        fconfig.batchApplyDhcpSupported = false;
+        fconfig.batchApplyDhcpCmds.clear();
+        fconfig.prepareDhcpCmdList.clear();
+        fconfig.applyDhcpCmdList.clear();
+
+        HostInventory host = deployer.hosts.get("host1");
+        api.reconnectHost(host.getUuid());
+
+        Assert.assertTrue(fconfig.batchApplyDhcpCmds.isEmpty());
+        Assert.assertEquals(1, fconfig.prepareDhcpCmdList.size());
+        Assert.assertEquals(1, fconfig.applyDhcpCmdList.size());
+
+        ApplyDhcpCmd cmd = fconfig.applyDhcpCmdList.get(0);
+        Assert.assertTrue(cmd.rebuild);
+        DhcpInfo info = null;
+        for (DhcpInfo d : cmd.dhcp) {
+            if (d.mac.equals(nic.getMac())) {
+                info = d;
+            }
+        }
+        Assert.assertNotNull(info);
+        Assert.assertEquals(nic.getIp(), info.ip);
+    }
+}
@@ -0,0 +1,147 @@
+package org.zstack.test.mevoco;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.header.vm.VmInstanceVO;
+import org.zstack.header.vm.VmNicInventory;
+import org.zstack.network.service.flat.FlatDhcpBackend.BatchApplyDhcpCmd;
+import org.zstack.network.service.flat.FlatDhcpBackend.DhcpInfo;
+import org.zstack.network.service.flat.FlatDhcpBackend.L3DhcpTO;
+import org.zstack.network.service.flat.FlatNetworkServiceSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig.Capacity;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.data.SizeUnit;
+
+/**
+ * 1. make the agent keep its dhcp table across reconnecting
+ * 2. reconnect the host twice
+ *
+ * confirm the first reconnection rebuilds the dhcp table
+ * confirm the second one sends every L3 network but no dhcp entry
+ *
+ * 3. add a dns to the L3 network and set the hostname of the vm
+ * 4. reconnect the host
+ *
+ * confirm only the changed entry of the vm is sent with the new dns and hostname
+ *
+ * 5. make the agent lose its dhcp table
+ * 6. reconnect the host
+ *
+ * confirm the dhcp table is rebuilt
+ */
+public class TestMevoco25 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    LocalStorageSimulatorConfig config;
+    FlatNetworkServiceSimulatorConfig fconfig;
+    long totalSize = SizeUnit.GIGABYTE.toByte(100);
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/mevoco/TestMevoco.xml", con);
+        deployer.addSpringConfig("mevocoRelated.xml");
+        deployer.load();
+
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(LocalStorageSimulatorConfig.class);
+        fconfig = loader.getComponent(FlatNetworkServiceSimulatorConfig.class);
+
+        Capacity c = new Capacity();
+        c.total = totalSize;
+        c.avail = totalSize;
+
+        config.capacityMap.put("host1", c);
+
+        deployer.build();
+        api = deployer.getApi();
+        session = api.loginAsAdmin();
+    }
+
+    private BatchApplyDhcpCmd reconnect(HostInventory host) throws ApiSenderException {
+        fconfig.batchApplyDhcpCmds.clear();
+        api.reconnectHost(host.getUuid());
+        Assert.assertEquals(1, fconfig.batchApplyDhcpCmds.size());
+        return fconfig.batchApplyDhcpCmds.get(0);
+    }
+
+    private DhcpInfo findDhcp(BatchApplyDhcpCmd cmd, String mac) {
+        for (L3DhcpTO to : cmd.l3s) {
+            for (DhcpInfo d : to.dhcp) {
+                if (d.mac.equals(mac)) {
+                    return d;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private int countDhcp(BatchApplyDhcpCmd cmd) {
+        int num = 0;
+        for (L3DhcpTO to : cmd.l3s) {
+            num += to.dhcp.size();
+        }
+
+        return num;
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        VmNicInventory nic = vm.getVmNics().get(0);
+        HostInventory host = deployer.hosts.get("host1");
+
+        fconfig.dhcpStateKept = true;
+
+        BatchApplyDhcpCmd cmd = reconnect(host);
+        Assert.assertTrue(cmd.rebuild);
+        Assert.assertNotNull(cmd.stateId);
+        Assert.assertNotNull(findDhcp(cmd, nic.getMac()));
+        String stateId = cmd.stateId;
+
+        cmd = reconnect(host);
+        Assert.assertFalse(cmd.rebuild);
+        Assert.assertEquals(stateId, cmd.stateId);
+        Assert.assertFalse(cmd.l3s.isEmpty());
+        Assert.assertEquals(0, countDhcp(cmd));
+        Assert.assertTrue(cmd.releaseDhcp.isEmpty());
+
+        api.addDns(nic.getL3NetworkUuid(), "8.8.8.8");
+        api.createSystemTag(vm.getUuid(), "hostname::vm1", VmInstanceVO.class);
+
+        cmd = reconnect(host);
+        Assert.assertFalse(cmd.rebuild);
+        Assert.assertEquals(stateId, cmd.stateId);
+        DhcpInfo info = findDhcp(cmd, nic.getMac());
+        Assert.assertNotNull(info);
+        Assert.assertTrue(info.dns.contains("8.8.8.8"));
+        Assert.assertTrue(info.hostname.startsWith("vm1"));
+        Assert.assertTrue(cmd.releaseDhcp.isEmpty());
+
+        fconfig.dhcpStateKept = false;
+        cmd = reconnect(host);
+        Assert.assertTrue(cmd.rebuild);
+        Assert.assertFalse(stateId.equals(cmd.stateId));
+        Assert.assertNotNull(findDhcp(cmd, nic.getMac()));
+    }
+}
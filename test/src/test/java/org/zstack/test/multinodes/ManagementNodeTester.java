@@ -17,6 +17,7 @@ import org.zstack.test.deployer.Deployer;
 import org.zstack.utils.Utils;
 import org.zstack.utils.logging.CLogger;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -78,6 +79,10 @@ public class ManagementNodeTester {
             api.startServer();
         }
 
+        // from the JVM start to all components being ready, reported to the test launching this node
+        final long startCost = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        logger.debug(String.format("node[%s] started in %s ms", serviceId, startCost));
+
         api.setTimeout(300);
         bus = loader.getComponent(CloudBusIN.class);
 
@@ -92,6 +97,7 @@ public class ManagementNodeTester {
                 } else if (nmsg.isCode(nmsg.READY)) {
                     MultiNodeTestReply reply = new MultiNodeTestReply();
                     reply.setManagementNodeId(Platform.getManagementServerId());
+                    reply.setStartCost(startCost);
                     bus.reply(msg, reply);
                 } else {
                     bus.dealWithUnknownMessage(msg);
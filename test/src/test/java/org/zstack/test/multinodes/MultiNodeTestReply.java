@@ -6,6 +6,7 @@ import org.zstack.header.message.MessageReply;
  */
 public class MultiNodeTestReply extends MessageReply {
     private String managementNodeId;
+    private long startCost;
 
     public String getManagementNodeId() {
         return managementNodeId;
@@ -14,4 +15,12 @@ public class MultiNodeTestReply extends MessageReply {
     public void setManagementNodeId(String managementNodeId) {
         this.managementNodeId = managementNodeId;
     }
+
+    public long getStartCost() {
+        return startCost;
+    }
+
+    public void setStartCost(long startCost) {
+        this.startCost = startCost;
+    }
 }
@@ -45,6 +45,7 @@ public class NodeRunner {
     private boolean loadAll;
 
     private String managementNodeId;
+    private long startCost;
 
     private volatile boolean isRunning = false;
 
@@ -92,6 +93,10 @@ public class NodeRunner {
         return managementNodeId;
     }
 
+    public long getStartCost() {
+        return startCost;
+    }
+
     private String createConfFromTemplate(String tmptName, String confFmt, Map<String, String> tokens) {
         File tmpt = PathUtil.findFileOnClassPath(tmptName);
         String conf = String.format(confFmt, serviceId);
@@ -159,6 +164,7 @@ public class NodeRunner {
             } else {
                 MultiNodeTestReply mr = (MultiNodeTestReply)r;
                 managementNodeId = mr.getManagementNodeId();
+                startCost = mr.getStartCost();
                 break;
             }
 
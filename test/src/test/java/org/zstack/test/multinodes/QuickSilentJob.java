@@ -0,0 +1,46 @@
+package org.zstack.test.multinodes;
+
+import org.springframework.beans.factory.annotation.Autowire;
+import org.springframework.beans.factory.annotation.Configurable;
+import org.zstack.core.job.Job;
+import org.zstack.core.job.JobContext;
+import org.zstack.header.core.ReturnValueCompletion;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+import org.zstack.utils.path.PathUtil;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * a job returning at once, it writes its result file to RESULT_FOLDER which is cleaned by tests, not by the job
+ */
+@Configurable(preConstruction = true, autowire = Autowire.BY_TYPE)
+public class QuickSilentJob implements Job {
+    private static final CLogger logger = Utils.getLogger(QuickSilentJob.class);
+    public static String RESULT_FOLDER = "/tmp/zstackquicksilentjobresult";
+
+    @JobContext
+    private String uuid;
+
+    @Override
+    public void run(ReturnValueCompletion<Object> completion) {
+        try {
+            File folder = new File(RESULT_FOLDER);
+            folder.mkdirs();
+            new File(PathUtil.join(folder.getAbsolutePath(), uuid)).createNewFile();
+        } catch (IOException e) {
+            logger.warn(e.getMessage(), e);
+        }
+
+        completion.success(null);
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+}
@@ -0,0 +1,17 @@
+package org.zstack.test.multinodes;
+
+import org.zstack.header.message.NeedReplyMessage;
+
+/**
+ */
+public class ReportZoneMsg extends NeedReplyMessage {
+    private String zoneUuid;
+
+    public String getZoneUuid() {
+        return zoneUuid;
+    }
+
+    public void setZoneUuid(String zoneUuid) {
+        this.zoneUuid = zoneUuid;
+    }
+}
@@ -0,0 +1,17 @@
+package org.zstack.test.multinodes;
+
+import org.zstack.header.message.MessageReply;
+
+/**
+ */
+public class ReportZoneReply extends MessageReply {
+    private String name;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,48 @@
+package org.zstack.test.multinodes;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.AbstractService;
+import org.zstack.header.message.Message;
+import org.zstack.header.zone.ZoneVO;
+
+/**
+ */
+public class ReportZoneService extends AbstractService {
+    public static String SERVICE_ID = "ReportZoneService";
+
+    @Autowired
+    private CloudBus bus;
+    @Autowired
+    private DatabaseFacade dbf;
+
+    @Override
+    public void handleMessage(Message msg) {
+        if (msg instanceof ReportZoneMsg) {
+            ReportZoneReply reply = new ReportZoneReply();
+            ZoneVO vo = dbf.findByUuid(((ReportZoneMsg) msg).getZoneUuid(), ZoneVO.class);
+            reply.setName(vo == null ? null : vo.getName());
+            bus.reply(msg, reply);
+        } else {
+            bus.dealWithUnknownMessage(msg);
+        }
+    }
+
+    @Override
+    public String getId() {
+        return bus.makeLocalServiceId(SERVICE_ID);
+    }
+
+    @Override
+    public boolean start() {
+        bus.registerService(this);
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        bus.unregisterService(this);
+        return true;
+    }
+}
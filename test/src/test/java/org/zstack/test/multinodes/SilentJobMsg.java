@@ -7,6 +7,24 @@ import org.zstack.header.message.NeedReplyMessage;
 public class SilentJobMsg extends NeedReplyMessage {
     private boolean restartable;
     private int jobNum;
+    private int queueNum = 1;
+    private boolean quick;
+
+    public int getQueueNum() {
+        return queueNum;
+    }
+
+    public void setQueueNum(int queueNum) {
+        this.queueNum = queueNum;
+    }
+
+    public boolean isQuick() {
+        return quick;
+    }
+
+    public void setQuick(boolean quick) {
+        this.quick = quick;
+    }
 
     public boolean isRestartable() {
         return restartable;
@@ -30,16 +30,25 @@ public class SilentJobService extends AbstractService {
             SilentJobMsg smsg = (SilentJobMsg) msg;
             List<String> uuids = new ArrayList<String>();
             for (int i=0; i<smsg.getJobNum(); i++) {
+                final String uuid = Platform.getUuid();
+                uuids.add(uuid);
+                String queueName = smsg.getQueueNum() > 1 ? String.format("silent-job-%s", i % smsg.getQueueNum()) : "silent-job";
+
+                if (smsg.isQuick()) {
+                    QuickSilentJob job = new QuickSilentJob();
+                    job.setUuid(uuid);
+                    jobf.execute(queueName, getId(), job, new NopeReturnValueCompletion(), null);
+                    continue;
+                }
+
                 SilentJob job = null;
                 if (smsg.isRestartable()) {
                     job = new RestartableSilentJob();
                 } else {
                     job = new SilentJob();
                 }
-                final String uuid = Platform.getUuid();
                 job.setUuid(uuid);
-                uuids.add(uuid);
-                jobf.execute("silent-job", getId(), job, new NopeReturnValueCompletion(), null);
+                jobf.execute(queueName, getId(), job, new NopeReturnValueCompletion(), null);
             }
 
             SilentJobReply reply = new SilentJobReply();
@@ -0,0 +1,55 @@
+package org.zstack.test.multinodes;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+/**
+ * 1. start a node loading all components, in a new JVM, scanning the classpath for every class lookup
+ * 2. start it again, using the class index built at compile time
+ *
+ * confirm both nodes start
+ * report the time from the JVM start to all components being ready of both
+ *
+ * the class index is read once per JVM, so each measurement needs a node of its own
+ */
+public class TestManagementNodeColdStart {
+    CLogger logger = Utils.getLogger(TestManagementNodeColdStart.class);
+    ComponentLoader loader;
+    int timeout = 600;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        con.addXml("PortalForUnitTest.xml");
+        con.addXml("AccountManager.xml");
+        loader = con.build();
+    }
+
+    private long coldStart(String name, String properties) {
+        NodeManager nodeMgr = new NodeManager();
+        try {
+            nodeMgr.setProperties(properties).createNodes(1, timeout);
+            long cost = nodeMgr.getNodes().get(0).getStartCost();
+            logger.info(String.format("[Management Node Cold Start]: %s, started in %s ms", name, cost));
+            return cost;
+        } finally {
+            nodeMgr.stopNodes(120);
+        }
+    }
+
+    @Test
+    public void test() {
+        long scanning = coldStart("scanning the classpath", "-DBeanUtils.useClassIndex=false ");
+        long indexed = coldStart("class index", null);
+        Assert.assertTrue(scanning > 0);
+        Assert.assertTrue(indexed > 0);
+        logger.info(String.format("[Management Node Cold Start]: the class index saves %s ms", scanning - indexed));
+    }
+}
@@ -0,0 +1,106 @@
+package org.zstack.test.multinodes;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.CloudBusIN;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.managementnode.ManagementNodeInventory;
+import org.zstack.header.zone.ZoneVO;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.BeanConstructor;
+import org.zstack.utils.CollectionUtils;
+import org.zstack.utils.function.Function;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. start 2 nodes
+ * 2. create a zone and let both nodes cache it
+ * 3. update the zone on node0
+ * 4. delete the zone on node0
+ *
+ * confirm node1 sees the new name after the update
+ * confirm node1 doesn't find the zone after the deletion
+ */
+public class TestMultipleNode14 {
+    ComponentLoader loader;
+    NodeManager nodeMgr;
+    CloudBusIN bus;
+    DatabaseFacade dbf;
+    Api api;
+
+    @Before
+    public void setUp() throws Exception {
+        BeanConstructor con = new BeanConstructor();
+        con.addXml("PortalForUnitTest.xml");
+        con.addXml("AccountManager.xml");
+        con.addXml("silentService.xml");
+        loader = con.build();
+        bus = loader.getComponent(CloudBusIN.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        nodeMgr = new NodeManager();
+        api = new Api();
+        api.startServer();
+        api.setTimeout(300);
+    }
+
+    private String reportZoneName(String nodeUuid, String zoneUuid) {
+        ReportZoneMsg msg = new ReportZoneMsg();
+        msg.setZoneUuid(zoneUuid);
+        bus.makeServiceIdByManagementNodeId(msg, ReportZoneService.SERVICE_ID, nodeUuid);
+        ReportZoneReply reply = (ReportZoneReply) bus.call(msg);
+        Assert.assertTrue(reply.isSuccess());
+        return reply.getName();
+    }
+
+    @Test
+    public void test() throws InterruptedException, ApiSenderException {
+        nodeMgr.setProperties("-DbFacadeDataSource.maxPoolSize=50")
+                .createLightWeightNodeWithCore(1, 300, Arrays.asList("silentService.xml"));
+        List<ManagementNodeInventory> nodes = api.listManagementNodes();
+        ManagementNodeInventory target = CollectionUtils.find(nodes, new Function<ManagementNodeInventory, ManagementNodeInventory>() {
+            @Override
+            public ManagementNodeInventory call(final ManagementNodeInventory arg) {
+                if (!arg.getUuid().equals(Platform.getManagementServerId())) {
+                    return arg;
+                }
+                return null;
+            }
+        });
+
+        try {
+            ZoneVO vo = new ZoneVO();
+            vo.setUuid(Platform.getUuid());
+            vo.setName("zone1");
+            vo.setType("TestType");
+            vo = dbf.persistAndRefresh(vo);
+
+            Assert.assertEquals("zone1", dbf.findByUuid(vo.getUuid(), ZoneVO.class).getName());
+            Assert.assertEquals("zone1", reportZoneName(target.getUuid(), vo.getUuid()));
+
+            // a found entity is a copy, changing it doesn't change the cache
+            ZoneVO found = dbf.findByUuid(vo.getUuid(), ZoneVO.class);
+            found.setName("changed");
+            Assert.assertEquals("zone1", dbf.findByUuid(vo.getUuid(), ZoneVO.class).getName());
+
+            vo.setName("zone2");
+            dbf.update(vo);
+            Assert.assertEquals("zone2", dbf.findByUuid(vo.getUuid(), ZoneVO.class).getName());
+            TimeUnit.SECONDS.sleep(3);
+            Assert.assertEquals("zone2", reportZoneName(target.getUuid(), vo.getUuid()));
+
+            dbf.remove(vo);
+            Assert.assertNull(dbf.findByUuid(vo.getUuid(), ZoneVO.class));
+            TimeUnit.SECONDS.sleep(3);
+            Assert.assertNull(reportZoneName(target.getUuid(), vo.getUuid()));
+        } finally {
+            nodeMgr.stopNodes(120);
+        }
+    }
+}
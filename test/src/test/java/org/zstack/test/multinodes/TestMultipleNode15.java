@@ -0,0 +1,107 @@
+package org.zstack.test.multinodes;
+
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.Platform;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.header.managementnode.ManagementNodeInventory;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.BeanConstructor;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. start 2 nodes sharing one job queue lock
+ * 2. submit jobs to the same queues on both nodes
+ * 3. do it again with nodes setting JobQueueFacade.shardLocks
+ *
+ * confirm all jobs complete
+ * report jobs per second of both
+ */
+public class TestMultipleNode15 {
+    CLogger logger = Utils.getLogger(TestMultipleNode15.class);
+    ComponentLoader loader;
+    CloudBus bus;
+    Api api;
+    int nodeNum = 2;
+    int jobNum = 500;
+    int queueNum = 50;
+    int timeout = 300;
+
+    @Before
+    public void setUp() throws Exception {
+        BeanConstructor con = new BeanConstructor();
+        con.addXml("PortalForUnitTest.xml");
+        con.addXml("AccountManager.xml");
+        loader = con.build();
+        bus = loader.getComponent(CloudBus.class);
+        api = new Api();
+        api.startServer();
+        api.setTimeout(300);
+    }
+
+    private double run(boolean shardLocks) throws ApiSenderException, IOException, InterruptedException {
+        File folder = new File(QuickSilentJob.RESULT_FOLDER);
+        if (folder.exists()) {
+            FileUtils.deleteDirectory(folder);
+        }
+        FileUtils.forceMkdir(folder);
+
+        NodeManager nodeMgr = new NodeManager();
+        try {
+            nodeMgr.setProperties(String.format("-DbFacadeDataSource.maxPoolSize=50 -DJobQueueFacade.shardLocks=%s", shardLocks))
+                    .createLightWeightNodeWithCore(nodeNum, 300, Arrays.asList("silentService.xml", "silentJobService.xml"));
+
+            List<String> jobUuids = new ArrayList<String>();
+            long start = System.currentTimeMillis();
+            for (ManagementNodeInventory node : api.listManagementNodes()) {
+                if (node.getUuid().equals(Platform.getManagementServerId())) {
+                    continue;
+                }
+
+                SilentJobMsg msg = new SilentJobMsg();
+                msg.setJobNum(jobNum);
+                msg.setQueueNum(queueNum);
+                msg.setQuick(true);
+                bus.makeServiceIdByManagementNodeId(msg, SilentJobService.SERVICE_ID, node.getUuid());
+                SilentJobReply reply = (SilentJobReply) bus.call(msg);
+                jobUuids.addAll(reply.getJobUuids());
+            }
+            Assert.assertEquals(nodeNum * jobNum, jobUuids.size());
+
+            long deadline = start + TimeUnit.SECONDS.toMillis(timeout);
+            while (folder.list().length < jobUuids.size() && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+
+            long cost = System.currentTimeMillis() - start;
+            for (String uuid : jobUuids) {
+                Assert.assertTrue(String.format("job[uuid:%s] doesn't complete", uuid), new File(folder, uuid).exists());
+            }
+
+            double rate = jobUuids.size() * 1000.0 / Math.max(1, cost);
+            logger.info(String.format("[Job Queue Cross Node Throughput]: shardLocks=%s, %s jobs in %s queues on %s nodes done in %s ms, %.1f jobs/s",
+                    shardLocks, jobUuids.size(), queueNum, nodeNum, cost, rate));
+            return rate;
+        } finally {
+            nodeMgr.stopNodes(120);
+        }
+    }
+
+    @Test
+    public void test() throws ApiSenderException, IOException, InterruptedException {
+        run(false);
+        run(true);
+    }
+}
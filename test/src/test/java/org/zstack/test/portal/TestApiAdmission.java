@@ -0,0 +1,138 @@
+package org.zstack.test.portal;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.Platform;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.errorcode.ErrorFacade;
+import org.zstack.core.thread.ThreadFacade;
+import org.zstack.header.apimediator.PortalErrors;
+import org.zstack.header.errorcode.ErrorCode;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.message.APIMessage;
+import org.zstack.header.vm.APIQueryVmInstanceMsg;
+import org.zstack.header.zone.APICreateZoneMsg;
+import org.zstack.portal.apimediator.ApiAdmissionController;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. block the only write worker by an API of the account A
+ * 2. queue more APIs of the account A than allowed, then an API of the account B
+ * 3. send a query API
+ * 4. unblock the write worker
+ * 5. call an API faster than the rate of its class
+ *
+ * confirm APIs beyond the queue limit of the account are rejected with a retry-after hint
+ * confirm the query API is handled while the write worker is blocked
+ * confirm the API of the account B is handled before the APIs the account A queued before it
+ * confirm the API beyond the rate of its class is rejected
+ */
+public class TestApiAdmission {
+    ComponentLoader loader;
+    ThreadFacade thdf;
+    DatabaseFacade dbf;
+    ErrorFacade errf;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        con.addXml("PortalForUnitTest.xml");
+        loader = con.build();
+        thdf = loader.getComponent(ThreadFacade.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        errf = loader.getComponent(ErrorFacade.class);
+    }
+
+    private <T extends APIMessage> T message(T msg, String accountUuid) {
+        SessionInventory session = new SessionInventory();
+        session.setUuid(Platform.getUuid());
+        session.setAccountUuid(accountUuid);
+        msg.setSession(session);
+        return msg;
+    }
+
+    @Test
+    public void test() throws InterruptedException {
+        ApiAdmissionController admission = new ApiAdmissionController(thdf, dbf, errf);
+        admission.setWorkerNum(1);
+        admission.setReadWorkerNum(1);
+        admission.setMaxQueuedPerAccount(3);
+        admission.init();
+
+        final String accountA = Platform.getUuid();
+        final String accountB = Platform.getUuid();
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch queryDone = new CountDownLatch(1);
+        final CountDownLatch allDone = new CountDownLatch(5);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        ApiAdmissionController.Handler handler = new ApiAdmissionController.Handler() {
+            @Override
+            public void handle(APIMessage msg) {
+                if (msg instanceof APIQueryVmInstanceMsg) {
+                    queryDone.countDown();
+                    return;
+                }
+
+                APICreateZoneMsg zmsg = (APICreateZoneMsg) msg;
+                if ("A1".equals(zmsg.getName())) {
+                    try {
+                        blocker.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                order.add(zmsg.getName());
+                allDone.countDown();
+            }
+        };
+
+        for (int i = 1; i <= 4; i++) {
+            APICreateZoneMsg msg = message(new APICreateZoneMsg(), accountA);
+            msg.setName("A" + i);
+            Assert.assertNull(admission.submit(msg, handler));
+        }
+
+        APICreateZoneMsg a5 = message(new APICreateZoneMsg(), accountA);
+        a5.setName("A5");
+        ErrorCode err = admission.submit(a5, handler);
+        Assert.assertNotNull(err);
+        Assert.assertEquals(PortalErrors.TOO_MANY_REQUESTS.toString(), err.getCode());
+        Assert.assertTrue(err.getDetails().contains("retry after"));
+
+        APICreateZoneMsg b1 = message(new APICreateZoneMsg(), accountB);
+        b1.setName("B1");
+        Assert.assertNull(admission.submit(b1, handler));
+
+        Assert.assertNull(admission.submit(message(new APIQueryVmInstanceMsg(), accountA), handler));
+        Assert.assertTrue(queryDone.await(10, TimeUnit.SECONDS));
+
+        blocker.countDown();
+        Assert.assertTrue(allDone.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("A1", order.get(0));
+        Assert.assertTrue(order.indexOf("B1") < order.indexOf("A3"));
+        Assert.assertEquals(1, (long) admission.getRejected().get("write"));
+
+        ApiAdmissionController limited = new ApiAdmissionController(thdf, dbf, errf);
+        limited.setApiClassRates("APICreateZoneMsg:0.1");
+        limited.init();
+        APICreateZoneMsg z1 = message(new APICreateZoneMsg(), accountB);
+        z1.setName("Z1");
+        APICreateZoneMsg z2 = message(new APICreateZoneMsg(), accountB);
+        z2.setName("Z2");
+        Assert.assertNull(limited.submit(z1, handler));
+        err = limited.submit(z2, handler);
+        Assert.assertNotNull(err);
+        Assert.assertEquals(PortalErrors.TOO_MANY_REQUESTS.toString(), err.getCode());
+    }
+}
@@ -0,0 +1,94 @@
+package org.zstack.test.securitygroup;
+
+import junit.framework.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.identity.*;
+import org.zstack.identity.IdentityGlobalConfig;
+import org.zstack.network.securitygroup.SecurityGroupConstant;
+import org.zstack.network.securitygroup.SecurityGroupInventory;
+import org.zstack.network.securitygroup.SecurityGroupVO;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.test.identity.IdentityCreator;
+import org.zstack.utils.CollectionUtils;
+import org.zstack.utils.Utils;
+import org.zstack.utils.function.Function;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * test quota usage counters
+ *
+ * 1. create and delete security groups
+ * confirm the usage follows creating and deleting
+ *
+ * 2. corrupt the counter
+ * confirm the counter is corrected by reconciliation
+ */
+public class TestPolicyForSecurityGroup2 {
+    static CLogger logger = Utils.getLogger(TestPolicyForSecurityGroup2.class);
+    static Deployer deployer;
+    static Api api;
+    static ComponentLoader loader;
+    static DatabaseFacade dbf;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/securityGroup/TestPolicyForSecurityGroup.xml", con);
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        dbf = loader.getComponent(DatabaseFacade.class);
+    }
+
+    private long getUsed(String accountUuid, SessionInventory session) throws ApiSenderException {
+        List<Quota.QuotaUsage> usages = api.getQuotaUsage(accountUuid, session);
+        Quota.QuotaUsage u = CollectionUtils.find(usages, new Function<Quota.QuotaUsage, Quota.QuotaUsage>() {
+            @Override
+            public Quota.QuotaUsage call(Quota.QuotaUsage arg) {
+                return arg.getName().equals(SecurityGroupConstant.QUOTA_SG_NUM) ? arg : null;
+            }
+        });
+        Assert.assertNotNull(u);
+        return u.getUsed();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        IdentityCreator identityCreator = new IdentityCreator(api);
+        AccountInventory test = identityCreator.useAccount("test");
+        SessionInventory session = identityCreator.getAccountSession();
+
+        SecurityGroupInventory sg1 = api.createSecurityGroup("sg1", session);
+        api.createSecurityGroup("sg2", session);
+        Assert.assertEquals(2, getUsed(test.getUuid(), session));
+
+        api.deleteSecurityGroup(sg1.getUuid(), session);
+        Assert.assertEquals(1, getUsed(test.getUuid(), session));
+
+        SimpleQuery<AccountResourceCountVO> q = dbf.createQuery(AccountResourceCountVO.class);
+        q.add(AccountResourceCountVO_.accountUuid, Op.EQ, test.getUuid());
+        q.add(AccountResourceCountVO_.resourceType, Op.EQ, SecurityGroupVO.class.getSimpleName());
+        AccountResourceCountVO count = q.find();
+        Assert.assertEquals(1, count.getResourceCount());
+        count.setResourceCount(10);
+        dbf.update(count);
+
+        IdentityGlobalConfig.QUOTA_USAGE_CACHE_TIMEOUT.updateValue(1);
+        IdentityGlobalConfig.QUOTA_USAGE_RECONCILE_INTERVAL.updateValue(1);
+        TimeUnit.SECONDS.sleep(3);
+        Assert.assertEquals(1, getUsed(test.getUuid(), session));
+    }
+}
@@ -0,0 +1,156 @@
+package org.zstack.test.storage.primary;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.Platform;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.cluster.ClusterInventory;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.message.MessageReply;
+import org.zstack.header.simulator.storage.primary.SimulatorPrimaryStorageDetails;
+import org.zstack.header.storage.primary.*;
+import org.zstack.header.zone.ZoneInventory;
+import org.zstack.storage.primary.PrimaryStorageCapacityIndex;
+import org.zstack.storage.primary.PrimaryStorageCapacityIndex.Entry;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.BeanConstructor;
+import org.zstack.test.DBUtil;
+import org.zstack.utils.Utils;
+import org.zstack.utils.data.SizeUnit;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.List;
+
+/**
+ * 1. add 10 primary storage having half capacity available and one having all capacity available
+ * 2. allocate with the scored strategy
+ * 3. take the capacity of the best primary storage behind the index and allocate again
+ * 4. allocate for a new vm whose image has been deleted
+ * 5. allocate by the default strategy and the scored strategy for many times
+ *
+ * confirm the primary storage having the most free capacity is allocated
+ * confirm the allocated capacity is reserved on the primary storage
+ * confirm the allocation is counted to the primary storage the capacity is reserved on
+ * confirm the deleted image doesn't fail the allocation
+ * report the time of allocations by the default strategy and the scored strategy
+ */
+public class TestScoredPrimaryStorageAllocatorStrategy {
+    CLogger logger = Utils.getLogger(TestScoredPrimaryStorageAllocatorStrategy.class);
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    CloudBus bus;
+    PrimaryStorageCapacityIndex index;
+    int num = 200;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        BeanConstructor con = new BeanConstructor();
+        /* This loads spring application context */
+        loader = con.addXml("PortalForUnitTest.xml").addXml("Simulator.xml")
+                .addXml("PrimaryStorageManager.xml").addXml("ZoneManager.xml")
+                .addXml("ClusterManager.xml").addXml("HostManager.xml").addXml("ConfigurationManager.xml").addXml("AccountManager.xml").build();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        bus = loader.getComponent(CloudBus.class);
+        index = loader.getComponent(PrimaryStorageCapacityIndex.class);
+        api = new Api();
+        api.startServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        api.stopServer();
+    }
+
+    private AllocatePrimaryStorageReply allocate(String hostUuid, String strategy) {
+        AllocatePrimaryStorageMsg msg = new AllocatePrimaryStorageMsg();
+        msg.setRequiredHostUuid(hostUuid);
+        msg.setSize(SizeUnit.GIGABYTE.toByte(1));
+        msg.setAllocationStrategy(strategy);
+        msg.setServiceId(bus.makeLocalServiceId(PrimaryStorageConstant.SERVICE_ID));
+        MessageReply reply = bus.call(msg);
+        Assert.assertEquals(AllocatePrimaryStorageReply.class, reply.getClass());
+        return (AllocatePrimaryStorageReply) reply;
+    }
+
+    private long benchmark(String hostUuid, String strategy) {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < num; i++) {
+            allocate(hostUuid, strategy);
+        }
+        long time = System.currentTimeMillis() - start;
+        logger.info(String.format("[Primary Storage Allocation]: %s allocations by %s took %s ms", num, strategy, time));
+        return time;
+    }
+
+    private Entry findEntry(String uuid) {
+        for (Entry e : index.getEntries()) {
+            if (e.getUuid().equals(uuid)) {
+                return e;
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        ZoneInventory zone = api.createZones(1).get(0);
+        SimulatorPrimaryStorageDetails sp = new SimulatorPrimaryStorageDetails();
+        sp.setTotalCapacity(SizeUnit.TERABYTE.toByte(10));
+        sp.setAvailableCapacity(SizeUnit.TERABYTE.toByte(5));
+        sp.setUrl("nfs://simulator/primary/");
+        sp.setZoneUuid(zone.getUuid());
+        List<PrimaryStorageInventory> pss = api.createSimulatoPrimaryStorage(10, sp);
+        sp.setUrl("nfs://simulator/primary/free");
+        sp.setAvailableCapacity(sp.getTotalCapacity());
+        PrimaryStorageInventory free = api.createSimulatoPrimaryStorage(1, sp).get(0);
+        pss.add(free);
+
+        ClusterInventory cluster = api.createClusters(1, zone.getUuid()).get(0);
+        HostInventory host = api.createHost(1, cluster.getUuid()).get(0);
+        for (PrimaryStorageInventory ps : pss) {
+            api.attachPrimaryStorage(cluster.getUuid(), ps.getUuid());
+        }
+
+        AllocatePrimaryStorageReply reply = allocate(host.getUuid(), PrimaryStorageConstant.SCORED_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE);
+        Assert.assertEquals(free.getUuid(), reply.getPrimaryStorageInventory().getUuid());
+        PrimaryStorageVO pvo = dbf.findByUuid(free.getUuid(), PrimaryStorageVO.class);
+        Assert.assertEquals(SizeUnit.GIGABYTE.toByte(1), pvo.getCapacity().getTotalCapacity() - pvo.getCapacity().getAvailableCapacity());
+
+        // the index still sees the free primary storage having the most capacity, the reservation on it fails
+        PrimaryStorageCapacityVO cap = dbf.findByUuid(free.getUuid(), PrimaryStorageCapacityVO.class);
+        cap.setAvailableCapacity(1);
+        dbf.update(cap);
+        long freeAvail = index.getAvailableCapacity(findEntry(free.getUuid()));
+
+        reply = allocate(host.getUuid(), PrimaryStorageConstant.SCORED_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE);
+        String reserved = reply.getPrimaryStorageInventory().getUuid();
+        Assert.assertFalse(free.getUuid().equals(reserved));
+        Assert.assertEquals(freeAvail, index.getAvailableCapacity(findEntry(free.getUuid())));
+        Entry e = findEntry(reserved);
+        Assert.assertEquals(SizeUnit.GIGABYTE.toByte(1), e.getPrimaryStorage().getCapacity().getAvailableCapacity() - index.getAvailableCapacity(e));
+
+        AllocatePrimaryStorageMsg msg = new AllocatePrimaryStorageMsg();
+        msg.setRequiredHostUuid(host.getUuid());
+        msg.setSize(SizeUnit.GIGABYTE.toByte(1));
+        msg.setPurpose(PrimaryStorageAllocationPurpose.CreateNewVm.toString());
+        msg.setImageUuid(Platform.getUuid());
+        msg.setAllocationStrategy(PrimaryStorageConstant.SCORED_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE);
+        msg.setServiceId(bus.makeLocalServiceId(PrimaryStorageConstant.SERVICE_ID));
+        MessageReply r = bus.call(msg);
+        Assert.assertTrue(r.isSuccess());
+        Assert.assertNotNull(((AllocatePrimaryStorageReply) r).getPrimaryStorageInventory());
+
+        long defaultTime = benchmark(host.getUuid(), PrimaryStorageConstant.DEFAULT_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE);
+        long scoredTime = benchmark(host.getUuid(), PrimaryStorageConstant.SCORED_PRIMARY_STORAGE_ALLOCATION_STRATEGY_TYPE);
+        logger.info(String.format("[Primary Storage Allocation]: the scored strategy took %s%% of the time of the default strategy",
+                defaultTime == 0 ? 0 : scoredTime * 100 / defaultTime));
+    }
+}
@@ -0,0 +1,110 @@
+package org.zstack.test.storage.primary.local;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.storage.primary.ImageCacheVO;
+import org.zstack.header.storage.primary.ImageCacheVO_;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.storage.primary.local.LocalStorageGlobalProperty;
+import org.zstack.storage.primary.local.LocalStorageKvmBackend.CacheInstallPath;
+import org.zstack.storage.primary.local.LocalStorageKvmMigrateVmFlow.CopyBitsFromRemoteCmd;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig.Capacity;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.Utils;
+import org.zstack.utils.data.SizeUnit;
+import org.zstack.utils.logging.CLogger;
+
+/**
+ * 1. make the agent report copies verified
+ * 2. migrate a vm whose backing file is an image cache
+ *
+ * confirm the backing file is copied in chunks
+ * confirm the md5 of the backing file is not checked on the dst host
+ * confirm the md5 of the backing file is saved to the image cache
+ * report the time the migration takes
+ */
+public class TestLocalStorage48 {
+    CLogger logger = Utils.getLogger(TestLocalStorage48.class);
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    LocalStorageSimulatorConfig config;
+    long totalSize = SizeUnit.GIGABYTE.toByte(100);
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/localStorage/TestLocalStorage28.xml", con);
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.addSpringConfig("localStorageSimulator.xml");
+        deployer.addSpringConfig("localStorage.xml");
+        deployer.load();
+
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(LocalStorageSimulatorConfig.class);
+
+        Capacity c = new Capacity();
+        c.total = totalSize;
+        c.avail = totalSize;
+
+        config.capacityMap.put("host1", c);
+        config.capacityMap.put("host2", c);
+
+        deployer.build();
+        api = deployer.getApi();
+        session = api.loginAsAdmin();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        HostInventory host2 = deployer.hosts.get("host2");
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        ImageInventory image = deployer.images.get("TestImage");
+
+        SimpleQuery<ImageCacheVO> q = dbf.createQuery(ImageCacheVO.class);
+        q.add(ImageCacheVO_.imageUuid, Op.EQ, image.getUuid());
+        q.add(ImageCacheVO_.installUrl, Op.LIKE, String.format("%%hostUuid://%s%%", vm.getHostUuid()));
+        ImageCacheVO cache = q.find();
+        CacheInstallPath path = new CacheInstallPath();
+        path.fullPath = cache.getInstallUrl();
+
+        config.backingFilePath = path.disassemble().installPath;
+        config.backingFileSize = image.getSize();
+        config.checkBitsSuccess = false;
+        config.copyBitsFromRemoteVerified = true;
+
+        long start = System.currentTimeMillis();
+        api.migrateVmInstance(vm.getUuid(), host2.getUuid());
+        logger.info(String.format("[Local Storage Migration]: migrated the vm[uuid:%s] in %s ms", vm.getUuid(), System.currentTimeMillis() - start));
+
+        Assert.assertEquals(1, config.copyBitsFromRemoteCmds.size());
+        CopyBitsFromRemoteCmd cmd = config.copyBitsFromRemoteCmds.get(0);
+        Assert.assertEquals(config.backingFilePath, cmd.paths.get(0));
+        Assert.assertEquals(LocalStorageGlobalProperty.KVM_COPY_BITS_CHUNK_SIZE, cmd.chunkSize);
+        Assert.assertEquals(LocalStorageGlobalProperty.KVM_COPY_BITS_PARALLEL_CHUNKS, cmd.parallelChunks);
+        Assert.assertTrue(config.checkMd5sumCmds.isEmpty());
+
+        cache = dbf.reload(cache);
+        Assert.assertEquals(config.getMd5Cmds.get(0).md5s.get(0).resourceUuid, cache.getMd5sum());
+    }
+}
@@ -0,0 +1,121 @@
+package org.zstack.test.storage.primary.local;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.compute.vm.VmGlobalConfig;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.storage.primary.ImageCacheVO;
+import org.zstack.header.storage.primary.ImageCacheVO_;
+import org.zstack.header.storage.primary.PrimaryStorageCapacityVO;
+import org.zstack.header.storage.primary.PrimaryStorageInventory;
+import org.zstack.header.vm.VmInstanceDeletionPolicyManager.VmInstanceDeletionPolicy;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.storage.primary.PrimaryStorageGlobalConfig;
+import org.zstack.storage.primary.local.LocalStorageHostRefVO;
+import org.zstack.storage.primary.local.LocalStorageHostRefVO_;
+import org.zstack.storage.primary.local.LocalStorageKvmBackend.CacheInstallPath;
+import org.zstack.storage.primary.local.LocalStorageKvmBackend.DeleteBitsCmd;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig.Capacity;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.data.SizeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. use local storage
+ * 2. create a vm then destroy it, the image cache is not used
+ * 3. enable eviction and make the local storage run short of capacity
+ *
+ * confirm the image cache is deleted on the host
+ * confirm the capacity of the image cache is returned to the host and the primary storage
+ */
+public class TestLocalStorage49 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    LocalStorageSimulatorConfig config;
+    long totalSize = SizeUnit.GIGABYTE.toByte(100);
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/localStorage/TestLocalStorage1.xml", con);
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.addSpringConfig("localStorageSimulator.xml");
+        deployer.addSpringConfig("localStorage.xml");
+        deployer.load();
+
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(LocalStorageSimulatorConfig.class);
+
+        Capacity c = new Capacity();
+        c.total = totalSize;
+        c.avail = totalSize;
+
+        config.capacityMap.put("host1", c);
+
+        deployer.build();
+        api = deployer.getApi();
+        session = api.loginAsAdmin();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        HostInventory host = deployer.hosts.get("host1");
+        ImageInventory image = deployer.images.get("TestImage");
+        PrimaryStorageInventory local = deployer.primaryStorages.get("local");
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+
+        VmGlobalConfig.VM_DELETION_POLICY.updateValue(VmInstanceDeletionPolicy.Direct.toString());
+        api.destroyVmInstance(vm.getUuid());
+
+        SimpleQuery<ImageCacheVO> q = dbf.createQuery(ImageCacheVO.class);
+        q.add(ImageCacheVO_.imageUuid, Op.EQ, image.getUuid());
+        q.add(ImageCacheVO_.primaryStorageUuid, Op.EQ, local.getUuid());
+        ImageCacheVO cache = q.find();
+        Assert.assertNotNull(cache);
+
+        SimpleQuery<LocalStorageHostRefVO> hq = dbf.createQuery(LocalStorageHostRefVO.class);
+        hq.add(LocalStorageHostRefVO_.hostUuid, Op.EQ, host.getUuid());
+        long hostAvail = hq.find().getAvailableCapacity();
+        long psAvail = dbf.findByUuid(local.getUuid(), PrimaryStorageCapacityVO.class).getAvailableCapacity();
+
+        config.deleteBitsCmds.clear();
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_CAPACITY_THRESHOLD.updateValue(100);
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_ENABLE.updateValue(true);
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_SCAN_INTERVAL.updateValue(1);
+        TimeUnit.SECONDS.sleep(3);
+
+        Assert.assertFalse(q.isExists());
+
+        CacheInstallPath path = new CacheInstallPath();
+        path.fullPath = cache.getInstallUrl();
+        path.disassemble();
+        Assert.assertEquals(1, config.deleteBitsCmds.size());
+        DeleteBitsCmd cmd = config.deleteBitsCmds.get(0);
+        Assert.assertEquals(path.installPath, cmd.getPath());
+        Assert.assertEquals(host.getUuid(), cmd.getHostUuid());
+
+        Assert.assertEquals(hostAvail + cache.getSize(), hq.find().getAvailableCapacity());
+        Assert.assertEquals(psAvail + cache.getSize(), dbf.findByUuid(local.getUuid(), PrimaryStorageCapacityVO.class).getAvailableCapacity());
+    }
+}
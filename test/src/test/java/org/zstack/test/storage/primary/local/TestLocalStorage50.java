@@ -0,0 +1,106 @@
+package org.zstack.test.storage.primary.local;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.storage.primary.ImageCacheState;
+import org.zstack.header.storage.primary.ImageCacheVO;
+import org.zstack.header.storage.primary.ImageCacheVO_;
+import org.zstack.header.storage.primary.PrimaryStorageInventory;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.header.volume.VolumeVO;
+import org.zstack.storage.primary.PrimaryStorageGlobalConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig.Capacity;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.data.SizeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. use local storage
+ * 2. create a vm, then expunge its image, which sets the imageUuid of the image cache and the rootImageUuid
+ *    of the root volume to NULL
+ * 3. enable eviction, make the local storage run short of capacity and run the image cache garbage collector
+ *
+ * confirm the image cache backing the root volume is neither evicted nor garbage collected
+ */
+public class TestLocalStorage50 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    LocalStorageSimulatorConfig config;
+    long totalSize = SizeUnit.GIGABYTE.toByte(100);
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/localStorage/TestLocalStorage1.xml", con);
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.addSpringConfig("localStorageSimulator.xml");
+        deployer.addSpringConfig("localStorage.xml");
+        deployer.load();
+
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(LocalStorageSimulatorConfig.class);
+
+        Capacity c = new Capacity();
+        c.total = totalSize;
+        c.avail = totalSize;
+
+        config.capacityMap.put("host1", c);
+
+        deployer.build();
+        api = deployer.getApi();
+        session = api.loginAsAdmin();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        ImageInventory image = deployer.images.get("TestImage");
+        PrimaryStorageInventory local = deployer.primaryStorages.get("local");
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+
+        SimpleQuery<ImageCacheVO> q = dbf.createQuery(ImageCacheVO.class);
+        q.add(ImageCacheVO_.imageUuid, Op.EQ, image.getUuid());
+        q.add(ImageCacheVO_.primaryStorageUuid, Op.EQ, local.getUuid());
+        ImageCacheVO cache = q.find();
+        Assert.assertNotNull(cache);
+
+        // what the foreign keys do when the image is expunged
+        cache.setImageUuid(null);
+        dbf.update(cache);
+        VolumeVO root = dbf.findByUuid(vm.getRootVolumeUuid(), VolumeVO.class);
+        root.setRootImageUuid(null);
+        dbf.update(root);
+
+        config.deleteBitsCmds.clear();
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_CAPACITY_THRESHOLD.updateValue(100);
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_ENABLE.updateValue(true);
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_SCAN_INTERVAL.updateValue(1);
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_GARBAGE_COLLECTOR_INTERVAL.updateValue(1);
+        TimeUnit.SECONDS.sleep(3);
+
+        cache = dbf.findById(cache.getId(), ImageCacheVO.class);
+        Assert.assertNotNull(cache);
+        Assert.assertEquals(ImageCacheState.ready, cache.getState());
+        Assert.assertTrue(config.deleteBitsCmds.isEmpty());
+    }
+}
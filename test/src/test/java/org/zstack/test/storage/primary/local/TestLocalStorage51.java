@@ -0,0 +1,149 @@
+package org.zstack.test.storage.primary.local;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.core.db.SimpleQuery.Op;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.image.ImageConstant.ImageMediaType;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.storage.primary.ImageCacheState;
+import org.zstack.header.storage.primary.ImageCacheVO;
+import org.zstack.header.storage.primary.ImageCacheVO_;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.storage.primary.local.LocalStorageKvmBackend.CacheInstallPath;
+import org.zstack.storage.primary.local.LocalStorageKvmBackend.CreateEmptyVolumeCmd;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig.Capacity;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.data.SizeUnit;
+
+/**
+ * 1. put an image cache having the same md5 as the backing file but of another image on host2
+ * 2. migrate the vm to host2
+ *
+ * confirm the backing file is copied instead of using the cache of another image
+ *
+ * 3. put an image cache of the same image having the same md5 at another path on host1
+ * 4. migrate the vm back to host1
+ *
+ * confirm the backing file is not copied and the root volume is backed by the cache
+ */
+public class TestLocalStorage51 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    LocalStorageSimulatorConfig config;
+    long totalSize = SizeUnit.GIGABYTE.toByte(100);
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/localStorage/TestLocalStorage28.xml", con);
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.addSpringConfig("localStorageSimulator.xml");
+        deployer.addSpringConfig("localStorage.xml");
+        deployer.load();
+
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(LocalStorageSimulatorConfig.class);
+
+        Capacity c = new Capacity();
+        c.total = totalSize;
+        c.avail = totalSize;
+
+        config.capacityMap.put("host1", c);
+        config.capacityMap.put("host2", c);
+
+        deployer.build();
+        api = deployer.getApi();
+        session = api.loginAsAdmin();
+    }
+
+    private ImageCacheVO createImageCache(ImageCacheVO src, String imageUuid, String hostUuid, String installPath, String md5) {
+        ImageCacheVO vo = new ImageCacheVO();
+        vo.setState(ImageCacheState.ready);
+        vo.setMediaType(ImageMediaType.RootVolumeTemplate);
+        vo.setImageUuid(imageUuid);
+        vo.setPrimaryStorageUuid(src.getPrimaryStorageUuid());
+        vo.setSize(src.getSize());
+        vo.setMd5sum(md5);
+
+        CacheInstallPath path = new CacheInstallPath();
+        path.installPath = installPath;
+        path.hostUuid = hostUuid;
+        vo.setInstallUrl(path.makeFullPath());
+        return dbf.persistAndRefresh(vo);
+    }
+
+    private String getRootVolumeBackingFile() {
+        for (CreateEmptyVolumeCmd cmd : config.createEmptyVolumeCmds) {
+            if (cmd.getBackingFile() != null) {
+                return cmd.getBackingFile();
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        HostInventory host1 = deployer.hosts.get("host1");
+        HostInventory host2 = deployer.hosts.get("host2");
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        ImageInventory image = deployer.images.get("TestImage");
+
+        SimpleQuery<ImageCacheVO> q = dbf.createQuery(ImageCacheVO.class);
+        q.add(ImageCacheVO_.imageUuid, Op.EQ, image.getUuid());
+        q.add(ImageCacheVO_.installUrl, Op.LIKE, String.format("%%hostUuid://%s%%", vm.getHostUuid()));
+        ImageCacheVO cache = q.find();
+        cache.setMd5sum("backing-file-md5");
+        cache = dbf.updateAndRefresh(cache);
+        CacheInstallPath path = new CacheInstallPath();
+        path.fullPath = cache.getInstallUrl();
+
+        config.backingFilePath = path.disassemble().installPath;
+        config.backingFileSize = image.getSize();
+        config.checkBitsSuccess = false;
+
+        // the cache of an expunged image
+        String otherPath = "/zstack_ps/imagecache/other-image/other-image.qcow2";
+        createImageCache(cache, null, host2.getUuid(), otherPath, cache.getMd5sum());
+        config.existingBits.add(otherPath);
+
+        config.createEmptyVolumeCmds.clear();
+        api.migrateVmInstance(vm.getUuid(), host2.getUuid());
+        Assert.assertEquals(1, config.copyBitsFromRemoteCmds.size());
+        Assert.assertEquals(config.backingFilePath, config.copyBitsFromRemoteCmds.get(0).paths.get(0));
+        Assert.assertEquals(config.backingFilePath, getRootVolumeBackingFile());
+
+        config.copyBitsFromRemoteCmds.clear();
+        config.createEmptyVolumeCmds.clear();
+        config.checkMd5sumCmds.clear();
+
+        // the copy on host2 is not an image cache, its md5 is calculated by the agent
+        String samePath = "/zstack_ps/imagecache/template/same-image.qcow2";
+        createImageCache(cache, image.getUuid(), host1.getUuid(), samePath, "backing-file");
+        config.existingBits.add(samePath);
+
+        api.migrateVmInstance(vm.getUuid(), host1.getUuid());
+        Assert.assertTrue(config.copyBitsFromRemoteCmds.isEmpty());
+        Assert.assertTrue(config.checkMd5sumCmds.isEmpty());
+        Assert.assertEquals(samePath, getRootVolumeBackingFile());
+    }
+}
@@ -0,0 +1,107 @@
+package org.zstack.test.storage.primary.local;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.host.HostInventory;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig;
+import org.zstack.storage.primary.local.LocalStorageSimulatorConfig.Capacity;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.Utils;
+import org.zstack.utils.data.SizeUnit;
+import org.zstack.utils.logging.CLogger;
+
+/**
+ * 1. migrate a vm between two hosts, copying the backing file every time, with an agent copying whole files
+ * 2. do it again with an agent verifying chunks of the copies
+ *
+ * confirm the md5 of the backing file is checked on the dst host only in the first round
+ * report migrations per second of both
+ *
+ * the simulator doesn't transfer bits, so this measures the management node side of a migration: the flows, the
+ * database access and the round trips to the agents
+ */
+public class TestLocalStorageMigrationThroughput {
+    CLogger logger = Utils.getLogger(TestLocalStorageMigrationThroughput.class);
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    LocalStorageSimulatorConfig config;
+    long totalSize = SizeUnit.TERABYTE.toByte(100);
+    int num = 50;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/localStorage/TestLocalStorage28.xml", con);
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.addSpringConfig("localStorageSimulator.xml");
+        deployer.addSpringConfig("localStorage.xml");
+        deployer.load();
+
+        loader = deployer.getComponentLoader();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(LocalStorageSimulatorConfig.class);
+
+        Capacity c = new Capacity();
+        c.total = totalSize;
+        c.avail = totalSize;
+
+        config.capacityMap.put("host1", c);
+        config.capacityMap.put("host2", c);
+
+        deployer.build();
+        api = deployer.getApi();
+        session = api.loginAsAdmin();
+    }
+
+    private double run(String name, VmInstanceInventory vm) throws ApiSenderException {
+        HostInventory host1 = deployer.hosts.get("host1");
+        HostInventory host2 = deployer.hosts.get("host2");
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < num; i++) {
+            api.migrateVmInstance(vm.getUuid(), i % 2 == 0 ? host2.getUuid() : host1.getUuid());
+        }
+
+        long cost = System.currentTimeMillis() - start;
+        double rate = num * 1000.0 / Math.max(1, cost);
+        logger.info(String.format("[Local Storage Migration Throughput]: %s, %s migrations done in %s ms, %.1f migrations/s", name, num, cost, rate));
+        return rate;
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        ImageInventory image = deployer.images.get("TestImage");
+
+        config.backingFilePath = "/zstack_ps/imagecache/template/backing-file.qcow2";
+        config.backingFileSize = image.getSize();
+        config.checkBitsSuccess = false;
+
+        config.copyBitsFromRemoteVerified = false;
+        run("whole file copies", vm);
+        Assert.assertEquals(num, config.copyBitsFromRemoteCmds.size());
+        Assert.assertEquals(num, config.checkMd5sumCmds.size());
+
+        config.copyBitsFromRemoteCmds.clear();
+        config.checkMd5sumCmds.clear();
+
+        config.copyBitsFromRemoteVerified = true;
+        run("verified chunked copies", vm);
+        Assert.assertEquals(num, config.copyBitsFromRemoteCmds.size());
+        Assert.assertTrue(config.checkMd5sumCmds.isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+package org.zstack.test.storage.primary.nfs;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.header.core.FutureReturnValueCompletion;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.image.ImageInventory;
+import org.zstack.header.storage.primary.ImageCacheVO;
+import org.zstack.header.storage.primary.ImageCacheVO_;
+import org.zstack.header.storage.primary.PrimaryStorageInventory;
+import org.zstack.simulator.storage.primary.nfs.NfsPrimaryStorageSimulatorConfig;
+import org.zstack.storage.primary.ImageCacheManager;
+import org.zstack.storage.primary.PrimaryStorageGlobalConfig;
+import org.zstack.test.*;
+import org.zstack.test.deployer.Deployer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1. download an image to the nfs cache twice at the same time
+ * 2. enable eviction and make the primary storage run short of capacity
+ *
+ * confirm the image is downloaded only once
+ * confirm the unused image cache is evicted
+ */
+public class TestImageCacheManager1 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    NfsPrimaryStorageSimulatorConfig config;
+    ImageCacheManager imageCacheMgr;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/primaryStorage/TestImageCacheMissing.xml", con);
+        deployer.addSpringConfig("SftpBackupStorage.xml");
+        deployer.addSpringConfig("SftpBackupStorageSimulator.xml");
+        deployer.addSpringConfig("Kvm.xml");
+        deployer.addSpringConfig("KVMSimulator.xml");
+        deployer.addSpringConfig("NfsPrimaryStorage.xml");
+        deployer.addSpringConfig("NfsPrimaryStorageSimulator.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        config = loader.getComponent(NfsPrimaryStorageSimulatorConfig.class);
+        imageCacheMgr = loader.getComponent(ImageCacheManager.class);
+        session = api.loginAsAdmin();
+    }
+
+    @Test
+    public void test() throws ApiSenderException, InterruptedException {
+        ImageInventory iinv = deployer.images.get("TestImage");
+        PrimaryStorageInventory ps = deployer.primaryStorages.get("nfs");
+
+        FutureReturnValueCompletion c1 = new FutureReturnValueCompletion();
+        FutureReturnValueCompletion c2 = new FutureReturnValueCompletion();
+        imageCacheMgr.downloadImageToCache(ps.getUuid(), iinv, c1);
+        imageCacheMgr.downloadImageToCache(ps.getUuid(), iinv, c2);
+        c1.await(TimeUnit.SECONDS.toMillis(10));
+        c2.await(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertTrue(c1.isSuccess());
+        Assert.assertTrue(c2.isSuccess());
+        Assert.assertEquals(c1.getResult(), c2.getResult());
+        Assert.assertEquals(1, config.downloadFromSftpCmds.size());
+
+        SimpleQuery<ImageCacheVO> q = dbf.createQuery(ImageCacheVO.class);
+        q.add(ImageCacheVO_.imageUuid, SimpleQuery.Op.EQ, iinv.getUuid());
+        q.add(ImageCacheVO_.primaryStorageUuid, SimpleQuery.Op.EQ, ps.getUuid());
+        ImageCacheVO cache = q.find();
+        Assert.assertNotNull(cache);
+
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_CAPACITY_THRESHOLD.updateValue(100);
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_EVICTION_ENABLE.updateValue(true);
+        PrimaryStorageGlobalConfig.IMAGE_CACHE_SCAN_INTERVAL.updateValue(1);
+        TimeUnit.SECONDS.sleep(3);
+
+        Assert.assertFalse(q.isExists());
+        Assert.assertEquals(1, config.deleteCmds.size());
+        Assert.assertEquals(cache.getInstallUrl(), config.deleteCmds.get(0).getInstallPath());
+    }
+}
@@ -0,0 +1,99 @@
+package org.zstack.test.storage.primary.nfs;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.WriteBehindStatusStore;
+import org.zstack.header.storage.primary.PrimaryStorageCapacityUpdaterRunnable;
+import org.zstack.header.storage.primary.PrimaryStorageCapacityVO;
+import org.zstack.header.storage.primary.PrimaryStorageInventory;
+import org.zstack.storage.primary.PrimaryStorageCapacityUpdater;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.data.SizeUnit;
+
+/**
+ * 1. report the available physical capacity of the nfs primary storage
+ * 2. report the same capacity again
+ * 3. update the capacity synchronously, then report the capacity again
+ * 4. report a capacity, then decrease the available capacity synchronously before the store flushes
+ * 5. report a capacity while the capacity is being updated synchronously
+ *
+ * confirm the reported capacity is written after the store flushes
+ * confirm the same capacity is not queued again
+ * confirm the capacity is queued again after the synchronous update
+ * confirm the queued capacity is written by the synchronous update and dropped from the store
+ * confirm the capacity reported during the synchronous update is kept and written after the store flushes
+ */
+public class TestNfsCapacityReport {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    DatabaseFacade dbf;
+    WriteBehindStatusStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/nfsPrimaryStorage/TestReconnectNfsPrimaryStorage.xml", con);
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        dbf = loader.getComponent(DatabaseFacade.class);
+        store = loader.getComponent(WriteBehindStatusStore.class);
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        PrimaryStorageInventory ps = deployer.primaryStorages.get("nfs");
+        long avail = SizeUnit.GIGABYTE.toByte(10);
+
+        new PrimaryStorageCapacityUpdater(ps.getUuid()).reportAvailablePhysicalCapacity(avail);
+        store.flush();
+        PrimaryStorageCapacityVO cap = dbf.findByUuid(ps.getUuid(), PrimaryStorageCapacityVO.class);
+        Assert.assertEquals(avail, cap.getAvailablePhysicalCapacity());
+
+        Assert.assertFalse(store.update(PrimaryStorageCapacityVO.class, ps.getUuid(), "availablePhysicalCapacity", avail));
+
+        long avail2 = SizeUnit.GIGABYTE.toByte(20);
+        new PrimaryStorageCapacityUpdater(ps.getUuid()).update(null, null, null, avail2);
+        cap = dbf.findByUuid(ps.getUuid(), PrimaryStorageCapacityVO.class);
+        Assert.assertEquals(avail2, cap.getAvailablePhysicalCapacity());
+
+        Assert.assertTrue(store.update(PrimaryStorageCapacityVO.class, ps.getUuid(), "availablePhysicalCapacity", avail));
+        store.flush();
+        cap = dbf.findByUuid(ps.getUuid(), PrimaryStorageCapacityVO.class);
+        Assert.assertEquals(avail, cap.getAvailablePhysicalCapacity());
+
+        long avail3 = SizeUnit.GIGABYTE.toByte(30);
+        new PrimaryStorageCapacityUpdater(ps.getUuid()).reportAvailablePhysicalCapacity(avail3);
+        new PrimaryStorageCapacityUpdater(ps.getUuid()).decreaseAvailableCapacity(1);
+        cap = dbf.findByUuid(ps.getUuid(), PrimaryStorageCapacityVO.class);
+        Assert.assertEquals(avail3, cap.getAvailablePhysicalCapacity());
+        Assert.assertTrue(store.getQueued(PrimaryStorageCapacityVO.class, ps.getUuid()).isEmpty());
+
+        final String psUuid = ps.getUuid();
+        final long avail4 = SizeUnit.GIGABYTE.toByte(40);
+        new PrimaryStorageCapacityUpdater(ps.getUuid()).run(new PrimaryStorageCapacityUpdaterRunnable() {
+            @Override
+            public PrimaryStorageCapacityVO call(PrimaryStorageCapacityVO vo) {
+                new PrimaryStorageCapacityUpdater(psUuid).reportAvailablePhysicalCapacity(avail4);
+                vo.setAvailableCapacity(vo.getAvailableCapacity() + 1);
+                return vo;
+            }
+        });
+        cap = dbf.findByUuid(ps.getUuid(), PrimaryStorageCapacityVO.class);
+        Assert.assertEquals(avail3, cap.getAvailablePhysicalCapacity());
+        Assert.assertEquals(avail4, store.getQueued(PrimaryStorageCapacityVO.class, ps.getUuid()).get("availablePhysicalCapacity"));
+        store.flush();
+        cap = dbf.findByUuid(ps.getUuid(), PrimaryStorageCapacityVO.class);
+        Assert.assertEquals(avail4, cap.getAvailablePhysicalCapacity());
+    }
+}
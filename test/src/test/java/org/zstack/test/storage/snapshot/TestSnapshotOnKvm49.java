@@ -0,0 +1,98 @@
+package org.zstack.test.storage.snapshot;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.core.db.SimpleQuery;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.storage.snapshot.*;
+import org.zstack.header.storage.snapshot.VolumeSnapshotTree.SnapshotLeaf;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.storage.snapshot.VolumeSnapshotTreeCache;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+* 1. take 8 snapshots from vm's root volume
+* 2. revert volume to the third one
+* 3. take 2 snapshots again
+* 4. delete the fifth snapshot
+*
+* confirm the cached snapshot tree is the same as the one in the database after every step
+*/
+public class TestSnapshotOnKvm49 {
+    CLogger logger = Utils.getLogger(TestSnapshotOnKvm49.class);
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    SessionInventory session;
+    VolumeSnapshotTreeCache treeCache;
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        WebBeanConstructor con = new WebBeanConstructor();
+        deployer = new Deployer("deployerXml/kvm/TestCreateVmOnKvm.xml", con);
+        deployer.addSpringConfig("KVMRelated.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        treeCache = loader.getComponent(VolumeSnapshotTreeCache.class);
+        session = api.loginAsAdmin();
+    }
+
+    private void validate(String treeUuid) {
+        SimpleQuery<VolumeSnapshotVO> q = dbf.createQuery(VolumeSnapshotVO.class);
+        q.add(VolumeSnapshotVO_.treeUuid, SimpleQuery.Op.EQ, treeUuid);
+        List<VolumeSnapshotVO> vos = q.list();
+
+        VolumeSnapshotTree cached = treeCache.getTree(treeUuid);
+        Assert.assertEquals(vos.size(), cached.getRoot().getDescendants().size());
+        for (VolumeSnapshotVO vo : vos) {
+            SnapshotLeaf leaf = cached.findSnapshot(vo.getUuid());
+            Assert.assertNotNull(leaf);
+            Assert.assertEquals(vo.isLatest(), leaf.getInventory().isLatest());
+            Assert.assertEquals(vo.getStatus().toString(), leaf.getInventory().getStatus());
+            Assert.assertEquals(vo.getParentUuid(), leaf.getParent() == null ? null : leaf.getParent().getUuid());
+        }
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        String volUuid = vm.getRootVolumeUuid();
+        List<VolumeSnapshotInventory> snapshots = new ArrayList<VolumeSnapshotInventory>();
+        for (int i = 0; i < 8; i++) {
+            snapshots.add(api.createSnapshot(volUuid));
+        }
+        String treeUuid = snapshots.get(0).getTreeUuid();
+        validate(treeUuid);
+
+        api.stopVmInstance(vm.getUuid());
+        api.revertVolumeToSnapshot(snapshots.get(2).getUuid());
+        validate(treeUuid);
+
+        api.createSnapshot(volUuid);
+        api.createSnapshot(volUuid);
+        validate(treeUuid);
+
+        api.deleteSnapshot(snapshots.get(4).getUuid());
+        validate(treeUuid);
+        Assert.assertNull(treeCache.getTree(treeUuid).findSnapshot(snapshots.get(7).getUuid()));
+    }
+}
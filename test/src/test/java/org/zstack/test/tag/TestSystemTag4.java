@@ -0,0 +1,96 @@
+package org.zstack.test.tag;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.core.cloudbus.CloudBus;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.tag.SystemTagInventory;
+import org.zstack.header.tag.TagDefinition;
+import org.zstack.header.zone.ZoneInventory;
+import org.zstack.header.zone.ZoneVO;
+import org.zstack.tag.PatternedSystemTag;
+import org.zstack.tag.SystemTag;
+import org.zstack.tag.TagManager;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.deployer.Deployer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.zstack.utils.CollectionDSL.e;
+import static org.zstack.utils.CollectionDSL.map;
+
+/**
+ * test system tag cache
+ *
+ * 1. look up tags of zones in batch and one by one
+ * 2. create, update and delete tags
+ *
+ * confirm lookups after every change return the changed tags
+ */
+public class TestSystemTag4 {
+    Deployer deployer;
+    Api api;
+    ComponentLoader loader;
+    CloudBus bus;
+    DatabaseFacade dbf;
+    TagManager tagMgr;
+
+    @TagDefinition
+    public static class TestSystemTags {
+        public static SystemTag big = new SystemTag("big", ZoneVO.class);
+        public static PatternedSystemTag size = new PatternedSystemTag("size::{size}", ZoneVO.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DBUtil.reDeployDB();
+        deployer = new Deployer("deployerXml/tag/TestUserTag.xml");
+        deployer.build();
+        api = deployer.getApi();
+        loader = deployer.getComponentLoader();
+        bus = loader.getComponent(CloudBus.class);
+        dbf = loader.getComponent(DatabaseFacade.class);
+        tagMgr = loader.getComponent(TagManager.class);
+    }
+
+    @Test
+    public void test() throws ApiSenderException {
+        ZoneInventory zone1 = deployer.zones.get("Zone1");
+        ZoneInventory zone2 = deployer.zones.get("Zone2");
+        List<String> zoneUuids = Arrays.asList(zone1.getUuid(), zone2.getUuid());
+
+        Assert.assertTrue(tagMgr.getSystemTags(zoneUuids, ZoneVO.class.getSimpleName()).isEmpty());
+        Assert.assertFalse(TestSystemTags.big.hasTag(zone1.getUuid()));
+
+        TestSystemTags.big.createTag(zone1.getUuid());
+        SystemTagInventory size = TestSystemTags.size.createTag(zone2.getUuid(), map(e("size", "10")));
+        Assert.assertTrue(TestSystemTags.big.hasTag(zone1.getUuid()));
+        Assert.assertFalse(TestSystemTags.big.hasTag(zone2.getUuid()));
+        Assert.assertEquals("10", TestSystemTags.size.getTokenByResourceUuid(zone2.getUuid(), "size"));
+
+        Map<String, List<SystemTagInventory>> tags = tagMgr.getSystemTags(zoneUuids, ZoneVO.class.getSimpleName());
+        Assert.assertEquals(2, tags.size());
+        Assert.assertEquals("big", tags.get(zone1.getUuid()).get(0).getTag());
+        Assert.assertEquals("size::10", tags.get(zone2.getUuid()).get(0).getTag());
+
+        Map<String, List<String>> sizes = TestSystemTags.size.getTags(zoneUuids);
+        Assert.assertEquals(1, sizes.size());
+        Assert.assertEquals("size::10", sizes.get(zone2.getUuid()).get(0));
+
+        api.updateSystemTag(size.getUuid(), "size::20", null);
+        Assert.assertEquals("20", TestSystemTags.size.getTokenByResourceUuid(zone2.getUuid(), "size"));
+
+        TestSystemTags.big.delete(zone1.getUuid());
+        Assert.assertFalse(TestSystemTags.big.hasTag(zone1.getUuid()));
+
+        api.deleteTag(size.getUuid());
+        Assert.assertNull(TestSystemTags.size.getTag(zone2.getUuid()));
+        Assert.assertTrue(tagMgr.getSystemTags(zoneUuids, ZoneVO.class.getSimpleName()).isEmpty());
+    }
+}
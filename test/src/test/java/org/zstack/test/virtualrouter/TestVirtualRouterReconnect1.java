@@ -0,0 +1,77 @@
+package org.zstack.test.virtualrouter;
+
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zstack.appliancevm.ApplianceVmVO;
+import org.zstack.core.componentloader.ComponentLoader;
+import org.zstack.core.db.DatabaseFacade;
+import org.zstack.header.identity.SessionInventory;
+import org.zstack.header.vm.VmInstanceInventory;
+import org.zstack.network.service.virtualrouter.VirtualRouterCommands.DhcpInfo;
+import org.zstack.simulator.virtualrouter.VirtualRouterSimulatorConfig;
+import org.zstack.test.Api;
+import org.zstack.test.ApiSenderException;
+import org.zstack.test.DBUtil;
+import org.zstack.test.WebBeanConstructor;
+import org.zstack.test.deployer.Deployer;
+
+/**
+ * 1. reconnect the virtual router by API twice
+ * 2. reboot the vm
+ *
+ * confirm every reconnection rebuilds all dhcp entries
+ * confirm the reboot pushes the dhcp entry of the vm again although the virtual router was given it before
+ */
+public class TestVirtualRouterReconnect1 {
+	Deployer deployer;
+	Api api;
+	ComponentLoader loader;
+	DatabaseFacade dbf;
+	SessionInventory session;
+	VirtualRouterSimulatorConfig vconfig;
+
+	@Before
+	public void setUp() throws Exception {
+		DBUtil.reDeployDB();
+		WebBeanConstructor con = new WebBeanConstructor();
+		deployer = new Deployer("deployerXml/virtualRouter/virtualRouterSNAT.xml", con);
+		deployer.addSpringConfig("VirtualRouter.xml");
+		deployer.addSpringConfig("VirtualRouterSimulator.xml");
+		deployer.addSpringConfig("KVMRelated.xml");
+		deployer.build();
+		api = deployer.getApi();
+		loader = deployer.getComponentLoader();
+		vconfig = loader.getComponent(VirtualRouterSimulatorConfig.class);
+		dbf = loader.getComponent(DatabaseFacade.class);
+		session = api.loginAsAdmin();
+	}
+
+	private boolean hasDhcpEntry(String mac) {
+		for (DhcpInfo info : vconfig.dhcpInfos) {
+			if (mac.equals(info.getMac())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void test() throws ApiSenderException, InterruptedException {
+        ApplianceVmVO vr = dbf.listAll(ApplianceVmVO.class).get(0);
+        VmInstanceInventory vm = deployer.vms.get("TestVm");
+        String mac = vm.getVmNics().get(0).getMac();
+
+        for (int i = 0; i < 2; i++) {
+            vconfig.dhcpInfos.clear();
+            vconfig.removedDhcp.clear();
+            api.reconnectVirtualRouter(vr.getUuid());
+            Assert.assertTrue(hasDhcpEntry(mac));
+            Assert.assertTrue(vconfig.removedDhcp.isEmpty());
+        }
+
+        vconfig.dhcpInfos.clear();
+        api.rebootVmInstance(vm.getUuid());
+        Assert.assertTrue(hasDhcpEntry(mac));
+	}
+}
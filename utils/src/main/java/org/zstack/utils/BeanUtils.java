@@ -4,8 +4,11 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.util.ClassUtils;
 import org.zstack.utils.function.Function;
+import org.zstack.utils.logging.CLogger;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,6 +16,7 @@ import java.util.List;
 /**
  */
 public class BeanUtils {
+    private static final CLogger logger = Utils.getLogger(BeanUtils.class);
 
     private enum FilterType {
         CLASS,
@@ -24,7 +28,45 @@ public class BeanUtils {
         Class clazz();
     }
 
-    public static List<Class> scanClass(List<String> pkgNames, List<TypeWrapper> includes, List<TypeWrapper> excludes) {
+    private static ClassIndex classIndex;
+    private static boolean classIndexLoaded;
+
+    /**
+     * @return the class index built at compile time, null if there is no index or -DBeanUtils.useClassIndex=false
+     */
+    private static synchronized ClassIndex getClassIndex() {
+        if (!classIndexLoaded) {
+            classIndexLoaded = true;
+            if (Boolean.valueOf(System.getProperty("BeanUtils.useClassIndex", "true"))) {
+                try {
+                    classIndex = ClassIndex.load(ClassUtils.getDefaultClassLoader());
+                } catch (IOException e) {
+                    logger.warn(String.format("unable to load the class index, use classpath scanning. %s", e.getMessage()), e);
+                }
+            }
+        }
+
+        return classIndex;
+    }
+
+    private static List<Class> classesOf(List<TypeWrapper> wrappers, FilterType type) {
+        List<Class> ret = new ArrayList<Class>();
+        if (wrappers != null) {
+            for (TypeWrapper wrapper : wrappers) {
+                if (wrapper.filterType() == type) {
+                    ret.add(wrapper.clazz());
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static List<String> findByClassIndex(ClassIndex index, String pkg, List<TypeWrapper> includes, List<TypeWrapper> excludes) {
+        return index.find(pkg, classesOf(includes, FilterType.CLASS), classesOf(includes, FilterType.ANNOTATION),
+                classesOf(excludes, FilterType.CLASS), classesOf(excludes, FilterType.ANNOTATION));
+    }
+
+    private static List<String> findByScanning(String pkg, List<TypeWrapper> includes, List<TypeWrapper> excludes) {
         ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
         if (includes != null) {
             for (TypeWrapper wrapper : includes) {
@@ -49,11 +91,30 @@ public class BeanUtils {
             }
         }
 
+        List<String> ret = new ArrayList<String>();
+        for (BeanDefinition bd : scanner.findCandidateComponents(pkg)) {
+            ret.add(bd.getBeanClassName());
+        }
+        return ret;
+    }
+
+    public static List<Class> scanClass(List<String> pkgNames, List<TypeWrapper> includes, List<TypeWrapper> excludes) {
+        long start = System.currentTimeMillis();
+        ClassIndex index = getClassIndex();
         List<Class> ret = new ArrayList<Class>();
+        List<String> scanned = new ArrayList<String>();
         for (String pkg : pkgNames) {
-            for (BeanDefinition bd : scanner.findCandidateComponents(pkg)) {
+            List<String> names;
+            if (index != null && index.covers(pkg)) {
+                names = findByClassIndex(index, pkg, includes, excludes);
+            } else {
+                names = findByScanning(pkg, includes, excludes);
+                scanned.add(pkg);
+            }
+
+            for (String name : names) {
                 try {
-                    Class clz = Class.forName(bd.getBeanClassName());
+                    Class clz = Class.forName(name);
                     ret.add(clz);
                 } catch (ClassNotFoundException e) {
                     throw new RuntimeException(e);
@@ -61,6 +122,8 @@ public class BeanUtils {
             }
         }
 
+        logger.debug(String.format("found %s classes in packages%s in %sms, packages%s are not covered by the class index and scanned",
+                ret.size(), pkgNames, System.currentTimeMillis() - start, scanned));
         return ret;
     }
 
@@ -0,0 +1,180 @@
+package org.zstack.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the class index written by ClassIndexProcessor into every module at compile time.
+ *
+ * each line of META-INF/zstack/class-index describes a class in the format of
+ *
+ * class_name TAB annotation_name,annotation_name... TAB super_type_name,super_type_name...
+ *
+ * all names are binary names as returned by Class.getName(). Looking up classes in the index takes no class
+ * loading and no reading of class files, which is what classpath scanning spends most time on at startup.
+ *
+ * the index only covers packages whose classpath roots all have an index; a root without an index, for example
+ * a plugin jar built without the processor, makes the lookup of its packages fall back to classpath scanning
+ */
+public class ClassIndex {
+    public static final String INDEX_FILE = "META-INF/zstack/class-index";
+
+    private final ClassLoader classLoader;
+    private final Set<String> indexedRoots = new HashSet<String>();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final Map<String, Boolean> coveredPackages = new ConcurrentHashMap<String, Boolean>();
+
+    private static class Entry {
+        String className;
+        Set<String> annotations;
+        Set<String> superTypes;
+    }
+
+    private static String join(Collection<String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (String n : names) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(n);
+        }
+        return sb.toString();
+    }
+
+    static String toLine(String className, Collection<String> annotations, Collection<String> superTypes) {
+        return String.format("%s\t%s\t%s", className, join(annotations), join(superTypes));
+    }
+
+    static String classNameOf(String line) {
+        int i = line.indexOf('\t');
+        return i <= 0 ? null : line.substring(0, i);
+    }
+
+    private static Set<String> split(String str) {
+        if (str.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        return new HashSet<String>(Arrays.asList(str.split(",")));
+    }
+
+    private static String rootOf(URL url, String path) {
+        String u = url.toString();
+        return u.endsWith(path) ? u.substring(0, u.length() - path.length()) : u;
+    }
+
+    private ClassIndex(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return the index of all classpath roots having one, null if no root has an index
+     */
+    public static ClassIndex load(ClassLoader classLoader) throws IOException {
+        ClassIndex index = new ClassIndex(classLoader);
+        Set<String> loaded = new HashSet<String>();
+        Enumeration<URL> urls = classLoader.getResources(INDEX_FILE);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            String root = rootOf(url, INDEX_FILE);
+            if (!index.indexedRoots.add(root)) {
+                continue;
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != 3 || !loaded.add(fields[0])) {
+                        continue;
+                    }
+
+                    Entry e = new Entry();
+                    e.className = fields[0];
+                    e.annotations = split(fields[1]);
+                    e.superTypes = split(fields[2]);
+                    index.entries.add(e);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        return index.indexedRoots.isEmpty() ? null : index;
+    }
+
+    /**
+     * @return true if every classpath root containing the package has an index
+     */
+    public boolean covers(String pkgName) {
+        Boolean covered = coveredPackages.get(pkgName);
+        if (covered != null) {
+            return covered;
+        }
+
+        covered = true;
+        String path = pkgName.replace('.', '/') + "/";
+        try {
+            Enumeration<URL> urls = classLoader.getResources(path);
+            while (urls.hasMoreElements()) {
+                if (!indexedRoots.contains(rootOf(urls.nextElement(), path))) {
+                    covered = false;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            covered = false;
+        }
+
+        coveredPackages.put(pkgName, covered);
+        return covered;
+    }
+
+    private boolean matches(Entry e, Class type, boolean annotation) {
+        if (annotation) {
+            return e.annotations.contains(type.getName());
+        } else {
+            return e.className.equals(type.getName()) || e.superTypes.contains(type.getName());
+        }
+    }
+
+    /**
+     * @return names of classes in the package or its sub-packages that match any of includes and none of excludes,
+     * classes in includeAnnotations/excludeAnnotations match by annotation, others match by type
+     */
+    public List<String> find(String pkgName, List<Class> includeTypes, List<Class> includeAnnotations,
+                             List<Class> excludeTypes, List<Class> excludeAnnotations) {
+        String prefix = pkgName + ".";
+        List<String> ret = new ArrayList<String>();
+        for (Entry e : entries) {
+            if (!e.className.startsWith(prefix)) {
+                continue;
+            }
+
+            boolean included = false;
+            for (Class c : includeTypes) {
+                included = included || matches(e, c, false);
+            }
+            for (Class c : includeAnnotations) {
+                included = included || matches(e, c, true);
+            }
+            for (Class c : excludeTypes) {
+                included = included && !matches(e, c, false);
+            }
+            for (Class c : excludeAnnotations) {
+                included = included && !matches(e, c, true);
+            }
+
+            if (included) {
+                ret.add(e.className);
+            }
+        }
+
+        return ret;
+    }
+}
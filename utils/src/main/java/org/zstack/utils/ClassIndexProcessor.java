@@ -0,0 +1,184 @@
+package org.zstack.utils;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.lang.annotation.Inherited;
+import java.util.*;
+
+/**
+ * an annotation processor writing the class index of a module to META-INF/zstack/class-index at compile time,
+ * see ClassIndex for the format.
+ *
+ * only classes Spring's classpath scanning would return are indexed, that is concrete classes that are top-level
+ * or static nested. For each class, the processor records the annotations on it including meta-annotations and
+ * inherited annotations, and all its super classes and interfaces.
+ *
+ * javac discovers the processor by META-INF/services of the utils jar, so every module depending on utils gets
+ * its index without configuration. When only part of sources are compiled, for example by an IDE, the entries
+ * of classes not compiled are kept from the existing index
+ */
+@SupportedAnnotationTypes("*")
+public class ClassIndexProcessor extends AbstractProcessor {
+    private final Map<String, String> entries = new TreeMap<String, String>();
+    private final Set<String> compiled = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!compiled.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            index(type);
+        }
+
+        return false;
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void index(TypeElement type) {
+        String name = binaryName(type);
+        compiled.add(name);
+
+        Set<Modifier> modifiers = type.getModifiers();
+        boolean independent = type.getNestingKind() == NestingKind.TOP_LEVEL || modifiers.contains(Modifier.STATIC);
+        boolean concrete = (type.getKind() == ElementKind.CLASS || type.getKind() == ElementKind.ENUM) && !modifiers.contains(Modifier.ABSTRACT);
+        if (independent && concrete) {
+            Set<String> annotations = new TreeSet<String>();
+            Set<String> supers = new TreeSet<String>();
+            collectAnnotations(type, false, annotations);
+            collectSupers(type.asType(), annotations, supers);
+            entries.put(name, ClassIndex.toLine(name, annotations, supers));
+        }
+
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            index(nested);
+        }
+    }
+
+    private void collectAnnotations(Element element, boolean inheritedOnly, Set<String> result) {
+        for (AnnotationMirror am : element.getAnnotationMirrors()) {
+            TypeElement at = (TypeElement) am.getAnnotationType().asElement();
+            if (inheritedOnly && at.getAnnotation(Inherited.class) == null) {
+                continue;
+            }
+
+            collectMetaAnnotations(at, result);
+        }
+    }
+
+    private void collectMetaAnnotations(TypeElement annotationType, Set<String> result) {
+        if (annotationType.getQualifiedName().toString().startsWith("java.lang.annotation.") || !result.add(binaryName(annotationType))) {
+            return;
+        }
+
+        for (AnnotationMirror am : annotationType.getAnnotationMirrors()) {
+            collectMetaAnnotations((TypeElement) am.getAnnotationType().asElement(), result);
+        }
+    }
+
+    private void collectSupers(TypeMirror type, Set<String> annotations, Set<String> result) {
+        for (TypeMirror s : processingEnv.getTypeUtils().directSupertypes(type)) {
+            if (s.getKind() != TypeKind.DECLARED) {
+                continue;
+            }
+
+            TypeElement e = (TypeElement) ((DeclaredType) s).asElement();
+            String name = binaryName(e);
+            if (Object.class.getName().equals(name) || !result.add(name)) {
+                continue;
+            }
+
+            if (e.getKind() == ElementKind.CLASS) {
+                collectAnnotations(e, true, annotations);
+            }
+
+            collectSupers(s, annotations, result);
+        }
+    }
+
+    private void readExistingIndex() {
+        FileObject fo;
+        try {
+            fo = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", ClassIndex.INDEX_FILE);
+        } catch (Exception e) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(fo.openInputStream(), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String name = ClassIndex.classNameOf(line);
+                if (name == null || compiled.contains(name) || entries.containsKey(name)) {
+                    continue;
+                }
+
+                // the class was deleted since the last compilation
+                if (processingEnv.getElementUtils().getTypeElement(name.replace('$', '.')) == null) {
+                    continue;
+                }
+
+                entries.put(name, line);
+            }
+        } catch (IOException e) {
+            // no index compiled before
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void writeIndex() {
+        readExistingIndex();
+
+        Writer writer = null;
+        try {
+            FileObject fo = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ClassIndex.INDEX_FILE);
+            writer = new BufferedWriter(new OutputStreamWriter(fo.openOutputStream(), "UTF-8"));
+            for (String line : entries.values()) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    String.format("unable to write %s, classpath scanning will be used at runtime, %s", ClassIndex.INDEX_FILE, e.getMessage()));
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -42,7 +42,7 @@ public class ConsistentHash<T> {
     public boolean hasNode(T node) {
         for (int i = 0; i < numberOfReplicas; i++) {
             String nodeName = node.toString() + i;
-            if (circle.containsKey(hashFunction.hash(node))) {
+            if (node.equals(circle.get(hashFunction.hash(nodeName)))) {
                 return true;
             }
         }
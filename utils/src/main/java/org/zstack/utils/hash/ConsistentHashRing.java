@@ -0,0 +1,334 @@
+package org.zstack.utils.hash;
+
+import org.zstack.utils.Utils;
+import org.zstack.utils.logging.CLogger;
+
+import java.util.*;
+
+/**
+ * a consistent hash ring kept in sorted primitive arrays.
+ *
+ * the ring is an immutable snapshot replaced on every membership change, so lookups take no lock and
+ * always see a complete ring. Virtual nodes having the same hash are ordered by the string form of
+ * their nodes, that makes the ring the same on every management node no matter in which order the
+ * nodes are added.
+ *
+ * add() and remove() return the hash ranges whose owner changed, so callers can rebalance only the
+ * resources in those ranges instead of rescanning all resources
+ */
+public class ConsistentHashRing<T> {
+    private static final CLogger logger = Utils.getLogger(ConsistentHashRing.class);
+
+    private final HashFunction hashFunction;
+    private final int numberOfReplicas;
+    private volatile Circle<T> circle = new Circle<T>(new int[0], new Object[0], new String[0]);
+
+    private static class Circle<T> {
+        final int[] hashes;
+        final Object[] nodes;
+        final String[] names;
+
+        Circle(int[] hashes, Object[] nodes, String[] names) {
+            this.hashes = hashes;
+            this.nodes = nodes;
+            this.names = names;
+        }
+
+        int size() {
+            return hashes.length;
+        }
+
+        // the index of the first virtual node whose hash is not less than the hash, wrapping to 0
+        int indexOf(int hash) {
+            int low = 0;
+            int high = hashes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (hashes[mid] < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low == hashes.length ? 0 : low;
+        }
+
+        @SuppressWarnings("unchecked")
+        T ownerOf(int hash) {
+            if (hashes.length == 0) {
+                return null;
+            }
+
+            return (T) nodes[indexOf(hash)];
+        }
+
+        boolean contains(Object node) {
+            for (Object n : nodes) {
+                if (n.equals(node)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * a range of hash (start, end], it wraps around the ring when start is not less than end
+     * and covers the whole ring when start equals end
+     */
+    public static class Range<T> {
+        private final int start;
+        private final int end;
+        private final T from;
+        private final T to;
+
+        Range(int start, int end, T from, T to) {
+            this.start = start;
+            this.end = end;
+            this.from = from;
+            this.to = to;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the owner before the change, null if the ring was empty
+         */
+        public T getFrom() {
+            return from;
+        }
+
+        /**
+         * @return the owner after the change, null if the ring becomes empty
+         */
+        public T getTo() {
+            return to;
+        }
+
+        public boolean contains(int hash) {
+            if (start < end) {
+                return hash > start && hash <= end;
+            } else if (start > end) {
+                return hash > start || hash <= end;
+            } else {
+                return true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%s, %s]: %s -> %s", start, end, from, to);
+        }
+    }
+
+    /**
+     * the hash ranges moved by a membership change, ordered by the end of the ranges
+     */
+    public static class Change<T> {
+        private final HashFunction hashFunction;
+        private final List<Range<T>> ranges;
+
+        Change(HashFunction hashFunction, List<Range<T>> ranges) {
+            this.hashFunction = hashFunction;
+            this.ranges = ranges;
+        }
+
+        public List<Range<T>> getRanges() {
+            return ranges;
+        }
+
+        public boolean isEmpty() {
+            return ranges.isEmpty();
+        }
+
+        /**
+         * @return the range containing the hash of the key, null if the owner of the key didn't change
+         */
+        public Range<T> findRange(Object key) {
+            if (ranges.isEmpty()) {
+                return null;
+            }
+
+            int hash = hashFunction.hash(key);
+            int low = 0;
+            int high = ranges.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ranges.get(mid).end < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            if (low < ranges.size() && ranges.get(low).contains(hash)) {
+                return ranges.get(low);
+            }
+
+            // only the first range can wrap around the ring
+            Range<T> first = ranges.get(0);
+            return first.contains(hash) ? first : null;
+        }
+
+        public boolean isMovedFrom(Object key, T owner) {
+            Range<T> r = findRange(key);
+            return r != null && owner.equals(r.from);
+        }
+
+        public boolean isMovedTo(Object key, T owner) {
+            Range<T> r = findRange(key);
+            return r != null && owner.equals(r.to);
+        }
+    }
+
+    public ConsistentHashRing(HashFunction hashFunction, int numberOfReplicas) {
+        this.hashFunction = hashFunction;
+        this.numberOfReplicas = numberOfReplicas;
+    }
+
+    public ConsistentHashRing(HashFunction hashFunction, int numberOfReplicas, Collection<T> nodes) {
+        this(hashFunction, numberOfReplicas);
+
+        for (T node : nodes) {
+            add(node);
+        }
+    }
+
+    private static int compare(int h1, String n1, int h2, String n2) {
+        if (h1 != h2) {
+            return h1 < h2 ? -1 : 1;
+        }
+
+        return n1.compareTo(n2);
+    }
+
+    public synchronized Change<T> add(T node) {
+        Circle<T> old = circle;
+        if (old.contains(node)) {
+            return new Change<T>(hashFunction, new ArrayList<Range<T>>(0));
+        }
+
+        String name = node.toString();
+        int[] added = new int[numberOfReplicas];
+        for (int i = 0; i < numberOfReplicas; i++) {
+            added[i] = hashFunction.hash(name + i);
+        }
+        Arrays.sort(added);
+
+        int size = old.size() + added.length;
+        int[] hashes = new int[size];
+        Object[] nodes = new Object[size];
+        String[] names = new String[size];
+        int i = 0, j = 0;
+        for (int k = 0; k < size; k++) {
+            if (j >= added.length || (i < old.size() && compare(old.hashes[i], old.names[i], added[j], name) <= 0)) {
+                hashes[k] = old.hashes[i];
+                nodes[k] = old.nodes[i];
+                names[k] = old.names[i];
+                i++;
+            } else {
+                hashes[k] = added[j];
+                nodes[k] = node;
+                names[k] = name;
+                j++;
+            }
+        }
+
+        circle = new Circle<T>(hashes, nodes, names);
+        logger.debug(String.format("after adding, consistent hash ring has %s virtual nodes now", size));
+        return diff(old, circle);
+    }
+
+    public synchronized Change<T> remove(T node) {
+        Circle<T> old = circle;
+        int size = 0;
+        for (Object n : old.nodes) {
+            if (!n.equals(node)) {
+                size++;
+            }
+        }
+
+        if (size == old.size()) {
+            return new Change<T>(hashFunction, new ArrayList<Range<T>>(0));
+        }
+
+        int[] hashes = new int[size];
+        Object[] nodes = new Object[size];
+        String[] names = new String[size];
+        int k = 0;
+        for (int i = 0; i < old.size(); i++) {
+            if (!old.nodes[i].equals(node)) {
+                hashes[k] = old.hashes[i];
+                nodes[k] = old.nodes[i];
+                names[k] = old.names[i];
+                k++;
+            }
+        }
+
+        circle = new Circle<T>(hashes, nodes, names);
+        logger.debug(String.format("after removing, consistent hash ring has %s virtual nodes now", size));
+        return diff(old, circle);
+    }
+
+    private Change<T> diff(Circle<T> before, Circle<T> after) {
+        // between two adjacent boundaries of both rings, the owner in each ring doesn't change
+        int[] points = new int[before.size() + after.size()];
+        System.arraycopy(before.hashes, 0, points, 0, before.size());
+        System.arraycopy(after.hashes, 0, points, before.size(), after.size());
+        Arrays.sort(points);
+
+        int num = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (i == 0 || points[i] != points[i - 1]) {
+                points[num++] = points[i];
+            }
+        }
+
+        List<Range<T>> ranges = new ArrayList<Range<T>>();
+        for (int i = 0; i < num; i++) {
+            int start = points[i == 0 ? num - 1 : i - 1];
+            int end = points[i];
+            T from = before.ownerOf(end);
+            T to = after.ownerOf(end);
+            if (from == null ? to == null : from.equals(to)) {
+                continue;
+            }
+
+            Range<T> last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last.end == start && equals(last.from, from) && equals(last.to, to)) {
+                ranges.set(ranges.size() - 1, new Range<T>(last.start, end, from, to));
+            } else {
+                ranges.add(new Range<T>(start, end, from, to));
+            }
+        }
+
+        return new Change<T>(hashFunction, ranges);
+    }
+
+    private static boolean equals(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    public boolean hasNode(T node) {
+        return circle.contains(node);
+    }
+
+    public T get(Object key) {
+        return circle.ownerOf(hashFunction.hash(key));
+    }
+
+    /**
+     * @return the number of virtual nodes in the ring
+     */
+    public int size() {
+        return circle.size();
+    }
+}
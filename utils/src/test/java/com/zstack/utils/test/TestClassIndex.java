@@ -0,0 +1,116 @@
+package com.zstack.utils.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.core.type.filter.TypeFilter;
+import org.zstack.utils.BeanUtils;
+import org.zstack.utils.ClassIndex;
+
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.*;
+
+/**
+ * 1. index classes of this package by ClassIndexProcessor at test-compile time
+ * 2. look up classes by annotations and types
+ *
+ * confirm the index covers this package
+ * confirm BeanUtils finds the same classes by the index as by classpath scanning,
+ * including inherited annotations, meta-annotations, indirect super types and excluded types
+ *
+ * the time of looking up by the index and by scanning is printed
+ */
+public class TestClassIndex {
+    private static final String PKG = TestClassIndex.class.getPackage().getName();
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Inherited
+    public static @interface Marked {
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Marked
+    public static @interface MetaMarked {
+    }
+
+    public static interface Base {
+    }
+
+    public static abstract class AbstractBase implements Base {
+    }
+
+    public static class Impl extends AbstractBase {
+    }
+
+    @Marked
+    public static class Marked1 {
+    }
+
+    public static class SubMarked1 extends Marked1 {
+    }
+
+    @MetaMarked
+    public static class Marked2 extends Impl {
+    }
+
+    @Marked
+    public class NotIndependent extends Impl {
+    }
+
+    private Set<String> scan(TypeFilter filter) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(filter);
+        Set<String> ret = new HashSet<String>();
+        for (BeanDefinition bd : scanner.findCandidateComponents(PKG)) {
+            ret.add(bd.getBeanClassName());
+        }
+        return ret;
+    }
+
+    private Set<String> names(List<Class> classes) {
+        Set<String> ret = new HashSet<String>();
+        for (Class c : classes) {
+            ret.add(c.getName());
+        }
+        return ret;
+    }
+
+    @Test
+    public void test() throws Exception {
+        ClassIndex index = ClassIndex.load(getClass().getClassLoader());
+        Assert.assertNotNull(index);
+        Assert.assertTrue(index.covers(PKG));
+
+        Set<String> marked = names(BeanUtils.scanClass(PKG, Marked.class));
+        Assert.assertEquals(scan(new AnnotationTypeFilter(Marked.class)), marked);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(Marked1.class.getName(), SubMarked1.class.getName(), Marked2.class.getName())), marked);
+
+        Set<String> bases = names(BeanUtils.scanClassByType(PKG, Base.class));
+        Assert.assertEquals(scan(new AssignableTypeFilter(Base.class)), bases);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(Impl.class.getName(), Marked2.class.getName())), bases);
+
+        Set<String> excluded = names(BeanUtils.scanClassByType(Arrays.asList(PKG), Arrays.<Class>asList(Base.class), Arrays.<Class>asList(Marked2.class)));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(Impl.class.getName())), excluded);
+
+        int times = 20;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < times; i++) {
+            index.find(PKG, Arrays.<Class>asList(Base.class), Arrays.<Class>asList(Marked.class), new ArrayList<Class>(), new ArrayList<Class>());
+        }
+        long indexTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < times; i++) {
+            scan(new AnnotationTypeFilter(Marked.class));
+            scan(new AssignableTypeFilter(Base.class));
+        }
+        long scanTime = System.currentTimeMillis() - start;
+
+        System.out.println(String.format("%s lookups, class index: %sms, classpath scanning: %sms", times, indexTime, scanTime));
+    }
+}
@@ -0,0 +1,166 @@
+package com.zstack.utils.test;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.zstack.utils.hash.ApacheHash;
+import org.zstack.utils.hash.ConsistentHash;
+import org.zstack.utils.hash.ConsistentHashRing;
+import org.zstack.utils.hash.ConsistentHashRing.Change;
+
+import java.util.*;
+
+/**
+ * 1. add and remove nodes to a ring
+ *
+ * confirm the ring is the same no matter in which order nodes are added
+ * confirm keys whose owner changed are exactly the keys in the reported ranges
+ * confirm hasNode() works
+ * confirm the ring finds the same owners as ConsistentHash with the same hash function
+ *
+ * the lookup throughput and the rebalance cost are printed, compared with ConsistentHash
+ */
+public class TestConsistentHashRing {
+    private String uuid() {
+        return UUID.randomUUID().toString();
+    }
+
+    private Map<String, String> owners(ConsistentHashRing<String> ring, List<String> keys) {
+        Map<String, String> ret = new HashMap<String, String>();
+        for (String key : keys) {
+            ret.put(key, ring.get(key));
+        }
+        return ret;
+    }
+
+    private void validate(Change<String> change, Map<String, String> before, Map<String, String> after) {
+        for (Map.Entry<String, String> e : before.entrySet()) {
+            String key = e.getKey();
+            String from = e.getValue();
+            String to = after.get(key);
+            if (from.equals(to)) {
+                Assert.assertNull(change.findRange(key));
+            } else {
+                Assert.assertTrue(change.isMovedFrom(key, from));
+                Assert.assertTrue(change.isMovedTo(key, to));
+            }
+        }
+    }
+
+    @Test
+    public void test() {
+        List<String> nodes = new ArrayList<String>();
+        for (int i=0; i<5; i++) {
+            nodes.add(uuid());
+        }
+
+        List<String> keys = new ArrayList<String>();
+        for (int i=0; i<100000; i++) {
+            keys.add(uuid());
+        }
+
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(new ApacheHash(), 500, nodes);
+        List<String> reversed = new ArrayList<String>(nodes);
+        Collections.reverse(reversed);
+        ConsistentHashRing<String> ring2 = new ConsistentHashRing<String>(new ApacheHash(), 500, reversed);
+        Assert.assertEquals(owners(ring, keys), owners(ring2, keys));
+        for (String n : nodes) {
+            Assert.assertTrue(ring.hasNode(n));
+        }
+
+        String newNode = uuid();
+        Assert.assertFalse(ring.hasNode(newNode));
+        Map<String, String> before = owners(ring, keys);
+        Change<String> change = ring.add(newNode);
+        Map<String, String> after = owners(ring, keys);
+        validate(change, before, after);
+        for (ConsistentHashRing.Range<String> r : change.getRanges()) {
+            Assert.assertEquals(newNode, r.getTo());
+        }
+        Assert.assertTrue(ring.add(newNode).isEmpty());
+
+        before = after;
+        change = ring.remove(nodes.get(0));
+        after = owners(ring, keys);
+        validate(change, before, after);
+        for (ConsistentHashRing.Range<String> r : change.getRanges()) {
+            Assert.assertEquals(nodes.get(0), r.getFrom());
+        }
+        Assert.assertFalse(ring.hasNode(nodes.get(0)));
+    }
+
+    @Test
+    public void testSameOwnersAsConsistentHash() {
+        List<String> nodes = new ArrayList<String>();
+        for (int i=0; i<5; i++) {
+            nodes.add(uuid());
+        }
+
+        // as ResourceDestinationMakerImpl, management nodes of older versions use ConsistentHash
+        ConsistentHash<String> chash = new ConsistentHash<String>(new ApacheHash(), 500, nodes);
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(new ApacheHash(), 500, nodes);
+        for (int i=0; i<100000; i++) {
+            String key = uuid();
+            Assert.assertEquals(chash.get(key), ring.get(key));
+        }
+
+        String node = uuid();
+        chash.add(node);
+        ring.add(node);
+        chash.remove(nodes.get(0));
+        ring.remove(nodes.get(0));
+        for (int i=0; i<100000; i++) {
+            String key = uuid();
+            Assert.assertEquals(chash.get(key), ring.get(key));
+        }
+    }
+
+    @Test
+    public void benchmark() {
+        List<String> nodes = new ArrayList<String>();
+        for (int i=0; i<10; i++) {
+            nodes.add(uuid());
+        }
+
+        List<String> keys = new ArrayList<String>();
+        for (int i=0; i<1000000; i++) {
+            keys.add(uuid());
+        }
+
+        ConsistentHash<String> chash = new ConsistentHash<String>(new ApacheHash(), 500, nodes);
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(new ApacheHash(), 500, nodes);
+
+        // warm up
+        for (int i=0; i<100000; i++) {
+            chash.get(keys.get(i));
+            ring.get(keys.get(i));
+        }
+
+        long start = System.nanoTime();
+        for (String key : keys) {
+            chash.get(key);
+        }
+        long chashLookup = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (String key : keys) {
+            ring.get(key);
+        }
+        long ringLookup = System.nanoTime() - start;
+
+        String node = uuid();
+        start = System.nanoTime();
+        chash.add(node);
+        chash.remove(node);
+        long chashRebalance = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Change<String> added = ring.add(node);
+        Change<String> removed = ring.remove(node);
+        long ringRebalance = System.nanoTime() - start;
+
+        System.out.println(String.format("ConsistentHash: %s lookups/s, add and remove a node: %sus",
+                keys.size() * 1000000000L / chashLookup, chashRebalance / 1000));
+        System.out.println(String.format("ConsistentHashRing: %s lookups/s, add and remove a node: %sus, moved ranges: %s, %s",
+                keys.size() * 1000000000L / ringLookup, ringRebalance / 1000, added.getRanges().size(), removed.getRanges().size()));
+    }
+}